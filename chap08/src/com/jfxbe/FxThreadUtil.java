@@ -0,0 +1,45 @@
+package com.jfxbe;
+
+import javafx.application.Platform;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Static utility methods allowing worker threads to hand off
+ * scene graph work (such as taking snapshots) to the JavaFX
+ * application thread and wait for the result.
+ */
+public final class FxThreadUtil {
+
+    private FxThreadUtil() {
+    }
+
+    /**
+     * Runs the callable on the JavaFX application thread and blocks
+     * the calling thread until a result is available. When called on
+     * the JavaFX application thread the callable is run directly.
+     * @param callable code touching the scene graph.
+     * @param <T> the result type.
+     * @return T the value returned by the callable.
+     * @throws Exception the exception thrown by the callable, or an
+     * InterruptedException if the waiting thread was interrupted.
+     */
+    public static <T> T callAndWait(Callable<T> callable) throws Exception {
+        if (Platform.isFxApplicationThread()) {
+            return callable.call();
+        }
+        FutureTask<T> futureTask = new FutureTask<>(callable);
+        Platform.runLater(futureTask);
+        try {
+            return futureTask.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+}
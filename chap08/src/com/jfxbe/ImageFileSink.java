@@ -0,0 +1,63 @@
+package com.jfxbe;
+
+import javafx.embed.swing.SwingFXUtils;
+import javafx.scene.image.Image;
+
+import javax.imageio.ImageIO;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A stand-in for a printer which writes each page as a PNG image
+ * into a directory per job:
+ * <pre>
+ *  directory/jobName/page-001.png
+ *  directory/jobName/page-002.png
+ * </pre>
+ */
+public class ImageFileSink implements PrintSink {
+    private final Path directory;
+    private Path jobDirectory;
+    private int pageNumber;
+
+    /**
+     * @param directory the directory receiving a sub directory per job.
+     */
+    public ImageFileSink(Path directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public void startJob(String jobName) throws IOException {
+        String safeName = jobName.replaceAll("[^A-Za-z0-9._-]", "_");
+        jobDirectory = Files.createDirectories(directory.resolve(safeName));
+        pageNumber = 0;
+    }
+
+    @Override
+    public void printPage(Image page, double renderScale) throws IOException {
+        File pageFile = jobDirectory.resolve(
+                String.format("page-%03d.png", ++pageNumber)).toFile();
+        ImageIO.write(SwingFXUtils.fromFXImage(page, null), "png", pageFile);
+    }
+
+    @Override
+    public void endJob() {
+        // every page is already written
+    }
+
+    @Override
+    public void cancelJob() {
+        // keep the pages written so far for inspection
+    }
+
+    /**
+     * Returns the number of pages written for the current job.
+     * @return int page count.
+     */
+    public int getPageCount() {
+        return pageNumber;
+    }
+}
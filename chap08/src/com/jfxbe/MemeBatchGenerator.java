@@ -0,0 +1,402 @@
+package com.jfxbe;
+
+import javax.imageio.ImageIO;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontFormatException;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.font.FontRenderContext;
+import java.awt.font.TextLayout;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates memes in bulk from a data file without showing any GUI.
+ * Each row of the data file has the path to a base image and the
+ * caption text (comma separated, fields may be double quoted):
+ * <pre>
+ *  # image, caption
+ *  images/cat.jpg,"I CAN HAZ, CHEEZBURGER"
+ *  images/dog.png,SUCH WOW
+ * </pre>
+ *
+ * The caption is drawn in the same style as the MemeTextControl
+ * (Anton font, white fill with a black outline) at the top of the
+ * image, shrunk to fit the image's width. Rows are rendered on a
+ * pool of worker threads. JavaFX snapshots can only be taken on the
+ * JavaFX application thread, so rendering uses Java2D which is able
+ * to run in parallel and in headless mode.
+ *
+ * Base images and font sizes are cached and shared between rows.
+ * Each finished row number is appended to a progress file inside the
+ * output directory, rerunning the same command resumes where a
+ * previous run stopped.
+ *
+ * Usage:
+ * <pre>
+ *  java -cp mlib/chap10.jar com.jfxbe.MemeBatchGenerator data.csv out-dir [threads]
+ * </pre>
+ */
+public class MemeBatchGenerator {
+
+    /** File inside the output directory holding the finished row numbers. */
+    public static final String PROGRESS_FILE = ".meme-batch.progress";
+
+    /** The meme font, same as the meme-maker.css font face. */
+    private static final String FONT_RESOURCE = "/Anton.ttf";
+
+    /** Maximum number of decoded base images kept in memory. */
+    private static final int MAX_CACHED_IMAGES = 32;
+
+    private static final int MIN_FONT_SIZE = 12;
+    private static final float OUTLINE_WIDTH = 2.0f;
+    private static final int PADDING = 10;
+
+    private final Path outputDir;
+    private final int threads;
+    private final Font baseFont;
+
+    /** Derived fonts by point size, shared by all worker threads. */
+    private final Map<Integer, Font> fontCache = new ConcurrentHashMap<>();
+
+    /** Least recently used cache of base images currently loading or loaded. */
+    private final Map<String, FutureTask<BufferedImage>> imageCache =
+            new LinkedHashMap<String, FutureTask<BufferedImage>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<String, FutureTask<BufferedImage>> eldest) {
+                    return size() > MAX_CACHED_IMAGES;
+                }
+            };
+
+    private final AtomicLong rendered = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong imageLoads = new AtomicLong();
+    private final AtomicLong renderNanos = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    private BufferedWriter progressWriter;
+
+    /**
+     * @param args data file, output directory and optional number of threads.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: MemeBatchGenerator <data file> <output dir> [threads]");
+            System.exit(1);
+        }
+        System.setProperty("java.awt.headless", "true");
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) :
+                Runtime.getRuntime().availableProcessors();
+
+        MemeBatchGenerator generator = new MemeBatchGenerator(
+                Paths.get(args[1]), threads);
+        generator.run(Paths.get(args[0]));
+    }
+
+    /**
+     * @param outputDir directory receiving the generated images.
+     * @param threads number of worker threads rendering memes.
+     * @throws IOException if the meme font could not be loaded.
+     * @throws FontFormatException if the meme font is invalid.
+     */
+    public MemeBatchGenerator(Path outputDir, int threads)
+            throws IOException, FontFormatException {
+        this.outputDir = outputDir;
+        this.threads = threads;
+        try (InputStream fontStream = getClass().getResourceAsStream(FONT_RESOURCE)) {
+            if (fontStream == null) {
+                throw new IOException("Missing font resource " + FONT_RESOURCE);
+            }
+            baseFont = Font.createFont(Font.TRUETYPE_FONT, fontStream);
+        }
+    }
+
+    /**
+     * Renders every row of the data file not yet recorded in the
+     * progress file, then prints the throughput metrics.
+     * @param dataFile the comma separated data file.
+     * @throws IOException if the data or progress file can't be accessed.
+     * @throws InterruptedException if interrupted while waiting for workers.
+     */
+    public void run(Path dataFile) throws IOException, InterruptedException {
+        Files.createDirectories(outputDir);
+        List<MemeRow> rows = readRows(dataFile);
+        Path progressFile = outputDir.resolve(PROGRESS_FILE);
+        Set<Integer> finished = readFinishedRows(progressFile);
+        System.out.printf("%d rows, %d already finished, %d threads%n",
+                rows.size(), finished.size(), threads);
+
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        long start = System.nanoTime();
+        reporter.scheduleAtFixedRate(() -> printMetrics(start), 5, 5, TimeUnit.SECONDS);
+
+        try (BufferedWriter writer = Files.newBufferedWriter(progressFile,
+                StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND)) {
+            progressWriter = writer;
+            for (MemeRow row : rows) {
+                if (!finished.contains(row.number)) {
+                    workers.submit(() -> renderRow(row));
+                }
+            }
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } finally {
+            reporter.shutdownNow();
+        }
+        printMetrics(start);
+    }
+
+    /**
+     * Renders a single row and records it in the progress file.
+     * @param row the data row.
+     */
+    private void renderRow(MemeRow row) {
+        long begin = System.nanoTime();
+        try {
+            BufferedImage base = loadImage(row.imagePath);
+            BufferedImage meme = renderMeme(base, row.caption);
+            File outFile = outputDir.resolve(String.format("meme-%06d.png", row.number))
+                                    .toFile();
+            ImageIO.write(meme, "png", outFile);
+            bytesWritten.addAndGet(outFile.length());
+            rendered.incrementAndGet();
+            markFinished(row.number);
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            System.err.println("Row " + row.number + " (" + row.imagePath + ") failed: " + e);
+        } finally {
+            renderNanos.addAndGet(System.nanoTime() - begin);
+        }
+    }
+
+    /**
+     * Draws the caption on top of a copy of the base image.
+     * @param base the shared base image, it is never modified.
+     * @param caption the meme text.
+     * @return BufferedImage a new image with the caption.
+     */
+    BufferedImage renderMeme(BufferedImage base, String caption) {
+        int width = base.getWidth();
+        int height = base.getHeight();
+        BufferedImage meme = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = meme.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                    RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                    RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g.drawImage(base, 0, 0, null);
+            if (caption.isEmpty()) {
+                return meme;
+            }
+
+            FontRenderContext frc = g.getFontRenderContext();
+            TextLayout layout = fitCaption(caption, width - 2 * PADDING,
+                    height / 6, frc);
+            float x = (width - layout.getAdvance()) / 2;
+            float y = PADDING + layout.getAscent();
+            Shape outline = layout.getOutline(AffineTransform.getTranslateInstance(x, y));
+
+            // white text with a black stroke like the .meme-text style
+            g.setColor(Color.WHITE);
+            g.fill(outline);
+            g.setColor(Color.BLACK);
+            g.setStroke(new BasicStroke(OUTLINE_WIDTH));
+            g.draw(outline);
+        } finally {
+            g.dispose();
+        }
+        return meme;
+    }
+
+    /**
+     * Returns a text layout using the largest font size (starting at
+     * maxSize) where the caption fits into the available width.
+     */
+    private TextLayout fitCaption(String caption, int availableWidth,
+                                  int maxSize, FontRenderContext frc) {
+        int size = Math.max(MIN_FONT_SIZE, maxSize);
+        TextLayout layout = new TextLayout(caption, fontForSize(size), frc);
+        while (size > MIN_FONT_SIZE && layout.getAdvance() > availableWidth) {
+            // jump straight to the estimated size, then step down
+            int estimate = (int) (size * availableWidth / layout.getAdvance());
+            size = Math.max(MIN_FONT_SIZE, Math.min(size - 1, estimate));
+            layout = new TextLayout(caption, fontForSize(size), frc);
+        }
+        return layout;
+    }
+
+    private Font fontForSize(int size) {
+        return fontCache.computeIfAbsent(size, s -> baseFont.deriveFont(Font.PLAIN, (float) s));
+    }
+
+    /**
+     * Returns the decoded base image. Rows sharing the same image wait
+     * on the same load instead of decoding the file again.
+     * @param imagePath path to the image file.
+     * @return BufferedImage the shared decoded image.
+     * @throws Exception if the image could not be read.
+     */
+    private BufferedImage loadImage(String imagePath) throws Exception {
+        FutureTask<BufferedImage> load;
+        boolean owner = false;
+        synchronized (imageCache) {
+            load = imageCache.get(imagePath);
+            if (load == null) {
+                load = new FutureTask<>(() -> {
+                    imageLoads.incrementAndGet();
+                    BufferedImage image = ImageIO.read(new File(imagePath));
+                    if (image == null) {
+                        throw new IOException("Unsupported image format");
+                    }
+                    return image;
+                });
+                imageCache.put(imagePath, load);
+                owner = true;
+            }
+        }
+        if (owner) {
+            load.run();
+        }
+        try {
+            return load.get();
+        } catch (ExecutionException e) {
+            synchronized (imageCache) {
+                imageCache.remove(imagePath, load);
+            }
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private synchronized void markFinished(int rowNumber) throws IOException {
+        progressWriter.write(Integer.toString(rowNumber));
+        progressWriter.newLine();
+        progressWriter.flush();
+    }
+
+    private void printMetrics(long startNanos) {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        long done = rendered.get();
+        long attempted = done + failed.get();
+        System.out.printf("rendered: %d failed: %d image loads: %d " +
+                        "throughput: %.1f memes/s avg render: %.1f ms written: %.1f MB%n",
+                done, failed.get(), imageLoads.get(),
+                seconds > 0 ? done / seconds : 0,
+                attempted > 0 ? renderNanos.get() / 1e6 / attempted : 0,
+                bytesWritten.get() / (1024.0 * 1024.0));
+    }
+
+    private static Set<Integer> readFinishedRows(Path progressFile) throws IOException {
+        Set<Integer> finished = new HashSet<>();
+        if (Files.exists(progressFile)) {
+            for (String line : Files.readAllLines(progressFile, StandardCharsets.UTF_8)) {
+                line = line.trim();
+                if (!line.isEmpty()) {
+                    finished.add(Integer.valueOf(line));
+                }
+            }
+        }
+        return finished;
+    }
+
+    /**
+     * Reads the data file. Blank lines and lines starting with # are
+     * skipped, rows are numbered by their line number so a resumed
+     * run maps to the same output files.
+     */
+    static List<MemeRow> readRows(Path dataFile) throws IOException {
+        List<MemeRow> rows = new ArrayList<>();
+        List<String> lines = Files.readAllLines(dataFile, StandardCharsets.UTF_8);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (line.trim().isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            List<String> fields = parseCsvLine(line);
+            String caption = fields.size() > 1 ? fields.get(1) : "";
+            rows.add(new MemeRow(i + 1, fields.get(0).trim(), caption.trim()));
+        }
+        return rows;
+    }
+
+    /**
+     * Splits a comma separated line. Fields may be double quoted and
+     * quotes inside a quoted field are escaped by doubling them.
+     */
+    static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * One line of the data file.
+     */
+    static class MemeRow {
+        final int number;
+        final String imagePath;
+        final String caption;
+
+        MemeRow(int number, String imagePath, String caption) {
+            this.number = number;
+            this.imagePath = imagePath;
+            this.caption = caption;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.jfxbe;
+
+import javafx.concurrent.Task;
+import javafx.geometry.Bounds;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.Node;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritablePixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.transform.Scale;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.IntBuffer;
+
+/**
+ * Exports a node (the meme's image and text layers) as a PNG file at
+ * a resolution higher than the screen. The node is rendered with a
+ * scale transform one tile at a time, each tile is copied into a
+ * band of rows and every completed band is handed to a streaming
+ * PNG encoder. Only one band of pixels is held in memory, so very
+ * large exports (e.g. 10000 x 10000) never need one huge
+ * WritableImage.
+ */
+public class MemeExporter {
+
+    /** The resolution of one JavaFX pixel (a CSS pixel is 1/96 inch). */
+    public static final double NODE_DPI = 96.0;
+
+    /** Default width and height of a snapshot tile in pixels */
+    public static final int DEFAULT_TILE_SIZE = 1024;
+
+    private final int tileSize;
+
+    public MemeExporter() {
+        this(DEFAULT_TILE_SIZE);
+    }
+
+    /**
+     * @param tileSize width and height in pixels of each snapshot.
+     */
+    public MemeExporter(int tileSize) {
+        if (tileSize <= 0) {
+            throw new IllegalArgumentException("Tile size must be positive");
+        }
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * Returns the scale factor to render a node at the target DPI.
+     * @param dpi target dots per inch.
+     * @return double the scale factor.
+     */
+    public static double scaleForDpi(double dpi) {
+        return dpi / NODE_DPI;
+    }
+
+    /**
+     * Returns the scale factor to render a node with the given
+     * output width in pixels.
+     * @param node the node to export.
+     * @param pixelWidth the target width in pixels.
+     * @return double the scale factor.
+     */
+    public static double scaleForWidth(Node node, int pixelWidth) {
+        return pixelWidth / node.getBoundsInParent().getWidth();
+    }
+
+    /**
+     * Returns a worker task exporting the node as a PNG image. The
+     * snapshots are taken on the JavaFX application thread while the
+     * encoding happens on the thread running the task.
+     * @param node the node to export.
+     * @param scale the scale factor applied to the node.
+     * @param file the destination PNG file.
+     * @return Task worker task returning the written file.
+     */
+    public Task<File> createExportTask(Node node, double scale, File file) {
+        return new Task<File>() {
+            @Override
+            protected File call() throws Exception {
+                Scale scaleTransform = new Scale(scale, scale);
+                Bounds bounds = FxThreadUtil.callAndWait(() ->
+                        scaleTransform.transform(node.getBoundsInParent()));
+
+                int width = (int) Math.ceil(bounds.getWidth());
+                int height = (int) Math.ceil(bounds.getHeight());
+                int columns = (width + tileSize - 1) / tileSize;
+                int rows = (height + tileSize - 1) / tileSize;
+                long totalTiles = (long) columns * rows;
+                long tilesDone = 0;
+
+                SnapshotParameters params = new SnapshotParameters();
+                params.setTransform(scaleTransform);
+                WritableImage tileImage = new WritableImage(tileSize, tileSize);
+                WritablePixelFormat<IntBuffer> format = PixelFormat.getIntArgbInstance();
+                // one band of rows, as tall as a tile and as wide as the image
+                int[] band = new int[width * Math.min(tileSize, height)];
+
+                updateMessage("Exporting " + width + "x" + height);
+                try (StreamingPngWriter png = new StreamingPngWriter(
+                        new BufferedOutputStream(new FileOutputStream(file)),
+                        width, height)) {
+
+                    for (int bandY = 0; bandY < height; bandY += tileSize) {
+                        int bandHeight = Math.min(tileSize, height - bandY);
+                        for (int tileX = 0; tileX < width; tileX += tileSize) {
+                            if (isCancelled()) {
+                                return null;
+                            }
+                            int tileWidth = Math.min(tileSize, width - tileX);
+                            double viewX = bounds.getMinX() + tileX;
+                            double viewY = bounds.getMinY() + bandY;
+                            int bandOffset = tileX;
+
+                            // render the tile and copy it into the band
+                            FxThreadUtil.callAndWait(() -> {
+                                params.setViewport(new Rectangle2D(viewX, viewY,
+                                        tileSize, tileSize));
+                                node.snapshot(params, tileImage);
+                                tileImage.getPixelReader()
+                                         .getPixels(0, 0, tileWidth, bandHeight,
+                                                 format, band, bandOffset, width);
+                                return null;
+                            });
+                            updateProgress(++tilesDone, totalTiles);
+                        }
+                        png.writeRows(band, 0, width, bandHeight);
+                    }
+                } catch (Exception e) {
+                    // don't leave a partial image behind (failed or cancelled)
+                    file.delete();
+                    throw e;
+                }
+                return file;
+            }
+        };
+    }
+}
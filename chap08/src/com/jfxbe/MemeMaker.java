@@ -5,7 +5,7 @@ import javafx.application.Platform;
 import javafx.concurrent.Task;
 import javafx.embed.swing.SwingFXUtils;
 import javafx.geometry.Pos;
-import javafx.print.Printer;
+import javafx.print.PageLayout;
 import javafx.print.PrinterJob;
 import javafx.scene.Node;
 import javafx.scene.Scene;
@@ -20,16 +20,18 @@ import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.Pane;
 import javafx.scene.layout.StackPane;
 import javafx.scene.paint.Color;
-import javafx.scene.shape.*;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import javafx.stage.Window;
 
 import javax.imageio.ImageIO;
 import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -51,6 +53,18 @@ public class MemeMaker extends Application {
     protected ImageView _currentViewImage;
 
     private int _fontSize = 80;
+
+    /** Resolutions offered when exporting beyond screen resolution */
+    private static final List<String> EXPORT_RESOLUTIONS = Arrays.asList(
+            "150 DPI", "300 DPI", "600 DPI",
+            "4000 px wide", "10000 px wide");
+
+    /** Render scale of printed memes, two image pixels per point */
+    private static final double PRINT_RENDER_SCALE = 2.0;
+
+    /** Queues print jobs printed on a dedicated thread */
+    protected PrintSpooler _printSpooler = new PrintSpooler();
+
     /** Single threaded service for loading an image */
     protected ExecutorService _executorService =
             Executors.newSingleThreadScheduledExecutor();
@@ -66,6 +80,7 @@ public class MemeMaker extends Application {
         super.stop();
         // Shutdown thread service
         _executorService.shutdown();
+        _printSpooler.shutdown();
     }
 
     @Override
@@ -127,7 +142,7 @@ public class MemeMaker extends Application {
         StackPane centerArea = new StackPane(mainContentPane);
 
         // Red box denoting the print region
-        Node printRegion = generatePrintRegion();
+        Node printRegion = PrinterDiscovery.getInstance().createPrintRegion();
         centerArea.getChildren().add(printRegion);
         StackPane.setAlignment(printRegion, Pos.TOP_LEFT);
         root.setCenter(centerArea);
@@ -139,23 +154,6 @@ public class MemeMaker extends Application {
         primaryStage.show();
     }
 
-    private Node generatePrintRegion() {
-        Path printPerimeter = new Path();
-        Printer printer = Printer.getDefaultPrinter();
-        double printWidth = printer.getDefaultPageLayout().getPrintableWidth();
-        double printHeight = printer.getDefaultPageLayout().getPrintableHeight();
-        PathElement[] corners = {
-                new MoveTo(0,0),
-                new LineTo(printWidth, 0),
-                new LineTo(printWidth, printHeight),
-                new LineTo(0, printHeight),
-                new ClosePath()
-        };
-        printPerimeter.getElements().addAll(corners);
-        printPerimeter.setStroke(Color.RED);
-        return printPerimeter;
-    }
-
     private ImageView createImageView() {
         ImageView imageView = new ImageView();
         imageView.setPreserveRatio(true);
@@ -219,15 +217,27 @@ public class MemeMaker extends Application {
             }
         });
 
+        // Fit the font size to the box as meme texts are resized
+        CheckMenuItem autoFitMenuItem = new CheckMenuItem("Auto Fit Text");
+        autoFitMenuItem.selectedProperty().addListener(listener ->
+            memeContent.getChildren()
+                       .stream()
+                       .filter(node -> node instanceof MemeTextControl)
+                       .forEach(node -> ((MemeTextControl) node)
+                               .setAutoFit(autoFitMenuItem.isSelected()))
+        );
+
         // create a meme text
         MenuItem addMemeTextItem = new MenuItem("Add Meme Text");
         addMemeTextItem.setOnAction( actionEvent -> {
             MemeTextControl memeText = new MemeTextControl(
                     memeContent.getScene(), _fontSize);
+            memeText.setAutoFit(autoFitMenuItem.isSelected());
             memeContent.getChildren()
                        .add(memeText);
         });
-        memeMenu.getItems().addAll(fontSizeMenu, addMemeTextItem);
+        memeMenu.getItems().addAll(fontSizeMenu, autoFitMenuItem,
+                addMemeTextItem);
 
         return memeMenu;
     }
@@ -261,6 +271,13 @@ public class MemeMaker extends Application {
         // file chooser to save image as file
         wireupSaveMenuItem(saveAsMenuItem, stage, memeContent);
 
+        MenuItem exportMenuItem = new MenuItem("_Export High Resolution...");
+        exportMenuItem.setMnemonicParsing(true);
+
+        // render the meme beyond screen resolution into a file
+        wireupExportMenuItem(exportMenuItem, stage, progressIndicator,
+                memeContent);
+
         // Print the current screen
         MenuItem printMenuItem = new MenuItem("_Print");
         printMenuItem.setMnemonicParsing(true);
@@ -269,6 +286,11 @@ public class MemeMaker extends Application {
         // launch print dialog
         wireupPrintMenuItem(printMenuItem, memeContent);
 
+        // Print the meme enlarged across several pages
+        MenuItem posterMenuItem = new MenuItem("Print P_oster...");
+        posterMenuItem.setMnemonicParsing(true);
+        wireupPosterMenuItem(posterMenuItem, memeContent);
+
         // Quit application
         MenuItem exitMenuItem = new MenuItem("_Quit");
         exitMenuItem.setMnemonicParsing(true);
@@ -279,7 +301,8 @@ public class MemeMaker extends Application {
         exitMenuItem.setOnAction(actionEvent -> Platform.exit());
 
         fileMenu.getItems().addAll(loadImagesMenuItem,
-                saveAsMenuItem, printMenuItem, exitMenuItem);
+                saveAsMenuItem, exportMenuItem, printMenuItem, posterMenuItem,
+                exitMenuItem);
 
         return fileMenu;
     }
@@ -290,25 +313,88 @@ public class MemeMaker extends Application {
         //    (check the box) Share this printer on the network.
 
         printMenuItem.setOnAction( actionEvent -> {
+            PrintSink sink = createPrintSink(memeContent.getScene().getWindow());
+            if (sink == null) {
+                return;
+            }
 
-            PrinterJob job = PrinterJob.createPrinterJob();
-            job.jobStatusProperty().addListener(listener -> {
-                System.out.println("status " + job.getJobStatus());
-            });
-            if (job != null &&
-                    job.showPrintDialog(memeContent.getScene().getWindow())){
-                if (job.getJobStatus() == PrinterJob.JobStatus.NOT_STARTED) {
-                    System.out.println("canceled");
-                }
-                boolean success = job.printPage(memeContent);
-                if (success) {
-                    job.endJob();
-                    return;
-                }
+            // The meme is rendered into an image and printed on the
+            // spooler's thread
+            Task<PrintSpooler.JobStats> printTask = _printSpooler.submit("meme",
+                    Collections.singletonList(memeContent),
+                    PRINT_RENDER_SCALE, sink);
+            logPrintOutcome(printTask);
+        });
+    }
+
+    private void wireupPosterMenuItem(MenuItem posterMenuItem, Pane memeContent) {
+        posterMenuItem.setOnAction( actionEvent -> {
+            ChoiceDialog<Integer> pagesDialog = new ChoiceDialog<>(2, 2, 3, 4, 5, 6);
+            pagesDialog.setTitle("Print Poster");
+            pagesDialog.setHeaderText("Number of pages across the poster");
+            Optional<Integer> pagesAcross = pagesDialog.showAndWait();
+            if (!pagesAcross.isPresent()) {
+                return;
             }
+            PrintSink sink = createPrintSink(memeContent.getScene().getWindow());
+            if (sink == null) {
+                return;
+            }
+
+            // Tiles fit the page layout chosen in the print dialog, the
+            // default printer's for a sink without one
+            PageLayout pageLayout = sink.getPageLayout();
+            PrinterDiscovery discovery = PrinterDiscovery.getInstance();
+            double printableWidth = pageLayout != null ?
+                    pageLayout.getPrintableWidth() : discovery.getPrintableWidth();
+            double printableHeight = pageLayout != null ?
+                    pageLayout.getPrintableHeight() : discovery.getPrintableHeight();
+
+            // Tiles are rendered and printed one page at a time
+            PosterPrinter poster = PosterPrinter.pagesAcross(memeContent,
+                    pagesAcross.get(),
+                    printableWidth,
+                    printableHeight,
+                    PosterPrinter.DEFAULT_OVERLAP);
+            LOGGER.log(Level.INFO, "poster " + poster.getColumns() + "x"
+                    + poster.getRows() + " pages");
+            logPrintOutcome(poster.print(_printSpooler, "meme poster",
+                    PRINT_RENDER_SCALE, sink));
         });
     }
 
+    /**
+     * Returns the destination of a print job. When the jfxbe.print.sink
+     * system property is set page images are written into a directory,
+     * otherwise the user chooses a printer in the print dialog.
+     * @param owner the window owning the print dialog.
+     * @return PrintSink the destination or null when canceled.
+     */
+    private PrintSink createPrintSink(Window owner) {
+        java.nio.file.Path imageSinkDir = PrintSpooler.imageSinkDirectory();
+        if (imageSinkDir != null) {
+            // stand-in printer writing page images
+            return new ImageFileSink(imageSinkDir);
+        }
+        PrinterJob job = PrinterJob.createPrinterJob();
+        if (job == null || !job.showPrintDialog(owner)) {
+            System.out.println("canceled");
+            return null;
+        }
+        job.jobStatusProperty().addListener(listener -> {
+            System.out.println("status " + job.getJobStatus());
+        });
+        return new PrinterJobSink(job);
+    }
+
+    private void logPrintOutcome(Task<PrintSpooler.JobStats> printTask) {
+        printTask.setOnSucceeded(workerStateEvent ->
+                LOGGER.log(Level.INFO, "printed " + printTask.getValue()));
+        printTask.setOnFailed(workerStateEvent ->
+                LOGGER.log(Level.SEVERE, "printing failed",
+                        printTask.getException()));
+    }
+
     /**
      * An action to launch a file chooser to allow the user to load
      * an image from the file system.
@@ -373,6 +459,60 @@ public class MemeMaker extends Application {
             }
         });
     }
+    /**
+     * An action to export the meme as a PNG image rendered at a
+     * chosen DPI or pixel width. The export is tiled and encoded on
+     * the background thread service.
+     * @param menuItem The export menu item.
+     * @param primaryStage
+     * @param progressIndicator The indicator shown during the export.
+     * @param memeContent The meme's image and text layers.
+     */
+    protected void wireupExportMenuItem(MenuItem menuItem,
+                                        Stage primaryStage,
+                                        ProgressIndicator progressIndicator,
+                                        Pane memeContent) {
+        menuItem.setOnAction( actionEvent -> {
+            ChoiceDialog<String> resolutionDialog = new ChoiceDialog<>(
+                    EXPORT_RESOLUTIONS.get(1), EXPORT_RESOLUTIONS);
+            resolutionDialog.setTitle("Export High Resolution");
+            resolutionDialog.setHeaderText("Choose the output resolution");
+            Optional<String> resolution = resolutionDialog.showAndWait();
+            if (!resolution.isPresent()) {
+                return;
+            }
+
+            FileChooser fileChooser = new FileChooser();
+            fileChooser.getExtensionFilters().add(
+                    new FileChooser.ExtensionFilter("PNG Image", "*.png"));
+            File fileSave = fileChooser.showSaveDialog(primaryStage);
+            if (fileSave == null) {
+                return;
+            }
+
+            // e.g. "300 DPI" or "4000 px wide"
+            String[] choice = resolution.get().split(" ");
+            double scale = choice[1].equals("DPI") ?
+                    MemeExporter.scaleForDpi(Double.parseDouble(choice[0])) :
+                    MemeExporter.scaleForWidth(memeContent,
+                            Integer.parseInt(choice[0]));
+
+            Task<File> exportTask = new MemeExporter()
+                    .createExportTask(memeContent, scale, fileSave);
+            progressIndicator.setVisible(true);
+            exportTask.setOnSucceeded(workerStateEvent -> {
+                progressIndicator.setVisible(false);
+                LOGGER.log(Level.FINE, "exported " + exportTask.getValue());
+            });
+            exportTask.setOnFailed(workerStateEvent -> {
+                progressIndicator.setVisible(false);
+                LOGGER.log(Level.SEVERE, "export failed",
+                        exportTask.getException());
+            });
+            _executorService.submit(exportTask);
+        });
+    }
+
     /** Wireup behavior of UI elements and actions.
      * This method is called after the stage and scene is shown.
      * @param primaryStage Main application window.
@@ -1,8 +1,11 @@
 package com.jfxbe;
 
+import javafx.animation.AnimationTimer;
 import javafx.application.Platform;
+import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.geometry.Point2D;
@@ -36,8 +39,36 @@ import javafx.scene.text.Text;
  * Created by cpdea on 12/3/16.
  */
 public class MemeTextControl extends StackPane {
+    /** Font size range used when auto fitting the text to the box */
+    private static final int MIN_FIT_FONT_SIZE = 10;
+    private static final int MAX_FIT_FONT_SIZE = 200;
+    /** Room left for the text's outline stroke when auto fitting */
+    private static final double FIT_MARGIN = 6;
+    /** Narrowest width the box can be resized to when auto fitting */
+    private static final double MIN_FIT_WIDTH = 50;
+
+    /** Text measurements shared by all meme text controls. */
+    private static final TextMeasurementCache TEXT_MEASUREMENTS =
+            new TextMeasurementCache(2048);
+
     private boolean isDragged = false;
     private static int count;
+
+    /** The font size selected when the control was created */
+    private final int fontSize;
+    private int displayedFontSize;
+    private final Text textPhrase;
+    private final BooleanProperty autoFit =
+            new SimpleBooleanProperty(this, "autoFit", false);
+
+    /** Width requested by the latest resize drag, applied once per pulse */
+    private double pendingWidth = -1;
+    private final AnimationTimer resizePulse = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            applyPendingWidth();
+        }
+    };
     /*
      StackPane     (This whole meme)
          TextField (Edit text)
@@ -55,9 +86,10 @@ public class MemeTextControl extends StackPane {
 
         Font memeTextFont = Font.font("Anton", FontWeight.EXTRA_BOLD, fontSize);
         System.out.println("font: " + memeTextFont);
-        Text textPhrase = new Text();
+        this.fontSize = fontSize;
+        textPhrase = new Text();
         textPhrase.getStyleClass().add("meme-text");
-        textPhrase.setStyle("-fx-font-size: " + fontSize + ";");
+        applyFontSize(fontSize);
         textPhrase.textProperty().bind(textFieldPhrase.textProperty());
 
 
@@ -89,8 +121,27 @@ public class MemeTextControl extends StackPane {
 
         // Update this component based on the size of the Label text.
         textLabel.widthProperty().addListener( listener -> {
-            double minWidth = textLabel.getBoundsInParent().getWidth();
-            setPrefWidth(minWidth);
+            // when auto fitting the text follows the box instead
+            if (!isAutoFit()) {
+                double minWidth = textLabel.getBoundsInParent().getWidth();
+                setPrefWidth(minWidth);
+            }
+        });
+
+        // Refit the text into the current box as it's edited
+        textPhrase.textProperty().addListener( listener -> {
+            if (isAutoFit()) {
+                fitText(getWidth());
+            }
+        });
+
+        // Switching auto fit on fits the text, off restores the font size
+        autoFit.addListener( (observable, oldValue, newValue) -> {
+            if (newValue) {
+                fitText(getWidth());
+            } else {
+                applyFontSize(this.fontSize);
+            }
         });
 
         // Begin resize process safe current width
@@ -102,6 +153,8 @@ public class MemeTextControl extends StackPane {
             widthOffset.set(0);
             resizeCornerAnchor.set(new Point2D(x, y));
             System.out.println("press resizer x: " + x + " y: " +y + " w: " + w);
+            // coalesce drag events into one resize per pulse
+            resizePulse.start();
             mouseEvent.consume();
         });
 
@@ -113,11 +166,13 @@ public class MemeTextControl extends StackPane {
             double length = x - resizeCornerAnchor.get().getX();
             double textBoundsWidth = getBoundsInParent().getWidth();
             double calculatedWidth = anchorWidth.get() + length;
-            if (calculatedWidth >= textLabel.getBoundsInParent().getWidth()) {
+            if (isAutoFit()) {
+                pendingWidth = Math.max(MIN_FIT_WIDTH, calculatedWidth);
+            } else if (calculatedWidth >= textLabel.getBoundsInParent().getWidth()) {
                 //if (textFieldPhrase.isVisible() && calculatedWidth < textFieldPhrase.getWidth()) {
                     // avoid setting
                 //} else {
-                    setPrefWidth(calculatedWidth);
+                    pendingWidth = calculatedWidth;
                 //}
             }
 //            System.out.println("dragged resizer x: " + x + " y: " +y + " length: " + length + " width: " + anchorWidth.get());
@@ -128,6 +183,8 @@ public class MemeTextControl extends StackPane {
         // After releasing resize update new width
         resizeCorner.setOnMouseReleased(mouseEvent -> {
             isDragged = false;
+            resizePulse.stop();
+            applyPendingWidth();
             double x = mouseEvent.getSceneX();
             double y = mouseEvent.getSceneY();
 //            System.out.println("release resizer x: " + x + " y: " +y);
@@ -226,6 +283,66 @@ public class MemeTextControl extends StackPane {
         focusOff(textLabel, textFieldPhrase, resizeCorner);
     }
 
+    /**
+     * When auto fit is on the font size is the largest size where the
+     * text fits the width of this control (resized by dragging the
+     * bottom right corner). Otherwise the font size chosen at
+     * creation is used.
+     * @return BooleanProperty auto fit property.
+     */
+    public BooleanProperty autoFitProperty() {
+        return autoFit;
+    }
+
+    public boolean isAutoFit() {
+        return autoFit.get();
+    }
+
+    public void setAutoFit(boolean autoFit) {
+        this.autoFit.set(autoFit);
+    }
+
+    /**
+     * Applies the latest width requested by a resize drag, called at
+     * most once per pulse while dragging.
+     */
+    private void applyPendingWidth() {
+        if (pendingWidth < 0) {
+            return;
+        }
+        double width = pendingWidth;
+        pendingWidth = -1;
+        setPrefWidth(width);
+        if (isAutoFit()) {
+            fitText(width);
+        }
+    }
+
+    /**
+     * Sets the largest font size where the text fits the box width.
+     * @param boxWidth width of this control.
+     */
+    private void fitText(double boxWidth) {
+        String text = textPhrase.getText();
+        if (boxWidth <= 0 || text == null || text.isEmpty()) {
+            return;
+        }
+        double available = boxWidth - getInsets().getLeft()
+                - getInsets().getRight() - FIT_MARGIN;
+        int size = TEXT_MEASUREMENTS.fitFontSize(text,
+                textPhrase.getFont().getName(), available,
+                MIN_FIT_FONT_SIZE, MAX_FIT_FONT_SIZE);
+        applyFontSize(size);
+    }
+
+    private void applyFontSize(int size) {
+        // avoid restyling when the size didn't change
+        if (size != displayedFontSize) {
+            displayedFontSize = size;
+            textPhrase.setStyle("-fx-font-size: " + size + ";");
+        }
+    }
+
     private void focusOn(Label textLabel, TextField textField, Path resizeCorner) {
         requestFocus();
         resizeCorner.setVisible(true);
@@ -0,0 +1,163 @@
+package com.jfxbe;
+
+import javafx.concurrent.Task;
+import javafx.geometry.Bounds;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.Node;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.image.Image;
+import javafx.scene.transform.Scale;
+import javafx.scene.transform.Transform;
+import javafx.scene.transform.Translate;
+
+/**
+ * Prints a node as a poster spread over several pages. The node's
+ * bounds (scaled to the poster size) are split into page sized tiles.
+ * Neighboring tiles overlap by a margin so the printed pages can be
+ * trimmed and glued together.
+ *
+ * Each tile is rendered by a snapshot with a translate and scale
+ * transform clipped to the tile's size, and the pages are streamed to
+ * the print spooler one at a time. Only one page image exists at any
+ * time regardless of the poster's size.
+ * <pre>
+ *   +-------+-------+
+ *   |   1   |   2   |   columns x rows tiles,
+ *   +-------+-------+   printed left to right,
+ *   |   3   |   4   |   top to bottom.
+ *   +-------+-------+
+ * </pre>
+ */
+public class PosterPrinter {
+
+    /** Default overlap between neighboring pages, a quarter inch in points */
+    public static final double DEFAULT_OVERLAP = 18;
+
+    private final Node node;
+    private final double posterScale;
+    private final double pageWidth;
+    private final double pageHeight;
+    private final double overlap;
+    private final Bounds posterBounds;
+    private final int columns;
+    private final int rows;
+
+    /**
+     * Creates a poster layout which is a number of pages wide.
+     * @param node the node to print.
+     * @param pagesAcross the number of pages across the poster's width.
+     * @param pageWidth printable width of a page in points.
+     * @param pageHeight printable height of a page in points.
+     * @param overlap overlap between neighboring pages in points.
+     * @return PosterPrinter the poster layout.
+     */
+    public static PosterPrinter pagesAcross(Node node, int pagesAcross,
+                                            double pageWidth, double pageHeight,
+                                            double overlap) {
+        double posterWidth = pagesAcross * (pageWidth - overlap) + overlap;
+        double posterScale = posterWidth / node.getBoundsInParent().getWidth();
+        return new PosterPrinter(node, posterScale, pageWidth, pageHeight, overlap);
+    }
+
+    /**
+     * @param node the node to print.
+     * @param posterScale the scale applied to the node's size.
+     * @param pageWidth printable width of a page in points.
+     * @param pageHeight printable height of a page in points.
+     * @param overlap overlap between neighboring pages in points.
+     */
+    public PosterPrinter(Node node, double posterScale, double pageWidth,
+                         double pageHeight, double overlap) {
+        if (overlap < 0 || overlap >= pageWidth || overlap >= pageHeight) {
+            throw new IllegalArgumentException("Overlap must be smaller than a page");
+        }
+        this.node = node;
+        this.posterScale = posterScale;
+        this.pageWidth = pageWidth;
+        this.pageHeight = pageHeight;
+        this.overlap = overlap;
+        this.posterBounds = new Scale(posterScale, posterScale)
+                .transform(node.getBoundsInParent());
+        this.columns = tileCount(posterBounds.getWidth(), pageWidth);
+        this.rows = tileCount(posterBounds.getHeight(), pageHeight);
+    }
+
+    /**
+     * Returns the number of overlapping tiles covering a length.
+     */
+    private int tileCount(double posterLength, double pageLength) {
+        if (posterLength <= pageLength) {
+            return 1;
+        }
+        double step = pageLength - overlap;
+        // tolerate rounding errors to avoid a sliver of an extra page
+        return (int) Math.ceil((posterLength - overlap) / step - 1e-6);
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getPageCount() {
+        return columns * rows;
+    }
+
+    /**
+     * Returns the area of a tile in poster coordinates (points
+     * relative to the poster's top left corner).
+     * @param pageIndex zero based page index.
+     * @return Rectangle2D the tile's area.
+     */
+    public Rectangle2D getTile(int pageIndex) {
+        int column = pageIndex % columns;
+        int row = pageIndex / columns;
+        double x = column * (pageWidth - overlap);
+        double y = row * (pageHeight - overlap);
+        double width = Math.min(pageWidth, posterBounds.getWidth() - x);
+        double height = Math.min(pageHeight, posterBounds.getHeight() - y);
+        return new Rectangle2D(x, y, Math.max(1, width), Math.max(1, height));
+    }
+
+    /**
+     * Renders a tile into an image. Must be called on the JavaFX
+     * application thread.
+     * @param pageIndex zero based page index.
+     * @param renderScale image pixels per point.
+     * @return Image the tile's image.
+     */
+    public Image renderTile(int pageIndex, double renderScale) {
+        Rectangle2D tile = getTile(pageIndex);
+        double scale = posterScale * renderScale;
+
+        // move the tile's top left corner to the origin
+        Transform transform = new Translate(
+                -(posterBounds.getMinX() + tile.getMinX()) * renderScale,
+                -(posterBounds.getMinY() + tile.getMinY()) * renderScale)
+                .createConcatenation(new Scale(scale, scale));
+
+        SnapshotParameters params = new SnapshotParameters();
+        params.setTransform(transform);
+        params.setViewport(new Rectangle2D(0, 0,
+                Math.ceil(tile.getWidth() * renderScale),
+                Math.ceil(tile.getHeight() * renderScale)));
+        return node.snapshot(params, null);
+    }
+
+    /**
+     * Queues the poster's pages with the print spooler.
+     * @param spooler the print spooler.
+     * @param jobName the name of the print job.
+     * @param renderScale image pixels per point.
+     * @param sink the printer or stand-in receiving the pages.
+     * @return Task the queued job.
+     */
+    public Task<PrintSpooler.JobStats> print(PrintSpooler spooler, String jobName,
+                                             double renderScale, PrintSink sink) {
+        return spooler.submit(jobName, getPageCount(), renderScale,
+                pageIndex -> renderTile(pageIndex, renderScale), sink);
+    }
+}
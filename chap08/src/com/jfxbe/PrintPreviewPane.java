@@ -0,0 +1,256 @@
+package com.jfxbe;
+
+import javafx.animation.AnimationTimer;
+import javafx.concurrent.Worker;
+import javafx.geometry.Pos;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.control.ContentDisplay;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.StackPane;
+import javafx.scene.transform.Scale;
+import javafx.scene.web.WebView;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * A print preview of a web document split into pages the size of the
+ * printable area. Pages are listed in a virtualized ListView, only the
+ * cells scrolled into view ask for their page thumbnails.
+ *
+ * Thumbnails are rendered one page at a time by a WebView hidden behind
+ * the page list: the document is scrolled to the page, given a couple of
+ * pulses to paint, then snapshotted at thumbnail scale. Rendering is
+ * spread across pulses so the UI stays responsive, and the most recently
+ * requested (visible) pages are rendered first. Rendered thumbnails are
+ * kept in a bounded least recently used cache, so the memory used is the
+ * same for a 2 page or a 200 page document.
+ */
+public class PrintPreviewPane extends StackPane {
+
+    /** Maximum number of page thumbnails kept in memory */
+    private static final int MAX_CACHED_PAGES = 24;
+
+    /** Maximum number of outstanding page requests, older ones are dropped */
+    private static final int MAX_PENDING_PAGES = 32;
+
+    /** Pulses to wait after scrolling before the page is painted */
+    private static final int FRAMES_TO_SETTLE = 2;
+
+    private final double pageWidth;
+    private final double pageHeight;
+    private final double thumbnailScale;
+
+    private final WebView pageRenderer = new WebView();
+    private final ListView<Integer> pageList = new ListView<>();
+    private final Label statusLabel = new Label("Paginating...");
+
+    private final Map<Integer, Image> pageImages =
+            new LinkedHashMap<Integer, Image>(32, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, Image> eldest) {
+                    return size() > MAX_CACHED_PAGES;
+                }
+            };
+    private final Deque<Integer> pendingPages = new ArrayDeque<>();
+    private int renderingPage = -1;
+    private int settleFrames;
+
+    private final AnimationTimer renderPulse = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            renderNextStep();
+        }
+    };
+
+    /**
+     * @param location URL of the web document.
+     * @param pageWidth printable width of a page.
+     * @param pageHeight printable height of a page.
+     * @param thumbnailWidth width of the page thumbnails.
+     */
+    public PrintPreviewPane(String location, double pageWidth,
+                            double pageHeight, double thumbnailWidth) {
+        this.pageWidth = pageWidth;
+        this.pageHeight = pageHeight;
+        this.thumbnailScale = thumbnailWidth / pageWidth;
+
+        // The renderer lays out the document at the page width and is
+        // kept behind the page list.
+        pageRenderer.setMinSize(pageWidth, pageHeight);
+        pageRenderer.setPrefSize(pageWidth, pageHeight);
+        pageRenderer.setMaxSize(pageWidth, pageHeight);
+        pageRenderer.setContextMenuEnabled(false);
+        StackPane.setAlignment(pageRenderer, Pos.TOP_LEFT);
+
+        pageList.setFixedCellSize(pageHeight * thumbnailScale + 30);
+        pageList.setCellFactory(listView -> new PageCell());
+
+        BorderPane previewArea = new BorderPane(pageList);
+        previewArea.setTop(statusLabel);
+        getChildren().addAll(pageRenderer, previewArea);
+
+        pageRenderer.getEngine()
+                    .getLoadWorker()
+                    .stateProperty()
+                    .addListener( (obsValue, oldState, newState) -> {
+                        if (newState == Worker.State.SUCCEEDED) {
+                            paginate();
+                        } else if (newState == Worker.State.FAILED) {
+                            statusLabel.setText("Unable to load " + location);
+                        }
+                    });
+        pageRenderer.getEngine().load(location);
+    }
+
+    /**
+     * Splits the loaded document into pages, only the page count is
+     * computed here; the pages are rendered when scrolled into view.
+     */
+    private void paginate() {
+        Object height = pageRenderer.getEngine().executeScript(
+                "Math.max(document.body.scrollHeight, " +
+                        "document.documentElement.scrollHeight)");
+        double documentHeight = height instanceof Number ?
+                ((Number) height).doubleValue() : pageHeight;
+        int pageCount = Math.max(1, (int) Math.ceil(documentHeight / pageHeight));
+
+        renderPulse.stop();
+        pageImages.clear();
+        pendingPages.clear();
+        renderingPage = -1;
+        statusLabel.setText(pageCount + " page(s)");
+        pageList.getItems().setAll(IntStream.range(0, pageCount)
+                                            .boxed()
+                                            .collect(Collectors.toList()));
+    }
+
+    /**
+     * Queues a page to be rendered, newest requests are rendered first.
+     * @param page zero based page index.
+     */
+    private void requestPage(int page) {
+        if (page == renderingPage) {
+            return;
+        }
+        pendingPages.remove(page);
+        pendingPages.addFirst(page);
+        while (pendingPages.size() > MAX_PENDING_PAGES) {
+            pendingPages.removeLast();
+        }
+        renderPulse.start();
+    }
+
+    /**
+     * Called every pulse while pages are pending. Scrolls the renderer
+     * to the next page, waits for it to paint and takes the snapshot.
+     */
+    private void renderNextStep() {
+        if (renderingPage < 0) {
+            Integer next = pendingPages.pollFirst();
+            if (next == null) {
+                renderPulse.stop();
+                return;
+            }
+            renderingPage = next;
+            settleFrames = FRAMES_TO_SETTLE;
+            pageRenderer.getEngine().executeScript(
+                    "window.scrollTo(0, " + (renderingPage * pageHeight) + ")");
+            return;
+        }
+        if (settleFrames-- > 0) {
+            return;
+        }
+        SnapshotParameters params = new SnapshotParameters();
+        params.setTransform(new Scale(thumbnailScale, thumbnailScale));
+        WritableImage snapshot = pageRenderer.snapshot(params, null);
+
+        // the browser stops scrolling at the end of the document, so the
+        // last page may be shown below the end of the page before it
+        Object offset = pageRenderer.getEngine().executeScript("window.pageYOffset");
+        double pageY = renderingPage * pageHeight;
+        double scrollY = offset instanceof Number ?
+                ((Number) offset).doubleValue() : pageY;
+        int sourceRow = (int) Math.round((pageY - scrollY) * thumbnailScale);
+        pageImages.put(renderingPage, sourceRow > 0 ?
+                shiftUp(snapshot, sourceRow) : snapshot);
+        renderingPage = -1;
+
+        // update visible cells with the new thumbnail
+        pageList.refresh();
+    }
+
+    /**
+     * Returns a page thumbnail made of a snapshot's rows from sourceRow
+     * on, the rows past the end of the document are left white.
+     */
+    private static Image shiftUp(WritableImage snapshot, int sourceRow) {
+        int width = (int) snapshot.getWidth();
+        int height = (int) snapshot.getHeight();
+        int[] pixels = new int[width * height];
+        Arrays.fill(pixels, 0xffffffff);
+        int copyRows = height - sourceRow;
+        if (copyRows > 0) {
+            snapshot.getPixelReader().getPixels(0, sourceRow, width, copyRows,
+                    PixelFormat.getIntArgbInstance(), pixels, 0, width);
+        }
+        WritableImage page = new WritableImage(width, height);
+        page.getPixelWriter().setPixels(0, 0, width, height,
+                PixelFormat.getIntArgbInstance(), pixels, 0, width);
+        return page;
+    }
+
+    /**
+     * Stops rendering pages and releases the page thumbnails.
+     */
+    public void dispose() {
+        renderPulse.stop();
+        pendingPages.clear();
+        pageImages.clear();
+        pageRenderer.getEngine().load(null);
+    }
+
+    /**
+     * A list cell showing one page's thumbnail, asking for the page
+     * to be rendered when it isn't cached.
+     */
+    private class PageCell extends ListCell<Integer> {
+        private final ImageView thumbnail = new ImageView();
+
+        PageCell() {
+            thumbnail.setFitWidth(pageWidth * thumbnailScale);
+            thumbnail.setFitHeight(pageHeight * thumbnailScale);
+            thumbnail.setPreserveRatio(true);
+            setContentDisplay(ContentDisplay.TOP);
+        }
+
+        @Override
+        protected void updateItem(Integer page, boolean empty) {
+            super.updateItem(page, empty);
+            if (empty || page == null) {
+                setText(null);
+                setGraphic(null);
+                return;
+            }
+            setText("Page " + (page + 1));
+            Image image = pageImages.get(page);
+            thumbnail.setImage(image);
+            setGraphic(thumbnail);
+            if (image == null) {
+                requestPage(page);
+            }
+        }
+    }
+}
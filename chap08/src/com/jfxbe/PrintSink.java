@@ -0,0 +1,52 @@
+package com.jfxbe;
+
+import javafx.print.PageLayout;
+import javafx.scene.image.Image;
+
+/**
+ * The destination of a print job's pages. Pages are rendered into
+ * images on the JavaFX application thread and handed to a print sink
+ * on the print spooler's thread. A sink can be a real printer (see
+ * PrinterJobSink) or a stand-in writing page images to disk (see
+ * ImageFileSink) allowing printing to be tested without a printer.
+ */
+public interface PrintSink {
+
+    /**
+     * Returns the page layout pages are printed with, such as the paper,
+     * orientation and margins chosen in the print dialog. Content split
+     * into pages (see PosterPrinter) should be sized from it.
+     * @return PageLayout the page layout or null when the sink has none,
+     *         e.g. a stand-in writing images of any size.
+     */
+    default PageLayout getPageLayout() {
+        return null;
+    }
+
+    /**
+     * Called once before the first page of a job.
+     * @param jobName name of the print job.
+     * @throws Exception if the job could not be started.
+     */
+    void startJob(String jobName) throws Exception;
+
+    /**
+     * Prints one page.
+     * @param page the rendered page content.
+     * @param renderScale the scale the page image was rendered at,
+     *                    e.g. 2.0 means two image pixels per point.
+     * @throws Exception if the page could not be printed.
+     */
+    void printPage(Image page, double renderScale) throws Exception;
+
+    /**
+     * Called once after the last page of a job was printed.
+     * @throws Exception if the job could not be completed.
+     */
+    void endJob() throws Exception;
+
+    /**
+     * Called instead of endJob() when the job failed or was cancelled.
+     */
+    void cancelJob();
+}
@@ -0,0 +1,244 @@
+package com.jfxbe;
+
+import javafx.concurrent.Task;
+import javafx.print.PrinterJob;
+import javafx.scene.Node;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.image.Image;
+import javafx.scene.transform.Scale;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Queues print jobs and runs them one after another on a dedicated
+ * print thread, so the JavaFX application thread isn't frozen for the
+ * duration of a print job.
+ *
+ * Page content is rendered into snapshot images on the JavaFX
+ * application thread (a short hand off per page) and the images are
+ * sent to a PrintSink on the print thread. Each submitted job is a
+ * Task reporting its progress per page and completing with the job's
+ * timing statistics.
+ *
+ * Setting the system property jfxbe.print.sink to a directory makes
+ * the applications print page images into that directory instead of
+ * to a printer (see ImageFileSink).
+ */
+public class PrintSpooler {
+
+    /** System property naming a directory used as a stand-in printer. */
+    public static final String IMAGE_SINK_PROPERTY = "jfxbe.print.sink";
+
+    /** A single daemon thread printing the queued jobs in order */
+    private final ExecutorService printThread =
+            Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "print-spooler");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * Returns the directory of the stand-in printer when the system
+     * property jfxbe.print.sink is set.
+     * @return Path the directory to write page images or null.
+     */
+    public static Path imageSinkDirectory() {
+        String directory = System.getProperty(IMAGE_SINK_PROPERTY);
+        return directory == null ? null : Paths.get(directory);
+    }
+
+    /**
+     * Queues a job printing each node as one page.
+     * @param jobName the name of the print job.
+     * @param pages the nodes to print, one per page.
+     * @param renderScale scale applied when rendering the pages into
+     *                    images (e.g. 2.0 renders two pixels per point).
+     * @param sink the printer or stand-in receiving the pages.
+     * @return Task the queued job, completing with its statistics.
+     */
+    public Task<JobStats> submit(String jobName, List<? extends Node> pages,
+                                 double renderScale, PrintSink sink) {
+        List<Node> pageNodes = new ArrayList<>(pages);
+        return submit(jobName, pageNodes.size(), renderScale,
+                pageIndex -> renderPage(pageNodes.get(pageIndex), renderScale),
+                sink);
+    }
+
+    /**
+     * Queues a job whose pages are rendered one at a time by a page
+     * renderer. Only the page currently printing is held in memory.
+     * @param jobName the name of the print job.
+     * @param pageCount the number of pages.
+     * @param renderScale the scale the renderer renders pages at.
+     * @param pageRenderer renders a page on the JavaFX application thread.
+     * @param sink the printer or stand-in receiving the pages.
+     * @return Task the queued job, completing with its statistics.
+     */
+    public Task<JobStats> submit(String jobName, int pageCount, double renderScale,
+                                 PageRenderer pageRenderer, PrintSink sink) {
+        long queuedAt = System.nanoTime();
+        Task<JobStats> printTask = new Task<JobStats>() {
+            @Override
+            protected JobStats call() throws Exception {
+                JobStats stats = new JobStats(jobName, System.nanoTime() - queuedAt);
+                updateMessage("Printing " + jobName);
+                try {
+                    sink.startJob(jobName);
+                    for (int pageIndex = 0; pageIndex < pageCount; pageIndex++) {
+                        if (isCancelled()) {
+                            sink.cancelJob();
+                            return stats;
+                        }
+                        int currentPage = pageIndex;
+                        long renderStart = System.nanoTime();
+                        Image page = FxThreadUtil.callAndWait(() ->
+                                pageRenderer.renderPage(currentPage));
+                        long printStart = System.nanoTime();
+                        stats.renderNanos += printStart - renderStart;
+
+                        sink.printPage(page, renderScale);
+                        stats.printNanos += System.nanoTime() - printStart;
+                        stats.pages++;
+                        updateProgress(stats.pages, pageCount);
+                        updateMessage("Printed page " + stats.pages + " of "
+                                + pageCount);
+                    }
+                    sink.endJob();
+                } catch (Exception e) {
+                    sink.cancelJob();
+                    throw e;
+                }
+                return stats;
+            }
+        };
+        printThread.submit(printTask);
+        return printTask;
+    }
+
+    /**
+     * Queues a job whose content can only be printed on the JavaFX
+     * application thread, such as WebEngine.print(). The job is
+     * printed in turn with the other queued jobs and ended on the
+     * print thread.
+     * @param jobName the name of the print job.
+     * @param job a printer job already configured by the user.
+     * @param fxThreadPrinter prints the content into the job.
+     * @return Task the queued job, completing with its statistics.
+     */
+    public Task<JobStats> submit(String jobName, PrinterJob job,
+                                 Consumer<PrinterJob> fxThreadPrinter) {
+        long queuedAt = System.nanoTime();
+        Task<JobStats> printTask = new Task<JobStats>() {
+            @Override
+            protected JobStats call() throws Exception {
+                JobStats stats = new JobStats(jobName, System.nanoTime() - queuedAt);
+                updateMessage("Printing " + jobName);
+                job.getJobSettings().setJobName(jobName);
+                long renderStart = System.nanoTime();
+                try {
+                    FxThreadUtil.callAndWait(() -> {
+                        fxThreadPrinter.accept(job);
+                        return null;
+                    });
+                    long printStart = System.nanoTime();
+                    stats.renderNanos = printStart - renderStart;
+                    if (!job.endJob()) {
+                        throw new IllegalStateException("Ending job failed, job status: "
+                                + job.getJobStatus());
+                    }
+                    stats.printNanos = System.nanoTime() - printStart;
+                } catch (Exception e) {
+                    job.cancelJob();
+                    throw e;
+                }
+                updateProgress(1, 1);
+                return stats;
+            }
+        };
+        printThread.submit(printTask);
+        return printTask;
+    }
+
+    /**
+     * Stops accepting jobs. Queued jobs are still printed.
+     */
+    public void shutdown() {
+        printThread.shutdown();
+    }
+
+    /**
+     * Renders a node into an image, must be called on the JavaFX
+     * application thread.
+     */
+    private static Image renderPage(Node pageNode, double renderScale) {
+        SnapshotParameters params = new SnapshotParameters();
+        params.setTransform(new Scale(renderScale, renderScale));
+        return pageNode.snapshot(params, null);
+    }
+
+    /**
+     * Renders one page of a print job into an image.
+     */
+    @FunctionalInterface
+    public interface PageRenderer {
+        /**
+         * Called on the JavaFX application thread.
+         * @param pageIndex zero based index of the page.
+         * @return Image the rendered page.
+         * @throws Exception if the page could not be rendered.
+         */
+        Image renderPage(int pageIndex) throws Exception;
+    }
+
+    /**
+     * Timing statistics of a print job.
+     */
+    public static class JobStats {
+        private final String jobName;
+        private final long queuedNanos;
+        private long renderNanos;
+        private long printNanos;
+        private int pages;
+
+        JobStats(String jobName, long queuedNanos) {
+            this.jobName = jobName;
+            this.queuedNanos = queuedNanos;
+        }
+
+        public String getJobName() {
+            return jobName;
+        }
+
+        /** @return pages printed, 0 when the content printed itself. */
+        public int getPages() {
+            return pages;
+        }
+
+        /** @return time waiting in the queue in milliseconds. */
+        public double getQueuedMillis() {
+            return queuedNanos / 1e6;
+        }
+
+        /** @return time spent rendering pages in milliseconds. */
+        public double getRenderMillis() {
+            return renderNanos / 1e6;
+        }
+
+        /** @return time spent sending pages to the sink in milliseconds. */
+        public double getPrintMillis() {
+            return printNanos / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d page(s) queued %.1f ms render %.1f ms print %.1f ms",
+                    jobName, pages, getQueuedMillis(), getRenderMillis(), getPrintMillis());
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.jfxbe;
+
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+import javafx.beans.property.ReadOnlyDoubleProperty;
+import javafx.beans.property.ReadOnlyDoubleWrapper;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.print.PageLayout;
+import javafx.print.Printer;
+import javafx.print.PrinterAttributes;
+import javafx.scene.Node;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.ClosePath;
+import javafx.scene.shape.LineTo;
+import javafx.scene.shape.MoveTo;
+import javafx.scene.shape.Path;
+import javafx.scene.shape.PathElement;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.prefs.Preferences;
+
+/**
+ * Discovers the installed printers, their attributes and the default
+ * printer's page layout on a background thread. Querying printers can
+ * take seconds when network printers are configured, so applications
+ * shouldn't do it while building their UI.
+ *
+ * Until discovery completes the printable width and height properties
+ * hold a placeholder: the size found by the previous run (remembered
+ * using Preferences) or the size of a letter page with default
+ * margins. Once the default printer is known the properties are
+ * updated on the JavaFX application thread, nodes bound to them (such
+ * as the red print region outline) update automatically.
+ *
+ * The results are cached for the lifetime of the application.
+ */
+public class PrinterDiscovery {
+    private final static Logger LOGGER = Logger
+            .getLogger(PrinterDiscovery.class.getName());
+
+    /** Letter page (8.5 x 11 inch) minus default 0.75 inch margins in points */
+    public static final double PLACEHOLDER_PRINTABLE_WIDTH = 504;
+    public static final double PLACEHOLDER_PRINTABLE_HEIGHT = 684;
+
+    private static final String PREF_PRINTABLE_WIDTH = "printableWidth";
+    private static final String PREF_PRINTABLE_HEIGHT = "printableHeight";
+
+    private static PrinterDiscovery instance;
+
+    private final Preferences preferences =
+            Preferences.userNodeForPackage(PrinterDiscovery.class);
+    private final ReadOnlyDoubleWrapper printableWidth = new ReadOnlyDoubleWrapper(this,
+            "printableWidth", preferences.getDouble(PREF_PRINTABLE_WIDTH,
+            PLACEHOLDER_PRINTABLE_WIDTH));
+    private final ReadOnlyDoubleWrapper printableHeight = new ReadOnlyDoubleWrapper(this,
+            "printableHeight", preferences.getDouble(PREF_PRINTABLE_HEIGHT,
+            PLACEHOLDER_PRINTABLE_HEIGHT));
+    private final ReadOnlyBooleanWrapper discovered =
+            new ReadOnlyBooleanWrapper(this, "discovered", false);
+    private final ObservableList<Printer> printers = FXCollections.observableArrayList();
+    private final CompletableFuture<Result> result = new CompletableFuture<>();
+
+    /**
+     * Returns the shared discovery service. The first call starts
+     * discovering printers in the background.
+     * @return PrinterDiscovery the shared instance.
+     */
+    public static synchronized PrinterDiscovery getInstance() {
+        if (instance == null) {
+            instance = new PrinterDiscovery();
+            instance.start();
+        }
+        return instance;
+    }
+
+    private PrinterDiscovery() {
+    }
+
+    private void start() {
+        Thread discoveryThread = new Thread(() -> {
+            try {
+                Result discoveryResult = discover();
+                result.complete(discoveryResult);
+                Platform.runLater(() -> publish(discoveryResult));
+            } catch (Throwable t) {
+                LOGGER.log(Level.WARNING, "printer discovery failed", t);
+                result.completeExceptionally(t);
+            }
+        }, "printer-discovery");
+        discoveryThread.setDaemon(true);
+        discoveryThread.start();
+    }
+
+    /**
+     * Queries the printers, runs on the discovery thread.
+     */
+    private static Result discover() {
+        long start = System.nanoTime();
+        List<Printer> allPrinters = new ArrayList<>(Printer.getAllPrinters());
+        Map<Printer, PrinterAttributes> attributes = new HashMap<>();
+        allPrinters.forEach(printer ->
+                attributes.put(printer, printer.getPrinterAttributes()));
+        Printer defaultPrinter = Printer.getDefaultPrinter();
+        PageLayout pageLayout = defaultPrinter != null ?
+                defaultPrinter.getDefaultPageLayout() : null;
+        LOGGER.log(Level.FINE, String.format("discovered %d printers in %.1f ms",
+                allPrinters.size(), (System.nanoTime() - start) / 1e6));
+        return new Result(allPrinters, attributes, defaultPrinter, pageLayout);
+    }
+
+    /**
+     * Updates the properties, runs on the JavaFX application thread.
+     */
+    private void publish(Result discoveryResult) {
+        printers.setAll(discoveryResult.printers);
+        PageLayout pageLayout = discoveryResult.defaultPageLayout;
+        if (pageLayout != null) {
+            printableWidth.set(pageLayout.getPrintableWidth());
+            printableHeight.set(pageLayout.getPrintableHeight());
+            // remembered as the next run's placeholder
+            preferences.putDouble(PREF_PRINTABLE_WIDTH, pageLayout.getPrintableWidth());
+            preferences.putDouble(PREF_PRINTABLE_HEIGHT, pageLayout.getPrintableHeight());
+        }
+        discovered.set(true);
+    }
+
+    /**
+     * The default printer's printable width, or a placeholder until
+     * discovery completes.
+     * @return ReadOnlyDoubleProperty printable width in points.
+     */
+    public ReadOnlyDoubleProperty printableWidthProperty() {
+        return printableWidth.getReadOnlyProperty();
+    }
+
+    public double getPrintableWidth() {
+        return printableWidth.get();
+    }
+
+    /**
+     * The default printer's printable height, or a placeholder until
+     * discovery completes.
+     * @return ReadOnlyDoubleProperty printable height in points.
+     */
+    public ReadOnlyDoubleProperty printableHeightProperty() {
+        return printableHeight.getReadOnlyProperty();
+    }
+
+    public double getPrintableHeight() {
+        return printableHeight.get();
+    }
+
+    /**
+     * True once the printers are discovered.
+     * @return ReadOnlyBooleanProperty discovered property.
+     */
+    public ReadOnlyBooleanProperty discoveredProperty() {
+        return discovered.getReadOnlyProperty();
+    }
+
+    public boolean isDiscovered() {
+        return discovered.get();
+    }
+
+    /**
+     * The installed printers, empty until discovery completes.
+     * Only modified on the JavaFX application thread.
+     * @return ObservableList the printers.
+     */
+    public ObservableList<Printer> getPrinters() {
+        return printers;
+    }
+
+    /**
+     * Returns the cached attributes of a discovered printer.
+     * @param printer a discovered printer.
+     * @return PrinterAttributes the printer's attributes or null.
+     */
+    public PrinterAttributes getAttributes(Printer printer) {
+        Result discoveryResult = result.getNow(null);
+        return discoveryResult == null ? null : discoveryResult.attributes.get(printer);
+    }
+
+    /**
+     * Returns a red box the size of the default printer's printable
+     * area, bound to the printable width and height properties. The
+     * box shows the placeholder size until discovery completes.
+     * @return Node the print region outline.
+     */
+    public Node createPrintRegion() {
+        Path printPerimeter = new Path();
+        LineTo topRight = new LineTo();
+        topRight.xProperty().bind(printableWidthProperty());
+        LineTo bottomRight = new LineTo();
+        bottomRight.xProperty().bind(printableWidthProperty());
+        bottomRight.yProperty().bind(printableHeightProperty());
+        LineTo bottomLeft = new LineTo();
+        bottomLeft.yProperty().bind(printableHeightProperty());
+        PathElement[] corners = {
+                new MoveTo(0,0),
+                topRight,
+                bottomRight,
+                bottomLeft,
+                new ClosePath()
+        };
+        printPerimeter.getElements().addAll(corners);
+        printPerimeter.setStroke(Color.RED);
+        return printPerimeter;
+    }
+
+    /**
+     * Returns the default printer once discovery completes, without
+     * waiting for it. Continue on the JavaFX application thread using
+     * Platform.runLater(), the future may complete on the discovery thread.
+     * @return CompletableFuture the default printer or null if there is none.
+     */
+    public CompletableFuture<Printer> getDefaultPrinter() {
+        return result.handle( (discoveryResult, throwable) ->
+                // discovery failed, query directly
+                throwable == null ? discoveryResult.defaultPrinter
+                                  : Printer.getDefaultPrinter());
+    }
+
+    /**
+     * The discovered printers.
+     */
+    private static class Result {
+        final List<Printer> printers;
+        final Map<Printer, PrinterAttributes> attributes;
+        final Printer defaultPrinter;
+        final PageLayout defaultPageLayout;
+
+        Result(List<Printer> printers, Map<Printer, PrinterAttributes> attributes,
+               Printer defaultPrinter, PageLayout defaultPageLayout) {
+            this.printers = Collections.unmodifiableList(printers);
+            this.attributes = attributes;
+            this.defaultPrinter = defaultPrinter;
+            this.defaultPageLayout = defaultPageLayout;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.jfxbe;
+
+import javafx.print.PageLayout;
+import javafx.print.PrinterJob;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+
+/**
+ * A print sink sending pages to a printer using a JavaFX PrinterJob.
+ * The job must be created (and the print dialog shown) on the JavaFX
+ * application thread. Each page image is wrapped in an ImageView that
+ * isn't part of a scene, which lets PrinterJob.printPage() run on the
+ * print spooler's thread.
+ */
+public class PrinterJobSink implements PrintSink {
+    private final PrinterJob job;
+
+    /**
+     * @param job a printer job already configured by the user.
+     */
+    public PrinterJobSink(PrinterJob job) {
+        this.job = job;
+    }
+
+    @Override
+    public PageLayout getPageLayout() {
+        return job.getJobSettings().getPageLayout();
+    }
+
+    @Override
+    public void startJob(String jobName) {
+        job.getJobSettings().setJobName(jobName);
+    }
+
+    @Override
+    public void printPage(Image page, double renderScale) throws Exception {
+        PageLayout pageLayout = job.getJobSettings().getPageLayout();
+
+        // print at the page's original size, shrinking it to
+        // the printable area when necessary.
+        double width = Math.min(page.getWidth() / renderScale,
+                pageLayout.getPrintableWidth());
+        double height = Math.min(page.getHeight() / renderScale,
+                pageLayout.getPrintableHeight());
+
+        ImageView pageView = new ImageView(page);
+        pageView.setPreserveRatio(true);
+        pageView.setSmooth(true);
+        pageView.setFitWidth(width);
+        pageView.setFitHeight(height);
+        if (!job.printPage(pageLayout, pageView)) {
+            throw new IllegalStateException("Printing failed, job status: "
+                    + job.getJobStatus());
+        }
+    }
+
+    @Override
+    public void endJob() throws Exception {
+        if (!job.endJob()) {
+            throw new IllegalStateException("Ending job failed, job status: "
+                    + job.getJobStatus());
+        }
+    }
+
+    @Override
+    public void cancelJob() {
+        job.cancelJob();
+    }
+}
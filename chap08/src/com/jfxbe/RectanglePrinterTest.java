@@ -6,16 +6,22 @@ import javafx.print.*;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
 import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Rectangle;
 import javafx.stage.Stage;
 
+import java.util.function.Consumer;
+
 /**
  *
  */
 public class RectanglePrinterTest extends Application{
 
+    /** Queues print jobs printed on a dedicated thread */
+    private final PrintSpooler printSpooler = new PrintSpooler();
+
     public static void main(String[] args) {
         Application.launch(args);
     }
@@ -40,36 +46,70 @@ public class RectanglePrinterTest extends Application{
             centerContent.getChildren().add(r);
         }
         Button print = new Button("Print");
-        print.setOnAction(actionEvent -> {
-            Printer printer = Printer.getDefaultPrinter();
-            //PageLayout pageLayout = printer.createPageLayout(Paper.NA_LETTER, PageOrientation.LANDSCAPE, Printer.MarginType.DEFAULT);
+        print.setOnAction(actionEvent ->
+                whenDefaultPrinterKnown(printer -> printRectangles(printer, centerContent)));
+        // Print the rectangles enlarged across 2 x 2 pages
+        Button printPoster = new Button("Print Poster");
+        printPoster.setOnAction(actionEvent ->
+                whenDefaultPrinterKnown(printer -> printPoster(printer, centerContent)));
+        root.setTop(new HBox(5, print, printPoster));
+        root.setCenter(centerContent);
+        // start discovering printers while the UI is built
+        PrinterDiscovery.getInstance();
+        Platform.runLater(() -> {
+            double dpi =javafx.stage.Screen.getPrimary().getDpi();
+            System.out.println("dpi = " + dpi);
+        });
+        primaryStage.show();
+    }
+
+    /**
+     * Runs a print action on the JavaFX application thread once the
+     * default printer is known, it is discovered in the background
+     * when the application starts.
+     */
+    private static void whenDefaultPrinterKnown(Consumer<Printer> action) {
+        PrinterDiscovery.getInstance().getDefaultPrinter()
+                .thenAccept(printer -> Platform.runLater(() -> action.accept(printer)));
+    }
+
+    private void printRectangles(Printer printer, Pane centerContent) {
+        //PageLayout pageLayout = printer.createPageLayout(Paper.NA_LETTER, PageOrientation.LANDSCAPE, Printer.MarginType.DEFAULT);
 //            double scaleX = pageLayout.getPrintableWidth() / centerContent.getBoundsInParent().getWidth();
 //            double scaleY = pageLayout.getPrintableHeight() / node.getBoundsInParent().getHeight();
 //            centerContent.getTransforms().add(new Scale(scaleX, scaleY));
 
-            PrinterJob job = PrinterJob.createPrinterJob();
-            JobSettings jobSettings = job.getJobSettings();
-            jobSettings.setPrintColor(PrintColor.MONOCHROME);
-            jobSettings.setPrintSides(PrintSides.DUPLEX);
-            jobSettings.setPrintQuality(PrintQuality.LOW);
-            PageLayout pageLayout = printer.createPageLayout(Paper.NA_LETTER, PageOrientation.LANDSCAPE, Printer.MarginType.DEFAULT);
+        PrinterJob job = PrinterJob.createPrinterJob();
+        JobSettings jobSettings = job.getJobSettings();
+        jobSettings.setPrintColor(PrintColor.MONOCHROME);
+        jobSettings.setPrintSides(PrintSides.DUPLEX);
+        jobSettings.setPrintQuality(PrintQuality.LOW);
+        PageLayout pageLayout = printer.createPageLayout(Paper.NA_LETTER, PageOrientation.LANDSCAPE, Printer.MarginType.DEFAULT);
 
-            job.getJobSettings().setPageLayout(pageLayout);
+        job.getJobSettings().setPageLayout(pageLayout);
 
-            if (job != null) {
-                boolean success = job.printPage(centerContent);
-                if (success) {
-                    job.endJob();
-                }
+        if (job != null) {
+            boolean success = job.printPage(centerContent);
+            if (success) {
+                job.endJob();
             }
-        });
-        root.setTop(print);
-        root.setCenter(centerContent);
-        Platform.runLater(() -> {
-            double dpi =javafx.stage.Screen.getPrimary().getDpi();
-            System.out.println("dpi = " + dpi);
-        });
-        primaryStage.show();
+        }
     }
 
+    private void printPoster(Printer printer, Pane centerContent) {
+        PrinterJob job = printer != null ?
+                PrinterJob.createPrinterJob(printer) : null;
+        if (job == null) {
+            return;
+        }
+        PageLayout pageLayout = job.getJobSettings().getPageLayout();
+        PosterPrinter poster = PosterPrinter.pagesAcross(centerContent, 2,
+                pageLayout.getPrintableWidth(),
+                pageLayout.getPrintableHeight(),
+                PosterPrinter.DEFAULT_OVERLAP);
+        poster.print(printSpooler, "rectangle poster", 2.0,
+                new PrinterJobSink(job))
+              .setOnSucceeded(workerStateEvent ->
+                      System.out.println("poster printed " + poster.getPageCount() + " pages"));
+    }
 }
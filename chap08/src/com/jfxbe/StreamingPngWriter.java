@@ -0,0 +1,180 @@
+package com.jfxbe;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * A minimal PNG encoder that accepts the image a band of rows at a
+ * time. Unlike ImageIO, which needs the whole image in memory as a
+ * RenderedImage, rows are filtered, compressed and written out as
+ * IDAT chunks as soon as they arrive. This allows very large images
+ * to be stitched together from smaller snapshots (tiles).
+ *
+ * <pre>
+ *  StreamingPngWriter png = new StreamingPngWriter(out, width, height);
+ *  png.writeRows(argbBand, 0, width, bandHeight); // repeat
+ *  png.close();
+ * </pre>
+ */
+public class StreamingPngWriter implements Closeable {
+    private static final byte[] SIGNATURE = {
+            (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'
+    };
+
+    /** Filter type Sub, each byte is stored as the difference to its left neighbor */
+    private static final int FILTER_SUB = 1;
+
+    /** Size of the compressed data gathered before an IDAT chunk is emitted */
+    private static final int IDAT_CHUNK_SIZE = 64 * 1024;
+
+    private final DataOutputStream out;
+    private final int width;
+    private final int height;
+    private final DeflaterOutputStream deflaterStream;
+    private final Deflater deflater;
+    private final byte[] rowBuffer;
+    private int rowsWritten;
+    private boolean closed;
+
+    /**
+     * Creates a writer and emits the PNG signature and header.
+     * @param out destination stream; closed when this writer closes.
+     * @param width image width in pixels.
+     * @param height image height in pixels.
+     * @throws IOException if the header could not be written.
+     */
+    public StreamingPngWriter(OutputStream out, int width, int height) throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid image size " + width + "x" + height);
+        }
+        this.out = new DataOutputStream(out);
+        this.width = width;
+        this.height = height;
+        // filter byte + RGBA per pixel
+        this.rowBuffer = new byte[1 + width * 4];
+
+        this.out.write(SIGNATURE);
+        ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+        DataOutputStream headerData = new DataOutputStream(header);
+        headerData.writeInt(width);
+        headerData.writeInt(height);
+        headerData.writeByte(8); // bit depth
+        headerData.writeByte(6); // color type RGBA
+        headerData.writeByte(0); // compression
+        headerData.writeByte(0); // filter method
+        headerData.writeByte(0); // no interlace
+        writeChunk("IHDR", header.toByteArray(), 0, header.size());
+
+        deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        deflaterStream = new DeflaterOutputStream(new IdatOutputStream(),
+                deflater, IDAT_CHUNK_SIZE);
+    }
+
+    /**
+     * Appends rows of ARGB pixels to the image. Rows must be supplied
+     * from top to bottom.
+     * @param argb pixel data, one int per pixel in ARGB order.
+     * @param offset index of the first pixel of the first row.
+     * @param scanlineStride distance between rows inside the array.
+     * @param rowCount number of rows to append.
+     * @throws IOException if the rows could not be written.
+     */
+    public void writeRows(int[] argb, int offset, int scanlineStride, int rowCount) throws IOException {
+        if (rowsWritten + rowCount > height) {
+            throw new IllegalStateException("Too many rows, image height is " + height);
+        }
+        for (int row = 0; row < rowCount; row++) {
+            int src = offset + row * scanlineStride;
+            byte[] buf = rowBuffer;
+            buf[0] = FILTER_SUB;
+            int prevR = 0, prevG = 0, prevB = 0, prevA = 0;
+            int dst = 1;
+            for (int x = 0; x < width; x++) {
+                int pixel = argb[src + x];
+                int a = pixel >>> 24;
+                int r = (pixel >> 16) & 0xff;
+                int g = (pixel >> 8) & 0xff;
+                int b = pixel & 0xff;
+                buf[dst++] = (byte) (r - prevR);
+                buf[dst++] = (byte) (g - prevG);
+                buf[dst++] = (byte) (b - prevB);
+                buf[dst++] = (byte) (a - prevA);
+                prevR = r;
+                prevG = g;
+                prevB = b;
+                prevA = a;
+            }
+            deflaterStream.write(buf, 0, buf.length);
+        }
+        rowsWritten += rowCount;
+    }
+
+    /**
+     * Returns the number of rows written so far.
+     * @return int rows written.
+     */
+    public int getRowsWritten() {
+        return rowsWritten;
+    }
+
+    /**
+     * Finishes the compressed stream, writes the end chunk and closes
+     * the underlying stream.
+     * @throws IOException if fewer rows than the image height were written.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (rowsWritten != height) {
+                throw new IOException("Incomplete image, wrote " + rowsWritten
+                        + " of " + height + " rows");
+            }
+            deflaterStream.finish();
+            writeChunk("IEND", new byte[0], 0, 0);
+            out.flush();
+        } finally {
+            deflater.end();
+            out.close();
+        }
+    }
+
+    private void writeChunk(String type, byte[] data, int off, int len) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, off, len);
+        out.writeInt(len);
+        out.write(typeBytes);
+        out.write(data, off, len);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Receives the compressed bytes from the deflater and wraps each
+     * block into an IDAT chunk.
+     */
+    private class IdatOutputStream extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > 0) {
+                writeChunk("IDAT", b, off, len);
+            }
+        }
+    }
+}
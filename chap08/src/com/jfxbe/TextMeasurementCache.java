@@ -0,0 +1,114 @@
+package com.jfxbe;
+
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Measures the width of a phrase of text rendered with a font at a
+ * given size. Results are kept in a least recently used cache keyed
+ * by text, font name and size, so repeatedly fitting the same caption
+ * (e.g. while the user drags a resize handle) doesn't lay out the
+ * same text over and over.
+ *
+ * Measurements use a Text node, therefore this class must only be
+ * used on the JavaFX application thread.
+ */
+public class TextMeasurementCache {
+
+    private final Text measuringText = new Text();
+    private final Map<Key, Double> widths;
+
+    /**
+     * @param maxEntries maximum number of measurements kept.
+     */
+    public TextMeasurementCache(int maxEntries) {
+        widths = new LinkedHashMap<Key, Double>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Double> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the width of the text rendered in the named font.
+     * @param text the phrase to measure.
+     * @param fontName the full font name (see Font.getName()).
+     * @param size the font size.
+     * @return double width of the text's layout bounds.
+     */
+    public double measureWidth(String text, String fontName, double size) {
+        Key key = new Key(text, fontName, size);
+        Double width = widths.get(key);
+        if (width == null) {
+            measuringText.setFont(new Font(fontName, size));
+            measuringText.setText(text);
+            width = measuringText.getLayoutBounds().getWidth();
+            widths.put(key, width);
+        }
+        return width;
+    }
+
+    /**
+     * Binary searches the largest whole font size where the text's
+     * width fits into the available width.
+     * @param text the phrase to fit.
+     * @param fontName the full font name (see Font.getName()).
+     * @param availableWidth the width the text has to fit into.
+     * @param minSize the smallest size returned.
+     * @param maxSize the largest size returned.
+     * @return int the largest fitting font size, or minSize if
+     * none fits.
+     */
+    public int fitFontSize(String text, String fontName, double availableWidth,
+                           int minSize, int maxSize) {
+        int low = minSize;
+        int high = maxSize;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (measureWidth(text, fontName, mid) <= availableWidth) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Text, font and size of a measurement.
+     */
+    private static final class Key {
+        private final String text;
+        private final String fontName;
+        private final double size;
+        private final int hash;
+
+        Key(String text, String fontName, double size) {
+            this.text = text;
+            this.fontName = fontName;
+            this.size = size;
+            this.hash = 31 * (31 * text.hashCode() + fontName.hashCode())
+                    + Double.hashCode(size);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return size == other.size
+                    && text.equals(other.text)
+                    && fontName.equals(other.fontName);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
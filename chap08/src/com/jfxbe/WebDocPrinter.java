@@ -2,11 +2,12 @@ package com.jfxbe;
 
 import javafx.application.Application;
 import javafx.beans.binding.Bindings;
+import javafx.concurrent.Task;
 import javafx.concurrent.Worker;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
-import javafx.print.Printer;
 import javafx.print.PrinterJob;
+import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.layout.BorderPane;
@@ -14,21 +15,34 @@ import javafx.scene.layout.HBox;
 import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
-import javafx.scene.shape.*;
 import javafx.scene.web.WebEngine;
 import javafx.scene.web.WebView;
 import javafx.stage.Stage;
 import javafx.util.StringConverter;
 
+import java.util.Collections;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
 /**
  * Allows the user to enter a URL to display an HTML page to be
  * sent to a default printer. Also the application allows the
  * display node to be resize to fit onto the printed page.
  */
 public class WebDocPrinter extends Application{
+    private final static Logger LOGGER = Logger
+            .getLogger(WebDocPrinter.class.getName());
+
     private static String PRINT_MODE_MENU = "Print Mode";
     private static String NODE_ONLY = "Node Only";
     private static String WHOLE_WEB_DOC = "Whole Web Document";
+
+    /** Width of the page thumbnails in the print preview */
+    private static final double PREVIEW_THUMBNAIL_WIDTH = 240;
+
+    /** Queues print jobs printed on a dedicated thread */
+    private final PrintSpooler printSpooler = new PrintSpooler();
+
     public static void main(String[] args) {
         //System.setProperty("jsse.enableSNIExtension", "false");
         Application.launch(args);
@@ -72,10 +86,8 @@ public class WebDocPrinter extends Application{
         // Create a slider to control zoom
         Slider zoomSlider = new Slider(.05, 3.0,1.0);
         zoomSlider.setBlockIncrement(0.05);
-        zoomSlider.valueProperty().addListener( listener -> {
-            System.out.println("zoom " + browserDisplay.getZoom());
-            browserDisplay.setZoom(zoomSlider.getValue());
-        });
+        // Scales a snapshot while dragging, zooms the page once settled
+        ZoomController zoomController = new ZoomController(browserDisplay, zoomSlider);
 
         // Label representing the zoom size percentage
         Label zoomValueLabel = new Label();
@@ -111,12 +123,13 @@ public class WebDocPrinter extends Application{
                 zoomSlider.valueProperty(), sc);
 
         // debug information
+        PrinterDiscovery printerDiscovery = PrinterDiscovery.getInstance();
         browserDisplay.widthProperty().addListener( listener -> {
-            Printer printer = Printer.getDefaultPrinter();
-            System.out.println("printer width: " +
-                    printer.getDefaultPageLayout().getPrintableWidth());
-            System.out.println("width: " +
-                    browserDisplay.widthProperty().get() );
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("printer width: " +
+                        printerDiscovery.getPrintableWidth() + " width: " +
+                        browserDisplay.widthProperty().get());
+            }
         });
 
         WebEngine webEngine = browserDisplay.getEngine();
@@ -138,29 +151,66 @@ public class WebDocPrinter extends Application{
         // Create the print button
         Button printButton = new Button("Print");
         printButton.setOnAction(actionEvent -> {
+            Toggle selected = printModeGroup.getSelectedToggle();
+            if (selected == null) {
+                return;
+            }
+            String mode = (String) selected.getUserData();
+            String jobName = webEngine.getTitle() != null ?
+                    webEngine.getTitle() : "web page";
+            java.nio.file.Path imageSinkDir = PrintSpooler.imageSinkDirectory();
+            Task<PrintSpooler.JobStats> printTask = null;
 
-           PrinterJob job = PrinterJob.createPrinterJob();
-            if (job != null) {
+            if (NODE_ONLY.equals(mode) && imageSinkDir != null) {
+                // stand-in printer writing page images
+                printTask = printSpooler.submit(jobName,
+                        Collections.singletonList(browserDisplay), 1.0,
+                        new ImageFileSink(imageSinkDir));
+            } else {
+                PrinterJob job = PrinterJob.createPrinterJob();
+                if (job == null) {
+                    return;
+                }
                 System.out.println("starting print job");
-                Toggle selected = printModeGroup.getSelectedToggle();
-                if (selected != null) {
-
-                    String mode = (String) selected.getUserData();
-                    if (NODE_ONLY.equals(mode)) {
-                        boolean printIt = job.printPage(browserDisplay);
-                        if (printIt) {
-                            job.endJob();
-                        }
-                    } else {
-                        // WHOLE_WEB_DOC
-                        boolean success = job.showPrintDialog(primaryStage);
-                        if (success) {
-                            webEngine.print(job);
-                            job.endJob();
-                        }
-                    }
+                if (NODE_ONLY.equals(mode)) {
+                    // The visible page is rendered into an image and
+                    // printed on the spooler's thread
+                    printTask = printSpooler.submit(jobName,
+                            Collections.singletonList(browserDisplay), 1.0,
+                            new PrinterJobSink(job));
+                } else if (job.showPrintDialog(primaryStage)) {
+                    // WHOLE_WEB_DOC the web engine only prints on the
+                    // JavaFX application thread.
+                    printTask = printSpooler.submit(jobName,
+                            job, webEngine::print);
                 }
             }
+            if (printTask != null) {
+                Task<PrintSpooler.JobStats> queuedTask = printTask;
+                queuedTask.setOnSucceeded(workerStateEvent ->
+                        System.out.println("printed " + queuedTask.getValue()));
+                queuedTask.setOnFailed(workerStateEvent ->
+                        queuedTask.getException().printStackTrace());
+            }
+        });
+
+        // Preview the whole document paginated to the printable area
+        Button previewButton = new Button("Preview");
+        previewButton.setOnAction(actionEvent -> {
+            String location = webEngine.getLocation();
+            if (location == null || location.isEmpty()) {
+                return;
+            }
+            PrintPreviewPane previewPane = new PrintPreviewPane(location,
+                    printerDiscovery.getPrintableWidth(),
+                    printerDiscovery.getPrintableHeight(),
+                    PREVIEW_THUMBNAIL_WIDTH);
+            Stage previewStage = new Stage();
+            previewStage.initOwner(primaryStage);
+            previewStage.setTitle("Print Preview - " + location);
+            previewStage.setScene(new Scene(previewPane, 300, 500));
+            previewStage.setOnHidden(windowEvent -> previewPane.dispose());
+            previewStage.show();
         });
 
         // Assemble print button, zoom slider, zoom label
@@ -168,28 +218,18 @@ public class WebDocPrinter extends Application{
         HBox hBox = new HBox(10);
         hBox.setPadding(new Insets(5));
         hBox.setAlignment(Pos.CENTER_LEFT);
-        hBox.getChildren().addAll(printButton, zoomSlider, zoomValueLabel);
+        hBox.getChildren().addAll(printButton, previewButton, zoomSlider,
+                zoomValueLabel);
         vBox.getChildren().addAll(urlAddressField, hBox);
 
         contentPane.setTop(vBox);
 
         // Center WebView area
-        StackPane centerArea = new StackPane(browserDisplay);
+        StackPane centerArea = new StackPane(browserDisplay,
+                zoomController.getOverlay());
 
         // Create the red box denoting print area.
-        Path printPerimeter = new Path();
-        Printer printer = Printer.getDefaultPrinter();
-        double printWidth = printer.getDefaultPageLayout().getPrintableWidth();
-        double printHeight = printer.getDefaultPageLayout().getPrintableHeight();
-        PathElement[] corners = {
-                new MoveTo(0,0),
-                new LineTo(printWidth, 0),
-                new LineTo(printWidth, printHeight),
-                new LineTo(0, printHeight),
-                new ClosePath()
-        };
-        printPerimeter.getElements().addAll(corners);
-        printPerimeter.setStroke(Color.RED);
+        Node printPerimeter = PrinterDiscovery.getInstance().createPrintRegion();
         StackPane.setAlignment(printPerimeter, Pos.TOP_LEFT);
         centerArea.getChildren().add(printPerimeter);
         contentPane.setCenter(centerArea);
@@ -215,4 +255,10 @@ public class WebDocPrinter extends Application{
 
         primaryStage.show();
     }
+
+    @Override
+    public void stop() throws Exception {
+        super.stop();
+        printSpooler.shutdown();
+    }
 }
@@ -0,0 +1,422 @@
+package com.jfxbe;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.concurrent.Worker;
+import javafx.geometry.Pos;
+import javafx.scene.Scene;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.control.Label;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.image.WritablePixelFormat;
+import javafx.scene.layout.StackPane;
+import javafx.scene.paint.Color;
+import javafx.scene.transform.Scale;
+import javafx.scene.web.WebView;
+import javafx.stage.Stage;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Archives web pages as PNG page images at print resolution without
+ * a printer. Each URL is loaded into a WebView laid out at the
+ * printable width of a page. Once loaded (Worker.State.SUCCEEDED) and
+ * given time for the layout to settle, the document is scrolled tile
+ * by tile, every tile is snapshotted at the chosen DPI and the tiles
+ * are stitched into one PNG per page by a streaming encoder.
+ *
+ * Several WebViews are used in rotation, so while one page is still
+ * loading another one is being captured and the previous one's tiles
+ * are being encoded on a background thread. All WebViews are driven
+ * from a single pulse (AnimationTimer) on the JavaFX application thread.
+ * At most MAX_PENDING_TILES tiles of a WebView wait for its encoder,
+ * capturing pauses beyond that so slow encoding doesn't pile up tiles
+ * in memory.
+ *
+ * Usage:
+ * <pre>
+ *  java -cp mlib/chap10.jar com.jfxbe.WebPageRasterizer urls.txt out-dir [dpi] [webViews]
+ * </pre>
+ * The URL file has one URL per line, the pages are written as
+ * out-dir/001-page-001.png, out-dir/001-page-002.png and so on.
+ */
+public class WebPageRasterizer extends Application {
+
+    /** Pulses to wait after loading before capturing, lets scripts and layout settle */
+    private static final int SETTLE_FRAMES = 10;
+
+    /** Pulses to wait after scrolling before taking a snapshot */
+    private static final int SCROLL_FRAMES = 2;
+
+    /** Largest tile height in pixels of a single snapshot */
+    private static final int MAX_TILE_PIXELS = 2048;
+
+    /** Give up on a page still loading after this many seconds */
+    private static final long LOAD_TIMEOUT_SECONDS = 60;
+
+    /** Tiles of a slot captured but not encoded yet, capturing waits beyond this */
+    private static final int MAX_PENDING_TILES = 4;
+
+    /** Points per inch, a page is laid out with one CSS pixel per point */
+    private static final double POINTS_PER_INCH = 72;
+
+    private final Deque<Integer> pendingUrls = new ArrayDeque<>();
+    private final List<CaptureSlot> slots = new ArrayList<>();
+    private final AtomicInteger pagesWritten = new AtomicInteger();
+    private List<String> urls;
+    private Path outputDir;
+    private double pageWidth;
+    private double pageHeight;
+    private double scale;
+    private int urlsDone;
+    private long startNanos;
+    private Label statusLabel;
+    private AnimationTimer pulse;
+
+    public static void main(String[] args) {
+        Application.launch(args);
+    }
+
+    @Override
+    public void start(Stage primaryStage) throws Exception {
+        List<String> args = getParameters().getRaw();
+        if (args.size() < 2) {
+            System.err.println("Usage: WebPageRasterizer <url file> <output dir> [dpi] [webViews]");
+            Platform.exit();
+            return;
+        }
+        urls = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(args.get(0)), StandardCharsets.UTF_8)) {
+            if (!line.trim().isEmpty() && !line.startsWith("#")) {
+                urls.add(line.trim());
+            }
+        }
+        outputDir = Files.createDirectories(Paths.get(args.get(1)));
+        double dpi = args.size() > 2 ? Double.parseDouble(args.get(2)) : 300;
+        int webViews = args.size() > 3 ? Integer.parseInt(args.get(3)) : 3;
+
+        // one CSS pixel per point as when printing nodes
+        pageWidth = PrinterDiscovery.PLACEHOLDER_PRINTABLE_WIDTH;
+        pageHeight = PrinterDiscovery.PLACEHOLDER_PRINTABLE_HEIGHT;
+        scale = dpi / POINTS_PER_INCH;
+        double tileHeight = Math.min(pageHeight, Math.floor(MAX_TILE_PIXELS / scale));
+
+        // The web views capturing pages are kept behind the status label
+        StackPane root = new StackPane();
+        for (int i = 0; i < Math.max(1, webViews); i++) {
+            CaptureSlot slot = new CaptureSlot(tileHeight);
+            StackPane.setAlignment(slot.webView, Pos.TOP_LEFT);
+            root.getChildren().add(slot.webView);
+            slots.add(slot);
+        }
+        statusLabel = new Label();
+        statusLabel.setMaxSize(Double.MAX_VALUE, Double.MAX_VALUE);
+        statusLabel.setAlignment(Pos.CENTER);
+        statusLabel.setStyle("-fx-background-color: white;");
+        root.getChildren().add(statusLabel);
+
+        primaryStage.setTitle("WebPageRasterizer");
+        primaryStage.setScene(new Scene(root, 400, 100, Color.WHITE));
+        primaryStage.show();
+
+        for (int i = 0; i < urls.size(); i++) {
+            pendingUrls.add(i);
+        }
+        updateStatus();
+        startNanos = System.nanoTime();
+        pulse = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                slots.forEach(slot -> slot.step(now));
+                if (pendingUrls.isEmpty() &&
+                        slots.stream().allMatch(slot -> slot.state == State.IDLE)) {
+                    finish();
+                }
+            }
+        };
+        pulse.start();
+    }
+
+    private void updateStatus() {
+        statusLabel.setText(String.format("%d of %d URLs captured, %d page images written",
+                urlsDone, urls.size(), pagesWritten.get()));
+    }
+
+    /**
+     * Waits for the encoders to write the remaining pages and exits.
+     */
+    private void finish() {
+        pulse.stop();
+        Thread finisher = new Thread(() -> {
+            for (CaptureSlot slot : slots) {
+                slot.encoder.shutdown();
+                try {
+                    slot.encoder.awaitTermination(1, TimeUnit.HOURS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            double seconds = (System.nanoTime() - startNanos) / 1e9;
+            System.out.printf("%d urls, %d page images in %.1f s (%.2f pages/s)%n",
+                    urls.size(), pagesWritten.get(), seconds,
+                    pagesWritten.get() / seconds);
+            Platform.exit();
+        }, "rasterizer-finish");
+        finisher.start();
+    }
+
+    /** Steps a capture slot goes through for each URL */
+    private enum State { IDLE, LOADING, SETTLING, CAPTURING }
+
+    /**
+     * A WebView and its encoder thread capturing one URL at a time.
+     */
+    private class CaptureSlot {
+        final WebView webView = new WebView();
+        /** Writes the page images in order, one thread per slot */
+        final ExecutorService encoder = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rasterizer-encoder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        /** Tiles handed to the encoder and not written yet */
+        final AtomicInteger pendingTiles = new AtomicInteger();
+        final WritablePixelFormat<IntBuffer> format = PixelFormat.getIntArgbInstance();
+        final double tileHeight;
+        final int pagePixelWidth;
+        final int pagePixelHeight;
+
+        State state = State.IDLE;
+        int urlIndex;
+        long loadStartNanos;
+        int waitFrames;
+        double documentHeight;
+        int pageCount;
+        int page;
+        int tile;
+        int tilesPerPage;
+        double targetY;
+
+        /** The page image being encoded, only used on the encoder thread */
+        StreamingPngWriter pagePng;
+        Path pageFile;
+
+        /** The URL a page image couldn't be written for, set by the encoder thread */
+        volatile int failedUrl = -1;
+
+        CaptureSlot(double tileHeight) {
+            this.tileHeight = tileHeight;
+            this.pagePixelWidth = (int) Math.round(pageWidth * scale);
+            this.pagePixelHeight = (int) Math.round(pageHeight * scale);
+            this.tilesPerPage = (int) Math.ceil(pageHeight / tileHeight);
+            webView.setMinSize(pageWidth, tileHeight);
+            webView.setPrefSize(pageWidth, tileHeight);
+            webView.setMaxSize(pageWidth, tileHeight);
+            webView.setContextMenuEnabled(false);
+
+            webView.getEngine()
+                   .getLoadWorker()
+                   .stateProperty()
+                   .addListener( (obsValue, oldState, newState) -> {
+                       if (state != State.LOADING) {
+                           return;
+                       }
+                       if (newState == Worker.State.SUCCEEDED) {
+                           state = State.SETTLING;
+                           waitFrames = SETTLE_FRAMES;
+                       } else if (newState == Worker.State.FAILED ||
+                               newState == Worker.State.CANCELLED) {
+                           System.err.println("Unable to load " + urls.get(urlIndex));
+                           urlFinished();
+                       }
+                   });
+        }
+
+        /**
+         * Advances this slot by one pulse.
+         */
+        void step(long now) {
+            switch (state) {
+                case IDLE:
+                    Integer next = pendingUrls.poll();
+                    if (next != null) {
+                        urlIndex = next;
+                        loadStartNanos = now;
+                        state = State.LOADING;
+                        webView.getEngine().load(urls.get(urlIndex));
+                    }
+                    break;
+                case LOADING:
+                    if (now - loadStartNanos > TimeUnit.SECONDS.toNanos(LOAD_TIMEOUT_SECONDS)) {
+                        webView.getEngine().getLoadWorker().cancel();
+                    }
+                    break;
+                case SETTLING:
+                    if (--waitFrames <= 0) {
+                        startCapture();
+                    }
+                    break;
+                case CAPTURING:
+                    // the encoder is behind, wait for it
+                    if (--waitFrames <= 0 && pendingTiles.get() < MAX_PENDING_TILES) {
+                        captureTile();
+                    }
+                    break;
+            }
+        }
+
+        private void startCapture() {
+            // hide the scroll bars, scrolling is done by script
+            Object height = webView.getEngine().executeScript(
+                    "document.documentElement.style.overflow = 'hidden';" +
+                    "Math.max(document.body.scrollHeight, " +
+                    "document.documentElement.scrollHeight)");
+            documentHeight = height instanceof Number ?
+                    ((Number) height).doubleValue() : pageHeight;
+            pageCount = Math.max(1, (int) Math.ceil(documentHeight / pageHeight));
+            page = 0;
+            tile = 0;
+            state = State.CAPTURING;
+            scrollToTile();
+        }
+
+        private void scrollToTile() {
+            targetY = page * pageHeight + tile * tileHeight;
+            webView.getEngine().executeScript("window.scrollTo(0, " + targetY + ")");
+            waitFrames = SCROLL_FRAMES;
+        }
+
+        /**
+         * Snapshots the visible tile and hands its pixels to the encoder.
+         */
+        private void captureTile() {
+            if (urlIndex == failedUrl) {
+                // the encoder gave up on this URL
+                urlFinished();
+                return;
+            }
+
+            // the browser stops scrolling at the end of the document
+            Object offset = webView.getEngine().executeScript("window.pageYOffset");
+            double scrollY = offset instanceof Number ?
+                    ((Number) offset).doubleValue() : targetY;
+
+            SnapshotParameters params = new SnapshotParameters();
+            params.setTransform(new Scale(scale, scale));
+            WritableImage image = webView.snapshot(params, null);
+
+            int rowStart = (int) Math.round(tile * tileHeight * scale);
+            int rowEnd = Math.min(pagePixelHeight,
+                    (int) Math.round((tile + 1) * tileHeight * scale));
+            int rows = rowEnd - rowStart;
+            int[] pixels = new int[pagePixelWidth * rows];
+            Arrays.fill(pixels, 0xffffffff);
+
+            // copy the document's rows, past its end the page stays white
+            int sourceRow = (int) Math.round((targetY - scrollY) * scale);
+            int documentRows = (int) Math.round((documentHeight - targetY) * scale);
+            int copyRows = Math.min(Math.min(rows, documentRows),
+                    (int) image.getHeight() - sourceRow);
+            int copyWidth = Math.min(pagePixelWidth, (int) image.getWidth());
+            if (copyRows > 0 && copyWidth > 0) {
+                image.getPixelReader().getPixels(0, sourceRow, copyWidth, copyRows,
+                        format, pixels, 0, pagePixelWidth);
+            }
+            encode(urlIndex, page, tile, pixels, rows);
+
+            tile++;
+            if (tile == tilesPerPage) {
+                tile = 0;
+                page++;
+            }
+            if (page < pageCount) {
+                scrollToTile();
+            } else {
+                urlFinished();
+            }
+        }
+
+        /**
+         * Appends a tile's rows to the page image on the encoder thread.
+         */
+        private void encode(int urlIndex, int page, int tile, int[] pixels, int rows) {
+            boolean lastTile = tile == tilesPerPage - 1;
+            pendingTiles.incrementAndGet();
+            encoder.submit(() -> {
+                try {
+                    if (urlIndex == failedUrl) {
+                        return;
+                    }
+                    if (tile == 0) {
+                        pageFile = outputDir.resolve(String.format(
+                                "%03d-page-%03d.png", urlIndex + 1, page + 1));
+                        pagePng = new StreamingPngWriter(new BufferedOutputStream(
+                                new FileOutputStream(pageFile.toFile())),
+                                pagePixelWidth, pagePixelHeight);
+                    }
+                    pagePng.writeRows(pixels, 0, pagePixelWidth, rows);
+                    if (lastTile) {
+                        try {
+                            pagePng.close();
+                        } finally {
+                            pagePng = null;
+                        }
+                        pagesWritten.incrementAndGet();
+                    }
+                } catch (IOException e) {
+                    System.err.println("Unable to write page " + (page + 1)
+                            + " of " + urls.get(urlIndex) + ": " + e);
+                    failedUrl = urlIndex;
+                    discardPage();
+                } finally {
+                    pendingTiles.decrementAndGet();
+                }
+            });
+        }
+
+        /**
+         * Closes and deletes a page image left incomplete by a failure,
+         * on the encoder thread.
+         */
+        private void discardPage() {
+            try {
+                if (pagePng != null) {
+                    pagePng.close();
+                }
+            } catch (IOException e) {
+                // incomplete, it is deleted anyway
+            } finally {
+                pagePng = null;
+            }
+            try {
+                Files.deleteIfExists(pageFile);
+            } catch (IOException e) {
+                System.err.println("Unable to delete " + pageFile + ": " + e);
+            }
+        }
+
+        private void urlFinished() {
+            state = State.IDLE;
+            urlsDone++;
+            updateStatus();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.jfxbe;
+
+import javafx.animation.AnimationTimer;
+import javafx.animation.PauseTransition;
+import javafx.geometry.Pos;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.control.Slider;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.StackPane;
+import javafx.scene.web.WebView;
+import javafx.util.Duration;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Zooms a WebView from a slider without reflowing the page on every
+ * slider value. When the slider starts moving the WebView is
+ * snapshotted once and the snapshot is scaled in an overlay for instant
+ * feedback. The real zoom (which reflows and re-renders the page) is
+ * applied once the slider is released or its value stops changing for
+ * a short delay, then the overlay is removed.
+ *
+ * The overlay returned by getOverlay() must be stacked on top of the
+ * WebView.
+ */
+public class ZoomController {
+    private final static Logger LOGGER = Logger
+            .getLogger(ZoomController.class.getName());
+
+    /** Delay without slider changes after which the zoom is applied */
+    private static final Duration SETTLE_DELAY = Duration.millis(150);
+
+    /** Pulses to keep the overlay after zooming, lets the WebView repaint */
+    private static final int FRAMES_TO_REPAINT = 2;
+
+    private final WebView webView;
+    private final Slider zoomSlider;
+    private final ImageView zoomImage = new ImageView();
+    private final StackPane overlay = new StackPane(zoomImage);
+    private final PauseTransition settleTimer = new PauseTransition(SETTLE_DELAY);
+
+    /** The zoom level the cached snapshot was taken at */
+    private double snapshotZoom;
+    private int repaintFrames;
+
+    private final AnimationTimer hideOverlayPulse = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            if (--repaintFrames <= 0) {
+                stop();
+                overlay.setVisible(false);
+                zoomImage.setImage(null);
+            }
+        }
+    };
+
+    /**
+     * @param webView the WebView to zoom.
+     * @param zoomSlider the slider controlling the zoom level.
+     */
+    public ZoomController(WebView webView, Slider zoomSlider) {
+        this.webView = webView;
+        this.zoomSlider = zoomSlider;
+
+        overlay.setAlignment(Pos.TOP_LEFT);
+        overlay.setStyle("-fx-background-color: white;");
+        overlay.setVisible(false);
+        // the overlay only shows the page, events go to the WebView
+        overlay.setMouseTransparent(true);
+
+        settleTimer.setOnFinished(actionEvent -> {
+            if (!zoomSlider.isValueChanging()) {
+                applyZoom();
+            }
+        });
+        zoomSlider.valueProperty().addListener( listener -> previewZoom());
+        zoomSlider.valueChangingProperty().addListener( (obsValue, wasChanging, changing) -> {
+            if (!changing) {
+                applyZoom();
+            }
+        });
+    }
+
+    /**
+     * The node showing the scaled snapshot while the slider moves.
+     * @return StackPane the overlay to place on top of the WebView.
+     */
+    public StackPane getOverlay() {
+        return overlay;
+    }
+
+    /**
+     * Shows the cached snapshot scaled to the slider's zoom level,
+     * taking the snapshot when a new zoom gesture starts.
+     */
+    private void previewZoom() {
+        double zoom = zoomSlider.getValue();
+        // keeps the overlay if the zoom was applied a pulse ago
+        hideOverlayPulse.stop();
+        if (zoomImage.getImage() == null) {
+            snapshotZoom = webView.getZoom();
+            zoomImage.setImage(webView.snapshot(new SnapshotParameters(), null));
+            overlay.setVisible(true);
+        }
+        Image image = zoomImage.getImage();
+        double width = image.getWidth();
+        double height = image.getHeight();
+        double factor = zoom / snapshotZoom;
+        if (factor >= 1) {
+            // zooming in shows the top left part of the snapshot enlarged
+            zoomImage.setViewport(new Rectangle2D(0, 0, width / factor, height / factor));
+            zoomImage.setFitWidth(width);
+            zoomImage.setFitHeight(height);
+        } else {
+            zoomImage.setViewport(null);
+            zoomImage.setFitWidth(width * factor);
+            zoomImage.setFitHeight(height * factor);
+        }
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(String.format("preview zoom %.2f (snapshot at %.2f)",
+                    zoom, snapshotZoom));
+        }
+        settleTimer.playFromStart();
+    }
+
+    /**
+     * Applies the slider's zoom level to the WebView and removes the
+     * overlay once the WebView has repainted.
+     */
+    private void applyZoom() {
+        settleTimer.stop();
+        if (zoomImage.getImage() == null) {
+            return;
+        }
+        double zoom = zoomSlider.getValue();
+        if (webView.getZoom() != zoom) {
+            webView.setZoom(zoom);
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine(String.format("zoom %.2f", zoom));
+            }
+        }
+        repaintFrames = FRAMES_TO_REPAINT;
+        hideOverlayPulse.start();
+    }
+}
@@ -1,10 +1,15 @@
 package com.jfxbe;
 
+import java.io.File;
 import java.net.MalformedURLException;
+import java.net.URI;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import javafx.application.*;
 import javafx.beans.binding.DoubleBinding;
 import javafx.beans.property.*;
 import javafx.beans.value.ChangeListener;
+import javafx.concurrent.Task;
 import javafx.event.EventHandler;
 import javafx.geometry.Insets;
 import javafx.geometry.Point2D;
@@ -24,7 +29,7 @@ import javafx.util.Duration;
 
 /**
  * Playing Video using the JavaFX MediaPlayer API 
- * using media events for closed captions.
+ * showing closed captions from SRT or WebVTT subtitle files.
  * 
  * @author carldea
  */
@@ -33,10 +38,30 @@ public class ClosedCaptionVideo extends Application {
    private MediaPlayer mediaPlayer;
    private Point2D anchorPt;
    private Point2D previousLocation;
-   private ChangeListener<Duration> progressListener;
+   /** Applies the time changes and seeks once per frame */
+   private PlaybackPulse playbackPulse;
    private BooleanProperty playAndPauseToggle = new SimpleBooleanProperty(true);
    private EventHandler<MouseEvent> mouseEventConsumer = event -> event.consume();
 
+   /** Creates and disposes the media players */
+   private final MediaPlayerManager playerManager = MediaPlayerManager.getInstance();
+
+   /** Captions shown when a video has no subtitle file */
+   private static final String DEFAULT_CAPTIONS = "/closed-captions.srt";
+
+   /** Parses the subtitle files, one at a time */
+   private static final ExecutorService SUBTITLE_LOADER =
+           Executors.newSingleThreadExecutor(runnable -> {
+              Thread thread = new Thread(runnable, "subtitle-loader");
+              thread.setDaemon(true);
+              return thread;
+           });
+
+   private SubtitleIndex subtitles = SubtitleIndex.EMPTY;
+   private Task<SubtitleIndex> subtitleTask;
+   private Label closedCaption;
+   private ChangeListener<Duration> captionListener;
+
 
    /**
     * @param args he command line arguments
@@ -78,9 +103,13 @@ public class ClosedCaptionVideo extends Application {
       AnchorPane.setLeftAnchor(progressSlider, 2.0);
       AnchorPane.setBottomAnchor(progressSlider, 2.0);
 
-      // Updates slider as audio/video is progressing (play)
-      progressListener = (observable, oldValue, newValue) -> 
-         progressSlider.setValue(newValue.toSeconds());
+      // Updates slider as audio/video is progressing (play), once
+      // per frame with the latest time. Not while the user drags it.
+      playbackPulse = new PlaybackPulse(time -> {
+         if (!progressSlider.isValueChanging()) {
+            progressSlider.setValue(time.toSeconds());
+         }
+      });
 
       // Create a media view to display video
       MediaView mediaView = createMediaView(root);
@@ -101,6 +130,10 @@ public class ClosedCaptionVideo extends Application {
       AnchorPane.setRightAnchor(closedCaptionText, 60.0);
       AnchorPane.setBottomAnchor(closedCaptionText, 10.0);
 
+      // Shows the caption of the current time, also after seeking.
+      closedCaption = (Label) closedCaptionText;
+      captionListener = (observable, oldValue, newValue) -> showCaption(newValue);
+
       root.getChildren()
           .addAll(mediaView,
                   buttonPanel,
@@ -111,6 +144,15 @@ public class ClosedCaptionVideo extends Application {
       primaryStage.centerOnScreen();
       primaryStage.show();
    }
+
+   @Override
+   public void stop() throws Exception {
+      super.stop();
+      // release the native resources of all players
+      playerManager.releaseAll();
+      System.out.println(playerManager);
+      System.out.println(playbackPulse);
+   }
    /**
     * Create a close caption area (Label node)
     * @return
@@ -207,14 +249,18 @@ public class ClosedCaptionVideo extends Application {
          if (db.hasFiles()) {
             success = true;
             if (db.getFiles().size() > 0) {
-               try {
-                  // obtain file and play media
-                  filePath = db.getFiles()
-                          .get(0)
-                          .toURI().toURL().toString();
-                  playMedia(filePath, root);
-               } catch (MalformedURLException ex) {
-                  ex.printStackTrace();
+               File file = db.getFiles().get(0);
+               if (isSubtitleFile(file)) {
+                  // captions for the video playing
+                  loadSubtitles(file.toPath());
+               } else {
+                  try {
+                     // obtain file and play media
+                     filePath = file.toURI().toURL().toString();
+                     playMedia(filePath, root);
+                  } catch (MalformedURLException ex) {
+                     ex.printStackTrace();
+                  }
                }
             }
          } else {
@@ -471,31 +517,27 @@ public class ClosedCaptionVideo extends Application {
    private void playMedia(String url, Pane root) {
 
       if (mediaPlayer != null) {
-         mediaPlayer.pause();
-         mediaPlayer.setOnPaused(null);
-         mediaPlayer.setOnPlaying(null);
-         mediaPlayer.setOnReady(null);
+         playbackPulse.setPlayer(null);
          mediaPlayer.currentTimeProperty()
-                    .removeListener(progressListener);
-         mediaPlayer.setAudioSpectrumListener(null);
+                    .removeListener(captionListener);
+         // dispose the previous player's native resources
+         playerManager.release(mediaPlayer);
+         mediaPlayer = null;
       }
 
       // create a new media player
-      Media validMedia = null;
       try {
-         validMedia = new Media(url);
+         mediaPlayer = playerManager.create(url);
       } catch (Exception e) {
          new Alert(Alert.AlertType.ERROR, e.getMessage(), ButtonType.OK).showAndWait()
                  .filter(response -> response == ButtonType.OK)
                  .ifPresent(response -> e.printStackTrace());
          return;
       }
-      final Media media = validMedia;
-      mediaPlayer = new MediaPlayer(media);
+      final Media media = mediaPlayer.getMedia();
 
       // as the media is playing move the slider for progress
-      mediaPlayer.currentTimeProperty()
-                 .addListener(progressListener);
+      playbackPulse.setPlayer(mediaPlayer);
 
       mediaPlayer.setOnReady(() -> {
          // display media's metadata 
@@ -512,9 +554,6 @@ public class ClosedCaptionVideo extends Application {
          mediaPlayer.play();
       });
 
-      Label closedCaption =
-              (Label) root.lookup("#closed-caption-text");
-
       // Rewind back to the beginning
       mediaPlayer.setOnEndOfMedia( ()-> {
          updatePlayAndPauseButtons(true, root);
@@ -526,21 +565,12 @@ public class ClosedCaptionVideo extends Application {
          closedCaption.setText("");
       });
 
-      media.getMarkers().put("Starting race",
-              Duration.millis(1959));
-      media.getMarkers().put("He is beginning to get ahead of her.",
-              Duration.millis(3395));
-      media.getMarkers().put("They are turning the corner",
-              Duration.millis(6060));
-      media.getMarkers().put("The crowds are cheering !!!",
-              Duration.millis(9064));
-      media.getMarkers().put("The gentlemen makes it to the finish line.",
-              Duration.millis(11546));
-
-      // display closed caption
-      mediaPlayer.setOnMarker((MediaMarkerEvent event) ->
-              closedCaption.setText(event.getMarker().getKey())
-      );
+      // display closed captions from a subtitle file next to the video
+      closedCaption.setText("");
+      subtitles = SubtitleIndex.EMPTY;
+      loadSubtitles(findSubtitleFile(url));
+      mediaPlayer.currentTimeProperty()
+                 .addListener(captionListener);
 
       // set the media player to display video (MediaView)
       MediaView mediaView =
@@ -549,6 +579,91 @@ public class ClosedCaptionVideo extends Application {
 
    }
   
+   /**
+    * Returns the SRT or WebVTT file having the same name as a video
+    * file, if there is one.
+    * @param url - The URL of the video.
+    * @return Path the subtitle file or null.
+    */
+   private java.nio.file.Path findSubtitleFile(String url) {
+      try {
+         File video = new File(new URI(url));
+         String name = video.getName();
+         int dot = name.lastIndexOf('.');
+         String baseName = dot > 0 ? name.substring(0, dot) : name;
+         for (String extension : new String[] {".srt", ".vtt"}) {
+            File subtitleFile = new File(video.getParentFile(), baseName + extension);
+            if (subtitleFile.isFile()) {
+               return subtitleFile.toPath();
+            }
+         }
+      } catch (Exception e) {
+         // not a local file
+      }
+      return null;
+   }
+
+   private static boolean isSubtitleFile(File file) {
+      String name = file.getName().toLowerCase();
+      return name.endsWith(".srt") || name.endsWith(".vtt");
+   }
+
+   /**
+    * Loads and indexes captions in the background, the default captions
+    * are used when there is no subtitle file. Once loaded the caption
+    * of the current time is shown, also while paused.
+    * @param subtitleFile - An SRT or WebVTT file or null.
+    */
+   private void loadSubtitles(java.nio.file.Path subtitleFile) {
+      if (subtitleTask != null) {
+         subtitleTask.cancel();
+      }
+      Task<SubtitleIndex> task = new Task<SubtitleIndex>() {
+         @Override
+         protected SubtitleIndex call() throws Exception {
+            if (subtitleFile != null) {
+               return SubtitleIndex.load(subtitleFile);
+            }
+            return SubtitleIndex.load(ClosedCaptionVideo.class
+                    .getResourceAsStream(DEFAULT_CAPTIONS));
+         }
+      };
+      subtitleTask = task;
+      task.setOnSucceeded(workerStateEvent -> {
+         if (task == subtitleTask) {
+            subtitleTask = null;
+            subtitles = task.getValue();
+            showCurrentCaption();
+         }
+      });
+      task.setOnFailed(workerStateEvent -> {
+         if (task == subtitleTask) {
+            subtitleTask = null;
+            task.getException().printStackTrace();
+            subtitles = SubtitleIndex.EMPTY;
+            showCurrentCaption();
+         }
+      });
+      SUBTITLE_LOADER.submit(task);
+   }
+
+   private void showCurrentCaption() {
+      if (mediaPlayer != null) {
+         showCaption(mediaPlayer.getCurrentTime());
+      }
+   }
+
+   /**
+    * Shows the caption of a time. The same caption is returned while
+    * it lasts, so the label is only updated when the caption changes.
+    */
+   private void showCaption(Duration time) {
+      String caption = subtitles.textAt((long) time.toMillis());
+      if (caption != closedCaption.getText()) {
+         closedCaption.setText(caption);
+      }
+   }
+
    /**
    * Sets play button visible and pause button not visible when 
    * playVisible is true otherwise the opposite.
@@ -593,9 +708,8 @@ public class ClosedCaptionVideo extends Application {
                   if (mediaPlayer != null &&
                       mediaPlayer.getStatus() == MediaPlayer.Status.PAUSED) {
 
-                     // convert seconds to millis
-                     double dur = slider.getValue() * 1000;
-                     mediaPlayer.seek(Duration.millis(dur));
+                     // coalesced, the latest position is sought on the next pulse
+                     playbackPulse.requestSeek(Duration.seconds(slider.getValue()));
                   }
                 }
             });
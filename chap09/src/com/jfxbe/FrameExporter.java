@@ -0,0 +1,423 @@
+package com.jfxbe;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.scene.Group;
+import javafx.scene.Scene;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.media.Media;
+import javafx.scene.media.MediaPlayer;
+import javafx.scene.media.MediaPlayer.Status;
+import javafx.scene.media.MediaView;
+import javafx.scene.paint.Color;
+import javafx.util.Duration;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Exports video frames to PNG files at the video's native resolution,
+ * not the size (and rounded clip) of the view playing it.
+ *
+ * The current frame is taken from a second, unclipped MediaView of
+ * the playing player. A range of frames is taken by a hidden, muted
+ * player seeking to every Nth frame, as ScrubPreviews does. A paused
+ * player reports the seek target as its time before the frame is
+ * decoded, so a frame is only taken once its snapshot differs from
+ * the frame taken before (or, for the first one, shown before the
+ * first seek) and stays the same for a pulse; a frame identical to
+ * the one before (a still scene) is taken after STILL_FRAME_PULSES.
+ * Snapshots are compared in one reused buffer, the pixels are only
+ * copied when a frame is taken. Frames are numbered by the video's frame rate
+ * read from its headers on an encoder thread. Each
+ * frame's pixels are encoded by a pool of encoder threads; at most
+ * MAX_PENDING_FRAMES wait for them, so a long range streams to disk
+ * instead of piling up frames in memory.
+ *
+ * Must be used on the JavaFX application thread, the status is
+ * reported on it.
+ */
+public class FrameExporter {
+
+   /** Frame rate assumed when the file's headers don't tell */
+   public static final double DEFAULT_FRAME_RATE = 30;
+
+   /** Frames taken but not encoded yet, taking waits beyond this */
+   private static final int MAX_PENDING_FRAMES = 8;
+
+   /** Pulses an unchanged frame must be shown before it is taken as a still */
+   private static final int STILL_FRAME_PULSES = 10;
+
+   /** Pulses to wait for a seek before taking the frame anyway */
+   private static final int SEEK_TIMEOUT_PULSES = 60;
+
+   /** Encodes the frames, leaving a core for playing */
+   private static final ExecutorService ENCODERS = Executors.newFixedThreadPool(
+           Math.max(1, Runtime.getRuntime().availableProcessors() - 1), runnable -> {
+              Thread thread = new Thread(runnable, "frame-exporter");
+              thread.setDaemon(true);
+              return thread;
+           });
+
+   private final MediaPlayerManager playerManager;
+   private final Consumer<String> onStatus;
+   private final SnapshotParameters snapshotParameters = new SnapshotParameters();
+
+   /** Shows the playing player unclipped at its native size */
+   private final MediaView currentFrameView = new MediaView();
+
+   /** Changed when an export is cancelled, its pending frames aren't written */
+   private volatile int generation;
+   private final AtomicInteger pendingFrames = new AtomicInteger();
+   private final AtomicInteger writtenFrames = new AtomicInteger();
+
+   // The hidden player seeking through a range
+   private MediaPlayer exportPlayer;
+   private MediaView exportView;
+   private final AnimationTimer pulse;
+   private WritableImage frame;
+   /** The pixels of the last snapshot, reused every pulse */
+   private int[] framePixels;
+   private Path exportDir;
+   private String baseName;
+   private double frameRate;
+   private long nextFrame;
+   private long lastFrame;
+   private int frameStep;
+   private int frameCount;
+   private int takenFrames;
+   private boolean probing;
+   private boolean seeking;
+   private boolean positioned;
+   private int waitedPulses;
+   private int stablePulses;
+   /** The hash of the pixels of the last snapshot and of the frame taken */
+   private int snapshotHash;
+   private int takenHash;
+
+   /**
+    * @param playerManager creates and disposes the hidden player.
+    * @param onStatus shows the export's progress and results.
+    */
+   public FrameExporter(MediaPlayerManager playerManager, Consumer<String> onStatus) {
+      this.playerManager = playerManager;
+      this.onStatus = onStatus;
+      snapshotParameters.setFill(Color.BLACK);
+      // a scene which is never shown, only used for snapshots
+      new Scene(new Group(currentFrameView));
+      pulse = new AnimationTimer() {
+         @Override
+         public void handle(long now) {
+            step();
+         }
+      };
+   }
+
+   /**
+    * Exports the frame a player shows.
+    * @param player the playing (or paused) player.
+    * @param dir the folder of the image file.
+    */
+   public void exportCurrentFrame(MediaPlayer player, Path dir) {
+      Media media = player.getMedia();
+      if (media.getWidth() <= 0 || media.getHeight() <= 0) {
+         onStatus.accept("No video frame to export");
+         return;
+      }
+      double seconds = player.getCurrentTime().toSeconds();
+      currentFrameView.setMediaPlayer(player);
+      WritableImage image = currentFrameView.snapshot(snapshotParameters,
+              new WritableImage(media.getWidth(), media.getHeight()));
+      currentFrameView.setMediaPlayer(null);
+
+      int[] pixels = pixelsOf(image);
+      String url = media.getSource();
+      pendingFrames.incrementAndGet();
+      ENCODERS.submit(() -> {
+         // the file is named after the frame, the headers are read here
+         long frameIndex = (long) Math.floor(seconds * frameRateOf(url));
+         Path file = dir.resolve(frameFileName(baseNameOf(url), frameIndex));
+         // not skipped when a range export is cancelled
+         write(pixels, (int) image.getWidth(), (int) image.getHeight(), file, -1,
+                 () -> onStatus.accept("Exported " + file));
+      });
+   }
+
+   /**
+    * Exports every Nth frame of a range, replacing an export in progress.
+    * @param url the URL of the video.
+    * @param from the time of the first frame.
+    * @param to the time after the last frame.
+    * @param everyNth 1 exports each frame, 2 every other frame, ...
+    * @param dir the folder of the image files.
+    */
+   public void exportRange(String url, Duration from, Duration to, int everyNth, Path dir) {
+      cancel();
+      // read the frame rate off the JavaFX application thread
+      probing = true;
+      int run = generation;
+      onStatus.accept("Reading the frame rate of " + baseNameOf(url));
+      ENCODERS.submit(() -> {
+         double rate = frameRateOf(url);
+         Platform.runLater(() -> {
+            if (probing && run == generation) {
+               probing = false;
+               startRange(url, rate, from, to, everyNth, dir);
+            }
+         });
+      });
+   }
+
+   private void startRange(String url, double rate, Duration from, Duration to,
+                           int everyNth, Path dir) {
+      frameRate = rate;
+      nextFrame = (long) Math.ceil(from.toSeconds() * frameRate);
+      lastFrame = (long) Math.ceil(to.toSeconds() * frameRate) - 1;
+      frameStep = Math.max(1, everyNth);
+      frameCount = lastFrame < nextFrame ? 0 : (int) ((lastFrame - nextFrame) / frameStep + 1);
+      if (frameCount == 0) {
+         onStatus.accept("No frames in the range");
+         return;
+      }
+      exportDir = dir;
+      baseName = baseNameOf(url);
+      takenFrames = 0;
+      writtenFrames.set(0);
+      try {
+         exportPlayer = playerManager.create(url);
+      } catch (Exception e) {
+         onStatus.accept("Unable to export " + url + ": " + e.getMessage());
+         return;
+      }
+      MediaPlayer player = exportPlayer;
+      player.setMute(true);
+      exportView = new MediaView(player);
+      new Scene(new Group(exportView));
+
+      player.setOnError(() -> {
+         onStatus.accept("Unable to export " + url + ": " + player.getError().getMessage());
+         cancel();
+      });
+      // seeking needs a paused player, it starts READY
+      player.setOnReady(player::pause);
+      player.setOnPaused(() -> {
+         player.setOnPaused(null);
+         Media media = player.getMedia();
+         frame = new WritableImage(Math.max(1, media.getWidth()),
+                 Math.max(1, media.getHeight()));
+         framePixels = new int[(int) frame.getWidth() * (int) frame.getHeight()];
+         seeking = false;
+         pulse.start();
+      });
+      onStatus.accept("Exporting " + frameCount + " frames");
+   }
+
+   /**
+    * Stops exporting a range, frames being encoded aren't written.
+    */
+   public void cancel() {
+      if (exportPlayer != null || probing) {
+         generation++;
+      }
+      probing = false;
+      releasePlayer();
+   }
+
+   /**
+    * @return true while exporting a range.
+    */
+   public boolean isExporting() {
+      return exportPlayer != null || probing;
+   }
+
+   private void releasePlayer() {
+      pulse.stop();
+      if (exportPlayer != null) {
+         exportView.setMediaPlayer(null);
+         playerManager.release(exportPlayer);
+         exportPlayer = null;
+         exportView = null;
+         frame = null;
+         framePixels = null;
+      }
+   }
+
+   /**
+    * Called every pulse while exporting a range, seeks to the next
+    * frame or takes it once the seek settled.
+    */
+   private void step() {
+      if (exportPlayer == null || exportPlayer.getStatus() == Status.DISPOSED) {
+         // released by the player manager
+         cancel();
+         return;
+      }
+      if (!seeking) {
+         if (takenFrames >= frameCount) {
+            // the last frames are still being encoded
+            releasePlayer();
+            return;
+         }
+         if (pendingFrames.get() >= MAX_PENDING_FRAMES) {
+            // the encoders are behind, wait for them
+            return;
+         }
+         if (takenFrames == 0) {
+            // the first frame must differ from what was shown before seeking
+            takenHash = snapshotFrame();
+         }
+         // the middle of the frame, its start may round to the previous one
+         exportPlayer.seek(Duration.seconds((nextFrame + 0.5) / frameRate));
+         seeking = true;
+         positioned = false;
+         waitedPulses = 0;
+         stablePulses = 0;
+         return;
+      }
+      waitedPulses++;
+      if (!positioned) {
+         double frameTime = nextFrame / frameRate;
+         double seekError = exportPlayer.getCurrentTime().toSeconds() - frameTime;
+         positioned = seekError >= 0 && seekError < 1 / frameRate;
+         if (!positioned && waitedPulses < SEEK_TIMEOUT_PULSES) {
+            return;
+         }
+      }
+
+      // the player's time is the seek target before the frame is
+      // decoded, wait for the shown frame to change and stay
+      int hash = snapshotFrame();
+      boolean stable = hash == snapshotHash;
+      snapshotHash = hash;
+      stablePulses = stable ? stablePulses + 1 : 0;
+      boolean changed = hash != takenHash;
+      if (!(stable && changed) && stablePulses < STILL_FRAME_PULSES &&
+          waitedPulses < SEEK_TIMEOUT_PULSES) {
+         return;
+      }
+      takenHash = hash;
+      int[] pixels = framePixels.clone();
+      pendingFrames.incrementAndGet();
+      Path file = exportDir.resolve(frameFileName(baseName, nextFrame));
+      int width = (int) frame.getWidth();
+      int height = (int) frame.getHeight();
+      int run = generation;
+      ENCODERS.submit(() -> write(pixels, width, height, file, run, this::frameWritten));
+      takenFrames++;
+      nextFrame += frameStep;
+      seeking = false;
+   }
+
+   private void frameWritten() {
+      int written = writtenFrames.incrementAndGet();
+      if (written == frameCount) {
+         onStatus.accept("Exported " + frameCount + " frames to " + exportDir);
+      } else if (written % 10 == 0) {
+         onStatus.accept(String.format("Exporting %d%%", written * 100 / frameCount));
+      }
+   }
+
+   /**
+    * Snapshots the hidden player's view into the reused frame buffers.
+    * @return the hash of the frame's pixels.
+    */
+   private int snapshotFrame() {
+      frame = exportView.snapshot(snapshotParameters, frame);
+      int width = (int) frame.getWidth();
+      frame.getPixelReader().getPixels(0, 0, width, (int) frame.getHeight(),
+              PixelFormat.getIntArgbInstance(), framePixels, 0, width);
+      return Arrays.hashCode(framePixels);
+   }
+
+   /**
+    * Copies an image's pixels.
+    */
+   private static int[] pixelsOf(WritableImage image) {
+      int width = (int) image.getWidth();
+      int height = (int) image.getHeight();
+      int[] pixels = new int[width * height];
+      image.getPixelReader().getPixels(0, 0, width, height,
+              PixelFormat.getIntArgbInstance(), pixels, 0, width);
+      return pixels;
+   }
+
+   /**
+    * Encodes a frame's pixels into a PNG file, on an encoder thread.
+    * @param run the generation of the range export or -1.
+    * @param onWritten run on the JavaFX application thread once written.
+    */
+   private void write(int[] pixels, int width, int height, Path file, int run,
+                      Runnable onWritten) {
+      try {
+         if (run >= 0 && run != generation) {
+            return;
+         }
+         BufferedImage bufferedImage = new BufferedImage(width, height,
+                 BufferedImage.TYPE_INT_RGB);
+         bufferedImage.setRGB(0, 0, width, height, pixels, 0, width);
+         Files.createDirectories(file.getParent());
+         Path tempFile = Files.createTempFile(file.getParent(), "frame", ".tmp");
+         ImageIO.write(bufferedImage, "png", tempFile.toFile());
+         Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING,
+                 StandardCopyOption.ATOMIC_MOVE);
+         if (run < 0 || run == generation) {
+            Platform.runLater(onWritten);
+         }
+      } catch (IOException e) {
+         Platform.runLater(() -> onStatus.accept("Unable to write " + file + ": " +
+                 e.getMessage()));
+      } finally {
+         pendingFrames.decrementAndGet();
+      }
+   }
+
+   /**
+    * The frame rate from a local file's headers, DEFAULT_FRAME_RATE
+    * if they don't tell. Reads the file, called on an encoder thread.
+    */
+   private static double frameRateOf(String url) {
+      try {
+         URI uri = new URI(url);
+         if ("file".equals(uri.getScheme())) {
+            File file = new File(uri);
+            MediaLibrary.Entry entry = new MediaLibrary.Entry(file.toPath(),
+                    file.length(), file.lastModified());
+            MediaProbe.probe(entry);
+            if (entry.getFrameRate() > 0) {
+               return entry.getFrameRate();
+            }
+         }
+      } catch (Exception e) {
+         // not a local file or unknown headers
+      }
+      return DEFAULT_FRAME_RATE;
+   }
+
+   private static String baseNameOf(String url) {
+      String name;
+      try {
+         name = new File(new URI(url).getPath()).getName();
+      } catch (Exception e) {
+         name = "video";
+      }
+      int dot = name.lastIndexOf('.');
+      return dot > 0 ? name.substring(0, dot) : name;
+   }
+
+   private static String frameFileName(String baseName, long frameIndex) {
+      return String.format("%s-frame%06d.png", baseName, frameIndex);
+   }
+}
@@ -0,0 +1,69 @@
+package com.jfxbe;
+
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+
+/**
+ * A horizontal level meter drawing a LoudnessMeter's RMS level as a
+ * bar, its peak level as a tick and the track's loudness as text.
+ */
+public class LevelMeter extends Canvas {
+
+   /** The quietest level shown in dB, the left edge of the bar */
+   private static final double FLOOR = -40;
+   /** The loudest level shown in dB, the right edge of the bar */
+   private static final double CEILING = 20;
+
+   private static final Color BACKGROUND = Color.rgb(255, 255, 255, .15);
+   private static final Color RMS_COLOR = Color.rgb(80, 220, 80, .85);
+   private static final Color PEAK_COLOR = Color.rgb(255, 60, 40, .95);
+   private static final Color TEXT_COLOR = Color.rgb(255, 255, 255, .85);
+
+   /** Width of the bars, the rest shows the loudness */
+   private final double barWidth;
+
+   /**
+    * @param width the meter's width.
+    * @param height the meter's height.
+    */
+   public LevelMeter(double width, double height) {
+      super(width, height);
+      barWidth = width * 0.6;
+      getGraphicsContext2D().setFont(Font.font(height * 0.9));
+   }
+
+   /**
+    * Draws the levels of a meter.
+    * @param meter the levels to draw.
+    * @param volume the player's volume, shown when normalizing.
+    * @param normalizing true when the volume is set from the loudness.
+    */
+   public void draw(LoudnessMeter meter, double volume, boolean normalizing) {
+      GraphicsContext gc = getGraphicsContext2D();
+      double height = getHeight();
+      gc.clearRect(0, 0, getWidth(), height);
+      gc.setFill(BACKGROUND);
+      gc.fillRect(0, 0, barWidth, height);
+      gc.setFill(RMS_COLOR);
+      gc.fillRect(0, 0, xOf(meter.getRmsLevel()), height);
+      gc.setFill(PEAK_COLOR);
+      gc.fillRect(Math.max(0, xOf(meter.getPeakLevel()) - 1), 0, 2, height);
+
+      double loudness = meter.getLoudness();
+      String text = Double.isNaN(loudness) ? "-- dB" : String.format("%.1f dB", loudness);
+      if (normalizing) {
+         text += String.format(" %.0f%%", volume * 100);
+      }
+      gc.setFill(TEXT_COLOR);
+      gc.setTextBaseline(VPos.CENTER);
+      gc.fillText(text, barWidth + 4, height / 2);
+   }
+
+   private double xOf(double level) {
+      double fraction = (level - FLOOR) / (CEILING - FLOOR);
+      return Math.max(0, Math.min(1, fraction)) * barWidth;
+   }
+}
@@ -0,0 +1,151 @@
+package com.jfxbe;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The measured loudness of the files played before, so a file played
+ * again can be normalized from its first frame. A measurement only
+ * replaces a longer one, such as when a track is skipped. Stored in
+ * ~/.jfxbe/loudness.properties keyed by a hash of the file (the same
+ * as the waveform cache), so renamed files are still found.
+ *
+ * Hashing a file and writing the cache file is disk I/O, so both are
+ * done on the cache's own background thread, which is also the only
+ * thread touching the stored values. get() completes a future there
+ * and put() returns right away.
+ */
+public class LoudnessCache {
+
+   private final Path cacheFile;
+
+   /** Reads and writes the cache, one file at a time */
+   private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "loudness-cache");
+      thread.setDaemon(true);
+      return thread;
+   });
+
+   /** Only used on the worker thread */
+   private Properties loudness;
+
+   /**
+    * Creates a cache stored in the user's home directory.
+    */
+   public LoudnessCache() {
+      this(Paths.get(System.getProperty("user.home"), ".jfxbe", "loudness.properties"));
+   }
+
+   /**
+    * @param cacheFile the file holding the loudness of the files.
+    */
+   public LoudnessCache(Path cacheFile) {
+      this.cacheFile = cacheFile;
+   }
+
+   /**
+    * Looks up the loudness measured when the media was played before.
+    * @param url the URL of the media, only local files are cached.
+    * @return CompletableFuture completed on the cache's thread with
+    *         the loudness in dB or null if not known.
+    */
+   public CompletableFuture<Double> get(String url) {
+      return CompletableFuture.supplyAsync(() -> read(url), worker);
+   }
+
+   private Double read(String url) {
+      String key = keyOf(url);
+      if (key == null) {
+         return null;
+      }
+      String value = properties().getProperty(key);
+      return value != null ? Double.valueOf(value.split(",")[0]) : null;
+   }
+
+   /**
+    * Stores the loudness of the media in the background, unless a
+    * longer measurement is stored.
+    * @param url the URL of the media.
+    * @param dB the measured loudness.
+    * @param seconds the seconds of audio measured.
+    */
+   public void put(String url, double dB, double seconds) {
+      worker.execute(() -> write(url, dB, seconds));
+   }
+
+   /**
+    * Waits for the values being stored to be written, such as when the
+    * application stops. The cache can't be used afterwards.
+    */
+   public void close() {
+      worker.shutdown();
+      try {
+         worker.awaitTermination(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   private void write(String url, double dB, double seconds) {
+      String key = keyOf(url);
+      if (key == null || Double.isNaN(dB)) {
+         return;
+      }
+      String stored = properties().getProperty(key);
+      if (stored != null && stored.contains(",") &&
+          Double.parseDouble(stored.split(",")[1]) > seconds) {
+         return;
+      }
+      properties().setProperty(key, String.format(Locale.ROOT, "%.2f,%.1f", dB, seconds));
+      try {
+         Files.createDirectories(cacheFile.getParent());
+         Path tempFile = Files.createTempFile(cacheFile.getParent(), "loudness", ".tmp");
+         try (OutputStream out = Files.newOutputStream(tempFile)) {
+            loudness.store(out, "Measured loudness (dB) and seconds measured by file hash");
+         }
+         Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING,
+                 StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException e) {
+         e.printStackTrace();
+      }
+   }
+
+   private Properties properties() {
+      if (loudness == null) {
+         loudness = new Properties();
+         if (Files.isRegularFile(cacheFile)) {
+            try (InputStream in = Files.newInputStream(cacheFile)) {
+               loudness.load(in);
+            } catch (IOException e) {
+               e.printStackTrace();
+            }
+         }
+      }
+      return loudness;
+   }
+
+   private static String keyOf(String url) {
+      try {
+         URI uri = new URI(url);
+         if (!"file".equals(uri.getScheme())) {
+            return null;
+         }
+         return WaveformPyramid.fingerprint(new File(uri));
+      } catch (Exception e) {
+         return null;
+      }
+   }
+}
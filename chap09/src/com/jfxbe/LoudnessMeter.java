@@ -0,0 +1,181 @@
+package com.jfxbe;
+
+import java.util.Arrays;
+
+/**
+ * Estimates the loudness of the audio being played from the
+ * AudioSpectrumListener's magnitudes. Each spectrum's level is the
+ * power summed over the bands above the spectrum threshold.
+ *
+ * <ul>
+ *    <li>RMS level: the level averaged over RMS_TIME_CONSTANT.</li>
+ *    <li>Peak level: the highest level, held for PEAK_HOLD seconds
+ *        then falling. The spectrum has no samples so this is the
+ *        peak of the short term level, not of the samples.</li>
+ *    <li>Loudness: the track's gated mean level measured so far, as
+ *        EBU R 128 does: spectra below an absolute gate (silence) are
+ *        ignored, then the ones RELATIVE_GATE below the mean of the
+ *        rest (quiet passages).</li>
+ * </ul>
+ *
+ * The gates need the levels of the whole track, they are counted in a
+ * histogram of LEVEL_BINS so the memory used doesn't grow with the
+ * track's length.
+ *
+ * update() is called by the spectrum listener, the levels may be read
+ * from any thread.
+ */
+public class LoudnessMeter {
+
+   /** Levels are in dB from MIN_LEVEL to MAX_LEVEL */
+   public static final double MIN_LEVEL = -70;
+   public static final double MAX_LEVEL = 30;
+
+   /** Levels counted per dB in the histogram */
+   private static final int BINS_PER_DB = 10;
+   private static final int LEVEL_BINS = (int) (MAX_LEVEL - MIN_LEVEL) * BINS_PER_DB;
+
+   /** The power of each histogram bin's level */
+   private static final double[] BIN_POWER = new double[LEVEL_BINS];
+   static {
+      for (int bin = 0; bin < LEVEL_BINS; bin++) {
+         BIN_POWER[bin] = Math.pow(10, (MIN_LEVEL + (bin + 0.5) / BINS_PER_DB) / 10);
+      }
+   }
+
+   /** Spectra below the mean of the louder ones by this many dB are ignored */
+   public static final double RELATIVE_GATE = -10;
+
+   /** Seconds the RMS level is averaged over */
+   private static final double RMS_TIME_CONSTANT = 0.3;
+
+   /** Seconds the peak is held before falling */
+   private static final double PEAK_HOLD = 1;
+   /** How fast the peak falls in dB per second */
+   private static final double PEAK_FALL = 20;
+
+   private final long[] histogram = new long[LEVEL_BINS];
+   private double rmsPower;
+   private double peak = MIN_LEVEL;
+   private double peakAge;
+   private double gatedSeconds;
+
+   // Published for the readers
+   private volatile double rmsLevel = MIN_LEVEL;
+   private volatile double peakLevel = MIN_LEVEL;
+   private volatile double loudness = Double.NaN;
+   private volatile double measuredSeconds;
+   private volatile boolean resetRequested;
+
+   /**
+    * Adds a spectrum.
+    * @param magnitudes the band magnitudes in dB.
+    * @param bands the number of bands.
+    * @param threshold the spectrum threshold in dB (such as -60), bands
+    *  at or below are silent.
+    * @param duration the seconds the spectrum covers.
+    */
+   public void update(float[] magnitudes, int bands, int threshold, double duration) {
+      if (resetRequested) {
+         resetRequested = false;
+         clear();
+      }
+      double power = 0;
+      for (int band = 0; band < bands; band++) {
+         if (magnitudes[band] > threshold) {
+            power += Math.pow(10, magnitudes[band] / 10);
+         }
+      }
+      double level = toLevel(power);
+
+      double alpha = 1 - Math.exp(-duration / RMS_TIME_CONSTANT);
+      rmsPower += alpha * (power - rmsPower);
+
+      peakAge += duration;
+      if (level >= peak) {
+         peak = level;
+         peakAge = 0;
+      } else if (peakAge > PEAK_HOLD) {
+         peak = Math.max(level, peak - PEAK_FALL * duration);
+      }
+
+      // the absolute gate, silence isn't counted
+      if (level > MIN_LEVEL) {
+         histogram[binOf(level)]++;
+         gatedSeconds += duration;
+         loudness = gatedLoudness();
+      }
+
+      rmsLevel = toLevel(rmsPower);
+      peakLevel = peak;
+      measuredSeconds = gatedSeconds;
+   }
+
+   /**
+    * Starts measuring a new track, the next update() clears the levels.
+    */
+   public void reset() {
+      resetRequested = true;
+      rmsLevel = MIN_LEVEL;
+      peakLevel = MIN_LEVEL;
+      loudness = Double.NaN;
+      measuredSeconds = 0;
+   }
+
+   private void clear() {
+      Arrays.fill(histogram, 0);
+      rmsPower = 0;
+      peak = MIN_LEVEL;
+      peakAge = 0;
+      gatedSeconds = 0;
+   }
+
+   /**
+    * The mean power of the counted levels, then of the ones above the
+    * relative gate.
+    */
+   private double gatedLoudness() {
+      double ungated = meanLevel(0);
+      int gateBin = binOf(ungated + RELATIVE_GATE);
+      return meanLevel(gateBin);
+   }
+
+   private double meanLevel(int fromBin) {
+      double powerSum = 0;
+      long count = 0;
+      for (int bin = fromBin; bin < LEVEL_BINS; bin++) {
+         powerSum += histogram[bin] * BIN_POWER[bin];
+         count += histogram[bin];
+      }
+      return count == 0 ? MIN_LEVEL : toLevel(powerSum / count);
+   }
+
+   private static int binOf(double level) {
+      int bin = (int) ((level - MIN_LEVEL) * BINS_PER_DB);
+      return Math.max(0, Math.min(LEVEL_BINS - 1, bin));
+   }
+
+   private static double toLevel(double power) {
+      return power > 0 ? Math.max(MIN_LEVEL, 10 * Math.log10(power)) : MIN_LEVEL;
+   }
+
+   /** @return the level averaged over the last 0.3 seconds in dB. */
+   public double getRmsLevel() {
+      return rmsLevel;
+   }
+
+   /** @return the held peak level in dB. */
+   public double getPeakLevel() {
+      return peakLevel;
+   }
+
+   /** @return the track's loudness so far in dB or NaN if silent. */
+   public double getLoudness() {
+      return loudness;
+   }
+
+   /** @return the seconds of (not silent) audio measured. */
+   public double getMeasuredSeconds() {
+      return measuredSeconds;
+   }
+}
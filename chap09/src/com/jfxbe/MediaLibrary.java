@@ -0,0 +1,549 @@
+package com.jfxbe;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A searchable index of the media files in scanned folders. Scanning
+ * reads each new or changed file's metadata with a MediaProbe, files
+ * are probed in parallel on a pool of background threads and each
+ * probe is interrupted after PROBE_TIMEOUT_MILLIS, so a slow network
+ * drive or a broken file can't stall the scan.
+ *
+ * The entries are saved in a compressed index file, an inverted index
+ * from the words of the tags and file names to the entries is built
+ * in memory, so searching thousands of files is a few bit set
+ * operations. Each word of a query matches the words starting with it
+ * and all of the query's words must match.
+ *
+ * Scanning runs on a background thread, the other methods may be
+ * called from any thread. Searches read an immutable snapshot of the
+ * inverted index, replaced once a load or scan completes, so searching
+ * from the UI never waits on a load, save or scan doing disk I/O.
+ */
+public class MediaLibrary {
+
+   /** The media file extensions scanned */
+   public static final Set<String> EXTENSIONS = Collections.unmodifiableSet(
+           new HashSet<>(Arrays.asList(
+                   "mp3", "wav", "aif", "aiff", "mp4", "m4a", "m4v", "flv", "fxm")));
+
+   /** Time given to read a file's metadata */
+   public static final long PROBE_TIMEOUT_MILLIS = 2000;
+
+   private static final int MAGIC = 0x4D4C4958; // MLIX
+   private static final int VERSION = 1;
+
+   /** Probes the files, reading headers is mostly waiting on the disk */
+   private static final ExecutorService PROBES = Executors.newFixedThreadPool(
+           Math.max(2, Runtime.getRuntime().availableProcessors()), runnable -> {
+              Thread thread = new Thread(runnable, "media-library");
+              thread.setDaemon(true);
+              return thread;
+           });
+
+   /** Interrupts the probes taking too long */
+   private static final ScheduledExecutorService WATCHDOG =
+           Executors.newSingleThreadScheduledExecutor(runnable -> {
+              Thread thread = new Thread(runnable, "media-library-watchdog");
+              thread.setDaemon(true);
+              return thread;
+           });
+
+   private final Path indexFile;
+
+   /** Guarded by this, held briefly and never during disk I/O */
+   private final Map<Path, Entry> entries = new LinkedHashMap<>();
+
+   /** Writes the index file one save at a time */
+   private final Object indexFileLock = new Object();
+
+   private volatile SearchIndex searchIndex = new SearchIndex(new Entry[0], new TreeMap<>());
+
+   /**
+    * @return Path the index file in the user's home directory.
+    */
+   public static Path defaultIndexFile() {
+      return Paths.get(System.getProperty("user.home"), ".jfxbe", "library.idx");
+   }
+
+   /**
+    * @param indexFile the file the entries are saved in.
+    */
+   public MediaLibrary(Path indexFile) {
+      this.indexFile = indexFile;
+   }
+
+   /**
+    * Reads the saved entries, if any.
+    * @throws IOException if the index file can't be read.
+    */
+   public void load() throws IOException {
+      Map<Path, Entry> loaded = new LinkedHashMap<>();
+      if (Files.isRegularFile(indexFile)) {
+         try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                 new GZIPInputStream(Files.newInputStream(indexFile))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+               throw new IOException("Not a media library index " + indexFile);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+               Entry entry = Entry.read(in);
+               loaded.put(entry.path, entry);
+            }
+         }
+      }
+      synchronized (this) {
+         entries.clear();
+         entries.putAll(loaded);
+         rebuildWords();
+      }
+   }
+
+   /**
+    * Writes the entries into the index file.
+    * @throws IOException if the index file can't be written.
+    */
+   public void save() throws IOException {
+      List<Entry> saved;
+      synchronized (this) {
+         saved = new ArrayList<>(entries.values());
+      }
+      synchronized (indexFileLock) {
+         Files.createDirectories(indexFile.getParent());
+         Path tempFile = Files.createTempFile(indexFile.getParent(), "library", ".tmp");
+         try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                 new GZIPOutputStream(Files.newOutputStream(tempFile))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(saved.size());
+            for (Entry entry : saved) {
+               entry.write(out);
+            }
+         } catch (IOException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+         }
+         Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING,
+                 StandardCopyOption.ATOMIC_MOVE);
+      }
+   }
+
+   /**
+    * Adds the media files of a folder and its sub folders, probing the
+    * new and changed files. Files of the folder no longer there are
+    * removed.
+    * @param folder the folder to scan.
+    * @param cancelled tells when to stop, the files probed so far are kept.
+    * @param progress called with the part of the files probed.
+    * @return ScanResult the counts of the files scanned.
+    * @throws IOException if the folder can't be read.
+    */
+   public ScanResult scan(Path folder, BooleanSupplier cancelled, DoubleConsumer progress)
+           throws IOException {
+      folder = folder.toAbsolutePath().normalize();
+      List<Entry> found;
+      try (Stream<Path> files = Files.walk(folder)) {
+         found = files.filter(MediaLibrary::isMediaFile)
+                      .map(MediaLibrary::newEntry)
+                      .filter(entry -> entry != null)
+                      .collect(Collectors.toList());
+      }
+
+      ScanResult result = new ScanResult();
+      List<Entry> changed = new ArrayList<>();
+      synchronized (this) {
+         Set<Path> foundPaths = found.stream()
+                                     .map(Entry::getPath)
+                                     .collect(Collectors.toSet());
+         Path scanned = folder;
+         int before = entries.size();
+         entries.keySet().removeIf(path -> path.startsWith(scanned) &&
+                                           !foundPaths.contains(path));
+         result.removed = before - entries.size();
+         for (Entry entry : found) {
+            Entry known = entries.get(entry.path);
+            if (known != null && known.size == entry.size &&
+                known.modified == entry.modified && known.status != Status.TIMED_OUT) {
+               result.unchanged++;
+            } else {
+               changed.add(entry);
+            }
+         }
+      }
+
+      // probe in parallel, taking the results as they complete
+      CompletionService<Entry> probes = new ExecutorCompletionService<>(PROBES);
+      List<Future<Entry>> futures = new ArrayList<>();
+      for (Entry entry : changed) {
+         futures.add(probes.submit(() -> probe(entry)));
+      }
+      List<Entry> probed = new ArrayList<>();
+      try {
+         for (int i = 0; i < changed.size() && !cancelled.getAsBoolean(); i++) {
+            Entry entry = probes.take().get();
+            probed.add(entry);
+            result.count(entry.status);
+            progress.accept((i + 1.0) / changed.size());
+         }
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      } catch (ExecutionException e) {
+         throw new IOException(e.getCause());
+      } finally {
+         futures.forEach(future -> future.cancel(true));
+      }
+
+      synchronized (this) {
+         for (Entry entry : probed) {
+            entries.put(entry.path, entry);
+         }
+         rebuildWords();
+      }
+      return result;
+   }
+
+   /**
+    * Finds the entries matching all words of a query in their title,
+    * artist, album or file name.
+    * @param query words or beginnings of words.
+    * @return List the matching entries or all when the query is empty.
+    */
+   public List<Entry> search(String query) {
+      // a snapshot, documents and words are never changed
+      SearchIndex index = searchIndex;
+      Entry[] documents = index.documents;
+      List<String> queryWords = words(query);
+      if (queryWords.isEmpty()) {
+         return Collections.unmodifiableList(Arrays.asList(documents));
+      }
+      BitSet matches = null;
+      for (String word : queryWords) {
+         BitSet wordMatches = new BitSet(documents.length);
+         for (BitSet bits : index.words.subMap(word, true, word + Character.MAX_VALUE, true)
+                                 .values()) {
+            wordMatches.or(bits);
+         }
+         if (matches == null) {
+            matches = wordMatches;
+         } else {
+            matches.and(wordMatches);
+         }
+      }
+      List<Entry> found = new ArrayList<>(matches.cardinality());
+      for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+         found.add(documents[i]);
+      }
+      return found;
+   }
+
+   /**
+    * @return the number of media files in the library.
+    */
+   public int size() {
+      return searchIndex.documents.length;
+   }
+
+   /**
+    * Builds a new inverted index of the entries and publishes it for
+    * the searches, called holding this.
+    */
+   private void rebuildWords() {
+      Entry[] documents = entries.values().toArray(new Entry[0]);
+      TreeMap<String, BitSet> index = new TreeMap<>();
+      for (int i = 0; i < documents.length; i++) {
+         for (String word : words(documents[i].searchText())) {
+            index.computeIfAbsent(word, key -> new BitSet()).set(i);
+         }
+      }
+      searchIndex = new SearchIndex(documents, index);
+   }
+
+   private static List<String> words(String text) {
+      List<String> found = new ArrayList<>();
+      for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+         if (!word.isEmpty()) {
+            found.add(word);
+         }
+      }
+      return found;
+   }
+
+   private static boolean isMediaFile(Path path) {
+      String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+      return EXTENSIONS.contains(name.substring(name.lastIndexOf('.') + 1)) &&
+             Files.isRegularFile(path);
+   }
+
+   private static Entry newEntry(Path path) {
+      try {
+         BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+         return new Entry(path, attributes.size(), attributes.lastModifiedTime().toMillis());
+      } catch (IOException e) {
+         // removed while scanning
+         return null;
+      }
+   }
+
+   /**
+    * Probes a file on a pool thread, the watchdog interrupts the probe
+    * when it takes longer than PROBE_TIMEOUT_MILLIS.
+    */
+   private static Entry probe(Entry entry) {
+      Thread thread = Thread.currentThread();
+      Object lock = new Object();
+      boolean[] finished = new boolean[1];
+      ScheduledFuture<?> alarm = WATCHDOG.schedule(() -> {
+         synchronized (lock) {
+            if (!finished[0]) {
+               thread.interrupt();
+            }
+         }
+      }, PROBE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+      try {
+         MediaProbe.probe(entry);
+         entry.status = Status.OK;
+      } catch (ClosedByInterruptException e) {
+         entry.status = Status.TIMED_OUT;
+      } catch (IOException | RuntimeException e) {
+         entry.status = Status.FAILED;
+      } finally {
+         synchronized (lock) {
+            finished[0] = true;
+         }
+         alarm.cancel(false);
+         // don't leave an interrupt for the pool thread's next probe
+         Thread.interrupted();
+      }
+      return entry;
+   }
+
+   /** How a file's metadata was read */
+   public enum Status { OK, FAILED, TIMED_OUT }
+
+   /**
+    * An inverted index which isn't changed once built, the bits are the
+    * positions in documents.
+    */
+   private static class SearchIndex {
+      final Entry[] documents;
+      final TreeMap<String, BitSet> words;
+
+      SearchIndex(Entry[] documents, TreeMap<String, BitSet> words) {
+         this.documents = documents;
+         this.words = words;
+      }
+   }
+
+   /**
+    * The counts of the files of a scan.
+    */
+   public static class ScanResult {
+      private int probed;
+      private int failed;
+      private int timedOut;
+      private int unchanged;
+      private int removed;
+
+      private void count(Status status) {
+         probed++;
+         if (status == Status.FAILED) {
+            failed++;
+         } else if (status == Status.TIMED_OUT) {
+            timedOut++;
+         }
+      }
+
+      public int getProbed() {
+         return probed;
+      }
+
+      public int getFailed() {
+         return failed;
+      }
+
+      public int getTimedOut() {
+         return timedOut;
+      }
+
+      public int getUnchanged() {
+         return unchanged;
+      }
+
+      public int getRemoved() {
+         return removed;
+      }
+
+      @Override
+      public String toString() {
+         return String.format("%d files probed (%d failed, %d timed out), %d unchanged, %d removed",
+                 probed, failed, timedOut, unchanged, removed);
+      }
+   }
+
+   /**
+    * A media file of the library. The tags are null when unknown.
+    */
+   public static class Entry {
+      final Path path;
+      final long size;
+      final long modified;
+      String title;
+      String artist;
+      String album;
+      /** Duration in milliseconds or -1 */
+      long duration = -1;
+      /** The video size, 0 for audio files */
+      int width;
+      int height;
+      /** Video frames per second or 0 if unknown, not stored in the index */
+      double frameRate;
+      Status status = Status.FAILED;
+
+      Entry(Path path, long size, long modified) {
+         this.path = path;
+         this.size = size;
+         this.modified = modified;
+      }
+
+      public Path getPath() {
+         return path;
+      }
+
+      /**
+       * @return String the URL of the file for a Media.
+       */
+      public String getUrl() {
+         return path.toUri().toString();
+      }
+
+      public String getTitle() {
+         return title;
+      }
+
+      public String getArtist() {
+         return artist;
+      }
+
+      public String getAlbum() {
+         return album;
+      }
+
+      /**
+       * @return the duration in milliseconds or -1 if unknown.
+       */
+      public long getDuration() {
+         return duration;
+      }
+
+      public int getWidth() {
+         return width;
+      }
+
+      public int getHeight() {
+         return height;
+      }
+
+      /**
+       * @return the video's frames per second or 0 if unknown.
+       */
+      public double getFrameRate() {
+         return frameRate;
+      }
+
+      public Status getStatus() {
+         return status;
+      }
+
+      private String searchText() {
+         StringBuilder text = new StringBuilder(path.getFileName().toString());
+         for (String tag : new String[] {title, artist, album}) {
+            if (tag != null) {
+               text.append(' ').append(tag);
+            }
+         }
+         return text.toString();
+      }
+
+      private void write(DataOutputStream out) throws IOException {
+         out.writeUTF(path.toString());
+         out.writeLong(size);
+         out.writeLong(modified);
+         out.writeUTF(title != null ? title : "");
+         out.writeUTF(artist != null ? artist : "");
+         out.writeUTF(album != null ? album : "");
+         out.writeLong(duration);
+         out.writeInt(width);
+         out.writeInt(height);
+         out.writeByte(status.ordinal());
+      }
+
+      private static Entry read(DataInputStream in) throws IOException {
+         Entry entry = new Entry(Paths.get(in.readUTF()), in.readLong(), in.readLong());
+         entry.title = emptyToNull(in.readUTF());
+         entry.artist = emptyToNull(in.readUTF());
+         entry.album = emptyToNull(in.readUTF());
+         entry.duration = in.readLong();
+         entry.width = in.readInt();
+         entry.height = in.readInt();
+         entry.status = Status.values()[in.readByte()];
+         return entry;
+      }
+
+      private static String emptyToNull(String text) {
+         return text.isEmpty() ? null : text;
+      }
+
+      @Override
+      public String toString() {
+         StringBuilder text = new StringBuilder();
+         if (artist != null) {
+            text.append(artist).append(" - ");
+         }
+         text.append(title != null ? title : path.getFileName().toString());
+         if (duration >= 0) {
+            long seconds = duration / 1000;
+            text.append(String.format("  %d:%02d", seconds / 60, seconds % 60));
+         }
+         if (width > 0) {
+            text.append("  ").append(width).append('x').append(height);
+         }
+         return text.toString();
+      }
+   }
+}
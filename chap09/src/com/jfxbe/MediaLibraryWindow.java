@@ -0,0 +1,168 @@
+package com.jfxbe;
+
+import javafx.concurrent.Task;
+import javafx.geometry.Insets;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.control.SelectionMode;
+import javafx.scene.control.TextField;
+import javafx.scene.input.KeyCode;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.stage.DirectoryChooser;
+import javafx.stage.Stage;
+import javafx.stage.Window;
+
+import java.io.File;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * A window to search the media library and to add folders to it.
+ * Loading the index and scanning folders run on background threads,
+ * each key typed searches the in-memory index.
+ *
+ * Double clicking or pressing enter plays the selected files.
+ */
+public class MediaLibraryWindow extends Stage {
+
+   private final MediaLibrary library;
+   private final Consumer<List<String>> onPlay;
+   private final TextField searchField = new TextField();
+   private final ListView<MediaLibrary.Entry> results = new ListView<>();
+   private final Label status = new Label();
+   private Task<MediaLibrary.ScanResult> scanTask;
+
+   /**
+    * @param owner the player's window.
+    * @param library the library to search.
+    * @param onPlay called with the URLs of the files to play.
+    */
+   public MediaLibraryWindow(Window owner, MediaLibrary library,
+                             Consumer<List<String>> onPlay) {
+      this.library = library;
+      this.onPlay = onPlay;
+      initOwner(owner);
+      setTitle("Media Library");
+
+      searchField.setPromptText("Search titles, artists, albums and file names");
+      searchField.textProperty().addListener(observable -> search());
+      HBox.setHgrow(searchField, Priority.ALWAYS);
+      Button addButton = new Button("Add Folder...");
+      addButton.setOnAction(actionEvent -> addFolder());
+      HBox searchBar = new HBox(5, searchField, addButton);
+      searchBar.setPadding(new Insets(5));
+
+      results.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+      results.setPlaceholder(new Label("Add a folder to find its media files"));
+      results.setOnMouseClicked(mouseEvent -> {
+         if (mouseEvent.getClickCount() == 2) {
+            playSelected();
+         }
+      });
+      results.setOnKeyPressed(keyEvent -> {
+         if (keyEvent.getCode() == KeyCode.ENTER) {
+            playSelected();
+         }
+      });
+      status.setPadding(new Insets(3, 5, 3, 5));
+
+      BorderPane root = new BorderPane(results, searchBar, null, status, null);
+      setScene(new Scene(root, 460, 380));
+
+      status.setText("Loading the library");
+      Task<Void> loadTask = new Task<Void>() {
+         @Override
+         protected Void call() throws Exception {
+            library.load();
+            return null;
+         }
+      };
+      loadTask.setOnSucceeded(workerStateEvent -> search());
+      loadTask.setOnFailed(workerStateEvent -> status.setText(
+              "Unable to read the library: " + loadTask.getException().getMessage()));
+      runInBackground(loadTask);
+   }
+
+   private void search() {
+      List<MediaLibrary.Entry> found = library.search(searchField.getText());
+      results.getItems().setAll(found);
+      if (scanTask == null) {
+         status.setText(found.size() + " of " + library.size() + " files");
+      }
+   }
+
+   private void playSelected() {
+      List<String> urls = results.getSelectionModel()
+                                 .getSelectedItems()
+                                 .stream()
+                                 .map(MediaLibrary.Entry::getUrl)
+                                 .collect(Collectors.toList());
+      if (!urls.isEmpty()) {
+         onPlay.accept(urls);
+      }
+   }
+
+   /**
+    * Scans a folder chosen by the user, replacing a scan in progress.
+    */
+   private void addFolder() {
+      DirectoryChooser chooser = new DirectoryChooser();
+      chooser.setTitle("Add a folder to the media library");
+      File folder = chooser.showDialog(this);
+      if (folder == null) {
+         return;
+      }
+      if (scanTask != null) {
+         scanTask.cancel();
+      }
+      Task<MediaLibrary.ScanResult> task = new Task<MediaLibrary.ScanResult>() {
+         @Override
+         protected MediaLibrary.ScanResult call() throws Exception {
+            MediaLibrary.ScanResult result = library.scan(folder.toPath(),
+                    this::isCancelled, progress -> updateProgress(progress, 1));
+            library.save();
+            return result;
+         }
+      };
+      scanTask = task;
+      status.setText("Scanning " + folder.getName());
+      task.progressProperty().addListener( (observable, oldValue, newValue) -> {
+         if (task == scanTask) {
+            status.setText(String.format("Scanning %s %.0f%%", folder.getName(),
+                    Math.max(0, newValue.doubleValue()) * 100));
+         }
+      });
+      task.setOnSucceeded(workerStateEvent -> {
+         if (task == scanTask) {
+            scanTask = null;
+            search();
+            status.setText(task.getValue() + ", " + library.size() + " files");
+         }
+      });
+      task.setOnFailed(workerStateEvent -> {
+         if (task == scanTask) {
+            scanTask = null;
+            status.setText("Unable to scan " + folder + ": " +
+                    task.getException().getMessage());
+         }
+      });
+      task.setOnCancelled(workerStateEvent -> {
+         if (task == scanTask) {
+            scanTask = null;
+            search();
+         }
+      });
+      runInBackground(task);
+   }
+
+   private static void runInBackground(Task<?> task) {
+      Thread thread = new Thread(task, "media-library-window");
+      thread.setDaemon(true);
+      thread.start();
+   }
+}
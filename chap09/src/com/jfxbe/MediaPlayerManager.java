@@ -0,0 +1,237 @@
+package com.jfxbe;
+
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.ReadOnlyIntegerWrapper;
+import javafx.scene.media.Media;
+import javafx.scene.media.MediaPlayer;
+import javafx.scene.media.MediaPlayer.Status;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Owns the application's MediaPlayer instances. Each player holds
+ * native decoder resources until it is disposed, so players are
+ * created and released through the manager which disposes them.
+ *
+ * The number of live players is capped. A holder which can do without
+ * its player, such as a preloaded or a preview player, creates it with
+ * an eviction handler: creating a player beyond the cap disposes the
+ * least recently used of these players that isn't playing, calling
+ * its handler first so the holder drops it. Other players are never
+ * disposed until released (a player can also be pinned once it is in
+ * use). When only those are left the cap is exceeded and a warning is
+ * logged, so an application that forgets to release players shows up
+ * in the log. The counts of live, created, disposed and evicted
+ * players are exposed for monitoring.
+ *
+ * Must be used on the JavaFX application thread.
+ */
+public class MediaPlayerManager {
+   private final static Logger LOGGER = Logger
+           .getLogger(MediaPlayerManager.class.getName());
+
+   /** Live players allowed, the current and the preloaded player fit twice */
+   public static final int DEFAULT_MAX_LIVE_PLAYERS = 4;
+
+   private static MediaPlayerManager instance;
+
+   private final int maxLivePlayers;
+
+   /** Live players, the least recently used first */
+   private final Set<MediaPlayer> players = new LinkedHashSet<>();
+
+   /** The eviction handlers of the players which may be evicted */
+   private final Map<MediaPlayer, Runnable> evictionHandlers = new HashMap<>();
+   private final ReadOnlyIntegerWrapper livePlayers =
+           new ReadOnlyIntegerWrapper(this, "livePlayers", 0);
+   private long createdCount;
+   private long disposedCount;
+   private long evictedCount;
+
+   /**
+    * Returns the application's shared manager.
+    * @return MediaPlayerManager the shared instance.
+    */
+   public static MediaPlayerManager getInstance() {
+      if (instance == null) {
+         instance = new MediaPlayerManager(DEFAULT_MAX_LIVE_PLAYERS);
+      }
+      return instance;
+   }
+
+   /**
+    * @param maxLivePlayers the most players alive at a time.
+    */
+   public MediaPlayerManager(int maxLivePlayers) {
+      if (maxLivePlayers < 1) {
+         throw new IllegalArgumentException("At least one player must be allowed");
+      }
+      this.maxLivePlayers = maxLivePlayers;
+   }
+
+   /**
+    * Creates a player for the media at a URL which is never evicted,
+    * it is disposed when released.
+    * @param url the URL of the media.
+    * @return MediaPlayer the new player.
+    * @throws javafx.scene.media.MediaException if the media can't be played.
+    */
+   public MediaPlayer create(String url) {
+      return create(url, null);
+   }
+
+   /**
+    * Creates a player for the media at a URL, evicting the least
+    * recently used evictable player when the cap is reached.
+    * @param url the URL of the media.
+    * @param onEvicted called before the new player is disposed to stay
+    *                  under the cap, the holder must drop the player.
+    *                  Null if the player must not be evicted.
+    * @return MediaPlayer the new player.
+    * @throws javafx.scene.media.MediaException if the media can't be played.
+    */
+   public MediaPlayer create(String url, Runnable onEvicted) {
+      Media media = new Media(url);
+      while (players.size() >= maxLivePlayers && evictOne()) {
+         // evicted the least recently used evictable player
+      }
+      if (players.size() >= maxLivePlayers) {
+         LOGGER.log(Level.WARNING, "{0} players held, over the cap of {1}",
+                 new Object[] {players.size(), maxLivePlayers});
+      }
+      MediaPlayer player = new MediaPlayer(media);
+      players.add(player);
+      if (onEvicted != null) {
+         evictionHandlers.put(player, onEvicted);
+      }
+      createdCount++;
+      livePlayers.set(players.size());
+      LOGGER.log(Level.FINE, "created player for {0}, {1} live", new Object[] {
+              url, players.size()});
+      return player;
+   }
+
+   /**
+    * Marks a player as used, such as when it starts playing, so it is
+    * evicted last.
+    * @param player a player created by this manager.
+    */
+   public void touch(MediaPlayer player) {
+      if (players.remove(player)) {
+         players.add(player);
+      }
+   }
+
+   /**
+    * Keeps a player created with an eviction handler from being
+    * evicted, such as when a preloaded player starts playing.
+    * @param player a player created by this manager.
+    */
+   public void pin(MediaPlayer player) {
+      evictionHandlers.remove(player);
+   }
+
+   /**
+    * Stops and disposes a player, releasing its native resources.
+    * @param player a player created by this manager, may be null.
+    */
+   public void release(MediaPlayer player) {
+      if (player == null || !players.remove(player)) {
+         return;
+      }
+      evictionHandlers.remove(player);
+      dispose(player);
+   }
+
+   /**
+    * Disposes all players, such as when the application stops.
+    */
+   public void releaseAll() {
+      for (MediaPlayer player : new ArrayList<>(players)) {
+         release(player);
+      }
+   }
+
+   /**
+    * Disposes the least recently used evictable player not playing,
+    * telling its holder first.
+    * @return false if no player could be evicted.
+    */
+   private boolean evictOne() {
+      MediaPlayer evicted = null;
+      for (MediaPlayer player : players) {
+         if (evictionHandlers.containsKey(player) && player.getStatus() != Status.PLAYING) {
+            evicted = player;
+            break;
+         }
+      }
+      if (evicted == null) {
+         return false;
+      }
+      players.remove(evicted);
+      Runnable onEvicted = evictionHandlers.remove(evicted);
+      evictedCount++;
+      LOGGER.log(Level.INFO, "evicting player for {0}, over the cap of {1}",
+              new Object[] {evicted.getMedia().getSource(), maxLivePlayers});
+      onEvicted.run();
+      dispose(evicted);
+      return true;
+   }
+
+   private void dispose(MediaPlayer player) {
+      player.setOnReady(null);
+      player.setOnPlaying(null);
+      player.setOnPaused(null);
+      player.setOnEndOfMedia(null);
+      player.setOnError(null);
+      player.setOnMarker(null);
+      player.setAudioSpectrumListener(null);
+      player.stop();
+      player.dispose();
+      disposedCount++;
+      livePlayers.set(players.size());
+   }
+
+   /**
+    * The number of live (not disposed) players.
+    * @return ReadOnlyIntegerProperty the live players property.
+    */
+   public ReadOnlyIntegerProperty livePlayersProperty() {
+      return livePlayers.getReadOnlyProperty();
+   }
+
+   public int getLivePlayerCount() {
+      return livePlayers.get();
+   }
+
+   public int getMaxLivePlayers() {
+      return maxLivePlayers;
+   }
+
+   /** @return players created since the application started. */
+   public long getCreatedCount() {
+      return createdCount;
+   }
+
+   /** @return players disposed since the application started. */
+   public long getDisposedCount() {
+      return disposedCount;
+   }
+
+   /** @return players disposed because the cap was reached. */
+   public long getEvictedCount() {
+      return evictedCount;
+   }
+
+   @Override
+   public String toString() {
+      return String.format("%d live players (max %d), %d created, %d disposed, %d evicted",
+              getLivePlayerCount(), maxLivePlayers, createdCount, disposedCount, evictedCount);
+   }
+}
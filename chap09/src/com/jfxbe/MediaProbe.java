@@ -0,0 +1,725 @@
+package com.jfxbe;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/**
+ * Reads the metadata (title, artist, album, duration, video size and
+ * frame rate) of a media file from its headers, without decoding or
+ * playing it. Reading a JavaFX Media's metadata needs a MediaPlayer,
+ * which is far too heavy to scan thousands of files.
+ *
+ * Supports the containers JavaFX plays: MP3 (ID3v2 and ID3v1 tags,
+ * Xing/VBRI or constant bitrate duration), WAV, AIFF, MP4/M4A/M4V
+ * and FLV. Only the parts of a file holding the headers are read,
+ * using a FileChannel which stops reading when its thread is
+ * interrupted, such as after a timeout.
+ */
+public class MediaProbe {
+
+   /** Tags longer than this are cut */
+   private static final int MAX_TAG_LENGTH = 1024;
+
+   /** Bytes searched for the first MP3 frame */
+   private static final int MP3_SYNC_SEARCH = 64 * 1024;
+
+   /** Limits the chunks and atoms read from broken files */
+   private static final int MAX_CHUNKS = 1000;
+
+   /** Largest chunk or atom read as a whole, such as a tag */
+   private static final int MAX_HEADER_BYTES = 256 * 1024;
+
+   // MP3 bitrates in kbit/s: MPEG-1 layer I, II, III, MPEG-2 layer I, II and III
+   private static final int[][] BITRATES = {
+      {0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448},
+      {0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384},
+      {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320},
+      {0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256},
+      {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160}
+   };
+   private static final int[] SAMPLE_RATES = {44100, 48000, 32000};
+
+   // MP4 metadata item types, 0xA9 (the copyright sign) and nam, ART or alb
+   private static final int ITEM_TITLE = 0xA96E616D;
+   private static final int ITEM_ARTIST = 0xA9415254;
+   private static final int ITEM_ALBUM = 0xA9616C62;
+
+   private MediaProbe() {
+   }
+
+   /**
+    * Reads a media file's metadata into a library entry.
+    * @param entry the entry of the file, its tags are set.
+    * @throws IOException if the file can't be read or its headers are
+    *  malformed.
+    */
+   public static void probe(MediaLibrary.Entry entry) throws IOException {
+      String name = entry.getPath().getFileName().toString().toLowerCase(Locale.ROOT);
+      String extension = name.substring(name.lastIndexOf('.') + 1);
+      try (FileChannel channel = FileChannel.open(entry.getPath(), StandardOpenOption.READ)) {
+         switch (extension) {
+            case "mp3":
+               probeMp3(channel, entry);
+               break;
+            case "wav":
+               probeWav(channel, entry);
+               break;
+            case "aif":
+            case "aiff":
+               probeAiff(channel, entry);
+               break;
+            case "mp4":
+            case "m4a":
+            case "m4v":
+               probeMp4(channel, 0, channel.size(), 0, entry);
+               break;
+            case "flv":
+            case "fxm":
+               probeFlv(channel, entry);
+               break;
+            default:
+               throw new IOException("Unsupported media file " + name);
+         }
+      } catch (BufferUnderflowException | IllegalArgumentException |
+               IndexOutOfBoundsException e) {
+         throw new IOException("Malformed headers in " + name, e);
+      }
+   }
+
+   // ---------------------------------------------------------------- MP3
+
+   private static void probeMp3(FileChannel channel, MediaLibrary.Entry entry)
+           throws IOException {
+      long audioStart = 0;
+      ByteBuffer header = read(channel, 0, 10);
+      if (header.remaining() == 10 && header.get(0) == 'I' &&
+          header.get(1) == 'D' && header.get(2) == '3') {
+         int version = header.get(3);
+         int flags = header.get(5);
+         int tagSize = syncSafe(header, 6);
+         parseId3v2(read(channel, 10, Math.min(tagSize, MAX_HEADER_BYTES)),
+                 version, flags, entry);
+         // a footer follows the tag when flagged
+         audioStart = 10 + tagSize + ((flags & 0x10) != 0 ? 10 : 0);
+      }
+      if (entry.title == null && entry.artist == null && channel.size() >= 128) {
+         parseId3v1(read(channel, channel.size() - 128, 128), entry);
+      }
+      if (entry.duration < 0) {
+         entry.duration = mp3Duration(channel, audioStart);
+      }
+   }
+
+   private static void parseId3v2(ByteBuffer tag, int version, int flags,
+                                  MediaLibrary.Entry entry) {
+      if (version < 2 || version > 4) {
+         return;
+      }
+      if ((flags & 0x80) != 0 && version < 4) {
+         tag = removeUnsynchronisation(tag);
+      }
+      if ((flags & 0x40) != 0 && version > 2) {
+         // skip the extended header
+         int size = version == 3 ? tag.getInt(0) + 4 : syncSafe(tag, 0);
+         tag.position(size);
+      }
+      int idLength = version == 2 ? 3 : 4;
+      int frameHeader = version == 2 ? 6 : 10;
+      while (tag.remaining() >= frameHeader && tag.get(tag.position()) != 0) {
+         byte[] idBytes = new byte[idLength];
+         tag.get(idBytes);
+         String id = new String(idBytes, StandardCharsets.ISO_8859_1);
+         int size;
+         if (version == 2) {
+            size = (tag.get() & 0xFF) << 16 | (tag.get() & 0xFF) << 8 | (tag.get() & 0xFF);
+         } else {
+            size = version == 4 ? syncSafe(tag, tag.position()) : tag.getInt(tag.position());
+            tag.position(tag.position() + 6);
+         }
+         if (size < 0 || size > tag.remaining()) {
+            return;
+         }
+         byte[] content = new byte[size];
+         tag.get(content);
+         switch (id) {
+            case "TIT2":
+            case "TT2":
+               entry.title = textFrame(content);
+               break;
+            case "TPE1":
+            case "TP1":
+               entry.artist = textFrame(content);
+               break;
+            case "TALB":
+            case "TAL":
+               entry.album = textFrame(content);
+               break;
+            case "TLEN":
+            case "TLE": {
+               // otherwise computed from the frames
+               String length = textFrame(content);
+               if (length != null && length.matches("\\d{1,12}")) {
+                  entry.duration = Long.parseLong(length);
+               }
+               break;
+            }
+            default:
+               break;
+         }
+      }
+   }
+
+   /**
+    * Decodes an ID3v2 text frame, the first byte tells the encoding.
+    */
+   private static String textFrame(byte[] content) {
+      if (content.length < 2) {
+         return null;
+      }
+      Charset charset;
+      switch (content[0]) {
+         case 1:
+            charset = StandardCharsets.UTF_16;
+            break;
+         case 2:
+            charset = StandardCharsets.UTF_16BE;
+            break;
+         case 3:
+            charset = StandardCharsets.UTF_8;
+            break;
+         default:
+            charset = StandardCharsets.ISO_8859_1;
+            break;
+      }
+      return tagText(new String(content, 1, content.length - 1, charset));
+   }
+
+   private static void parseId3v1(ByteBuffer tag, MediaLibrary.Entry entry) {
+      if (tag.remaining() < 128 || tag.get(0) != 'T' || tag.get(1) != 'A' ||
+          tag.get(2) != 'G') {
+         return;
+      }
+      entry.title = latin1(tag, 3, 30);
+      entry.artist = latin1(tag, 33, 30);
+      entry.album = latin1(tag, 63, 30);
+   }
+
+   /**
+    * Computes the duration from the first frame, using the frame count
+    * of a Xing or VBRI header, or the bitrate for constant bitrate files.
+    * @return the duration in milliseconds or -1 if no frame was found.
+    */
+   private static long mp3Duration(FileChannel channel, long audioStart) throws IOException {
+      ByteBuffer frames = read(channel, audioStart, MP3_SYNC_SEARCH);
+      for (int i = 0; i + 4 <= frames.limit(); i++) {
+         if ((frames.get(i) & 0xFF) != 0xFF || (frames.get(i + 1) & 0xE0) != 0xE0) {
+            continue;
+         }
+         int b1 = frames.get(i + 1) & 0xFF;
+         int b2 = frames.get(i + 2) & 0xFF;
+         int b3 = frames.get(i + 3) & 0xFF;
+         int versionBits = (b1 >> 3) & 3;   // 3 MPEG-1, 2 MPEG-2, 0 MPEG-2.5
+         int layerBits = (b1 >> 1) & 3;     // 3 layer I, 2 layer II, 1 layer III
+         int bitrateIndex = b2 >> 4;
+         int sampleRateIndex = (b2 >> 2) & 3;
+         if (versionBits == 1 || layerBits == 0 || bitrateIndex == 0 ||
+             bitrateIndex == 15 || sampleRateIndex == 3) {
+            continue;
+         }
+         boolean mpeg1 = versionBits == 3;
+         int layer = 4 - layerBits;
+         int sampleRate = SAMPLE_RATES[sampleRateIndex] >> (mpeg1 ? 0 : versionBits == 2 ? 1 : 2);
+         int bitrate = BITRATES[mpeg1 ? layer - 1 : Math.min(layer, 2) + 2][bitrateIndex];
+         int samplesPerFrame = layer == 1 ? 384 : layer == 3 && !mpeg1 ? 576 : 1152;
+         boolean mono = (b3 >> 6) == 3;
+
+         // a Xing (or Info) header follows the side information
+         int xing = i + 4 + (mpeg1 ? (mono ? 17 : 32) : (mono ? 9 : 17));
+         if (xing + 12 <= frames.limit() && (ascii(frames, xing, "Xing") ||
+                                             ascii(frames, xing, "Info"))) {
+            if ((frames.getInt(xing + 4) & 1) != 0) {
+               long frameCount = frames.getInt(xing + 8) & 0xFFFFFFFFL;
+               return frameCount * samplesPerFrame * 1000 / sampleRate;
+            }
+         }
+         int vbri = i + 36;
+         if (vbri + 18 <= frames.limit() && ascii(frames, vbri, "VBRI")) {
+            long frameCount = frames.getInt(vbri + 14) & 0xFFFFFFFFL;
+            return frameCount * samplesPerFrame * 1000 / sampleRate;
+         }
+         long audioBytes = channel.size() - audioStart - i;
+         return audioBytes * 8 / bitrate;
+      }
+      return -1;
+   }
+
+   // ---------------------------------------------------------- WAV, AIFF
+
+   private static void probeWav(FileChannel channel, MediaLibrary.Entry entry)
+           throws IOException {
+      ByteBuffer riff = read(channel, 0, 12);
+      if (riff.remaining() < 12 || !ascii(riff, 0, "RIFF") || !ascii(riff, 8, "WAVE")) {
+         throw new IOException("Not a WAVE file");
+      }
+      long byteRate = 0;
+      long dataSize = -1;
+      long position = 12;
+      for (int chunks = 0; chunks < MAX_CHUNKS && position + 8 <= channel.size(); chunks++) {
+         ByteBuffer chunk = read(channel, position, 8).order(ByteOrder.LITTLE_ENDIAN);
+         long size = chunk.getInt(4) & 0xFFFFFFFFL;
+         if (ascii(chunk, 0, "fmt ")) {
+            byteRate = read(channel, position + 8, 16).order(ByteOrder.LITTLE_ENDIAN)
+                    .getInt(8) & 0xFFFFFFFFL;
+         } else if (ascii(chunk, 0, "data")) {
+            dataSize = size;
+         } else if (ascii(chunk, 0, "LIST")) {
+            ByteBuffer list = read(channel, position + 8, (int) Math.min(size, MAX_HEADER_BYTES))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (list.remaining() >= 4 && ascii(list, 0, "INFO")) {
+               parseRiffInfo(list, entry);
+            }
+         }
+         // chunks are padded to an even size
+         position += 8 + size + (size & 1);
+      }
+      if (byteRate > 0 && dataSize >= 0) {
+         entry.duration = dataSize * 1000 / byteRate;
+      }
+   }
+
+   private static void parseRiffInfo(ByteBuffer list, MediaLibrary.Entry entry) {
+      int position = 4;
+      while (position + 8 <= list.limit()) {
+         int size = list.getInt(position + 4);
+         if (size < 0 || position + 8 + size > list.limit()) {
+            return;
+         }
+         String text = latin1(list, position + 8, size);
+         if (ascii(list, position, "INAM")) {
+            entry.title = text;
+         } else if (ascii(list, position, "IART")) {
+            entry.artist = text;
+         } else if (ascii(list, position, "IPRD")) {
+            entry.album = text;
+         }
+         position += 8 + size + (size & 1);
+      }
+   }
+
+   private static void probeAiff(FileChannel channel, MediaLibrary.Entry entry)
+           throws IOException {
+      ByteBuffer form = read(channel, 0, 12);
+      if (form.remaining() < 12 || !ascii(form, 0, "FORM") ||
+          !(ascii(form, 8, "AIFF") || ascii(form, 8, "AIFC"))) {
+         throw new IOException("Not an AIFF file");
+      }
+      long position = 12;
+      for (int chunks = 0; chunks < MAX_CHUNKS && position + 8 <= channel.size(); chunks++) {
+         ByteBuffer chunk = read(channel, position, 8);
+         long size = chunk.getInt(4) & 0xFFFFFFFFL;
+         if (ascii(chunk, 0, "COMM")) {
+            ByteBuffer comm = read(channel, position + 8, 18);
+            long frames = comm.getInt(2) & 0xFFFFFFFFL;
+            double sampleRate = extended(comm, 8);
+            if (sampleRate > 0) {
+               entry.duration = (long) (frames * 1000 / sampleRate);
+            }
+         } else if (ascii(chunk, 0, "NAME") || ascii(chunk, 0, "AUTH")) {
+            int length = (int) Math.min(size, MAX_TAG_LENGTH);
+            String text = latin1(read(channel, position + 8, length), 0, length);
+            if (ascii(chunk, 0, "NAME")) {
+               entry.title = text;
+            } else {
+               entry.artist = text;
+            }
+         }
+         position += 8 + size + (size & 1);
+      }
+   }
+
+   /**
+    * Converts an 80 bit IEEE 754 extended precision number (the AIFF
+    * sample rate) to a double.
+    */
+   private static double extended(ByteBuffer buffer, int offset) {
+      int exponent = buffer.getShort(offset) & 0x7FFF;
+      long mantissa = buffer.getLong(offset + 2);
+      // keep the top 53 bits of the unsigned mantissa
+      return Math.scalb((double) (mantissa >>> 11), exponent - 16383 - 52);
+   }
+
+   // ---------------------------------------------------------------- MP4
+
+   /**
+    * Walks the atoms (boxes) of a range, descending into the ones
+    * holding the movie header, track headers and metadata items.
+    */
+   private static void probeMp4(FileChannel channel, long start, long end, int depth,
+                                MediaLibrary.Entry entry) throws IOException {
+      long position = start;
+      for (int atoms = 0; atoms < MAX_CHUNKS && position + 8 <= end; atoms++) {
+         ByteBuffer header = read(channel, position, 16);
+         long size = header.getInt(0) & 0xFFFFFFFFL;
+         int type = header.getInt(4);
+         int headerSize = 8;
+         if (size == 1 && header.remaining() == 16) {
+            size = header.getLong(8);
+            headerSize = 16;
+         } else if (size == 0) {
+            size = end - position;
+         }
+         if (size < headerSize || position + size > end) {
+            return;
+         }
+         long contentStart = position + headerSize;
+         int contentSize = (int) Math.min(size - headerSize, MAX_HEADER_BYTES);
+         String name = fourCC(type);
+         switch (name) {
+            case "trak":
+               if (depth < 8) {
+                  probeMp4(channel, contentStart, position + size, depth + 1, entry);
+                  double frameRate = mp4FrameRate(channel, contentStart, position + size);
+                  if (frameRate > 0) {
+                     entry.frameRate = frameRate;
+                  }
+               }
+               break;
+            case "moov":
+            case "udta":
+            case "ilst":
+               if (depth < 8) {
+                  probeMp4(channel, contentStart, position + size, depth + 1, entry);
+               }
+               break;
+            case "meta":
+               // a full box, the children follow the version and flags
+               if (depth < 8) {
+                  probeMp4(channel, contentStart + 4, position + size, depth + 1, entry);
+               }
+               break;
+            case "mvhd": {
+               ByteBuffer mvhd = read(channel, contentStart, Math.min(contentSize, 32));
+               boolean version1 = mvhd.get(0) == 1;
+               long timescale = mvhd.getInt(version1 ? 20 : 12) & 0xFFFFFFFFL;
+               long duration = version1 ? mvhd.getLong(24) : mvhd.getInt(16) & 0xFFFFFFFFL;
+               if (timescale > 0) {
+                  entry.duration = duration * 1000 / timescale;
+               }
+               break;
+            }
+            case "tkhd": {
+               ByteBuffer tkhd = read(channel, contentStart, Math.min(contentSize, 96));
+               int sizeOffset = tkhd.get(0) == 1 ? 88 : 76;
+               // 16.16 fixed point, audio tracks have no size
+               int width = tkhd.getInt(sizeOffset) >>> 16;
+               int height = tkhd.getInt(sizeOffset + 4) >>> 16;
+               if (width * height > entry.width * entry.height) {
+                  entry.width = width;
+                  entry.height = height;
+               }
+               break;
+            }
+            default:
+               if (type == ITEM_TITLE || type == ITEM_ARTIST || type == ITEM_ALBUM) {
+                  String text = mp4ItemText(read(channel, contentStart,
+                          Math.min(contentSize, MAX_TAG_LENGTH + 16)));
+                  if (type == ITEM_TITLE) {
+                     entry.title = text;
+                  } else if (type == ITEM_ARTIST) {
+                     entry.artist = text;
+                  } else {
+                     entry.album = text;
+                  }
+               }
+               break;
+         }
+         position += size;
+      }
+   }
+
+   /**
+    * The frame rate of a video track: its samples (frames) per second
+    * from the media header's timescale and the sample durations table.
+    * @return double the frames per second or 0 if not a video track.
+    */
+   private static double mp4FrameRate(FileChannel channel, long start, long end)
+           throws IOException {
+      long[] mdia = findAtom(channel, start, end, "mdia");
+      long[] hdlr = mdia != null ? findAtom(channel, mdia[0], mdia[1], "hdlr") : null;
+      if (hdlr == null || !ascii(read(channel, hdlr[0], 12), 8, "vide")) {
+         return 0;
+      }
+      long[] mdhd = findAtom(channel, mdia[0], mdia[1], "mdhd");
+      long[] minf = findAtom(channel, mdia[0], mdia[1], "minf");
+      long[] stbl = minf != null ? findAtom(channel, minf[0], minf[1], "stbl") : null;
+      long[] stts = stbl != null ? findAtom(channel, stbl[0], stbl[1], "stts") : null;
+      if (mdhd == null || stts == null) {
+         return 0;
+      }
+      ByteBuffer header = read(channel, mdhd[0], 24);
+      long timescale = header.getInt(header.get(0) == 1 ? 20 : 12) & 0xFFFFFFFFL;
+
+      // entries of sample count and sample duration
+      ByteBuffer table = read(channel, stts[0], (int) Math.min(stts[1] - stts[0], MAX_HEADER_BYTES));
+      int entries = Math.min(table.getInt(4), (table.limit() - 8) / 8);
+      long samples = 0;
+      long duration = 0;
+      for (int i = 0; i < entries; i++) {
+         long count = table.getInt(8 + i * 8) & 0xFFFFFFFFL;
+         samples += count;
+         duration += count * (table.getInt(12 + i * 8) & 0xFFFFFFFFL);
+      }
+      return duration > 0 ? (double) samples * timescale / duration : 0;
+   }
+
+   /**
+    * Finds a child atom having 32 bit sizes.
+    * @return long[] the start and end of its content or null.
+    */
+   private static long[] findAtom(FileChannel channel, long start, long end, String name)
+           throws IOException {
+      long position = start;
+      for (int atoms = 0; atoms < MAX_CHUNKS && position + 8 <= end; atoms++) {
+         ByteBuffer header = read(channel, position, 8);
+         long size = header.getInt(0) & 0xFFFFFFFFL;
+         if (size < 8 || position + size > end) {
+            return null;
+         }
+         if (ascii(header, 4, name)) {
+            return new long[] {position + 8, position + size};
+         }
+         position += size;
+      }
+      return null;
+   }
+
+   /**
+    * Reads the UTF-8 text of an item's data atom.
+    */
+   private static String mp4ItemText(ByteBuffer item) {
+      if (item.remaining() < 16 || !ascii(item, 4, "data")) {
+         return null;
+      }
+      int size = Math.min(item.getInt(0), item.limit());
+      byte[] text = new byte[Math.max(0, size - 16)];
+      item.position(16);
+      item.get(text);
+      return tagText(new String(text, StandardCharsets.UTF_8));
+   }
+
+   // ---------------------------------------------------------------- FLV
+
+   /**
+    * Reads the onMetaData script tag which FLV files start with.
+    */
+   private static void probeFlv(FileChannel channel, MediaLibrary.Entry entry)
+           throws IOException {
+      ByteBuffer header = read(channel, 0, 9);
+      if (header.remaining() < 9 || !ascii(header, 0, "FLV")) {
+         throw new IOException("Not an FLV file");
+      }
+      // the first tag follows the header and the first previous tag size
+      long tagStart = (header.getInt(5) & 0xFFFFFFFFL) + 4;
+      ByteBuffer tagHeader = read(channel, tagStart, 11);
+      if (tagHeader.remaining() < 11 || tagHeader.get(0) != 18) {
+         return;
+      }
+      int dataSize = (tagHeader.getInt(0) & 0xFFFFFF);
+      ByteBuffer script = read(channel, tagStart + 11, Math.min(dataSize, MAX_HEADER_BYTES));
+      if (!"onMetaData".equals(amfValue(script, 0, null))) {
+         return;
+      }
+      amfValue(script, 0, entry);
+   }
+
+   /**
+    * Reads an AMF0 value, the properties of the top level object or
+    * array are copied into the entry when one is given.
+    * @return the value if a number, boolean or string, otherwise null.
+    */
+   private static Object amfValue(ByteBuffer script, int depth, MediaLibrary.Entry entry) {
+      int type = script.get();
+      switch (type) {
+         case 0:
+            return script.getDouble();
+         case 1:
+            return script.get() != 0;
+         case 2:
+            return amfString(script, script.getShort() & 0xFFFF);
+         case 3:
+         case 8:
+            if (type == 8) {
+               // the approximate count of the array, the end marker counts
+               script.getInt();
+            }
+            while (true) {
+               int keyLength = script.getShort() & 0xFFFF;
+               if (keyLength == 0 && script.get(script.position()) == 9) {
+                  script.get();
+                  return null;
+               }
+               String key = amfString(script, keyLength);
+               if (depth > 8) {
+                  throw new IllegalArgumentException("AMF values nested too deep");
+               }
+               Object value = amfValue(script, depth + 1, null);
+               if (entry != null) {
+                  setFlvProperty(entry, key, value);
+               }
+            }
+         case 10: {
+            int count = script.getInt();
+            for (int i = 0; i < count; i++) {
+               if (depth > 8) {
+                  throw new IllegalArgumentException("AMF values nested too deep");
+               }
+               amfValue(script, depth + 1, null);
+            }
+            return null;
+         }
+         case 11:
+            script.position(script.position() + 10);
+            return null;
+         case 12:
+            return amfString(script, script.getInt());
+         case 5:
+         case 6:
+            return null;
+         default:
+            throw new IllegalArgumentException("Unsupported AMF type " + type);
+      }
+   }
+
+   private static void setFlvProperty(MediaLibrary.Entry entry, String key, Object value) {
+      if (value instanceof Double) {
+         double number = (Double) value;
+         switch (key) {
+            case "duration":
+               entry.duration = (long) (number * 1000);
+               break;
+            case "width":
+               entry.width = (int) number;
+               break;
+            case "height":
+               entry.height = (int) number;
+               break;
+            case "framerate":
+               entry.frameRate = number;
+               break;
+            default:
+               break;
+         }
+      } else if (value instanceof String) {
+         switch (key) {
+            case "title":
+               entry.title = tagText((String) value);
+               break;
+            case "artist":
+               entry.artist = tagText((String) value);
+               break;
+            case "album":
+               entry.album = tagText((String) value);
+               break;
+            default:
+               break;
+         }
+      }
+   }
+
+   private static String amfString(ByteBuffer script, int length) {
+      byte[] bytes = new byte[length];
+      script.get(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+   }
+
+   // ------------------------------------------------------------ helpers
+
+   /**
+    * Reads up to length bytes at a position, less at the end of the file.
+    * @return ByteBuffer the bytes read, big endian.
+    */
+   private static ByteBuffer read(FileChannel channel, long position, int length)
+           throws IOException {
+      ByteBuffer buffer = ByteBuffer.allocate(Math.max(0, length));
+      while (buffer.hasRemaining()) {
+         int read = channel.read(buffer, position + buffer.position());
+         if (read < 0) {
+            break;
+         }
+      }
+      buffer.flip();
+      return buffer;
+   }
+
+   private static int syncSafe(ByteBuffer buffer, int offset) {
+      return (buffer.get(offset) & 0x7F) << 21 | (buffer.get(offset + 1) & 0x7F) << 14 |
+             (buffer.get(offset + 2) & 0x7F) << 7 | (buffer.get(offset + 3) & 0x7F);
+   }
+
+   /**
+    * Restores the bytes of a tag written with ID3 unsynchronisation,
+    * which inserts a zero after each 0xFF.
+    */
+   private static ByteBuffer removeUnsynchronisation(ByteBuffer tag) {
+      ByteBuffer restored = ByteBuffer.allocate(tag.remaining());
+      byte previous = 0;
+      while (tag.hasRemaining()) {
+         byte b = tag.get();
+         if (!(previous == (byte) 0xFF && b == 0)) {
+            restored.put(b);
+         }
+         previous = b;
+      }
+      restored.flip();
+      return restored;
+   }
+
+   private static boolean ascii(ByteBuffer buffer, int offset, String text) {
+      if (offset + text.length() > buffer.limit()) {
+         return false;
+      }
+      for (int i = 0; i < text.length(); i++) {
+         if (buffer.get(offset + i) != text.charAt(i)) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private static String fourCC(int type) {
+      return new String(new byte[] {(byte) (type >> 24), (byte) (type >> 16),
+              (byte) (type >> 8), (byte) type}, StandardCharsets.ISO_8859_1);
+   }
+
+   private static String latin1(ByteBuffer buffer, int offset, int length) {
+      byte[] bytes = new byte[Math.min(length, buffer.limit() - offset)];
+      for (int i = 0; i < bytes.length; i++) {
+         bytes[i] = buffer.get(offset + i);
+      }
+      return tagText(new String(bytes, StandardCharsets.ISO_8859_1));
+   }
+
+   /**
+    * Cleans a tag value: the first of several zero separated values,
+    * trimmed and cut to MAX_TAG_LENGTH.
+    * @return the text or null if empty.
+    */
+   private static String tagText(String text) {
+      int end = text.indexOf('\0');
+      if (end >= 0) {
+         text = text.substring(0, end);
+      }
+      text = text.trim();
+      if (text.length() > MAX_TAG_LENGTH) {
+         text = text.substring(0, MAX_TAG_LENGTH);
+      }
+      return text.isEmpty() ? null : text;
+   }
+}
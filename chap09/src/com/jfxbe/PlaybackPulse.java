@@ -0,0 +1,110 @@
+package com.jfxbe;
+
+import javafx.animation.AnimationTimer;
+import javafx.beans.value.ChangeListener;
+import javafx.scene.media.MediaPlayer;
+import javafx.util.Duration;
+
+import java.util.function.Consumer;
+
+/**
+ * Applies a media player's time changes and seek requests once per
+ * frame (pulse). The player's current time may change many times
+ * between two frames, only the latest time is kept and handed to the
+ * time handler (updating a slider, a waveform...) on the next pulse.
+ *
+ * Seek requests, such as from dragging a slider, are coalesced: only
+ * the latest target is kept and the player seeks at most once every
+ * MIN_SEEK_INTERVAL, so scrubbing issues a bounded number of seeks and
+ * always ends at the last requested position.
+ *
+ * Must be used on the JavaFX application thread.
+ */
+public class PlaybackPulse extends AnimationTimer {
+
+   /** The shortest time between two seeks in nanoseconds (10 per second) */
+   public static final long MIN_SEEK_INTERVAL = 100_000_000L;
+
+   private final Consumer<Duration> onTime;
+   private final ChangeListener<Duration> timeListener;
+
+   private MediaPlayer player;
+   private Duration latestTime;
+   private boolean timeChanged;
+   private Duration seekTarget;
+   private long lastSeek;
+
+   private long timeChanges;
+   private long timeUpdates;
+   private long seekRequests;
+   private long seeks;
+
+   /**
+    * @param onTime called with the player's latest time, at most once per frame.
+    */
+   public PlaybackPulse(Consumer<Duration> onTime) {
+      this.onTime = onTime;
+      this.timeListener = (observable, oldValue, newValue) -> {
+         latestTime = newValue;
+         timeChanged = true;
+         timeChanges++;
+      };
+   }
+
+   /**
+    * Follows a player's time, the pulse runs while there is a player.
+    * @param mediaPlayer the player or null to stop following.
+    */
+   public void setPlayer(MediaPlayer mediaPlayer) {
+      if (player != null) {
+         player.currentTimeProperty().removeListener(timeListener);
+      }
+      player = mediaPlayer;
+      latestTime = null;
+      timeChanged = false;
+      seekTarget = null;
+      lastSeek = System.nanoTime() - MIN_SEEK_INTERVAL;
+      if (player == null) {
+         stop();
+         return;
+      }
+      player.currentTimeProperty().addListener(timeListener);
+      start();
+   }
+
+   /**
+    * Asks the player to seek, replacing a seek not done yet.
+    * @param target the position to seek to.
+    */
+   public void requestSeek(Duration target) {
+      if (player != null) {
+         seekTarget = target;
+         seekRequests++;
+      }
+   }
+
+   @Override
+   public void handle(long now) {
+      if (seekTarget != null) {
+         if (now - lastSeek < MIN_SEEK_INTERVAL) {
+            // the time still shows the position before the seek
+            return;
+         }
+         player.seek(seekTarget);
+         seekTarget = null;
+         lastSeek = now;
+         seeks++;
+      }
+      if (timeChanged) {
+         timeChanged = false;
+         timeUpdates++;
+         onTime.accept(latestTime);
+      }
+   }
+
+   @Override
+   public String toString() {
+      return String.format("%d time changes shown in %d updates, %d seek requests made %d seeks",
+              timeChanges, timeUpdates, seekRequests, seeks);
+   }
+}
@@ -1,10 +1,10 @@
 package com.jfxbe;
 
+import javafx.animation.AnimationTimer;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.SimpleBooleanProperty;
-import javafx.beans.value.ChangeListener;
 import javafx.event.EventHandler;
 import javafx.geometry.Point2D;
 import javafx.scene.Group;
@@ -13,7 +13,14 @@ import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonType;
+import javafx.scene.control.CheckMenuItem;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.Menu;
+import javafx.scene.control.MenuItem;
+import javafx.scene.control.RadioMenuItem;
+import javafx.scene.control.SeparatorMenuItem;
 import javafx.scene.control.Slider;
+import javafx.scene.control.ToggleGroup;
 import javafx.scene.input.Dragboard;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.input.TransferMode;
@@ -31,7 +38,11 @@ import javafx.stage.StageStyle;
 import javafx.stage.WindowEvent;
 import javafx.util.Duration;
 
+import java.io.File;
 import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Playing Audio using the JavaFX MediaPlayer API.
@@ -43,10 +54,59 @@ public class PlayingAudio extends Application {
    private MediaPlayer mediaPlayer;
    private Point2D anchorPt;
    private Point2D previousLocation;
-   private ChangeListener<Duration> progressListener;
+   /** Applies the time changes and seeks once per frame */
+   private PlaybackPulse playbackPulse;
    private BooleanProperty playAndPauseToggle = new SimpleBooleanProperty(true);
    private EventHandler<MouseEvent> mouseEventConsumer = event -> event.consume();
 
+   /** Space between the chart and the border */
+   private static final int CHART_PADDING = 5;
+
+   /** Selectable numbers of spectrum bands */
+   private static final int[] SPECTRUM_BANDS = {128, 256, 512, 1024};
+
+   /** Selectable spectrum intervals in seconds */
+   private static final double[] SPECTRUM_INTERVALS = {0.01, 0.025, 0.05, 0.1};
+
+   /** Number of log spaced bands drawn in the chart */
+   private static final int DISPLAY_BANDS = 64;
+
+   private int spectrumBands = 128;
+   private double spectrumInterval = 0.1;
+
+   /** The dropped files, the next one is preloaded while one plays */
+   private final Playlist playlist = new Playlist();
+
+   /** Receives spectra from the media player, read once per pulse */
+   private final SpectrumProcessor spectrumProcessor =
+           new SpectrumProcessor(DISPLAY_BANDS);
+
+   /** Loudness the volume is normalized to, in dB measured from the spectrum */
+   private static final double TARGET_LOUDNESS = -10;
+
+   /** Volume of a track as loud as the target, quieter tracks are raised */
+   private static final double REFERENCE_VOLUME = 0.5;
+
+   /** Seconds measured before the volume follows a track's running loudness */
+   private static final double MIN_MEASURED_SECONDS = 3;
+
+   /** Seconds measured before a track's loudness is cached */
+   private static final double MIN_CACHED_SECONDS = 10;
+
+   /** Most the volume changes in dB per second, changing faster is audible */
+   private static final double VOLUME_SLEW = 3;
+
+   /** Measures the tracks' levels from the spectrum */
+   private final LoudnessMeter loudnessMeter = new LoudnessMeter();
+   private final LoudnessCache loudnessCache = new LoudnessCache();
+   private boolean normalizeLoudness;
+   /** The current track's cached loudness or NaN if not played before */
+   private double cachedLoudness = Double.NaN;
+   private long lastNormalizeNanos;
+
+   /** Searches the scanned folders, created when first shown */
+   private MediaLibraryWindow libraryWindow;
+
 
    /**
     * @param args he command line arguments
@@ -75,9 +135,59 @@ public class PlayingAudio extends Application {
       // Initialize stage to be movable via mouse
       initMovablePlayer(primaryStage);
 
-      // Create a Path instance for the area chart
-      Path chartArea = new Path();
+      // Create a canvas for the area chart. The chart spans the
+      // surface's width minus the border (7.5) and chart padding (5)
+      // on both sides, down to the frequency axis 45 above the bottom.
+      SpectrumCanvas chartArea = new SpectrumCanvas(
+              scene.getWidth() - 2 * (7.5 + CHART_PADDING),
+              scene.getHeight() - 45 - CHART_PADDING);
       chartArea.setId("chart-area");
+      chartArea.setMouseTransparent(true);
+      AnchorPane.setLeftAnchor(chartArea, 7.5 + CHART_PADDING);
+      AnchorPane.setTopAnchor(chartArea, (double) CHART_PADDING);
+
+      // Create the RMS and peak level meter left of the close button
+      LevelMeter levelMeter = new LevelMeter(130, 8);
+      levelMeter.setMouseTransparent(true);
+      AnchorPane.setRightAnchor(levelMeter, 30.0);
+      AnchorPane.setTopAnchor(levelMeter, 7.0);
+
+      // Draws the latest processed spectrum and levels once per pulse
+      AnimationTimer spectrumPulse = new AnimationTimer() {
+         @Override
+         public void handle(long now) {
+            spectrumProcessor.process(now);
+            chartArea.drawLevels(spectrumProcessor.getLevels(),
+                    spectrumProcessor.getPeaks(),
+                    spectrumProcessor.getOutputBands());
+            normalizeVolume(now);
+            levelMeter.draw(loudnessMeter,
+                    mediaPlayer != null ? mediaPlayer.getVolume() : 1,
+                    normalizeLoudness);
+         }
+      };
+      spectrumPulse.start();
+
+      // Right click to choose the number of bands and the interval
+      ContextMenu spectrumMenu = createSpectrumMenu();
+
+      // to keep the tracks equally loud
+      CheckMenuItem normalizeItem = new CheckMenuItem("Normalize Loudness");
+      normalizeItem.setOnAction(actionEvent -> {
+         normalizeLoudness = normalizeItem.isSelected();
+         if (mediaPlayer != null) {
+            mediaPlayer.setVolume(normalizeLoudness ? initialVolume() : 1);
+         }
+      });
+      spectrumMenu.getItems().addAll(new SeparatorMenuItem(), normalizeItem);
+
+      // and to search the media library
+      MenuItem libraryItem = new MenuItem("Media Library...");
+      libraryItem.setOnAction(actionEvent -> showMediaLibrary(primaryStage, root));
+      spectrumMenu.getItems().addAll(new SeparatorMenuItem(), libraryItem);
+      root.setOnContextMenuRequested(contextMenuEvent ->
+              spectrumMenu.show(root, contextMenuEvent.getScreenX(),
+                      contextMenuEvent.getScreenY()));
 
       // Create the button panel (stop, play and pause)
       Node buttonPanel = createButtonPanel(root);
@@ -89,13 +199,29 @@ public class PlayingAudio extends Application {
       AnchorPane.setLeftAnchor(progressSlider, 2.0);
       AnchorPane.setBottomAnchor(progressSlider, 2.0);
 
-      // Updates slider as audio/video is progressing (play)
-      progressListener = (observable, oldValue, newValue) -> 
-         progressSlider.setValue(newValue.toSeconds());
+      // Create a zoomable waveform strip above the slider
+      WaveformOverview waveformOverview = new WaveformOverview(
+              chartArea.getWidth(), 18);
+      waveformOverview.setId("waveform-overview");
+      AnchorPane.setLeftAnchor(waveformOverview, 7.5 + CHART_PADDING);
+      AnchorPane.setBottomAnchor(waveformOverview, 26.0);
+      waveformOverview.setOnSeek(seconds -> {
+         playbackPulse.requestSeek(Duration.seconds(seconds));
+      });
+
+      // Updates slider as audio/video is progressing (play), once
+      // per frame with the latest time. Not while the user drags it.
+      playbackPulse = new PlaybackPulse(time -> {
+         if (!progressSlider.isValueChanging()) {
+            progressSlider.setValue(time.toSeconds());
+         }
+         waveformOverview.setPosition(time.toSeconds());
+      });
 
       // Initializing Scene to accept files
       // using drag and dropping over the surface to load media
       initFileDragNDrop(root);
+      initPlaylist(root);
 
       // Create the close button
       Node closeButton = createCloseButton();
@@ -104,6 +230,8 @@ public class PlayingAudio extends Application {
 
       root.getChildren()
           .addAll(chartArea,
+                  waveformOverview,
+                  levelMeter,
                   buttonPanel,
                   progressSlider,
                   closeButton);
@@ -112,6 +240,18 @@ public class PlayingAudio extends Application {
       primaryStage.show();
    }
 
+   @Override
+   public void stop() throws Exception {
+      super.stop();
+      cacheLoudness();
+      loudnessCache.close();
+      // release the native resources of all players
+      MediaPlayerManager playerManager = MediaPlayerManager.getInstance();
+      playerManager.releaseAll();
+      System.out.println(playerManager);
+      System.out.println(playbackPulse);
+   }
+
    /**
     * Initialize the stage to allow the mouse cursor to move the application
     * using dragging.
@@ -175,23 +315,23 @@ public class PlayingAudio extends Application {
       root.setOnDragDropped(dragEvent -> {
          Dragboard db = dragEvent.getDragboard();
          boolean success = false;
-         String filePath = null;
          if (db.hasFiles()) {
             success = true;
             if (db.getFiles().size() > 0) {
-               try {
-                  // obtain file and play media
-                  filePath = db.getFiles()
-                          .get(0)
-                          .toURI().toURL().toString();
-                  playMedia(filePath, root);
-               } catch (MalformedURLException ex) {
-                  ex.printStackTrace();
+               // obtain the files and play them as a playlist
+               List<String> urls = new ArrayList<>();
+               for (File file : db.getFiles()) {
+                  try {
+                     urls.add(file.toURI().toURL().toString());
+                  } catch (MalformedURLException ex) {
+                     ex.printStackTrace();
+                  }
                }
+               playMedia(urls, root);
             }
          } else {
             // audio file from some host or jar
-            playMedia(db.getUrl(), root);
+            playMedia(Collections.singletonList(db.getUrl()), root);
             success = true;
          }
 
@@ -358,151 +498,248 @@ public class PlayingAudio extends Application {
    }
 
    /**
-    * After a file is dragged onto the application a new MediaPlayer 
-    * instance is created with a media file.
-    *
-    * @param url - The URL pointing to an audio file.
+    * Initialize the playlist to hand each media player to the
+    * controls as it starts playing.
     * @param root - The scene graph's root pane.
     */
-   private void playMedia(String url, Pane root) {
+   private void initPlaylist(Pane root) {
+      playlist.setOnPlayerChanged(player -> attachPlayer(player, root));
 
-      if (mediaPlayer != null) {
-         mediaPlayer.pause();
-         mediaPlayer.setOnPaused(null);
-         mediaPlayer.setOnPlaying(null);
-         mediaPlayer.setOnReady(null);
-         mediaPlayer.currentTimeProperty()
-                    .removeListener(progressListener);
-         mediaPlayer.setAudioSpectrumListener(null);
-      }
-
-      // create a new media player
-      Media validMedia = null;
-      try {
-         validMedia = new Media(url);
-      } catch (Exception e) {
-         new Alert(Alert.AlertType.ERROR, e.getMessage(), ButtonType.OK).showAndWait()
-                 .filter(response -> response == ButtonType.OK)
-                 .ifPresent(response -> e.printStackTrace());
-         return;
-      }
-      final Media media = validMedia;
-
-      mediaPlayer = new MediaPlayer(media);
-
-      // as the media is playing move the slider for progress
-      mediaPlayer.currentTimeProperty()
-                 .addListener(progressListener);
-
-      mediaPlayer.setOnReady(() -> {
-         // display media's metadata 
-         media.getMetadata().forEach( (name, val) -> {
-            System.out.println(name + ": " + val);
-         });
-         updatePlayAndPauseButtons(false, root);
-         Slider progressSlider = 
-               (Slider) root.lookup("#seek-position-slider");
-         progressSlider.setValue(0);
-         progressSlider.setMax(mediaPlayer.getMedia()
-                                          .getDuration()
-                                          .toSeconds());
-         mediaPlayer.play();
-      });
-      
       // Rewind back to the beginning
-      mediaPlayer.setOnEndOfMedia( ()-> {
+      playlist.setOnEndOfPlaylist(() -> {
          updatePlayAndPauseButtons(true, root);
+         cacheLoudness();
          // change buttons to the play button
-         mediaPlayer.stop();
+         if (mediaPlayer != null) {
+            mediaPlayer.stop();
+         }
          playAndPauseToggle.set(false);
       });
 
-      // Obtain chart path area
-      Path chartArea = (Path) root.lookup("#chart-area");
+      playlist.setOnError((item, error) -> {
+         error.printStackTrace();
+         // Only a single dropped file is reported, bad files in a
+         // playlist are skipped.
+         if (playlist.getItems().size() == 1) {
+            new Alert(Alert.AlertType.ERROR, error.getMessage(), ButtonType.OK).show();
+         }
+      });
+   }
 
-      int chartPadding = 5;
+   /**
+    * After files are dragged onto the application they replace the
+    * playlist and the first one is played.
+    *
+    * @param urls - The URLs pointing to audio files.
+    * @param root - The scene graph's root pane.
+    */
+   private void playMedia(List<String> urls, Pane root) {
+      detachPlayer();
+      playlist.setAll(urls);
+      playlist.play(0);
+   }
 
-      // The frequency domain is the X Axis.
-      // The freqAxisY is the Y coordinate of the freq axis.
-      double freqAxisY = root.getHeight() - 45;
+   /**
+    * Removes the listeners from the current media player.
+    */
+   private void detachPlayer() {
+      if (mediaPlayer != null) {
+         cacheLoudness();
+         mediaPlayer.setOnPaused(null);
+         playbackPulse.setPlayer(null);
+         mediaPlayer.setAudioSpectrumListener(null);
+         mediaPlayer = null;
+      }
+   }
 
-      // The chart's height
-      double chartHeight = freqAxisY - chartPadding;
+   /**
+    * Connects the controls, the waveform and the chart to a media
+    * player from the playlist which is ready and about to play.
+    *
+    * @param player - The media player.
+    * @param root - The scene graph's root pane.
+    */
+   private void attachPlayer(MediaPlayer player, Pane root) {
+      detachPlayer();
+      mediaPlayer = player;
+      Media media = player.getMedia();
 
-      // In the CSS file the padding is set with the following:
-      //   -fx-border-insets: 6 6 6 6; (top, right, bottom, left)
-      //   -fx-border-width: 1.5;
-      // Below the padding will equal 7.5 which is the union of
-      // the inset 6 (left) and border width of 1.5)
-      double padding = root.getBorder().getInsets().getLeft();
-      double chartWidth = root.getWidth() - ((2 * padding) + (2 * chartPadding));
+      // as the media is playing move the slider for progress
+      playbackPulse.setPlayer(mediaPlayer);
 
-      // Audio sound is in decibels and the magnitude is from 0 to -60
-      // Squaring the magnitudes stretches the plot. Also dividing into
-      // the chart height will normalize or keep the y coordinate within the
-      // chart bounds.
-      double scaleY = chartHeight / (60 * 60);
-      double space = 5; // between each data point. Helps stretch the chart width-wise.
+      // display media's metadata
+      media.getMetadata().forEach( (name, val) -> {
+         System.out.println(name + ": " + val);
+      });
+      updatePlayAndPauseButtons(false, root);
+      Slider progressSlider =
+            (Slider) root.lookup("#seek-position-slider");
+      progressSlider.setValue(0);
+      progressSlider.setMax(media.getDuration()
+                                 .toSeconds());
+
+      // Show the waveform, instantly when it was built before
+      WaveformOverview waveformOverview =
+              (WaveformOverview) root.lookup("#waveform-overview");
+      waveformOverview.load(media.getSource());
+
+      // Measure the new track, normalized from the start when its
+      // loudness was measured before (looked up in the background)
+      loudnessMeter.reset();
+      cachedLoudness = Double.NaN;
+      if (normalizeLoudness) {
+         mediaPlayer.setVolume(initialVolume());
+      }
+      loudnessCache.get(media.getSource()).thenAccept(loudness ->
+         Platform.runLater(() -> {
+            if (loudness == null || mediaPlayer != player) {
+               return;
+            }
+            cachedLoudness = loudness;
+            if (normalizeLoudness) {
+               mediaPlayer.setVolume(initialVolume());
+            }
+         }));
+
+      // Clear the chart's levels
+      spectrumProcessor.reset();
+      spectrumProcessor.setThreshold(mediaPlayer.getAudioSpectrumThreshold());
+      mediaPlayer.setAudioSpectrumNumBands(spectrumBands);
+      mediaPlayer.setAudioSpectrumInterval(spectrumInterval);
 
+      // Only copies the magnitudes, processing and drawing is done
+      // once per pulse.
       mediaPlayer.setAudioSpectrumListener(
          (double timestamp,
           double duration,
           float[] magnitudes,
           float[] phases) -> {
-            if (mediaPlayer.getStatus() == Status.PAUSED || mediaPlayer.getStatus() == Status.STOPPED) {
+            if (player.getStatus() == Status.PAUSED || player.getStatus() == Status.STOPPED) {
                return;
             }
-            // The freqBarX is the x coordinate to plot
-            double freqBarX = padding + chartPadding;
-
-            // The scaleX is one unit. This keeps the plotting within the chart width area.
-            double scaleX = chartWidth / (magnitudes.length * space);
-
-            // Checks if the data array is created.
-            // If not create the number of path components to be
-            // added to the chartArea path. The check of the size minus 3 is excluding
-            // the first MoveTo element, and the last two elements LineTo, and ClosePath
-            // respectively.
-            if ((chartArea.getElements().size() - 3) != magnitudes.length) {
-
-               // Move to bottom left of chart.
-               chartArea.getElements().clear();
-               chartArea.getElements().add(new MoveTo(freqBarX, freqAxisY));
-
-               // Update all LineTo elements to draw the line chart
-               for(float magnitude:magnitudes) {
-                  double dB = magnitude * magnitude;
-                  dB = chartHeight - dB * scaleY;
-                  chartArea.getElements().add(new LineTo(freqBarX, freqAxisY - dB));
-                  freqBarX+=(scaleX * space);
-               }
+            spectrumProcessor.publish(magnitudes, magnitudes.length);
+            loudnessMeter.update(magnitudes, magnitudes.length,
+                    player.getAudioSpectrumThreshold(), duration);
+     });
 
-               // Close the path by adding LineTo to the bottom right
-               // of the chart and close path to form an shape.
-               chartArea.getElements().add(new LineTo(freqBarX, freqAxisY));
-               chartArea.getElements().add(new ClosePath());
-            } else {
-               // If elements already created
-               // go through and update path elements
-               int idx = 0;
-               for(float magnitude:magnitudes) {
-                  double dB = magnitude * magnitude;
-                  dB = chartHeight - dB * scaleY;
-
-                  // skip first MoveTo element in path.
-                  idx++;
-
-                  // update elements with a x and y
-                  LineTo dataPoint = (LineTo) chartArea.getElements().get(idx);
-                  dataPoint.setX(freqBarX);
-                  dataPoint.setY(freqAxisY - dB);
-                  freqBarX += (scaleX * space);
-               }
+   }
+
+   /**
+    * Creates a context menu to select the number of spectrum bands
+    * and how often the spectrum is updated.
+    *
+    * @return ContextMenu the spectrum settings menu.
+    */
+   private ContextMenu createSpectrumMenu() {
+      Menu bandsMenu = new Menu("Bands");
+      ToggleGroup bandsGroup = new ToggleGroup();
+      for (int bands : SPECTRUM_BANDS) {
+         RadioMenuItem bandsItem = new RadioMenuItem(String.valueOf(bands));
+         bandsItem.setToggleGroup(bandsGroup);
+         bandsItem.setSelected(bands == spectrumBands);
+         bandsItem.setOnAction(actionEvent -> {
+            spectrumBands = bands;
+            if (mediaPlayer != null) {
+               mediaPlayer.setAudioSpectrumNumBands(bands);
             }
-     });
+         });
+         bandsMenu.getItems().add(bandsItem);
+      }
 
+      Menu intervalMenu = new Menu("Interval");
+      ToggleGroup intervalGroup = new ToggleGroup();
+      for (double interval : SPECTRUM_INTERVALS) {
+         RadioMenuItem intervalItem = new RadioMenuItem(
+                 Math.round(interval * 1000) + " ms");
+         intervalItem.setToggleGroup(intervalGroup);
+         intervalItem.setSelected(interval == spectrumInterval);
+         intervalItem.setOnAction(actionEvent -> {
+            spectrumInterval = interval;
+            if (mediaPlayer != null) {
+               mediaPlayer.setAudioSpectrumInterval(interval);
+            }
+         });
+         intervalMenu.getItems().add(intervalItem);
+      }
+      return new ContextMenu(bandsMenu, intervalMenu);
    }
   
+   /**
+    * The volume playing a track as loud as the target loudness.
+    * @param loudness - The track's loudness in dB.
+    * @return double the volume, at most 1.
+    */
+   private static double normalizedVolume(double loudness) {
+      return Math.min(1, REFERENCE_VOLUME *
+              Math.pow(10, (TARGET_LOUDNESS - loudness) / 20));
+   }
+
+   /**
+    * @return double the volume a track starts with when normalizing.
+    */
+   private double initialVolume() {
+      return Double.isNaN(cachedLoudness) ? REFERENCE_VOLUME :
+              normalizedVolume(cachedLoudness);
+   }
+
+   /**
+    * Moves the volume towards the one making the current track as loud
+    * as the target, from the cached loudness or once a few seconds
+    * were measured from the running loudness. Called every pulse.
+    *
+    * @param now - The pulse's time in nanoseconds.
+    */
+   private void normalizeVolume(long now) {
+      double elapsedSeconds = lastNormalizeNanos == 0 ? 0 :
+              (now - lastNormalizeNanos) / 1e9;
+      lastNormalizeNanos = now;
+      if (!normalizeLoudness || mediaPlayer == null) {
+         return;
+      }
+      double loudness = cachedLoudness;
+      if (Double.isNaN(loudness) &&
+          loudnessMeter.getMeasuredSeconds() >= MIN_MEASURED_SECONDS) {
+         loudness = loudnessMeter.getLoudness();
+      }
+      if (Double.isNaN(loudness)) {
+         return;
+      }
+      double volume = Math.max(0.01, mediaPlayer.getVolume());
+      double maxChange = Math.pow(10, VOLUME_SLEW * elapsedSeconds / 20);
+      double target = normalizedVolume(loudness);
+      mediaPlayer.setVolume(Math.max(volume / maxChange,
+              Math.min(volume * maxChange, target)));
+   }
+
+   /**
+    * Stores the loudness measured for the current track, unless too
+    * little was played.
+    */
+   private void cacheLoudness() {
+      if (mediaPlayer != null &&
+          loudnessMeter.getMeasuredSeconds() >= MIN_CACHED_SECONDS) {
+         loudnessCache.put(mediaPlayer.getMedia().getSource(),
+                 loudnessMeter.getLoudness(), loudnessMeter.getMeasuredSeconds());
+      }
+   }
+
+   /**
+    * Shows the media library window, the files chosen there replace
+    * the playlist.
+    *
+    * @param primaryStage - The applications primary Stage window.
+    * @param root - The scene graph's root pane.
+    */
+   private void showMediaLibrary(Stage primaryStage, Pane root) {
+      if (libraryWindow == null) {
+         libraryWindow = new MediaLibraryWindow(primaryStage,
+                 new MediaLibrary(MediaLibrary.defaultIndexFile()),
+                 urls -> playMedia(urls, root));
+      }
+      libraryWindow.show();
+      libraryWindow.toFront();
+   }
+
    /**
    * Sets play button visible and pause button not visible when 
    * playVisible is true otherwise the opposite.
@@ -547,9 +784,8 @@ public class PlayingAudio extends Application {
                   if (mediaPlayer != null &&
                       mediaPlayer.getStatus() == MediaPlayer.Status.PAUSED) {
 
-                     // convert seconds to millis
-                     double dur = slider.getValue() * 1000;
-                     mediaPlayer.seek(Duration.millis(dur));
+                     // coalesced, the latest position is sought on the next pulse
+                     playbackPulse.requestSeek(Duration.seconds(slider.getValue()));
                   }
                 }
             });
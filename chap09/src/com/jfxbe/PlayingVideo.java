@@ -1,17 +1,29 @@
 package com.jfxbe;
 
+import java.io.File;
 import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javafx.animation.PauseTransition;
 import javafx.application.*;
 import javafx.beans.binding.DoubleBinding;
 import javafx.beans.property.*;
-import javafx.beans.value.ChangeListener;
 import javafx.event.EventHandler;
+import javafx.geometry.Bounds;
 import javafx.geometry.Insets;
 import javafx.geometry.Point2D;
+import javafx.geometry.Pos;
 import javafx.scene.*;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonType;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.Dialog;
+import javafx.scene.control.Label;
+import javafx.scene.control.MenuItem;
 import javafx.scene.control.Slider;
+import javafx.scene.control.TextField;
+import javafx.scene.image.ImageView;
 import javafx.scene.input.*;
 import javafx.scene.layout.*;
 import javafx.scene.media.*;
@@ -31,10 +43,23 @@ public class PlayingVideo extends Application {
    private MediaPlayer mediaPlayer;
    private Point2D anchorPt;
    private Point2D previousLocation;
-   private ChangeListener<Duration> progressListener;
+   /** Applies the time changes and seeks once per frame */
+   private PlaybackPulse playbackPulse;
    private BooleanProperty playAndPauseToggle = new SimpleBooleanProperty(true);
    private EventHandler<MouseEvent> mouseEventConsumer = event -> event.consume();
 
+   /** The dropped files, the next one is preloaded while one plays */
+   private final Playlist playlist = new Playlist();
+
+   /** Preview frames shown while hovering over the slider */
+   private final ScrubPreviews scrubPreviews =
+           new ScrubPreviews(MediaPlayerManager.getInstance());
+
+   /** Exports frames at the video's native resolution */
+   private FrameExporter frameExporter;
+   /** The folder frames were last exported to */
+   private File exportFolder;
+
 
    /**
     * @param args he command line arguments
@@ -76,9 +101,16 @@ public class PlayingVideo extends Application {
       AnchorPane.setLeftAnchor(progressSlider, 2.0);
       AnchorPane.setBottomAnchor(progressSlider, 2.0);
 
-      // Updates slider as audio/video is progressing (play)
-      progressListener = (observable, oldValue, newValue) -> 
-         progressSlider.setValue(newValue.toSeconds());
+      // Updates slider as audio/video is progressing (play), once
+      // per frame with the latest time. Not while the user drags it.
+      playbackPulse = new PlaybackPulse(time -> {
+         if (!progressSlider.isValueChanging()) {
+            progressSlider.setValue(time.toSeconds());
+         }
+      });
+
+      // Create a preview shown above the slider while hovering
+      Node scrubPreview = createScrubPreview(progressSlider, root);
 
       // Create a media view to display video
       MediaView mediaView = createMediaView(root);
@@ -87,21 +119,55 @@ public class PlayingVideo extends Application {
       // Initializing Scene to accept files
       // using drag and dropping over the surface to load media
       initFileDragNDrop(root);
+      initPlaylist(root);
 
       // Create the close button
       Node closeButton = createCloseButton();
       AnchorPane.setRightAnchor(closeButton, 2.0);
       AnchorPane.setTopAnchor(closeButton, 2.0);
 
+      // Right click to export frames, the status shows for a while
+      Label exportStatus = new Label();
+      exportStatus.setId("export-status");
+      exportStatus.setMouseTransparent(true);
+      exportStatus.setVisible(false);
+      AnchorPane.setLeftAnchor(exportStatus, 8.0);
+      AnchorPane.setTopAnchor(exportStatus, 6.0);
+      PauseTransition hideStatus = new PauseTransition(Duration.seconds(4));
+      hideStatus.setOnFinished(actionEvent -> exportStatus.setVisible(false));
+      frameExporter = new FrameExporter(MediaPlayerManager.getInstance(), message -> {
+         exportStatus.setText(message);
+         exportStatus.setVisible(true);
+         hideStatus.playFromStart();
+      });
+      ContextMenu exportMenu = createExportMenu(primaryStage);
+      root.setOnContextMenuRequested(contextMenuEvent ->
+              exportMenu.show(root, contextMenuEvent.getScreenX(),
+                      contextMenuEvent.getScreenY()));
+
       root.getChildren()
           .addAll(mediaView,
                   buttonPanel,
                   progressSlider,
+                  scrubPreview,
+                  exportStatus,
                   closeButton);
 
       primaryStage.centerOnScreen();
       primaryStage.show();
    }
+
+   @Override
+   public void stop() throws Exception {
+      super.stop();
+      scrubPreviews.cancel();
+      frameExporter.cancel();
+      // release the native resources of all players
+      MediaPlayerManager playerManager = MediaPlayerManager.getInstance();
+      playerManager.releaseAll();
+      System.out.println(playerManager);
+      System.out.println(playbackPulse);
+   }
    /**
     * Bug: JDK-8087498 [Mac] Full screen mode fails for certain StageStyles
     * Attaches event handler code (mouse event) to
@@ -182,23 +248,23 @@ public class PlayingVideo extends Application {
       root.setOnDragDropped(dragEvent -> {
          Dragboard db = dragEvent.getDragboard();
          boolean success = false;
-         String filePath = null;
          if (db.hasFiles()) {
             success = true;
             if (db.getFiles().size() > 0) {
-               try {
-                  // obtain file and play media
-                  filePath = db.getFiles()
-                          .get(0)
-                          .toURI().toURL().toString();
-                  playMedia(filePath, root);
-               } catch (MalformedURLException ex) {
-                  ex.printStackTrace();
+               // obtain the files and play them as a playlist
+               List<String> urls = new ArrayList<>();
+               for (File file : db.getFiles()) {
+                  try {
+                     urls.add(file.toURI().toURL().toString());
+                  } catch (MalformedURLException ex) {
+                     ex.printStackTrace();
+                  }
                }
+               playMedia(urls, root);
             }
          } else {
             // audio file from some host or jar
-            playMedia(db.getUrl(), root);
+            playMedia(Collections.singletonList(db.getUrl()), root);
             success = true;
          }
 
@@ -441,69 +507,91 @@ public class PlayingVideo extends Application {
    }
 
    /**
-    * After a file is dragged onto the application a new MediaPlayer 
-    * instance is created with a media file.
+    * Initialize the playlist to hand each media player to the
+    * controls as it starts playing.
+    * @param root - The scene graph's root pane.
+    */
+   private void initPlaylist(Pane root) {
+      playlist.setOnPlayerChanged(player -> attachPlayer(player, root));
+
+      // Rewind back to the beginning
+      playlist.setOnEndOfPlaylist(() -> {
+         updatePlayAndPauseButtons(true, root);
+         // change buttons to the play button
+         if (mediaPlayer != null) {
+            mediaPlayer.stop();
+         }
+         playAndPauseToggle.set(false);
+      });
+
+      playlist.setOnError((item, error) -> {
+         error.printStackTrace();
+         // Only a single dropped file is reported, bad files in a
+         // playlist are skipped.
+         if (playlist.getItems().size() == 1) {
+            new Alert(Alert.AlertType.ERROR, error.getMessage(), ButtonType.OK).show();
+         }
+      });
+   }
+
+   /**
+    * After files are dragged onto the application they replace the
+    * playlist and the first one is played.
     *
-    * @param url - The URL pointing to an audio file.
+    * @param urls - The URLs pointing to video files.
     * @param root - The scene graph's root pane.
     */
-   private void playMedia(String url, Pane root) {
+   private void playMedia(List<String> urls, Pane root) {
+      detachPlayer();
+      playlist.setAll(urls);
+      playlist.play(0);
+   }
 
+   /**
+    * Removes the listeners from the current media player.
+    */
+   private void detachPlayer() {
       if (mediaPlayer != null) {
-         mediaPlayer.pause();
          mediaPlayer.setOnPaused(null);
-         mediaPlayer.setOnPlaying(null);
-         mediaPlayer.setOnReady(null);
-         mediaPlayer.currentTimeProperty()
-                    .removeListener(progressListener);
-         mediaPlayer.setAudioSpectrumListener(null);
+         playbackPulse.setPlayer(null);
+         mediaPlayer = null;
       }
+   }
 
-      // create a new media player
-      Media validMedia = null;
-      try {
-         validMedia = new Media(url);
-      } catch (Exception e) {
-         new Alert(Alert.AlertType.ERROR, e.getMessage(), ButtonType.OK).showAndWait()
-                 .filter(response -> response == ButtonType.OK)
-                 .ifPresent(response -> e.printStackTrace());
-         return;
-      }
-      final Media media = validMedia;
-      mediaPlayer = new MediaPlayer(media);
+   /**
+    * Connects the controls and the media view to a media player from
+    * the playlist which is ready and about to play.
+    *
+    * @param player - The media player.
+    * @param root - The scene graph's root pane.
+    */
+   private void attachPlayer(MediaPlayer player, Pane root) {
+      detachPlayer();
+      mediaPlayer = player;
+      Media media = player.getMedia();
 
       // as the media is playing move the slider for progress
-      mediaPlayer.currentTimeProperty()
-                 .addListener(progressListener);
-
-      mediaPlayer.setOnReady(() -> {
-         // display media's metadata 
-         media.getMetadata().forEach( (name, val) -> {
-            System.out.println(name + ": " + val);
-         });
-         updatePlayAndPauseButtons(false, root);
-         Slider progressSlider = 
-               (Slider) root.lookup("#seek-position-slider");
-         progressSlider.setValue(0);
-         progressSlider.setMax(mediaPlayer.getMedia()
-                                          .getDuration()
-                                          .toSeconds());
-         mediaPlayer.play();
-      });
-      
-      // Rewind back to the beginning
-      mediaPlayer.setOnEndOfMedia( ()-> {
-         updatePlayAndPauseButtons(true, root);
-         // change buttons to the play button
-         mediaPlayer.stop();
-         playAndPauseToggle.set(false);
+      playbackPulse.setPlayer(mediaPlayer);
+
+      // display media's metadata
+      media.getMetadata().forEach( (name, val) -> {
+         System.out.println(name + ": " + val);
       });
+      updatePlayAndPauseButtons(false, root);
+      Slider progressSlider =
+            (Slider) root.lookup("#seek-position-slider");
+      progressSlider.setValue(0);
+      progressSlider.setMax(media.getDuration()
+                                 .toSeconds());
+
+      // Show the preview frames, generating them by a hidden player
+      // when the video wasn't opened before
+      scrubPreviews.load(media.getSource(), media.getDuration());
 
       // set the media player to display video (MediaView)
       MediaView mediaView =
               (MediaView) root.getScene().lookup("#media-view");
       mediaView.setMediaPlayer(mediaPlayer);
-
    }
   
    /**
@@ -534,6 +622,179 @@ public class PlayingVideo extends Application {
       }
 
    }
+   /**
+    * Creates the preview frame and time shown above the slider while
+    * the mouse hovers over it. The frames come from the sprite sheets
+    * of the ScrubPreviews, the playing media player isn't seeked.
+    *
+    * @param slider - The progress and seek slider.
+    * @param root - The scene graph's root pane.
+    * @return Node the preview, hidden until hovering.
+    */
+   private Node createScrubPreview(Slider slider, Pane root) {
+      ImageView frameView = new ImageView();
+      frameView.setFitWidth(ScrubPreviews.FRAME_WIDTH);
+      frameView.setFitHeight(ScrubPreviews.FRAME_HEIGHT);
+      Label timeLabel = new Label();
+      VBox scrubPreview = new VBox(2, frameView, timeLabel);
+      scrubPreview.setId("scrub-preview");
+      scrubPreview.setAlignment(Pos.CENTER);
+      scrubPreview.setMouseTransparent(true);
+      scrubPreview.setVisible(false);
+      AnchorPane.setBottomAnchor(scrubPreview, 26.0);
+
+      EventHandler<MouseEvent> showPreview = mouseEvent -> {
+         Node track = slider.lookup(".track");
+         if (mediaPlayer == null || track == null) {
+            return;
+         }
+         // the time under the mouse along the slider's track
+         Bounds trackBounds = track.localToScene(track.getLayoutBounds());
+         double fraction = (mouseEvent.getSceneX() - trackBounds.getMinX()) /
+                 trackBounds.getWidth();
+         double seconds = Math.max(0, Math.min(1, fraction)) * slider.getMax();
+
+         boolean hasFrame = scrubPreviews.showFrame(seconds, frameView);
+         frameView.setVisible(hasFrame);
+         frameView.setManaged(hasFrame);
+         int progress = (int) (scrubPreviews.getProgress() * 100);
+         timeLabel.setText(String.format("%d:%02d", (int) seconds / 60, (int) seconds % 60) +
+                 (hasFrame || progress == 100 ? "" : " (previews " + progress + "%)"));
+
+         double width = scrubPreview.prefWidth(-1);
+         double x = mouseEvent.getSceneX() - width / 2;
+         AnchorPane.setLeftAnchor(scrubPreview,
+                 Math.max(0, Math.min(root.getWidth() - width, x)));
+         scrubPreview.setVisible(true);
+      };
+      slider.addEventHandler(MouseEvent.MOUSE_MOVED, showPreview);
+      slider.addEventHandler(MouseEvent.MOUSE_DRAGGED, showPreview);
+      slider.addEventHandler(MouseEvent.MOUSE_EXITED, mouseEvent ->
+              scrubPreview.setVisible(false));
+      return scrubPreview;
+   }
+
+   /**
+    * Creates the menu exporting the current frame or a range of frames
+    * as images at the video's native resolution.
+    *
+    * @param primaryStage - The owner of the dialogs.
+    * @return ContextMenu the export menu.
+    */
+   private ContextMenu createExportMenu(Stage primaryStage) {
+      MenuItem frameItem = new MenuItem("Export Frame");
+      frameItem.setOnAction(actionEvent -> {
+         File folder = chooseExportFolder(primaryStage, exportFolder == null);
+         if (folder != null && mediaPlayer != null) {
+            frameExporter.exportCurrentFrame(mediaPlayer, folder.toPath());
+         }
+      });
+      MenuItem rangeItem = new MenuItem("Export Frames...");
+      rangeItem.setOnAction(actionEvent -> showExportRangeDialog(primaryStage));
+      MenuItem cancelItem = new MenuItem("Cancel Export");
+      cancelItem.setOnAction(actionEvent -> frameExporter.cancel());
+
+      ContextMenu exportMenu = new ContextMenu(frameItem, rangeItem, cancelItem);
+      exportMenu.setOnShowing(windowEvent -> {
+         frameItem.setDisable(mediaPlayer == null);
+         rangeItem.setDisable(mediaPlayer == null);
+         cancelItem.setDisable(!frameExporter.isExporting());
+      });
+      return exportMenu;
+   }
+
+   /**
+    * Asks for the range (from the current time to the end by default)
+    * and the folder, then exports every Nth frame of it.
+    *
+    * @param primaryStage - The owner of the dialogs.
+    */
+   private void showExportRangeDialog(Stage primaryStage) {
+      if (mediaPlayer == null) {
+         return;
+      }
+      Media media = mediaPlayer.getMedia();
+      TextField fromField = new TextField(formatTime(mediaPlayer.getCurrentTime()));
+      TextField toField = new TextField(formatTime(media.getDuration()));
+      TextField everyNthField = new TextField("1");
+      GridPane fields = new GridPane();
+      fields.setHgap(8);
+      fields.setVgap(6);
+      fields.addRow(0, new Label("From (m:ss.s)"), fromField);
+      fields.addRow(1, new Label("To (m:ss.s)"), toField);
+      fields.addRow(2, new Label("Every Nth frame"), everyNthField);
+
+      Dialog<ButtonType> dialog = new Dialog<>();
+      dialog.initOwner(primaryStage);
+      dialog.setTitle("Export Frames");
+      dialog.getDialogPane().setContent(fields);
+      dialog.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+      if (dialog.showAndWait().orElse(ButtonType.CANCEL) != ButtonType.OK) {
+         return;
+      }
+      Duration from = parseTime(fromField.getText());
+      Duration to = parseTime(toField.getText());
+      int everyNth;
+      try {
+         everyNth = Integer.parseInt(everyNthField.getText().trim());
+      } catch (NumberFormatException e) {
+         everyNth = 0;
+      }
+      if (from == null || to == null || everyNth < 1) {
+         new Alert(Alert.AlertType.ERROR, "Enter times as m:ss.s and N as a " +
+                 "positive number", ButtonType.OK).show();
+         return;
+      }
+      File folder = chooseExportFolder(primaryStage, true);
+      if (folder != null) {
+         frameExporter.exportRange(media.getSource(), from, to, everyNth, folder.toPath());
+      }
+   }
+
+   /**
+    * Returns the folder frames were last exported to, asking for one
+    * when there is none or when ask is true.
+    */
+   private File chooseExportFolder(Stage primaryStage, boolean ask) {
+      if (!ask && exportFolder != null) {
+         return exportFolder;
+      }
+      DirectoryChooser chooser = new DirectoryChooser();
+      chooser.setTitle("Export frames to");
+      if (exportFolder != null && exportFolder.isDirectory()) {
+         chooser.setInitialDirectory(exportFolder);
+      }
+      File folder = chooser.showDialog(primaryStage);
+      if (folder != null) {
+         exportFolder = folder;
+      }
+      return folder;
+   }
+
+   private static String formatTime(Duration time) {
+      double seconds = time.toSeconds();
+      return String.format("%d:%04.1f", (int) seconds / 60, seconds % 60);
+   }
+
+   /**
+    * Parses m:ss.s or seconds.
+    * @return Duration the time or null if malformed.
+    */
+   private static Duration parseTime(String text) {
+      try {
+         String[] parts = text.trim().split(":");
+         double seconds = Double.parseDouble(parts[parts.length - 1]);
+         if (parts.length == 2) {
+            seconds += Integer.parseInt(parts[0]) * 60;
+         } else if (parts.length > 2) {
+            return null;
+         }
+         return seconds >= 0 ? Duration.seconds(seconds) : null;
+      } catch (NumberFormatException e) {
+         return null;
+      }
+   }
+
    /**
     * A position slider to seek backward and forward 
     * that is bound to a media player control.
@@ -550,9 +811,8 @@ public class PlayingVideo extends Application {
                   if (mediaPlayer != null &&
                       mediaPlayer.getStatus() == MediaPlayer.Status.PAUSED) {
 
-                     // convert seconds to millis
-                     double dur = slider.getValue() * 1000;
-                     mediaPlayer.seek(Duration.millis(dur));
+                     // coalesced, the latest position is sought on the next pulse
+                     playbackPulse.requestSeek(Duration.seconds(slider.getValue()));
                   }
                 }
             });
@@ -0,0 +1,319 @@
+package com.jfxbe;
+
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.scene.media.MediaPlayer;
+
+import java.io.File;
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * A list of media played one after another. Only the item playing and
+ * the next one have a MediaPlayer: once the current player is playing
+ * the next item's player is created and prepared (READY) in the
+ * background, so when the current media ends the next one starts
+ * right away instead of waiting for its media to load.
+ *
+ * The preloaded player may be evicted by the player manager when other
+ * players are needed (see MediaPlayerManager), the next item is then
+ * loaded when the current media ends.
+ *
+ * Adding items is cheap, no Media is created until an item is about to
+ * play, so hundreds of files can be dropped at once. An item's metadata
+ * (title, artist...) is available once its player is ready.
+ *
+ * All methods must be called on the JavaFX application thread.
+ */
+public class Playlist {
+
+   private final MediaPlayerManager playerManager;
+   private final ObservableList<Item> items = FXCollections.observableArrayList();
+   private int currentIndex = -1;
+   private MediaPlayer currentPlayer;
+   private MediaPlayer nextPlayer;
+   private int nextIndex = -1;
+   private boolean preloaded;
+   private boolean nextReady;
+   private boolean switchWhenReady;
+
+   private Consumer<MediaPlayer> onPlayerChanged = player -> {};
+   private Runnable onEndOfPlaylist = () -> {};
+   private BiConsumer<Item, Throwable> onError = (item, error) ->
+           System.err.println("Unable to play " + item.getUrl() + ": " + error);
+
+   /**
+    * Creates a playlist using the application's shared player manager.
+    */
+   public Playlist() {
+      this(MediaPlayerManager.getInstance());
+   }
+
+   /**
+    * @param playerManager creates and disposes the players.
+    */
+   public Playlist(MediaPlayerManager playerManager) {
+      this.playerManager = playerManager;
+   }
+
+   /**
+    * Called with a player when it becomes the current player, just
+    * before it starts playing. Used to attach listeners and controls.
+    * @param onPlayerChanged the handler.
+    */
+   public void setOnPlayerChanged(Consumer<MediaPlayer> onPlayerChanged) {
+      this.onPlayerChanged = onPlayerChanged;
+   }
+
+   /**
+    * Called when the last item finished playing.
+    * @param onEndOfPlaylist the handler.
+    */
+   public void setOnEndOfPlaylist(Runnable onEndOfPlaylist) {
+      this.onEndOfPlaylist = onEndOfPlaylist;
+   }
+
+   /**
+    * Called when an item can't be played, the item is skipped.
+    * @param onError the handler.
+    */
+   public void setOnError(BiConsumer<Item, Throwable> onError) {
+      this.onError = onError;
+   }
+
+   public ObservableList<Item> getItems() {
+      return items;
+   }
+
+   /**
+    * Replaces the items, stopping the current media.
+    * @param urls the URLs of the media to play.
+    */
+   public void setAll(List<String> urls) {
+      releasePlayers();
+      currentIndex = -1;
+      items.setAll(urls.stream()
+                       .map(Item::new)
+                       .collect(Collectors.toList()));
+   }
+
+   /**
+    * Starts playing an item, the player is handed to the player changed
+    * handler once it is ready.
+    * @param index the index of the item.
+    */
+   public void play(int index) {
+      releasePlayers();
+      if (index < 0 || index >= items.size()) {
+         currentIndex = -1;
+         onEndOfPlaylist.run();
+         return;
+      }
+      currentIndex = index;
+      MediaPlayer player = createPlayer(items.get(index), null);
+      if (player == null) {
+         play(index + 1);
+         return;
+      }
+      currentPlayer = player;
+      player.setOnReady(() -> startPlaying(player));
+   }
+
+   /**
+    * @return the current player or null.
+    */
+   public MediaPlayer getCurrentPlayer() {
+      return currentPlayer;
+   }
+
+   public int getCurrentIndex() {
+      return currentIndex;
+   }
+
+   /**
+    * Creates a player for an item or returns null if its media can't
+    * be played.
+    * @param onEvicted the eviction handler or null if the player must
+    *                  not be evicted.
+    */
+   private MediaPlayer createPlayer(Item item, Runnable onEvicted) {
+      try {
+         MediaPlayer player = playerManager.create(item.getUrl(), onEvicted);
+         player.setOnError(() -> handleError(player, item));
+         return player;
+      } catch (Exception e) {
+         onError.accept(item, e);
+         return null;
+      }
+   }
+
+   private void startPlaying(MediaPlayer player) {
+      items.get(currentIndex).metadata = Collections.unmodifiableMap(
+              player.getMedia().getMetadata());
+      playerManager.pin(player);
+      playerManager.touch(player);
+      player.setOnReady(null);
+      player.setOnEndOfMedia(this::playNext);
+      player.setOnPlaying(() -> {
+         player.setOnPlaying(null);
+         preloadNext(currentIndex + 1);
+      });
+      onPlayerChanged.accept(player);
+      player.play();
+   }
+
+   /**
+    * Prepares the player of the first playable item after the current one.
+    * @param index the index of the first item to try.
+    */
+   private void preloadNext(int index) {
+      preloaded = true;
+      while (nextPlayer == null && index < items.size()) {
+         nextPlayer = createPlayer(items.get(index), this::nextPlayerEvicted);
+         nextIndex = index++;
+      }
+      if (nextPlayer == null) {
+         if (switchWhenReady) {
+            // the current media already ended
+            switchWhenReady = false;
+            onEndOfPlaylist.run();
+         }
+         return;
+      }
+      nextReady = false;
+      MediaPlayer player = nextPlayer;
+      player.setOnReady(() -> {
+         nextReady = true;
+         if (switchWhenReady) {
+            playNext();
+         }
+      });
+   }
+
+   /**
+    * Forgets the preloaded player disposed by the player manager, the
+    * next item is loaded again when the current media ends.
+    */
+   private void nextPlayerEvicted() {
+      nextPlayer = null;
+      nextIndex = -1;
+      preloaded = false;
+      nextReady = false;
+      if (switchWhenReady) {
+         // the current media already ended, once the manager is done
+         // creating the player which needed room
+         switchWhenReady = false;
+         Platform.runLater(this::playNext);
+      }
+   }
+
+   /**
+    * Switches to the preloaded player when the current media ends.
+    */
+   private void playNext() {
+      if (nextPlayer == null) {
+         if (!preloaded && currentIndex + 1 < items.size()) {
+            // ended before the next item was preloaded
+            play(currentIndex + 1);
+         } else {
+            // the current player is kept so it can be played again
+            onEndOfPlaylist.run();
+         }
+         return;
+      }
+      if (!nextReady) {
+         // still loading, switch as soon as it is ready
+         switchWhenReady = true;
+         return;
+      }
+      MediaPlayer finished = currentPlayer;
+      currentPlayer = nextPlayer;
+      currentIndex = nextIndex;
+      nextPlayer = null;
+      nextIndex = -1;
+      preloaded = false;
+      nextReady = false;
+      switchWhenReady = false;
+      startPlaying(currentPlayer);
+      dispose(finished);
+   }
+
+   private void handleError(MediaPlayer player, Item item) {
+      onError.accept(item, player.getError());
+      if (player == currentPlayer) {
+         play(currentIndex + 1);
+      } else if (player == nextPlayer) {
+         // try the items after the failed one
+         int failedIndex = nextIndex;
+         dispose(nextPlayer);
+         nextPlayer = null;
+         nextIndex = -1;
+         preloadNext(failedIndex + 1);
+      }
+   }
+
+   private void releasePlayers() {
+      dispose(currentPlayer);
+      dispose(nextPlayer);
+      currentPlayer = null;
+      nextPlayer = null;
+      nextIndex = -1;
+      preloaded = false;
+      nextReady = false;
+      switchWhenReady = false;
+   }
+
+   private void dispose(MediaPlayer player) {
+      playerManager.release(player);
+   }
+
+   /**
+    * A media in the playlist.
+    */
+   public static class Item {
+      private final String url;
+      private Map<String, Object> metadata;
+
+      Item(String url) {
+         this.url = url;
+      }
+
+      public String getUrl() {
+         return url;
+      }
+
+      /**
+       * The media's metadata once the item was prepared for playing.
+       * @return Map the metadata or null if not loaded yet.
+       */
+      public Map<String, Object> getMetadata() {
+         return metadata;
+      }
+
+      /**
+       * The title from the metadata or the file name.
+       * @return String the item's title.
+       */
+      public String getTitle() {
+         if (metadata != null && metadata.get("title") != null) {
+            return String.valueOf(metadata.get("title"));
+         }
+         try {
+            return new File(new URI(url).getPath()).getName();
+         } catch (Exception e) {
+            return url;
+         }
+      }
+
+      @Override
+      public String toString() {
+         return getTitle();
+      }
+   }
+}
@@ -0,0 +1,437 @@
+package com.jfxbe;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.Group;
+import javafx.scene.Scene;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.media.MediaPlayer;
+import javafx.scene.media.MediaPlayer.Status;
+import javafx.scene.media.MediaView;
+import javafx.scene.paint.Color;
+import javafx.util.Duration;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Small preview frames of a video shown while hovering over the seek
+ * slider. The frames are taken at a fixed interval and stored in
+ * sprite sheets (a grid of frames per image), so showing a preview
+ * only sets an ImageView's viewport instead of seeking the player.
+ *
+ * The frames are taken by a hidden, muted MediaPlayer and MediaView
+ * pair seeking through the file, one frame every few pulses, leaving
+ * the playing player alone. Each full sheet is written as a JPEG in
+ * ~/.jfxbe/previews/&lt;hash of the file&gt; by a background thread and
+ * the index file is written last, so an opened video having previews
+ * shows them right away. The file is hashed and the index read on the
+ * same background thread. Generating can be cancelled at any time and
+ * frames taken so far can be shown while the rest is generated.
+ *
+ * Must be used on the JavaFX application thread.
+ */
+public class ScrubPreviews {
+
+   /** Size of a preview frame */
+   public static final int FRAME_WIDTH = 160;
+   public static final int FRAME_HEIGHT = 90;
+
+   /** Frames per row and rows of a sprite sheet */
+   private static final int COLUMNS = 10;
+   private static final int ROWS = 10;
+   private static final int FRAMES_PER_SHEET = COLUMNS * ROWS;
+
+   /** The shortest time between two frames in seconds */
+   private static final double MIN_INTERVAL = 5;
+
+   /** Longer videos have frames further apart */
+   private static final int MAX_FRAMES = 500;
+
+   /** Pulses the frame must be at the seek position before taking it */
+   private static final int SETTLE_PULSES = 2;
+
+   /** Pulses to wait for a seek before taking the frame anyway */
+   private static final int SEEK_TIMEOUT_PULSES = 60;
+
+   private static final String INDEX_FILE = "previews.properties";
+
+   /** Writes the sprite sheets, one at a time */
+   private static final ExecutorService WRITER =
+           Executors.newSingleThreadExecutor(runnable -> {
+              Thread thread = new Thread(runnable, "scrub-previews");
+              thread.setDaemon(true);
+              return thread;
+           });
+
+   private final MediaPlayerManager playerManager;
+   private final List<Image> sheets = new ArrayList<>();
+   private Path cacheDir;
+   private double interval;
+   private int frameCount;
+   /** Frames which can be shown, the first ones when generating */
+   private int available;
+
+   /** Changed when loading is cancelled, the cache lookup on its way is ignored */
+   private int lookups;
+
+   /** Changed when generating is cancelled, its pending writes are skipped */
+   private volatile int generation;
+
+   // The hidden player seeking through the video
+   private MediaPlayer previewPlayer;
+   private MediaView previewView;
+   private final AnimationTimer pulse;
+   private final SnapshotParameters snapshotParameters = new SnapshotParameters();
+   private WritableImage frame = new WritableImage(FRAME_WIDTH, FRAME_HEIGHT);
+   private boolean seeking;
+   private double seekTarget;
+   private int waitedPulses;
+   private int settledPulses;
+
+   /**
+    * @param playerManager creates and disposes the hidden player.
+    */
+   public ScrubPreviews(MediaPlayerManager playerManager) {
+      this.playerManager = playerManager;
+      snapshotParameters.setFill(Color.BLACK);
+      pulse = new AnimationTimer() {
+         @Override
+         public void handle(long now) {
+            step();
+         }
+      };
+   }
+
+   /**
+    * Shows the previews of a video, generating them when they aren't
+    * cached. Only local files have previews.
+    * @param url the URL of the video.
+    * @param duration the video's duration.
+    */
+   public void load(String url, Duration duration) {
+      cancel();
+      sheets.clear();
+      available = 0;
+      frameCount = 0;
+      double seconds = duration.toSeconds();
+      File videoFile = toFile(url);
+      if (videoFile == null || !(seconds > 0) || Double.isInfinite(seconds)) {
+         return;
+      }
+      interval = Math.max(MIN_INTERVAL, seconds / MAX_FRAMES);
+      frameCount = (int) Math.ceil(seconds / interval);
+
+      // hash the file and read the index on the writer thread
+      int lookup = lookups;
+      double frameInterval = interval;
+      int frames = frameCount;
+      WRITER.submit(() -> {
+         Path dir = null;
+         boolean cached = false;
+         try {
+            dir = Paths.get(System.getProperty("user.home"), ".jfxbe", "previews",
+                    WaveformPyramid.fingerprint(videoFile));
+            cached = isCached(dir, frameInterval, frames);
+         } catch (IOException e) {
+            e.printStackTrace();
+         }
+         Path previewsDir = dir;
+         boolean hasPreviews = cached;
+         Platform.runLater(() -> {
+            if (lookup == lookups) {
+               lookedUp(url, previewsDir, hasPreviews);
+            }
+         });
+      });
+   }
+
+   /**
+    * Shows the cached sheets or starts generating them once the
+    * cache was looked up.
+    * @param dir the folder of the video's previews, null if unknown.
+    * @param cached true if the folder has the previews.
+    */
+   private void lookedUp(String url, Path dir, boolean cached) {
+      if (dir == null) {
+         frameCount = 0;
+         return;
+      }
+      cacheDir = dir;
+      if (cached) {
+         // loaded in the background
+         for (int sheet = 0; sheet * FRAMES_PER_SHEET < frameCount; sheet++) {
+            sheets.add(new Image(sheetFile(sheet).toUri().toString(), true));
+         }
+         available = frameCount;
+         return;
+      }
+      startGenerating(url);
+   }
+
+   /**
+    * Stops generating previews and disposes the hidden player. The
+    * frames taken so far can still be shown.
+    */
+   public void cancel() {
+      // a cache lookup on its way is ignored
+      lookups++;
+      if (previewPlayer != null) {
+         // skip the writes of the unfinished sheets
+         generation++;
+      }
+      releasePlayer();
+   }
+
+   /**
+    * Stops generating when the player manager disposes the hidden
+    * player, the frames taken so far can still be shown.
+    */
+   private void previewPlayerEvicted() {
+      generation++;
+      pulse.stop();
+      previewView.setMediaPlayer(null);
+      previewPlayer = null;
+      previewView = null;
+   }
+
+   private void releasePlayer() {
+      pulse.stop();
+      if (previewPlayer != null) {
+         previewView.setMediaPlayer(null);
+         playerManager.release(previewPlayer);
+         previewPlayer = null;
+         previewView = null;
+      }
+   }
+
+   /**
+    * Shows the preview frame nearest to a time in an ImageView.
+    * @param seconds the time in the video.
+    * @param imageView the view to show the frame.
+    * @return true if there is a frame for the time.
+    */
+   public boolean showFrame(double seconds, ImageView imageView) {
+      if (available == 0) {
+         return false;
+      }
+      int index = (int) Math.round(seconds / interval);
+      index = Math.max(0, Math.min(frameCount - 1, index));
+      if (index >= available) {
+         return false;
+      }
+      int cell = index % FRAMES_PER_SHEET;
+      imageView.setImage(sheets.get(index / FRAMES_PER_SHEET));
+      imageView.setViewport(new Rectangle2D(
+              (cell % COLUMNS) * FRAME_WIDTH, (cell / COLUMNS) * FRAME_HEIGHT,
+              FRAME_WIDTH, FRAME_HEIGHT));
+      return true;
+   }
+
+   /**
+    * @return the part of the frames available, 1 when all are.
+    */
+   public double getProgress() {
+      return frameCount == 0 ? 1 : (double) available / frameCount;
+   }
+
+   /**
+    * Reads the index of a video's previews, on the writer thread.
+    * @return true if the previews in the folder match the interval and frames.
+    */
+   private static boolean isCached(Path dir, double interval, int frameCount)
+           throws IOException {
+      Path indexFile = dir.resolve(INDEX_FILE);
+      if (!Files.isRegularFile(indexFile)) {
+         return false;
+      }
+      Properties index = new Properties();
+      try (InputStream in = Files.newInputStream(indexFile)) {
+         index.load(in);
+      }
+      return String.valueOf(interval).equals(index.getProperty("interval")) &&
+             String.valueOf(frameCount).equals(index.getProperty("frames")) &&
+             String.valueOf(FRAME_WIDTH).equals(index.getProperty("width")) &&
+             String.valueOf(FRAME_HEIGHT).equals(index.getProperty("height"));
+   }
+
+   private void startGenerating(String url) {
+      try {
+         // the previews can do without the player when others need it
+         previewPlayer = playerManager.create(url, this::previewPlayerEvicted);
+      } catch (Exception e) {
+         e.printStackTrace();
+         return;
+      }
+      MediaPlayer player = previewPlayer;
+      player.setMute(true);
+      previewView = new MediaView(player);
+      previewView.setFitWidth(FRAME_WIDTH);
+      previewView.setFitHeight(FRAME_HEIGHT);
+      previewView.setPreserveRatio(true);
+      // a scene which is never shown, only used for snapshots
+      new Scene(new Group(previewView));
+
+      player.setOnError(() -> {
+         player.getError().printStackTrace();
+         cancel();
+      });
+      // seeking needs a paused player, it starts READY
+      player.setOnReady(player::pause);
+      player.setOnPaused(() -> {
+         player.setOnPaused(null);
+         seeking = false;
+         pulse.start();
+      });
+   }
+
+   /**
+    * Called every pulse while generating, seeks to the next frame's
+    * time or takes the frame once the seek settled.
+    */
+   private void step() {
+      if (previewPlayer == null || previewPlayer.getStatus() == Status.DISPOSED) {
+         // released by the player manager
+         cancel();
+         return;
+      }
+      if (!seeking) {
+         if (available >= frameCount) {
+            finish();
+            return;
+         }
+         seekTarget = available * interval;
+         previewPlayer.seek(Duration.seconds(seekTarget));
+         seeking = true;
+         waitedPulses = 0;
+         settledPulses = 0;
+         return;
+      }
+      waitedPulses++;
+      // a seek may land on the key frame before the target
+      double seekError = previewPlayer.getCurrentTime().toSeconds() - seekTarget;
+      if (Math.abs(seekError) < interval / 2) {
+         settledPulses++;
+      }
+      if (settledPulses < SETTLE_PULSES && waitedPulses < SEEK_TIMEOUT_PULSES) {
+         return;
+      }
+      takeFrame(available);
+      available++;
+      seeking = false;
+   }
+
+   /**
+    * Draws the hidden view's frame into its cell of a sprite sheet,
+    * writing the sheet once it is full.
+    */
+   private void takeFrame(int index) {
+      int sheetIndex = index / FRAMES_PER_SHEET;
+      int cell = index % FRAMES_PER_SHEET;
+      if (sheetIndex == sheets.size()) {
+         int framesLeft = frameCount - sheetIndex * FRAMES_PER_SHEET;
+         int rows = Math.min(ROWS, (framesLeft + COLUMNS - 1) / COLUMNS);
+         sheets.add(new WritableImage(FRAME_WIDTH * COLUMNS, FRAME_HEIGHT * rows));
+      }
+      WritableImage sheet = (WritableImage) sheets.get(sheetIndex);
+
+      frame = previewView.snapshot(snapshotParameters, frame);
+      int width = Math.min(FRAME_WIDTH, (int) previewView.getBoundsInLocal().getWidth());
+      int height = Math.min(FRAME_HEIGHT, (int) previewView.getBoundsInLocal().getHeight());
+      if (width > 0 && height > 0) {
+         // centered, letterboxed when the video isn't 16:9
+         sheet.getPixelWriter().setPixels(
+                 (cell % COLUMNS) * FRAME_WIDTH + (FRAME_WIDTH - width) / 2,
+                 (cell / COLUMNS) * FRAME_HEIGHT + (FRAME_HEIGHT - height) / 2,
+                 width, height, frame.getPixelReader(), 0, 0);
+      }
+      if (cell == FRAMES_PER_SHEET - 1 || index == frameCount - 1) {
+         writeSheet(sheetIndex, sheet);
+      }
+   }
+
+   /**
+    * Copies a sheet's pixels and encodes them on the writer thread.
+    */
+   private void writeSheet(int sheetIndex, WritableImage sheet) {
+      int width = (int) sheet.getWidth();
+      int height = (int) sheet.getHeight();
+      int[] pixels = new int[width * height];
+      sheet.getPixelReader().getPixels(0, 0, width, height,
+              PixelFormat.getIntArgbInstance(), pixels, 0, width);
+      int run = generation;
+      Path file = sheetFile(sheetIndex);
+      WRITER.submit(() -> {
+         if (run != generation) {
+            return;
+         }
+         BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+         image.setRGB(0, 0, width, height, pixels, 0, width);
+         try {
+            Files.createDirectories(file.getParent());
+            Path tempFile = Files.createTempFile(file.getParent(), "sheet", ".tmp");
+            ImageIO.write(image, "jpg", tempFile.toFile());
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+         } catch (IOException e) {
+            e.printStackTrace();
+         }
+      });
+   }
+
+   /**
+    * All frames were taken, writes the index after the last sheet.
+    */
+   private void finish() {
+      Properties index = new Properties();
+      index.setProperty("interval", String.valueOf(interval));
+      index.setProperty("frames", String.valueOf(frameCount));
+      index.setProperty("width", String.valueOf(FRAME_WIDTH));
+      index.setProperty("height", String.valueOf(FRAME_HEIGHT));
+      int run = generation;
+      Path indexFile = cacheDir.resolve(INDEX_FILE);
+      WRITER.submit(() -> {
+         if (run != generation) {
+            return;
+         }
+         try (OutputStream out = Files.newOutputStream(indexFile)) {
+            index.store(out, "Scrub preview sprite sheets");
+         } catch (IOException e) {
+            e.printStackTrace();
+         }
+      });
+      releasePlayer();
+   }
+
+   private Path sheetFile(int sheetIndex) {
+      return cacheDir.resolve(String.format("sheet-%03d.jpg", sheetIndex));
+   }
+
+   private static File toFile(String url) {
+      try {
+         URI uri = new URI(url);
+         return "file".equals(uri.getScheme()) ? new File(uri) : null;
+      } catch (Exception e) {
+         return null;
+      }
+   }
+}
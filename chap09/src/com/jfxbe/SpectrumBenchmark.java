@@ -0,0 +1,220 @@
+package com.jfxbe;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.scene.Scene;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.ClosePath;
+import javafx.scene.shape.LineTo;
+import javafx.scene.shape.MoveTo;
+import javafx.scene.shape.Path;
+import javafx.stage.Stage;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * Compares drawing the audio spectrum chart with Path elements (one
+ * LineTo per band, as PlayingAudio used to) and drawing it on a
+ * SpectrumCanvas. Each chart is shown alone in a stage and updated
+ * once per pulse from an AnimationTimer, as spectrum callbacks arrive
+ * between the frames while playing, so the scene is rendered after
+ * every update. For each band count and chart it prints the average
+ * time and bytes allocated by the update itself, the average and
+ * longest frame time (the time between pulses, which includes
+ * rendering the chart) and the frame rate.
+ *
+ * Pulses are capped at the screen's refresh rate, run with
+ * -Djavafx.animation.fullspeed=true to see the rendering cost in the
+ * frame times rather than the cap:
+ * <pre>
+ *    java -Djavafx.animation.fullspeed=true -cp mlib/chap11.jar com.jfxbe.SpectrumBenchmark
+ * </pre>
+ */
+public class SpectrumBenchmark extends Application {
+
+   private static final int[] BAND_COUNTS = {128, 256, 512, 1024};
+   private static final int WARMUP_FRAMES = 300;
+   private static final int MEASURED_FRAMES = 1200;
+
+   /** Different spectra cycled through so the charts change each frame */
+   private static final int SPECTRA = 16;
+
+   private static final double CHART_WIDTH = 526;
+   private static final double CHART_HEIGHT = 220;
+
+   private final Path chartArea = new Path();
+   private final SpectrumCanvas spectrumCanvas = new SpectrumCanvas(CHART_WIDTH, CHART_HEIGHT);
+
+   /** The run measured, two per band count: the path chart then the canvas */
+   private int run;
+   private int frame;
+   private long lastPulse;
+   private float[][] spectra;
+
+   // Summed over the measured frames of a run
+   private long updateNanos;
+   private long updateBytes;
+   private long frameNanos;
+   private long longestFrame;
+
+   /**
+    * @param args the command line arguments
+    */
+   public static void main(String[] args) {
+      Application.launch(args);
+   }
+
+   @Override
+   public void start(Stage primaryStage) {
+      chartArea.setId("chart-area");
+      Pane root = new Pane(chartArea, spectrumCanvas);
+      Scene scene = new Scene(root, CHART_WIDTH, CHART_HEIGHT, Color.BLACK);
+      scene.getStylesheets()
+           .add(getClass().getResource("/playing-audio.css")
+                          .toExternalForm());
+      primaryStage.setTitle("SpectrumBenchmark");
+      primaryStage.setScene(scene);
+      primaryStage.show();
+
+      System.out.println("bands  chart   update us  update B  frame ms  max frame ms    fps");
+      startRun();
+      new AnimationTimer() {
+         @Override
+         public void handle(long now) {
+            if (!pulse(now)) {
+               stop();
+               Platform.exit();
+            }
+         }
+      }.start();
+   }
+
+   private boolean isCanvasRun() {
+      return run % 2 == 1;
+   }
+
+   /**
+    * Shows the chart of the current run only.
+    */
+   private void startRun() {
+      spectra = createSpectra(BAND_COUNTS[run / 2]);
+      chartArea.setVisible(!isCanvasRun());
+      spectrumCanvas.setVisible(isCanvasRun());
+      frame = 0;
+      lastPulse = 0;
+      updateNanos = 0;
+      updateBytes = 0;
+      frameNanos = 0;
+      longestFrame = 0;
+   }
+
+   /**
+    * Updates the chart of the current run, called once per pulse.
+    * @return boolean false once every run is done.
+    */
+   private boolean pulse(long now) {
+      boolean measured = frame >= WARMUP_FRAMES;
+      if (measured && lastPulse != 0) {
+         long frameTime = now - lastPulse;
+         frameNanos += frameTime;
+         longestFrame = Math.max(longestFrame, frameTime);
+      }
+      lastPulse = now;
+
+      float[] magnitudes = spectra[frame % SPECTRA];
+      long bytesBefore = allocatedBytes();
+      long start = System.nanoTime();
+      if (isCanvasRun()) {
+         spectrumCanvas.drawSpectrum(magnitudes, magnitudes.length);
+      } else {
+         updatePathChart(chartArea, magnitudes);
+      }
+      if (measured) {
+         updateNanos += System.nanoTime() - start;
+         updateBytes += allocatedBytes() - bytesBefore;
+      }
+
+      frame++;
+      if (frame < WARMUP_FRAMES + MEASURED_FRAMES) {
+         return true;
+      }
+      // the first measured frame has no frame time
+      double meanFrameMillis = frameNanos / 1e6 / (MEASURED_FRAMES - 1);
+      System.out.printf("%5d  %-6s  %9.2f  %8d  %8.2f  %12.2f  %5.1f%n",
+              BAND_COUNTS[run / 2], isCanvasRun() ? "canvas" : "path",
+              updateNanos / 1e3 / MEASURED_FRAMES, updateBytes / MEASURED_FRAMES,
+              meanFrameMillis, longestFrame / 1e6, 1000 / meanFrameMillis);
+      run++;
+      if (run == BAND_COUNTS.length * 2) {
+         return false;
+      }
+      startRun();
+      return true;
+   }
+
+   /**
+    * Random magnitudes between -60 dB and 0 dB.
+    */
+   private static float[][] createSpectra(int bands) {
+      Random random = new Random(bands);
+      float[][] spectra = new float[SPECTRA][bands];
+      for (float[] magnitudes : spectra) {
+         for (int i = 0; i < bands; i++) {
+            magnitudes[i] = -60 * random.nextFloat();
+         }
+      }
+      return spectra;
+   }
+
+   /**
+    * Bytes allocated by the current thread or 0 if not supported.
+    */
+   private static long allocatedBytes() {
+      java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+      if (threadBean instanceof com.sun.management.ThreadMXBean) {
+         return ((com.sun.management.ThreadMXBean) threadBean)
+                 .getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+      return 0;
+   }
+
+   /**
+    * The Path based chart PlayingAudio used before SpectrumCanvas,
+    * updating one LineTo element per band.
+    */
+   private static void updatePathChart(Path chartArea, float[] magnitudes) {
+      double freqAxisY = CHART_HEIGHT;
+      double chartHeight = CHART_HEIGHT;
+      double scaleY = chartHeight / (60 * 60);
+      double space = 5;
+      double freqBarX = 0;
+      double scaleX = CHART_WIDTH / (magnitudes.length * space);
+
+      if ((chartArea.getElements().size() - 3) != magnitudes.length) {
+         chartArea.getElements().clear();
+         chartArea.getElements().add(new MoveTo(freqBarX, freqAxisY));
+         for (float magnitude : magnitudes) {
+            double dB = magnitude * magnitude;
+            dB = chartHeight - dB * scaleY;
+            chartArea.getElements().add(new LineTo(freqBarX, freqAxisY - dB));
+            freqBarX += (scaleX * space);
+         }
+         chartArea.getElements().add(new LineTo(freqBarX, freqAxisY));
+         chartArea.getElements().add(new ClosePath());
+      } else {
+         int idx = 0;
+         for (float magnitude : magnitudes) {
+            double dB = magnitude * magnitude;
+            dB = chartHeight - dB * scaleY;
+            idx++;
+            LineTo dataPoint = (LineTo) chartArea.getElements().get(idx);
+            dataPoint.setX(freqBarX);
+            dataPoint.setY(freqAxisY - dB);
+            freqBarX += (scaleX * space);
+         }
+      }
+   }
+}
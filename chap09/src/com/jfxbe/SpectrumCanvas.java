@@ -0,0 +1,143 @@
+package com.jfxbe;
+
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.CycleMethod;
+import javafx.scene.paint.LinearGradient;
+import javafx.scene.paint.Stop;
+import javafx.scene.shape.StrokeLineCap;
+import javafx.scene.shape.StrokeLineJoin;
+
+/**
+ * Draws an audio spectrum as a filled area chart on a Canvas.
+ * The chart's points are kept in arrays allocated once for the
+ * maximum number of bands, so drawing a spectrum doesn't create
+ * any objects regardless of the band count or how often the
+ * spectrum is updated.
+ */
+public class SpectrumCanvas extends Canvas {
+
+   /** Largest number of bands the canvas can draw */
+   public static final int MAX_BANDS = 1024;
+
+   // Two extra points close the area at the bottom right and left.
+   private final double[] xPoints = new double[MAX_BANDS + 2];
+   private final double[] yPoints = new double[MAX_BANDS + 2];
+
+   /** Magnitudes at or below the threshold (in dB) are drawn at the bottom */
+   private double threshold = 60;
+
+   /**
+    * @param width the chart's width.
+    * @param height the chart's height.
+    */
+   public SpectrumCanvas(double width, double height) {
+      super(width, height);
+      GraphicsContext gc = getGraphicsContext2D();
+      // Same colors as the #chart-area path in playing-audio.css
+      gc.setFill(new LinearGradient(0, 0, 0, height, false, CycleMethod.NO_CYCLE,
+              new Stop(0, Color.rgb(255, 0, 0, .70)),     // Red
+              new Stop(.40, Color.rgb(255, 165, 0, .70)), // Orange
+              new Stop(.70, Color.rgb(255, 255, 0, .70)), // Yellow
+              new Stop(.80, Color.rgb(0, 255, 0, .70)),   // Green
+              new Stop(.90, Color.rgb(0, 0, 255, .70)),   // Blue
+              new Stop(.95, Color.rgb(75, 0, 128, .70)),  // Indigo
+              new Stop(1, Color.rgb(238, 130, 238, .70))  // Violet
+      ));
+      gc.setStroke(Color.WHITE);
+      gc.setLineWidth(1.5);
+      gc.setLineCap(StrokeLineCap.ROUND);
+      gc.setLineJoin(StrokeLineJoin.ROUND);
+   }
+
+   /**
+    * Sets the audio spectrum threshold of the media player.
+    * @param thresholdDb the threshold in dB such as -60.
+    */
+   public void setThreshold(int thresholdDb) {
+      this.threshold = Math.max(1, Math.abs(thresholdDb));
+   }
+
+   /**
+    * Draws the magnitudes of a spectrum as received by an
+    * AudioSpectrumListener. Must be called on the JavaFX
+    * application thread.
+    *
+    * @param magnitudes the magnitudes in dB (0 down to the threshold).
+    * @param bandCount the number of magnitudes to draw.
+    */
+   public void drawSpectrum(float[] magnitudes, int bandCount) {
+      int bands = Math.min(MAX_BANDS, Math.min(bandCount, magnitudes.length));
+      double width = getWidth();
+      double height = getHeight();
+
+      // Squaring the magnitudes stretches the plot, dividing by the
+      // threshold squared keeps the y coordinate within the chart.
+      double scaleY = height / (threshold * threshold);
+      double step = bands > 0 ? width / bands : 0;
+
+      xPoints[0] = 0;
+      yPoints[0] = height;
+      for (int i = 0; i < bands; i++) {
+         double dB = magnitudes[i] * magnitudes[i];
+         xPoints[i + 1] = i * step;
+         yPoints[i + 1] = Math.min(height, dB * scaleY);
+      }
+      xPoints[bands + 1] = width;
+      yPoints[bands + 1] = height;
+      drawPoints(bands + 2);
+   }
+
+   /**
+    * Draws levels scaled from 0 (bottom) to 1 (top) as an area chart
+    * and the peaks as a short line above each band. Must be called on
+    * the JavaFX application thread.
+    *
+    * @param levels the level of each band.
+    * @param peaks the peak level of each band.
+    * @param bandCount the number of bands to draw.
+    */
+   public void drawLevels(float[] levels, float[] peaks, int bandCount) {
+      int bands = Math.min(MAX_BANDS, Math.min(bandCount, levels.length));
+      double width = getWidth();
+      double height = getHeight();
+      double step = bands > 0 ? width / bands : 0;
+
+      xPoints[0] = 0;
+      yPoints[0] = height;
+      for (int i = 0; i < bands; i++) {
+         xPoints[i + 1] = i * step;
+         yPoints[i + 1] = height - clamp(levels[i]) * height;
+      }
+      xPoints[bands + 1] = width;
+      yPoints[bands + 1] = height;
+      drawPoints(bands + 2);
+
+      GraphicsContext gc = getGraphicsContext2D();
+      for (int i = 0; i < bands && i < peaks.length; i++) {
+         double peakY = height - clamp(peaks[i]) * height;
+         gc.strokeLine(i * step, peakY, (i + 1) * step, peakY);
+      }
+   }
+
+   private static double clamp(float level) {
+      return Math.max(0, Math.min(1, level));
+   }
+
+   private void drawPoints(int pointCount) {
+      GraphicsContext gc = getGraphicsContext2D();
+      // Clearing the whole canvas also discards the previously
+      // buffered drawing commands.
+      gc.clearRect(0, 0, getWidth(), getHeight());
+      gc.fillPolygon(xPoints, yPoints, pointCount);
+      gc.strokePolygon(xPoints, yPoints, pointCount);
+   }
+
+   /**
+    * Clears the chart.
+    */
+   public void clear() {
+      getGraphicsContext2D().clearRect(0, 0, getWidth(), getHeight());
+   }
+}
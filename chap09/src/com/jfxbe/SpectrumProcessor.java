@@ -0,0 +1,223 @@
+package com.jfxbe;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Processes audio spectra between an AudioSpectrumListener and the
+ * chart drawing them.
+ *
+ * The listener publishes each spectrum into a lock-free single producer
+ * ring buffer, which only copies the magnitudes. Like a seqlock, the
+ * reader checks the sequence again after copying a slot and fences order
+ * the slot's writes and reads around the sequence. Once per pulse the
+ * chart processes the latest spectrum: magnitudes are scaled to levels
+ * from 0 to 1, aggregated into log spaced bands (low frequencies get
+ * as much room as high ones), smoothed exponentially and tracked by
+ * peaks that hold and then decay. Spectra arriving faster than pulses
+ * are skipped, so neither side waits for the other.
+ *
+ * All data is kept in primitive arrays allocated up front, processing
+ * a spectrum doesn't create any objects.
+ */
+public class SpectrumProcessor {
+
+   /** Largest number of bands a published spectrum may have */
+   public static final int MAX_INPUT_BANDS = SpectrumCanvas.MAX_BANDS;
+
+   /** Number of spectra in the ring buffer */
+   private static final int RING_SIZE = 4;
+
+   /** Smoothing applied per processed spectrum (1 is no smoothing) */
+   private static final float SMOOTHING = 0.5f;
+
+   /** Time a peak is held before decaying */
+   private static final long PEAK_HOLD_NANOS = 500_000_000L;
+
+   /** Decay of a peak in levels per second */
+   private static final float PEAK_DECAY_PER_SECOND = 1.0f;
+
+   // Ring buffer written by the producer only
+   private final float[][] ring = new float[RING_SIZE][MAX_INPUT_BANDS];
+   private final int[] ringLengths = new int[RING_SIZE];
+   /** Number of spectra published, the next slot is published % RING_SIZE */
+   private final AtomicLong published = new AtomicLong();
+
+   // Consumer state, only used by the thread calling process()
+   private final float[] latest = new float[MAX_INPUT_BANDS];
+   private final int outputBands;
+   private final int[] bandStarts;
+   private final int[] bandEnds;
+   private final float[] levels;
+   private final float[] peaks;
+   private final long[] peakTimes;
+   private int mappedInputBands;
+   private long processed;
+   private long lastProcessNanos;
+   private double threshold = 60;
+
+   /**
+    * @param outputBands number of log spaced bands to produce.
+    */
+   public SpectrumProcessor(int outputBands) {
+      this.outputBands = outputBands;
+      this.bandStarts = new int[outputBands];
+      this.bandEnds = new int[outputBands];
+      this.levels = new float[outputBands];
+      this.peaks = new float[outputBands];
+      this.peakTimes = new long[outputBands];
+   }
+
+   /**
+    * Sets the audio spectrum threshold of the media player.
+    * @param thresholdDb the threshold in dB such as -60.
+    */
+   public void setThreshold(int thresholdDb) {
+      this.threshold = Math.max(1, Math.abs(thresholdDb));
+   }
+
+   /**
+    * Publishes a spectrum, called by the single producer such as an
+    * AudioSpectrumListener. Never blocks.
+    *
+    * @param magnitudes the magnitudes in dB (0 down to the threshold).
+    * @param bandCount the number of magnitudes.
+    */
+   public void publish(float[] magnitudes, int bandCount) {
+      long sequence = published.get();
+      int slot = (int) (sequence % RING_SIZE);
+      // The previous publish must be visible before this slot is
+      // overwritten, so a reader copying it sees the lapped sequence
+      VarHandle.storeStoreFence();
+      int length = Math.min(MAX_INPUT_BANDS, Math.min(bandCount, magnitudes.length));
+      System.arraycopy(magnitudes, 0, ring[slot], 0, length);
+      ringLengths[slot] = length;
+      // makes the slot's contents visible to the consumer
+      published.lazySet(sequence + 1);
+   }
+
+   /**
+    * Processes the latest published spectrum and advances the smoothing
+    * and peaks. Called once per pulse by the single consumer.
+    *
+    * @param now the current time in nanoseconds.
+    * @return true if a new spectrum was processed.
+    */
+   public boolean process(long now) {
+      float elapsedSeconds = lastProcessNanos == 0 ? 0 :
+              (now - lastProcessNanos) / 1e9f;
+      lastProcessNanos = now;
+      int length = readLatest();
+      boolean updated = length > 0;
+      if (updated) {
+         if (length != mappedInputBands) {
+            mapBands(length);
+         }
+         aggregate();
+      }
+      updatePeaks(now, elapsedSeconds);
+      return updated;
+   }
+
+   /**
+    * Copies the most recently published spectrum.
+    * @return the number of magnitudes or 0 if there is no new spectrum.
+    */
+   private int readLatest() {
+      long sequence = published.get();
+      if (sequence == processed) {
+         return 0;
+      }
+      int slot = (int) ((sequence - 1) % RING_SIZE);
+      int length = ringLengths[slot];
+      System.arraycopy(ring[slot], 0, latest, 0, length);
+      processed = sequence;
+      // The copy must be done before the sequence is read again
+      VarHandle.loadLoadFence();
+      // If the producer lapped the ring while copying the slot may be
+      // torn, skip it and take a later spectrum on the next pulse.
+      if (published.get() - sequence >= RING_SIZE - 1) {
+         return 0;
+      }
+      return length;
+   }
+
+   /**
+    * Maps the input bins to log spaced output bands. Band k starts at
+    * bin inputBands^(k / outputBands), at least one bin wide.
+    */
+   private void mapBands(int inputBands) {
+      int start = 0;
+      for (int k = 0; k < outputBands; k++) {
+         int end = (int) Math.round(Math.pow(inputBands, (k + 1) / (double) outputBands));
+         end = Math.min(inputBands, Math.max(end, start + 1));
+         bandStarts[k] = Math.min(start, inputBands - 1);
+         bandEnds[k] = Math.max(end, bandStarts[k] + 1);
+         start = end;
+      }
+      mappedInputBands = inputBands;
+   }
+
+   /**
+    * Scales the magnitudes of each band's bins to a level and smooths it.
+    */
+   private void aggregate() {
+      double thresholdSquared = threshold * threshold;
+      for (int k = 0; k < outputBands; k++) {
+         float loudest = -Float.MAX_VALUE;
+         for (int bin = bandStarts[k]; bin < bandEnds[k]; bin++) {
+            loudest = Math.max(loudest, latest[bin]);
+         }
+         // Squaring the magnitudes stretches the plot
+         float level = loudest >= 0 ? 1 : (float) Math.max(0,
+                 1 - (loudest * (double) loudest) / thresholdSquared);
+         levels[k] += SMOOTHING * (level - levels[k]);
+      }
+   }
+
+   private void updatePeaks(long now, float elapsedSeconds) {
+      float decay = PEAK_DECAY_PER_SECOND * elapsedSeconds;
+      for (int k = 0; k < outputBands; k++) {
+         if (levels[k] >= peaks[k]) {
+            peaks[k] = levels[k];
+            peakTimes[k] = now;
+         } else if (now - peakTimes[k] > PEAK_HOLD_NANOS) {
+            peaks[k] = Math.max(levels[k], peaks[k] - decay);
+         }
+      }
+   }
+
+   /**
+    * Clears the levels and peaks, such as when new media is played.
+    * Called by the consumer.
+    */
+   public void reset() {
+      processed = published.get();
+      for (int k = 0; k < outputBands; k++) {
+         levels[k] = 0;
+         peaks[k] = 0;
+      }
+   }
+
+   public int getOutputBands() {
+      return outputBands;
+   }
+
+   /**
+    * The smoothed levels from 0 to 1 of the output bands. Only read by
+    * the consumer.
+    * @return float[] the levels.
+    */
+   public float[] getLevels() {
+      return levels;
+   }
+
+   /**
+    * The peak levels from 0 to 1 of the output bands. Only read by the
+    * consumer.
+    * @return float[] the peaks.
+    */
+   public float[] getPeaks() {
+      return peaks;
+   }
+}
@@ -0,0 +1,310 @@
+package com.jfxbe;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+/**
+ * Subtitles (closed captions) loaded from an SRT or WebVTT file and
+ * indexed by time. The cues are kept in arrays sorted by start time,
+ * the cues showing at a time are found with a binary search, so a
+ * caption can be looked up on every time change, after seeking as well
+ * as while playing.
+ *
+ * Overlapping cues are shown together, one per line. Formatting tags
+ * such as &lt;i&gt; are removed.
+ */
+public class SubtitleIndex {
+
+   /** An index without cues */
+   public static final SubtitleIndex EMPTY =
+           new SubtitleIndex(new long[0], new long[0], new String[0], 0);
+
+   private static final Pattern TAGS = Pattern.compile("<[^>]*>|\\{\\\\[^}]*}");
+
+   private final long[] starts;
+   private final long[] ends;
+   private final String[] texts;
+   private final int size;
+
+   /** The latest end time of the cues up to each index */
+   private final long[] maxEnds;
+
+   // The result of the last lookup, valid from lastFrom until lastUntil
+   private long lastFrom = 1;
+   private long lastUntil = 0;
+   private String lastText = "";
+
+   private SubtitleIndex(long[] starts, long[] ends, String[] texts, int size) {
+      this.starts = starts;
+      this.ends = ends;
+      this.texts = texts;
+      this.size = size;
+      this.maxEnds = new long[size];
+      long maxEnd = Long.MIN_VALUE;
+      for (int i = 0; i < size; i++) {
+         maxEnd = Math.max(maxEnd, ends[i]);
+         maxEnds[i] = maxEnd;
+      }
+   }
+
+   /**
+    * Loads an SRT or WebVTT (.vtt) file.
+    * @param file the subtitle file.
+    * @return SubtitleIndex the indexed cues.
+    * @throws IOException if the file can't be read.
+    */
+   public static SubtitleIndex load(Path file) throws IOException {
+      try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+         return parse(reader);
+      }
+   }
+
+   /**
+    * Loads subtitles from a stream such as a resource.
+    * @param in the SRT or WebVTT content, UTF-8 encoded.
+    * @return SubtitleIndex the indexed cues.
+    * @throws IOException if the stream can't be read.
+    */
+   public static SubtitleIndex load(InputStream in) throws IOException {
+      try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+         return parse(reader);
+      }
+   }
+
+   /**
+    * Parses SRT or WebVTT cues. Both are blocks separated by blank
+    * lines with a timing line "start --> end" followed by the text,
+    * SRT blocks start with a sequence number and use a comma before
+    * the milliseconds.
+    * @param reader the subtitle content.
+    * @return SubtitleIndex the indexed cues.
+    * @throws IOException if the content can't be read.
+    */
+   public static SubtitleIndex parse(Reader reader) throws IOException {
+      BufferedReader lines = reader instanceof BufferedReader ?
+              (BufferedReader) reader : new BufferedReader(reader);
+      long[] starts = new long[256];
+      long[] ends = new long[256];
+      String[] texts = new String[256];
+      int size = 0;
+      boolean sorted = true;
+
+      StringBuilder text = new StringBuilder();
+      long start = -1;
+      long end = -1;
+      String line;
+      while (true) {
+         line = lines.readLine();
+         if (line == null || isBlank(line)) {
+            // end of a block
+            if (start >= 0 && text.length() > 0) {
+               if (size == starts.length) {
+                  starts = Arrays.copyOf(starts, size * 2);
+                  ends = Arrays.copyOf(ends, size * 2);
+                  texts = Arrays.copyOf(texts, size * 2);
+               }
+               sorted &= size == 0 || starts[size - 1] <= start;
+               starts[size] = start;
+               ends[size] = end;
+               texts[size] = stripTags(text);
+               size++;
+            }
+            start = -1;
+            text.setLength(0);
+            if (line == null) {
+               break;
+            }
+            continue;
+         }
+         int arrow = line.indexOf("-->");
+         if (start < 0 && arrow > 0) {
+            start = parseTime(line, 0, arrow);
+            // WebVTT cue settings may follow the end time
+            int endStart = arrow + 3;
+            while (endStart < line.length() && line.charAt(endStart) == ' ') {
+               endStart++;
+            }
+            int endEnd = line.indexOf(' ', endStart);
+            end = parseTime(line, endStart, endEnd < 0 ? line.length() : endEnd);
+            if (start < 0 || end < 0) {
+               start = -1;
+            }
+         } else if (start >= 0) {
+            if (text.length() > 0) {
+               text.append('\n');
+            }
+            text.append(line);
+         }
+         // lines before the timing (sequence numbers, WEBVTT header,
+         // NOTE and STYLE blocks) are skipped
+      }
+
+      if (!sorted) {
+         sortByStart(starts, ends, texts, size);
+      }
+      return new SubtitleIndex(starts, ends, texts, size);
+   }
+
+   /**
+    * Parses a time such as 01:02:03,456 (SRT), 01:02:03.456 or
+    * 02:03.456 (WebVTT) into milliseconds.
+    * @return the time in milliseconds or -1 if malformed.
+    */
+   static long parseTime(String line, int from, int to) {
+      long seconds = 0;
+      long millis = 0;
+      long value = 0;
+      int digits = 0;
+      boolean fraction = false;
+      for (int i = from; i < to; i++) {
+         char c = line.charAt(i);
+         if (c >= '0' && c <= '9') {
+            value = value * 10 + (c - '0');
+            digits++;
+         } else if (c == ':' && !fraction) {
+            seconds = seconds * 60 + value;
+            value = 0;
+            digits = 0;
+         } else if ((c == ',' || c == '.') && !fraction) {
+            seconds = seconds * 60 + value;
+            value = 0;
+            digits = 0;
+            fraction = true;
+         } else if (c != ' ' && c != '\t') {
+            return -1;
+         }
+      }
+      if (!fraction) {
+         seconds = seconds * 60 + value;
+      } else {
+         // scale the fraction to milliseconds
+         millis = value;
+         for (int i = digits; i < 3; i++) {
+            millis *= 10;
+         }
+         for (int i = digits; i > 3; i--) {
+            millis /= 10;
+         }
+      }
+      return seconds * 1000 + millis;
+   }
+
+   private static boolean isBlank(String line) {
+      for (int i = 0; i < line.length(); i++) {
+         if (!Character.isWhitespace(line.charAt(i))) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private static String stripTags(StringBuilder text) {
+      for (int i = 0; i < text.length(); i++) {
+         char c = text.charAt(i);
+         if (c == '<' || c == '{') {
+            return TAGS.matcher(text).replaceAll("");
+         }
+      }
+      return text.toString();
+   }
+
+   private static void sortByStart(long[] starts, long[] ends, String[] texts, int size) {
+      Integer[] order = new Integer[size];
+      for (int i = 0; i < size; i++) {
+         order[i] = i;
+      }
+      Arrays.sort(order, (a, b) -> Long.compare(starts[a], starts[b]));
+      long[] sortedStarts = new long[size];
+      long[] sortedEnds = new long[size];
+      String[] sortedTexts = new String[size];
+      for (int i = 0; i < size; i++) {
+         sortedStarts[i] = starts[order[i]];
+         sortedEnds[i] = ends[order[i]];
+         sortedTexts[i] = texts[order[i]];
+      }
+      System.arraycopy(sortedStarts, 0, starts, 0, size);
+      System.arraycopy(sortedEnds, 0, ends, 0, size);
+      System.arraycopy(sortedTexts, 0, texts, 0, size);
+   }
+
+   /**
+    * @return the number of cues.
+    */
+   public int size() {
+      return size;
+   }
+
+   /**
+    * Returns the caption showing at a time. Repeated lookups within the
+    * same cue return the same String instance, callers can compare by
+    * reference to skip updates.
+    * @param millis the playback time in milliseconds.
+    * @return String the caption or an empty string.
+    */
+   public String textAt(long millis) {
+      if (millis >= lastFrom && millis < lastUntil) {
+         return lastText;
+      }
+      // the last cue starting at or before the time
+      int last = lastStartingAtOrBefore(millis);
+
+      // the caption stays the same until the next cue starts or a
+      // showing cue ends
+      long until = last + 1 < size ? starts[last + 1] : Long.MAX_VALUE;
+      long from = last >= 0 ? starts[last] : Long.MIN_VALUE;
+      StringBuilder caption = null;
+      String single = "";
+      int count = 0;
+      int i = last;
+      for (; i >= 0 && maxEnds[i] > millis; i--) {
+         if (ends[i] > millis) {
+            until = Math.min(until, ends[i]);
+            if (count == 0) {
+               single = texts[i];
+            } else {
+               if (caption == null) {
+                  caption = new StringBuilder(single);
+               }
+               // earlier cues are shown above later ones
+               caption.insert(0, '\n').insert(0, texts[i]);
+            }
+            count++;
+         } else {
+            from = Math.max(from, ends[i]);
+         }
+      }
+      if (i >= 0) {
+         // the earlier cues all ended by then
+         from = Math.max(from, maxEnds[i]);
+      }
+      String text = caption != null ? caption.toString() : single;
+      if (!text.equals(lastText)) {
+         lastText = text;
+      }
+      lastFrom = from;
+      lastUntil = until;
+      return lastText;
+   }
+
+   private int lastStartingAtOrBefore(long millis) {
+      int low = 0;
+      int high = size - 1;
+      while (low <= high) {
+         int mid = (low + high) >>> 1;
+         if (starts[mid] <= millis) {
+            low = mid + 1;
+         } else {
+            high = mid - 1;
+         }
+      }
+      return high;
+   }
+}
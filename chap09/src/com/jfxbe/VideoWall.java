@@ -0,0 +1,119 @@
+package com.jfxbe;
+
+import javafx.application.Application;
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.scene.input.Dragboard;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.TransferMode;
+import javafx.scene.layout.StackPane;
+import javafx.scene.paint.Color;
+import javafx.stage.Stage;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plays up to 16 videos side by side in sync on a VideoWallPane.
+ * Videos are dropped onto the window or given as command line
+ * arguments (files or URLs). The space key pauses and resumes the wall.
+ */
+public class VideoWall extends Application {
+
+   private final VideoWallPane videoWall = new VideoWallPane();
+   private boolean paused;
+
+   /**
+    * @param args the command line arguments
+    */
+   public static void main(String[] args) {
+      Application.launch(args);
+   }
+
+   @Override
+   public void start(Stage primaryStage) {
+      Label hint = new Label("Drop up to " + VideoWallPane.MAX_TILES + " video files here");
+      hint.setTextFill(Color.WHITE);
+      hint.setMouseTransparent(true);
+      StackPane root = new StackPane(videoWall, hint);
+      root.setStyle("-fx-background-color: black;");
+      initFileDragNDrop(root, hint);
+
+      Scene scene = new Scene(root, 1024, 600, Color.BLACK);
+      scene.setOnKeyPressed(keyEvent -> {
+         if (keyEvent.getCode() == KeyCode.SPACE) {
+            paused = !paused;
+            if (paused) {
+               videoWall.pause();
+            } else {
+               videoWall.play();
+            }
+         }
+      });
+      primaryStage.setTitle("Video Wall");
+      primaryStage.setScene(scene);
+      primaryStage.show();
+
+      List<String> urls = toUrls(getParameters().getRaw());
+      if (!urls.isEmpty()) {
+         hint.setVisible(false);
+         videoWall.setMedia(urls);
+      }
+   }
+
+   @Override
+   public void stop() throws Exception {
+      super.stop();
+      System.out.printf("Video wall: mean drift %.1f ms, max drift %.1f ms, " +
+                        "%d seeks, %d rate nudges, %d resumes%n",
+              videoWall.getMeanDrift() * 1000, videoWall.getMaxDrift() * 1000,
+              videoWall.getSeekCount(), videoWall.getRateNudgeCount(),
+              videoWall.getResumeCount());
+      videoWall.dispose();
+   }
+
+   /**
+    * Dropped files replace the videos on the wall.
+    */
+   private void initFileDragNDrop(StackPane root, Label hint) {
+      root.setOnDragOver(dragEvent -> {
+         Dragboard db = dragEvent.getDragboard();
+         if (db.hasFiles() || db.hasUrl()) {
+            dragEvent.acceptTransferModes(TransferMode.LINK);
+         } else {
+            dragEvent.consume();
+         }
+      });
+      root.setOnDragDropped(dragEvent -> {
+         Dragboard db = dragEvent.getDragboard();
+         List<String> urls = new ArrayList<>();
+         if (db.hasFiles()) {
+            for (File file : db.getFiles()) {
+               urls.add(file.toURI().toString());
+            }
+         } else if (db.hasUrl()) {
+            urls.add(db.getUrl());
+         }
+         if (!urls.isEmpty()) {
+            hint.setVisible(false);
+            paused = false;
+            videoWall.setMedia(urls);
+         }
+         dragEvent.setDropCompleted(!urls.isEmpty());
+         dragEvent.consume();
+      });
+   }
+
+   /**
+    * Command line arguments are URLs or file paths.
+    */
+   static List<String> toUrls(List<String> args) {
+      List<String> urls = new ArrayList<>();
+      for (String arg : args) {
+         urls.add(arg.matches("[a-zA-Z][a-zA-Z0-9+.-]+:.*") && !new File(arg).exists() ?
+                 arg : new File(arg).toURI().toString());
+      }
+      return urls;
+   }
+}
@@ -0,0 +1,172 @@
+package com.jfxbe;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.scene.Scene;
+import javafx.scene.paint.Color;
+import javafx.stage.Stage;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Plays a video on a VideoWallPane 4, 9 and 16 times and prints, for
+ * each count, the scene's frame rate and longest frame, the CPU used
+ * by the process (100% is one core), the heap used, the tiles' drift
+ * from the master clock and the corrections made. The CPU is measured
+ * again with the window minimized, when the tiles don't decode.
+ *
+ * The video is given as the argument:
+ * <pre>
+ *    java -cp mlib/chap11.jar com.jfxbe.VideoWallBenchmark video.mp4
+ * </pre>
+ */
+public class VideoWallBenchmark extends Application {
+
+   private static final int[] STREAM_COUNTS = {4, 9, 16};
+   private static final long WARMUP_MILLIS = 5_000;
+   private static final long MEASURED_MILLIS = 20_000;
+   private static final long MINIMIZED_MILLIS = 5_000;
+
+   /** Longest to wait for the players to be ready */
+   private static final long READY_TIMEOUT_MILLIS = 30_000;
+
+   private final VideoWallPane videoWall = new VideoWallPane();
+   private Stage stage;
+
+   // Counted by the pulse timer on the JavaFX application thread
+   private long frames;
+   private long lastFrame;
+   private long longestFrame;
+
+   /**
+    * @param args the command line arguments
+    */
+   public static void main(String[] args) {
+      Application.launch(args);
+   }
+
+   @Override
+   public void start(Stage primaryStage) {
+      List<String> urls = VideoWall.toUrls(getParameters().getRaw());
+      if (urls.isEmpty()) {
+         System.err.println("Usage: VideoWallBenchmark <video file or URL>");
+         Platform.exit();
+         return;
+      }
+      stage = primaryStage;
+      primaryStage.setTitle("VideoWallBenchmark");
+      primaryStage.setScene(new Scene(videoWall, 1280, 720, Color.BLACK));
+      primaryStage.show();
+      new AnimationTimer() {
+         @Override
+         public void handle(long now) {
+            if (lastFrame != 0) {
+               longestFrame = Math.max(longestFrame, now - lastFrame);
+            }
+            lastFrame = now;
+            frames++;
+         }
+      }.start();
+
+      // measuring sleeps between the steps, off the JavaFX application thread
+      Thread thread = new Thread(() -> {
+         try {
+            run(urls.get(0));
+         } catch (Exception e) {
+            e.printStackTrace();
+         }
+         Platform.exit();
+      }, "video-wall-benchmark");
+      thread.setDaemon(true);
+      thread.start();
+   }
+
+   private void run(String url) throws Exception {
+      System.out.println("streams    fps  max frame ms  cpu %  heap MB  " +
+                         "mean drift ms  max drift ms  seeks  nudges  minimized cpu %");
+      for (int streams : STREAM_COUNTS) {
+         onFx(() -> {
+            videoWall.setMedia(Collections.nCopies(streams, url));
+            return null;
+         });
+         long deadline = System.currentTimeMillis() + READY_TIMEOUT_MILLIS;
+         while (!onFx(videoWall::isClockRunning)) {
+            if (System.currentTimeMillis() > deadline) {
+               throw new IllegalStateException("The players aren't ready after " +
+                       READY_TIMEOUT_MILLIS + " ms");
+            }
+            Thread.sleep(100);
+         }
+         Thread.sleep(WARMUP_MILLIS);
+
+         onFx(() -> {
+            videoWall.resetStatistics();
+            frames = 0;
+            longestFrame = 0;
+            return null;
+         });
+         System.gc();
+         long cpuBefore = processCpuTime();
+         long start = System.nanoTime();
+         Thread.sleep(MEASURED_MILLIS);
+         double cpu = cpuPercent(cpuBefore, start);
+         long heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+         String row = onFx(() -> String.format(
+                 "%7d  %5.1f  %12.1f  %5.0f  %7.1f  %13.1f  %12.1f  %5d  %6d",
+                 streams, frames / (MEASURED_MILLIS / 1000.0), longestFrame / 1e6, cpu,
+                 heap / 1e6, videoWall.getMeanDrift() * 1000,
+                 videoWall.getMaxDrift() * 1000, videoWall.getSeekCount(),
+                 videoWall.getRateNudgeCount()));
+
+         // minimized, the tiles pause on the next sync
+         onFx(() -> {
+            stage.setIconified(true);
+            return null;
+         });
+         Thread.sleep(1000);
+         cpuBefore = processCpuTime();
+         start = System.nanoTime();
+         Thread.sleep(MINIMIZED_MILLIS);
+         double minimizedCpu = cpuPercent(cpuBefore, start);
+         onFx(() -> {
+            stage.setIconified(false);
+            return null;
+         });
+         System.out.printf("%s  %15.0f%n", row, minimizedCpu);
+      }
+      onFx(() -> {
+         videoWall.dispose();
+         return null;
+      });
+   }
+
+   /**
+    * Runs code on the JavaFX application thread and waits for its result.
+    */
+   private static <T> T onFx(Callable<T> callable) throws Exception {
+      FutureTask<T> task = new FutureTask<>(callable);
+      Platform.runLater(task);
+      return task.get();
+   }
+
+   private static double cpuPercent(long cpuBefore, long start) {
+      return (processCpuTime() - cpuBefore) * 100.0 / (System.nanoTime() - start);
+   }
+
+   /**
+    * CPU time used by the process in nanoseconds or 0 if not supported.
+    */
+   private static long processCpuTime() {
+      OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
+      if (osBean instanceof com.sun.management.OperatingSystemMXBean) {
+         return ((com.sun.management.OperatingSystemMXBean) osBean).getProcessCpuTime();
+      }
+      return 0;
+   }
+}
@@ -0,0 +1,419 @@
+package com.jfxbe;
+
+import javafx.animation.AnimationTimer;
+import javafx.beans.binding.Bindings;
+import javafx.geometry.Bounds;
+import javafx.geometry.Pos;
+import javafx.scene.control.Label;
+import javafx.scene.control.ScrollPane;
+import javafx.scene.layout.StackPane;
+import javafx.scene.layout.TilePane;
+import javafx.scene.media.MediaPlayer;
+import javafx.scene.media.MediaPlayer.Status;
+import javafx.scene.media.MediaView;
+import javafx.scene.shape.Rectangle;
+import javafx.stage.Stage;
+import javafx.stage.Window;
+import javafx.util.Duration;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A grid of videos played in sync, such as several camera recordings
+ * of the same event. Each tile has its own MediaPlayer following a
+ * master clock: every SYNC_INTERVAL each playing tile's drift from
+ * the clock is measured, small drifts are corrected by nudging the
+ * tile's rate and large ones (such as after a stall) by seeking.
+ *
+ * Tiles scrolled out of view, or all of them when the window is
+ * minimized, are paused so their video isn't decoded. They seek to the
+ * clock's time when they're shown again. The wall loops once the
+ * longest video ended.
+ *
+ * Must be used on the JavaFX application thread.
+ */
+public class VideoWallPane extends ScrollPane {
+
+   /** Most videos on a wall */
+   public static final int MAX_TILES = 16;
+
+   /** Tiles aren't narrower than this, more are scrolled */
+   private static final double MIN_TILE_WIDTH = 240;
+
+   /** How often the tiles are compared to the clock in nanoseconds */
+   private static final long SYNC_INTERVAL = 250_000_000L;
+
+   /** A tile drifting further (in seconds) seeks to the clock's time */
+   private static final double SEEK_THRESHOLD = 0.5;
+
+   /** A tile drifting further (in seconds) has its rate nudged */
+   private static final double RATE_THRESHOLD = 0.04;
+
+   /** Rate change per second of drift, the drift is made up in about 2 seconds */
+   private static final double RATE_GAIN = 0.5;
+
+   /** Most the rate is nudged away from 1 */
+   private static final double MAX_RATE_NUDGE = 0.1;
+
+   private final MediaPlayerManager playerManager = new MediaPlayerManager(MAX_TILES);
+   private final TilePane grid = new TilePane();
+   private final List<Tile> tiles = new ArrayList<>();
+   private final AnimationTimer syncPulse;
+   private long lastSync;
+
+   // The master clock, seconds from the start of the videos
+   private boolean clockRunning;
+   private long clockStartNanos;
+   private double clockStartSeconds;
+   private double wallDuration;
+   private boolean playRequested;
+
+   // Statistics since the last resetStatistics()
+   private long driftSamples;
+   private double driftSum;
+   private double maxDrift;
+   private long seekCount;
+   private long rateNudgeCount;
+   private long resumeCount;
+
+   public VideoWallPane() {
+      grid.setHgap(2);
+      grid.setVgap(2);
+      grid.setAlignment(Pos.CENTER);
+      setContent(grid);
+      setFitToWidth(true);
+      setStyle("-fx-background: black; -fx-background-color: black;");
+
+      // as many tiles per row as fit a square grid
+      viewportBoundsProperty().addListener(observable -> layoutTiles());
+      syncPulse = new AnimationTimer() {
+         @Override
+         public void handle(long now) {
+            if (now - lastSync >= SYNC_INTERVAL) {
+               lastSync = now;
+               sync(now);
+            }
+         }
+      };
+   }
+
+   /**
+    * Replaces the videos, they start playing together once all are ready.
+    * @param urls the URLs of the videos, at most MAX_TILES.
+    */
+   public void setMedia(List<String> urls) {
+      dispose();
+      for (String url : urls.subList(0, Math.min(MAX_TILES, urls.size()))) {
+         try {
+            Tile tile = new Tile(url, playerManager.create(url));
+            tiles.add(tile);
+            grid.getChildren().add(tile.view);
+         } catch (Exception e) {
+            System.err.println("Unable to play " + url + ": " + e);
+         }
+      }
+      layoutTiles();
+      clockStartSeconds = 0;
+      clockRunning = false;
+      playRequested = true;
+      resetStatistics();
+      syncPulse.start();
+   }
+
+   /**
+    * Starts or resumes the clock, the tiles follow on the next sync.
+    */
+   public void play() {
+      playRequested = true;
+   }
+
+   /**
+    * Stops the clock and pauses all tiles.
+    */
+   public void pause() {
+      playRequested = false;
+      stopClock(System.nanoTime());
+      for (Tile tile : tiles) {
+         pauseTile(tile);
+      }
+   }
+
+   /**
+    * Disposes the players.
+    */
+   public void dispose() {
+      syncPulse.stop();
+      grid.getChildren().clear();
+      tiles.clear();
+      playerManager.releaseAll();
+      wallDuration = 0;
+   }
+
+   /**
+    * @param now the time in nanoseconds.
+    * @return the master clock's time in seconds.
+    */
+   public double clockTime(long now) {
+      return clockRunning ? clockStartSeconds + (now - clockStartNanos) / 1e9 :
+              clockStartSeconds;
+   }
+
+   private void startClock(long now, double seconds) {
+      clockStartSeconds = seconds;
+      clockStartNanos = now;
+      clockRunning = true;
+   }
+
+   private void stopClock(long now) {
+      clockStartSeconds = clockTime(now);
+      clockRunning = false;
+   }
+
+   private void layoutTiles() {
+      if (tiles.isEmpty()) {
+         return;
+      }
+      int columns = (int) Math.ceil(Math.sqrt(tiles.size()));
+      double width = getViewportBounds().getWidth() - (columns - 1) * grid.getHgap();
+      double tileWidth = Math.max(MIN_TILE_WIDTH, Math.floor(width / columns));
+      grid.setPrefColumns(columns);
+      grid.setPrefTileWidth(tileWidth);
+      grid.setPrefTileHeight(Math.floor(tileWidth * 9 / 16));
+   }
+
+   /**
+    * Starts the clock when all tiles are ready, then pauses the hidden
+    * tiles, resumes the shown ones and corrects their drift.
+    */
+   private void sync(long now) {
+      if (clockRunning && wallDuration <= 0) {
+         // every tile failed
+         stopClock(now);
+      }
+      if (!clockRunning) {
+         if (!playRequested || tiles.isEmpty() || !allReady()) {
+            return;
+         }
+         startClock(now, clockStartSeconds);
+      }
+      double clock = clockTime(now);
+      if (clock >= wallDuration) {
+         // loop the wall, all videos start over together
+         startClock(now, 0);
+         clock = 0;
+         for (Tile tile : tiles) {
+            if (!tile.failed) {
+               tile.player.seek(Duration.ZERO);
+               tile.ended = false;
+            }
+         }
+      }
+
+      boolean windowShowing = isWindowShowing();
+      Bounds viewport = localToScene(getLayoutBounds());
+      for (Tile tile : tiles) {
+         if (tile.failed) {
+            continue;
+         }
+         boolean shown = windowShowing &&
+                         tile.view.localToScene(tile.view.getLayoutBounds())
+                                  .intersects(viewport);
+         if (!shown || tile.ended || clock >= tile.duration) {
+            // not decoding hidden tiles, ended tiles keep the last frame
+            pauseTile(tile);
+            continue;
+         }
+         if (tile.player.getStatus() != Status.PLAYING) {
+            tile.player.seek(Duration.seconds(clock));
+            tile.player.setRate(1);
+            tile.player.play();
+            resumeCount++;
+            continue;
+         }
+         correctDrift(tile, clock);
+      }
+   }
+
+   private void correctDrift(Tile tile, double clock) {
+      double drift = tile.player.getCurrentTime().toSeconds() - clock;
+      double absoluteDrift = Math.abs(drift);
+      driftSamples++;
+      driftSum += absoluteDrift;
+      maxDrift = Math.max(maxDrift, absoluteDrift);
+
+      if (absoluteDrift > SEEK_THRESHOLD) {
+         tile.player.seek(Duration.seconds(clock));
+         tile.player.setRate(1);
+         seekCount++;
+      } else if (absoluteDrift > RATE_THRESHOLD) {
+         // ahead plays slower, behind plays faster
+         double nudge = Math.max(-MAX_RATE_NUDGE, Math.min(MAX_RATE_NUDGE, -drift * RATE_GAIN));
+         tile.player.setRate(1 + nudge);
+         rateNudgeCount++;
+      } else if (tile.player.getRate() != 1) {
+         tile.player.setRate(1);
+      }
+   }
+
+   private void pauseTile(Tile tile) {
+      if (!tile.failed && tile.player.getStatus() == Status.PLAYING) {
+         tile.player.pause();
+      }
+   }
+
+   /**
+    * @return true when every tile is ready or failed and at least one
+    *         is ready, a bad file doesn't hold up the wall.
+    */
+   private boolean allReady() {
+      for (Tile tile : tiles) {
+         if (!tile.failed && tile.duration <= 0) {
+            return false;
+         }
+      }
+      return wallDuration > 0;
+   }
+
+   /**
+    * The longest duration of the tiles which didn't fail.
+    */
+   private void updateWallDuration() {
+      wallDuration = tiles.stream()
+                          .filter(tile -> !tile.failed)
+                          .mapToDouble(tile -> tile.duration)
+                          .max()
+                          .orElse(0);
+   }
+
+   private boolean isWindowShowing() {
+      Window window = getScene() != null ? getScene().getWindow() : null;
+      return window != null && window.isShowing() &&
+             !(window instanceof Stage && ((Stage) window).isIconified());
+   }
+
+   /**
+    * Clears the drift and correction counts.
+    */
+   public void resetStatistics() {
+      driftSamples = 0;
+      driftSum = 0;
+      maxDrift = 0;
+      seekCount = 0;
+      rateNudgeCount = 0;
+      resumeCount = 0;
+   }
+
+   /** @return the mean absolute drift from the clock in seconds. */
+   public double getMeanDrift() {
+      return driftSamples == 0 ? 0 : driftSum / driftSamples;
+   }
+
+   /** @return the largest absolute drift from the clock in seconds. */
+   public double getMaxDrift() {
+      return maxDrift;
+   }
+
+   /** @return the seeks done to correct drifts. */
+   public long getSeekCount() {
+      return seekCount;
+   }
+
+   /** @return the rate changes done to correct drifts. */
+   public long getRateNudgeCount() {
+      return rateNudgeCount;
+   }
+
+   /** @return the times paused tiles were resumed. */
+   public long getResumeCount() {
+      return resumeCount;
+   }
+
+   /** @return the tiles decoding video. */
+   public int getPlayingCount() {
+      return (int) tiles.stream()
+                        .filter(tile -> tile.player.getStatus() == Status.PLAYING)
+                        .count();
+   }
+
+   public int getTileCount() {
+      return tiles.size();
+   }
+
+   /**
+    * @return true once all tiles are ready and the clock started.
+    */
+   public boolean isClockRunning() {
+      return clockRunning;
+   }
+
+   /**
+    * A video of the wall: its player and the media view filling the
+    * tile, clipped to rounded corners like PlayingVideo's media view.
+    * A tile whose media fails shows the error and is left out of the
+    * wall's clock.
+    */
+   private class Tile {
+      final MediaPlayer player;
+      final StackPane view;
+      final Label errorLabel = new Label();
+      double duration;
+      boolean ended;
+      boolean failed;
+
+      Tile(String url, MediaPlayer player) {
+         this.player = player;
+         player.setMute(true);
+         player.setOnReady(() -> {
+            duration = player.getMedia().getDuration().toSeconds();
+            updateWallDuration();
+         });
+         player.setOnEndOfMedia(() -> ended = true);
+         player.setOnError(() -> {
+            System.err.println("Unable to play " + url + ": " + player.getError());
+            failed = true;
+            ended = true;
+            errorLabel.setText("Unable to play: " + player.getError().getMessage());
+            errorLabel.setVisible(true);
+            updateWallDuration();
+         });
+
+         MediaView mediaView = new MediaView(player);
+         mediaView.setPreserveRatio(true);
+         mediaView.setSmooth(true);
+         errorLabel.setWrapText(true);
+         errorLabel.setVisible(false);
+         errorLabel.setStyle("-fx-text-fill: #ff6060; -fx-padding: 5;");
+         view = new StackPane(mediaView, createLabel(url), errorLabel);
+         view.setStyle("-fx-background-color: rgb(20, 20, 20);");
+         StackPane.setAlignment(view.getChildren().get(1), Pos.BOTTOM_LEFT);
+         mediaView.fitWidthProperty().bind(view.widthProperty());
+         mediaView.fitHeightProperty().bind(view.heightProperty());
+
+         Rectangle clipRegion = new Rectangle();
+         clipRegion.setArcWidth(10);
+         clipRegion.setArcHeight(10);
+         clipRegion.widthProperty().bind(view.widthProperty());
+         clipRegion.heightProperty().bind(view.heightProperty());
+         view.setClip(clipRegion);
+         // paused tiles are dimmed
+         view.opacityProperty().bind(Bindings.when(
+                 player.statusProperty().isEqualTo(Status.PLAYING)).then(1.0).otherwise(0.6));
+      }
+   }
+
+   private static Label createLabel(String url) {
+      String name;
+      try {
+         name = new File(new URI(url).getPath()).getName();
+      } catch (Exception e) {
+         name = url;
+      }
+      Label label = new Label(name);
+      label.setStyle("-fx-text-fill: white; -fx-padding: 2 5 2 5; " +
+                     "-fx-background-color: rgba(0, 0, 0, .6);");
+      return label;
+   }
+}
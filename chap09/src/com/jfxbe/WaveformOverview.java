@@ -0,0 +1,309 @@
+package com.jfxbe;
+
+import javafx.concurrent.Task;
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.paint.Color;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.DoubleConsumer;
+
+/**
+ * A zoomable waveform strip of the media being played. The waveform
+ * comes from a WaveformPyramid, cached files are opened and new files
+ * are decoded by a background pass (showing its progress).
+ *
+ * Scrolling zooms around the mouse cursor, double clicking shows the
+ * whole file again and a click seeks to the position under the mouse.
+ * Each redraw reads only the blocks of the visible time range from the
+ * pyramid level matching the zoom.
+ */
+public class WaveformOverview extends Canvas {
+
+   /** The narrowest view in sample frames per pixel */
+   private static final double MIN_FRAMES_PER_PIXEL = WaveformPyramid.BASE_BLOCK;
+
+   private static final Color RANGE_COLOR = Color.rgb(255, 255, 255, .35);
+   private static final Color RMS_COLOR = Color.rgb(255, 255, 255, .80);
+   private static final Color POSITION_COLOR = Color.rgb(255, 0, 0, .90);
+
+   /** Decodes the audio files one at a time */
+   private static final ExecutorService DECODER =
+           Executors.newSingleThreadExecutor(runnable -> {
+              Thread thread = new Thread(runnable, "waveform-overview");
+              thread.setDaemon(true);
+              return thread;
+           });
+
+   private WaveformPyramid pyramid;
+   private Task<WaveformPyramid> buildTask;
+   private String message;
+
+   // The visible range in sample frames
+   private double viewStart;
+   private double viewEnd;
+   private double positionSeconds;
+
+   // The summary of each pixel column of the visible range
+   private float[] columnMin = new float[0];
+   private float[] columnMax = new float[0];
+   private float[] columnRms = new float[0];
+   private byte[] blocks = new byte[0];
+
+   private DoubleConsumer onSeek;
+
+   /**
+    * @param width the strip's width.
+    * @param height the strip's height.
+    */
+   public WaveformOverview(double width, double height) {
+      super(width, height);
+      addEventHandler(ScrollEvent.SCROLL, this::zoom);
+      addEventHandler(MouseEvent.MOUSE_CLICKED, mouseEvent -> {
+         if (pyramid == null || mouseEvent.getButton() != MouseButton.PRIMARY) {
+            return;
+         }
+         if (mouseEvent.getClickCount() == 2) {
+            setView(0, pyramid.getFrames());
+         } else if (onSeek != null) {
+            double frame = frameAt(mouseEvent.getX());
+            onSeek.accept(frame / pyramid.getSampleRate());
+         }
+      });
+      // Keep the clicks and drags from moving the window
+      addEventHandler(MouseEvent.ANY, MouseEvent::consume);
+   }
+
+   /**
+    * Called with the position in seconds the user clicked on.
+    * @param onSeek the seek handler.
+    */
+   public void setOnSeek(DoubleConsumer onSeek) {
+      this.onSeek = onSeek;
+   }
+
+   /**
+    * Shows the waveform of the media at a URL, only local files have
+    * a waveform.
+    * @param url the URL of the media.
+    */
+   public void load(String url) {
+      close();
+      File audioFile;
+      try {
+         URI uri = new URI(url);
+         if (!"file".equals(uri.getScheme())) {
+            showMessage(null);
+            return;
+         }
+         audioFile = new File(uri);
+      } catch (Exception e) {
+         showMessage(null);
+         return;
+      }
+
+      // the cache is looked up (hashing the file) off the JavaFX application thread
+      buildTask = new Task<WaveformPyramid>() {
+         @Override
+         protected WaveformPyramid call() throws Exception {
+            try {
+               WaveformPyramid cached = WaveformPyramid.openCached(audioFile);
+               if (cached != null) {
+                  return cached;
+               }
+            } catch (IOException e) {
+               // unreadable cache, build it again
+               e.printStackTrace();
+            }
+            if (isCancelled()) {
+               return null;
+            }
+            WaveformPyramid built = WaveformPyramid.build(audioFile,
+                    this::isCancelled, progress -> updateProgress(progress, 1));
+            if (isCancelled()) {
+               closeQuietly(built);
+               return null;
+            }
+            return built;
+         }
+      };
+      Task<WaveformPyramid> task = buildTask;
+      task.progressProperty().addListener( (observable, oldValue, newValue) -> {
+         if (task == buildTask) {
+            showMessage(String.format("Building overview %.0f%%",
+                    newValue.doubleValue() * 100));
+         }
+      });
+      task.setOnSucceeded(workerStateEvent -> {
+         if (task == buildTask && task.getValue() != null) {
+            buildTask = null;
+            show(task.getValue());
+         } else {
+            closeQuietly(task.getValue());
+         }
+      });
+      task.setOnFailed(workerStateEvent -> {
+         if (task == buildTask) {
+            showMessage("No overview: " + task.getException().getMessage());
+         }
+      });
+      showMessage("Loading overview");
+      DECODER.submit(task);
+   }
+
+   /**
+    * Moves the position marker.
+    * @param seconds the playback position.
+    */
+   public void setPosition(double seconds) {
+      positionSeconds = seconds;
+      draw();
+   }
+
+   /**
+    * Stops building the waveform and releases the pyramid.
+    */
+   public void close() {
+      if (buildTask != null) {
+         buildTask.cancel();
+         buildTask = null;
+      }
+      closeQuietly(pyramid);
+      pyramid = null;
+   }
+
+   private void show(WaveformPyramid loaded) {
+      pyramid = loaded;
+      message = null;
+      setView(0, loaded.getFrames());
+   }
+
+   private void showMessage(String text) {
+      message = text;
+      draw();
+   }
+
+   /**
+    * Zooms in or out around the mouse position.
+    */
+   private void zoom(ScrollEvent scrollEvent) {
+      if (pyramid == null || scrollEvent.getDeltaY() == 0) {
+         return;
+      }
+      double factor = scrollEvent.getDeltaY() > 0 ? 0.8 : 1.25;
+      double anchor = frameAt(scrollEvent.getX());
+      double length = Math.max(MIN_FRAMES_PER_PIXEL * getWidth(),
+              Math.min(pyramid.getFrames(), (viewEnd - viewStart) * factor));
+      double start = anchor - (anchor - viewStart) * length / (viewEnd - viewStart);
+      start = Math.max(0, Math.min(pyramid.getFrames() - length, start));
+      setView(start, start + length);
+      scrollEvent.consume();
+   }
+
+   private double frameAt(double x) {
+      return viewStart + (viewEnd - viewStart) * x / getWidth();
+   }
+
+   /**
+    * Summarizes the visible range into pixel columns, reading the
+    * blocks of one pyramid level.
+    */
+   private void setView(double start, double end) {
+      viewStart = start;
+      viewEnd = Math.max(start + 1, end);
+      int columns = (int) getWidth();
+      if (columnMin.length != columns) {
+         columnMin = new float[columns];
+         columnMax = new float[columns];
+         columnRms = new float[columns];
+      }
+
+      double framesPerPixel = (viewEnd - viewStart) / columns;
+      int level = pyramid.levelFor(framesPerPixel);
+      long blockFrames = pyramid.getBlockFrames(level);
+      int firstBlock = (int) (viewStart / blockFrames);
+      int lastBlock = (int) Math.min(pyramid.getBlockCount(level),
+              Math.ceil(viewEnd / blockFrames));
+      int blockCount = Math.max(0, lastBlock - firstBlock);
+      if (blocks.length < blockCount * WaveformPyramid.BLOCK_BYTES) {
+         blocks = new byte[blockCount * WaveformPyramid.BLOCK_BYTES];
+      }
+      int read;
+      try {
+         read = pyramid.readBlocks(level, firstBlock, blocks);
+      } catch (IOException e) {
+         e.printStackTrace();
+         read = 0;
+      }
+
+      for (int column = 0; column < columns; column++) {
+         int from = (int) ((viewStart + column * framesPerPixel) / blockFrames) - firstBlock;
+         int to = (int) ((viewStart + (column + 1) * framesPerPixel) / blockFrames) - firstBlock;
+         from = Math.max(0, from);
+         to = Math.min(Math.min(read, blockCount), Math.max(to, from + 1));
+         float min = 0;
+         float max = 0;
+         double sumOfSquares = 0;
+         for (int block = from; block < to; block++) {
+            min = Math.min(min, WaveformPyramid.minOf(blocks, block));
+            max = Math.max(max, WaveformPyramid.maxOf(blocks, block));
+            float rms = WaveformPyramid.rmsOf(blocks, block);
+            sumOfSquares += rms * rms;
+         }
+         columnMin[column] = min;
+         columnMax[column] = max;
+         columnRms[column] = to > from ? (float) Math.sqrt(sumOfSquares / (to - from)) : 0;
+      }
+      draw();
+   }
+
+   private void draw() {
+      GraphicsContext gc = getGraphicsContext2D();
+      double width = getWidth();
+      double height = getHeight();
+      double middle = height / 2;
+      gc.clearRect(0, 0, width, height);
+      if (pyramid == null) {
+         if (message != null) {
+            gc.setFill(RMS_COLOR);
+            gc.setTextBaseline(VPos.CENTER);
+            gc.fillText(message, 4, middle);
+         }
+         return;
+      }
+      gc.setLineWidth(1);
+      for (int column = 0; column < columnMin.length; column++) {
+         double x = column + 0.5;
+         gc.setStroke(RANGE_COLOR);
+         gc.strokeLine(x, middle - columnMax[column] * middle,
+                 x, middle - columnMin[column] * middle);
+         gc.setStroke(RMS_COLOR);
+         gc.strokeLine(x, middle - columnRms[column] * middle,
+                 x, middle + columnRms[column] * middle);
+      }
+      double positionFrame = positionSeconds * pyramid.getSampleRate();
+      if (positionFrame >= viewStart && positionFrame <= viewEnd) {
+         double x = (positionFrame - viewStart) / (viewEnd - viewStart) * width;
+         gc.setStroke(POSITION_COLOR);
+         gc.strokeLine(x, 0, x, height);
+      }
+   }
+
+   private static void closeQuietly(WaveformPyramid waveformPyramid) {
+      if (waveformPyramid != null) {
+         try {
+            waveformPyramid.close();
+         } catch (IOException e) {
+            e.printStackTrace();
+         }
+      }
+   }
+}
@@ -0,0 +1,413 @@
+package com.jfxbe;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleConsumer;
+
+/**
+ * A compact overview of an audio file's waveform stored on disk. The
+ * samples are summarized in blocks holding the minimum, maximum and
+ * RMS (root mean square) of the samples, one byte each. Level 0 has a
+ * block per 256 sample frames, each higher level summarizes 4 blocks
+ * of the level below, up to a level of at most 1024 blocks.
+ *
+ * A chart showing a time range reads only the blocks of the level
+ * closest to its resolution. The pyramid is built once per file by a
+ * decoding pass and cached in ~/.jfxbe/waveforms keyed by a hash of
+ * the file.
+ *
+ * File layout (big endian):
+ * <pre>
+ *   int magic, int version, float sampleRate, long frames,
+ *   int baseBlock, int factor, int levelCount,
+ *   int blockCount x levelCount,
+ *   level 0 blocks, level 1 blocks ... (min, max, rms bytes)
+ * </pre>
+ *
+ * Decoding uses javax.sound.sampled, files it can't decode (such as
+ * MP3 without an installed service provider) have no overview.
+ */
+public class WaveformPyramid implements Closeable {
+
+   /** Sample frames summarized by a level 0 block */
+   public static final int BASE_BLOCK = 256;
+
+   /** Blocks of a level summarized by a block of the next level */
+   public static final int FACTOR = 4;
+
+   /** The top level has at most this many blocks */
+   private static final int TOP_LEVEL_BLOCKS = 1024;
+
+   private static final int MAGIC = 0x57465059; // WFPY
+   private static final int VERSION = 1;
+
+   /** Bytes of a block: minimum, maximum and RMS */
+   public static final int BLOCK_BYTES = 3;
+
+   /** Bytes hashed from the start and the end of a file */
+   private static final int HASHED_BYTES = 64 * 1024;
+
+   private final FileChannel channel;
+   private final float sampleRate;
+   private final long frames;
+   private final int[] blockCounts;
+   private final long[] levelOffsets;
+
+   private WaveformPyramid(FileChannel channel) throws IOException {
+      this.channel = channel;
+      ByteBuffer header = ByteBuffer.allocate(32);
+      readFully(header, 0);
+      if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+         throw new IOException("Not a waveform pyramid");
+      }
+      sampleRate = header.getFloat();
+      frames = header.getLong();
+      if (header.getInt() != BASE_BLOCK || header.getInt() != FACTOR) {
+         throw new IOException("Unsupported waveform pyramid block sizes");
+      }
+      int levelCount = header.getInt();
+      ByteBuffer counts = ByteBuffer.allocate(levelCount * 4);
+      readFully(counts, 32);
+      blockCounts = new int[levelCount];
+      levelOffsets = new long[levelCount];
+      long offset = 32 + levelCount * 4;
+      for (int level = 0; level < levelCount; level++) {
+         blockCounts[level] = counts.getInt();
+         levelOffsets[level] = offset;
+         offset += (long) blockCounts[level] * BLOCK_BYTES;
+      }
+   }
+
+   /**
+    * Opens the cached pyramid of an audio file.
+    * @param audioFile the audio file.
+    * @return WaveformPyramid the pyramid or null if it isn't cached.
+    * @throws IOException if the cache can't be read.
+    */
+   public static WaveformPyramid openCached(File audioFile) throws IOException {
+      Path cacheFile = cacheFile(audioFile);
+      if (!Files.isRegularFile(cacheFile)) {
+         return null;
+      }
+      return open(cacheFile);
+   }
+
+   private static WaveformPyramid open(Path cacheFile) throws IOException {
+      FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ);
+      try {
+         return new WaveformPyramid(channel);
+      } catch (IOException e) {
+         channel.close();
+         throw e;
+      }
+   }
+
+   /**
+    * Decodes an audio file, writes its pyramid into the cache and
+    * opens it. Runs on a background thread.
+    * @param audioFile the audio file.
+    * @param cancelled checked while decoding, stops building when true.
+    * @param progress receives the progress from 0 to 1.
+    * @return WaveformPyramid the pyramid or null if cancelled.
+    * @throws IOException if the file can't be read or decoded.
+    */
+   public static WaveformPyramid build(File audioFile, BooleanSupplier cancelled,
+                                      DoubleConsumer progress) throws IOException {
+      byte[][] levels;
+      float sampleRate;
+      long frames = 0;
+      try (AudioInputStream source = AudioSystem.getAudioInputStream(audioFile)) {
+         AudioFormat sourceFormat = source.getFormat();
+         int channels = sourceFormat.getChannels();
+         sampleRate = sourceFormat.getSampleRate();
+         AudioFormat pcmFormat = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED,
+                 sampleRate, 16, channels, channels * 2, sampleRate, false);
+         long totalFrames = source.getFrameLength();
+
+         BlockWriter level0 = new BlockWriter(1024);
+         try (AudioInputStream pcm = AudioSystem.getAudioInputStream(pcmFormat, source)) {
+            byte[] buffer = new byte[channels * 2 * 4096];
+            int frameBytes = channels * 2;
+            float min = 1;
+            float max = -1;
+            double sumOfSquares = 0;
+            int inBlock = 0;
+            int read;
+            while ((read = pcm.read(buffer)) > 0) {
+               if (cancelled.getAsBoolean()) {
+                  return null;
+               }
+               for (int i = 0; i + frameBytes <= read; i += frameBytes) {
+                  // mix the channels down to mono
+                  int sum = 0;
+                  for (int c = 0; c < channels; c++) {
+                     int lo = buffer[i + c * 2] & 0xff;
+                     int hi = buffer[i + c * 2 + 1];
+                     sum += (hi << 8) | lo;
+                  }
+                  float sample = sum / (channels * 32768f);
+                  min = Math.min(min, sample);
+                  max = Math.max(max, sample);
+                  sumOfSquares += sample * sample;
+                  if (++inBlock == BASE_BLOCK) {
+                     level0.add(min, max, Math.sqrt(sumOfSquares / inBlock));
+                     min = 1;
+                     max = -1;
+                     sumOfSquares = 0;
+                     inBlock = 0;
+                  }
+               }
+               frames += read / frameBytes;
+               if (totalFrames > 0) {
+                  progress.accept(Math.min(1, frames / (double) totalFrames));
+               }
+            }
+            if (inBlock > 0) {
+               level0.add(min, max, Math.sqrt(sumOfSquares / inBlock));
+            }
+         }
+         levels = buildLevels(level0.toByteArray());
+      } catch (UnsupportedAudioFileException e) {
+         throw new IOException("Unsupported audio file " + audioFile, e);
+      } catch (IllegalArgumentException e) {
+         // no conversion to PCM available
+         throw new IOException("Unable to decode " + audioFile, e);
+      }
+
+      Path cacheFile = cacheFile(audioFile);
+      Files.createDirectories(cacheFile.getParent());
+      Path tempFile = Files.createTempFile(cacheFile.getParent(), "waveform", ".tmp");
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+              Files.newOutputStream(tempFile)))) {
+         out.writeInt(MAGIC);
+         out.writeInt(VERSION);
+         out.writeFloat(sampleRate);
+         out.writeLong(frames);
+         out.writeInt(BASE_BLOCK);
+         out.writeInt(FACTOR);
+         out.writeInt(levels.length);
+         for (byte[] level : levels) {
+            out.writeInt(level.length / BLOCK_BYTES);
+         }
+         for (byte[] level : levels) {
+            out.write(level);
+         }
+      } catch (IOException e) {
+         Files.deleteIfExists(tempFile);
+         throw e;
+      }
+      Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING,
+              StandardCopyOption.ATOMIC_MOVE);
+      return open(cacheFile);
+   }
+
+   /**
+    * Builds the levels above level 0 until a level has at most
+    * TOP_LEVEL_BLOCKS blocks.
+    */
+   private static byte[][] buildLevels(byte[] level0) {
+      byte[][] levels = new byte[][] {level0};
+      byte[] below = level0;
+      while (below.length / BLOCK_BYTES > TOP_LEVEL_BLOCKS) {
+         int belowBlocks = below.length / BLOCK_BYTES;
+         BlockWriter level = new BlockWriter(belowBlocks / FACTOR + 1);
+         for (int first = 0; first < belowBlocks; first += FACTOR) {
+            int last = Math.min(belowBlocks, first + FACTOR);
+            float min = 1;
+            float max = -1;
+            double sumOfSquares = 0;
+            for (int block = first; block < last; block++) {
+               min = Math.min(min, minOf(below, block));
+               max = Math.max(max, maxOf(below, block));
+               double rms = rmsOf(below, block);
+               sumOfSquares += rms * rms;
+            }
+            level.add(min, max, Math.sqrt(sumOfSquares / (last - first)));
+         }
+         below = level.toByteArray();
+         levels = Arrays.copyOf(levels, levels.length + 1);
+         levels[levels.length - 1] = below;
+      }
+      return levels;
+   }
+
+   /**
+    * Returns the cache file of an audio file's pyramid.
+    * @param audioFile the audio file.
+    * @return Path the cache file, which may not exist.
+    * @throws IOException if the file can't be read.
+    */
+   public static Path cacheFile(File audioFile) throws IOException {
+      return Paths.get(System.getProperty("user.home"), ".jfxbe", "waveforms",
+              fingerprint(audioFile) + ".wfp");
+   }
+
+   /**
+    * Hashes a file's size, modification time and the bytes at its start
+    * and end. Reading the whole file would take as long as decoding it.
+    */
+   static String fingerprint(File file) throws IOException {
+      try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+         MessageDigest digest = MessageDigest.getInstance("SHA-1");
+         long length = in.length();
+         digest.update(ByteBuffer.allocate(16)
+                                 .putLong(length)
+                                 .putLong(file.lastModified())
+                                 .array());
+         byte[] bytes = new byte[(int) Math.min(length, HASHED_BYTES)];
+         in.readFully(bytes);
+         digest.update(bytes);
+         in.seek(Math.max(0, length - bytes.length));
+         in.readFully(bytes);
+         digest.update(bytes);
+         StringBuilder hex = new StringBuilder();
+         for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+         }
+         return hex.toString();
+      } catch (NoSuchAlgorithmException e) {
+         throw new IOException(e);
+      }
+   }
+
+   public float getSampleRate() {
+      return sampleRate;
+   }
+
+   /** @return the number of sample frames of the audio. */
+   public long getFrames() {
+      return frames;
+   }
+
+   /** @return the audio's duration in seconds. */
+   public double getDurationSeconds() {
+      return frames / (double) sampleRate;
+   }
+
+   public int getLevelCount() {
+      return blockCounts.length;
+   }
+
+   public int getBlockCount(int level) {
+      return blockCounts[level];
+   }
+
+   /**
+    * @param level the pyramid level.
+    * @return the sample frames summarized by a block of the level.
+    */
+   public long getBlockFrames(int level) {
+      long blockFrames = BASE_BLOCK;
+      for (int i = 0; i < level; i++) {
+         blockFrames *= FACTOR;
+      }
+      return blockFrames;
+   }
+
+   /**
+    * Returns the coarsest level with at least one block per pixel.
+    * @param framesPerPixel sample frames shown by a pixel.
+    * @return int the level to read.
+    */
+   public int levelFor(double framesPerPixel) {
+      int level = 0;
+      while (level + 1 < getLevelCount() && getBlockFrames(level + 1) <= framesPerPixel) {
+         level++;
+      }
+      return level;
+   }
+
+   /**
+    * Reads blocks of a level.
+    * @param level the pyramid level.
+    * @param firstBlock the index of the first block.
+    * @param dest receives BLOCK_BYTES bytes per block.
+    * @return int the number of blocks read.
+    * @throws IOException if the cache file can't be read.
+    */
+   public int readBlocks(int level, int firstBlock, byte[] dest) throws IOException {
+      int count = Math.min(dest.length / BLOCK_BYTES, blockCounts[level] - firstBlock);
+      if (count <= 0) {
+         return 0;
+      }
+      ByteBuffer buffer = ByteBuffer.wrap(dest, 0, count * BLOCK_BYTES);
+      readFully(buffer, levelOffsets[level] + (long) firstBlock * BLOCK_BYTES);
+      return count;
+   }
+
+   public static float minOf(byte[] blocks, int block) {
+      return blocks[block * BLOCK_BYTES] / 127f;
+   }
+
+   public static float maxOf(byte[] blocks, int block) {
+      return blocks[block * BLOCK_BYTES + 1] / 127f;
+   }
+
+   public static float rmsOf(byte[] blocks, int block) {
+      return (blocks[block * BLOCK_BYTES + 2] & 0xff) / 255f;
+   }
+
+   private void readFully(ByteBuffer buffer, long position) throws IOException {
+      while (buffer.hasRemaining()) {
+         int read = channel.read(buffer, position);
+         if (read < 0) {
+            throw new IOException("Truncated waveform pyramid");
+         }
+         position += read;
+      }
+      buffer.flip();
+   }
+
+   @Override
+   public void close() throws IOException {
+      channel.close();
+   }
+
+   /**
+    * Appends quantized blocks to a growing byte array.
+    */
+   private static class BlockWriter {
+      private byte[] bytes;
+      private int size;
+
+      BlockWriter(int initialBlocks) {
+         bytes = new byte[Math.max(1, initialBlocks) * BLOCK_BYTES];
+      }
+
+      void add(float min, float max, double rms) {
+         if (size + BLOCK_BYTES > bytes.length) {
+            bytes = Arrays.copyOf(bytes, bytes.length * 2);
+         }
+         bytes[size++] = (byte) Math.round(clamp(min) * 127);
+         bytes[size++] = (byte) Math.round(clamp(max) * 127);
+         bytes[size++] = (byte) Math.round(Math.min(1, rms) * 255);
+      }
+
+      byte[] toByteArray() {
+         return Arrays.copyOf(bytes, size);
+      }
+
+      private static float clamp(float value) {
+         return Math.max(-1, Math.min(1, value));
+      }
+   }
+}
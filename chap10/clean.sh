@@ -1,3 +1,4 @@
 rm -rf mlib
 rm -rf classpath
 rm -rf mods
+rm -rf test-mods
@@ -0,0 +1,340 @@
+package com.jfxbe.weatherwidget;
+
+import jdk.incubator.http.HttpClient;
+import jdk.incubator.http.HttpResponse;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static jdk.incubator.http.HttpRequest.newBuilder;
+import static jdk.incubator.http.HttpResponse.BodyHandler;
+
+/**
+ * Sends the weather requests to the http client, so that tracking
+ * dozens of cities doesn't flood the weather service.
+ *
+ * <pre>
+ *  1) At most maxInFlight requests are on their way, the others wait
+ *     in a queue.
+ *  2) A request for a key (city and unit type) already waiting or on
+ *     its way shares its response (coalescing).
+ *  3) Failed requests (no response, 429 Too Many Requests or a 5xx
+ *     server error) are retried up to MAX_ATTEMPTS times, waiting an
+ *     exponentially growing, jittered backoff or the server's
+ *     Retry-After, whichever is longer.
+ *  4) Periodic refreshes start at a random time within their interval
+ *     and each interval is jittered, so refreshes are spread out
+ *     instead of coming in herds.
+ * </pre>
+ *
+ * Responses complete on the http client's threads.
+ */
+public class RefreshScheduler {
+
+    /** Requests on their way at most unless told otherwise. */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+    /** Tries of a request before giving up. */
+    public static final int MAX_ATTEMPTS = 4;
+
+    /** The backoff after the first failure, doubled after each one */
+    private static final long INITIAL_BACKOFF_MILLIS = 1_000;
+
+    /** The longest backoff */
+    private static final long MAX_BACKOFF_MILLIS = 60_000;
+
+    /** Periodic refreshes vary by this part of their interval */
+    private static final double INTERVAL_JITTER = 0.1;
+
+    /** Longest wait for a response */
+    private static final java.time.Duration REQUEST_TIMEOUT = java.time.Duration.ofSeconds(20);
+
+    private final HttpClient httpClient;
+    private final int maxInFlight;
+
+    /** Starts the retries and periodic refreshes */
+    private final ScheduledExecutorService timer =
+            Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "refresh-scheduler");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /** The responses of the requests waiting, on their way or retried by key */
+    private final Map<String, CompletableFuture<HttpResponse<String>>> pending =
+            new ConcurrentHashMap<>();
+
+    /** The periodic refreshes by key */
+    private final Map<String, Periodic> periodic = new ConcurrentHashMap<>();
+
+    // Guarded by this
+    private final Deque<Request> queue = new ArrayDeque<>();
+    private int inFlight;
+    private int maxQueued;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * A request and its tries.
+     */
+    private static class Request {
+        final String key;
+        final String url;
+        final CompletableFuture<HttpResponse<String>> response;
+        int attempts;
+
+        Request(String key, String url, CompletableFuture<HttpResponse<String>> response) {
+            this.key = key;
+            this.url = url;
+            this.response = response;
+        }
+    }
+
+    /**
+     * A periodic refresh, rescheduled after each run with a new jitter.
+     */
+    private class Periodic implements Runnable {
+        final String key;
+        final long intervalMillis;
+        final Runnable refresh;
+        volatile ScheduledFuture<?> next;
+
+        Periodic(String key, long intervalMillis, Runnable refresh) {
+            this.key = key;
+            this.intervalMillis = intervalMillis;
+            this.refresh = refresh;
+        }
+
+        @Override
+        public void run() {
+            // not if cancelled or replaced in the meantime
+            if (periodic.get(key) != this) {
+                return;
+            }
+            try {
+                refresh.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+            double jitter = 1 + INTERVAL_JITTER * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+            next = timer.schedule(this, (long) (intervalMillis * jitter), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @param httpClient The http client sending the requests.
+     * @param maxInFlight The most requests on their way at once.
+     */
+    public RefreshScheduler(HttpClient httpClient, int maxInFlight) {
+        this.httpClient = httpClient;
+        this.maxInFlight = Math.max(1, maxInFlight);
+    }
+
+    /**
+     * Requests a URL, or shares the response of the request for the
+     * same key waiting or on its way.
+     *
+     * @param key Identifies the data requested, such as a city and unit type.
+     * @param url The URL to GET.
+     * @return CompletableFuture The response, which may be an error
+     *         response after the last try. Completed exceptionally
+     *         if no try got a response.
+     */
+    public CompletableFuture<HttpResponse<String>> request(String key, String url) {
+        CompletableFuture<HttpResponse<String>> response = new CompletableFuture<>();
+        CompletableFuture<HttpResponse<String>> existing = pending.putIfAbsent(key, response);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return existing;
+        }
+        enqueue(new Request(key, url, response));
+        return response;
+    }
+
+    /**
+     * Runs a refresh about every interval, first at a random time within
+     * the interval. Replaces the refresh scheduled for the key.
+     *
+     * @param key Identifies the refresh, such as a city and unit type.
+     * @param intervalMillis The milliseconds between refreshes.
+     * @param refresh Refreshes the data, such as by calling request().
+     */
+    public void schedule(String key, long intervalMillis, Runnable refresh) {
+        cancel(key);
+        Periodic refreshes = new Periodic(key, intervalMillis, refresh);
+        periodic.put(key, refreshes);
+        long firstDelay = (long) (ThreadLocalRandom.current().nextDouble() * intervalMillis);
+        refreshes.next = timer.schedule(refreshes, firstDelay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the periodic refresh of a key.
+     * @param key Identifies the refresh.
+     */
+    public void cancel(String key) {
+        Periodic refreshes = periodic.remove(key);
+        if (refreshes != null && refreshes.next != null) {
+            refreshes.next.cancel(false);
+        }
+    }
+
+    /**
+     * Stops all periodic refreshes and retries.
+     */
+    public void shutdown() {
+        periodic.keySet().forEach(this::cancel);
+        timer.shutdownNow();
+    }
+
+    private void enqueue(Request request) {
+        synchronized (this) {
+            queue.add(request);
+            maxQueued = Math.max(maxQueued, queue.size());
+        }
+        dispatch();
+    }
+
+    /**
+     * Sends the queued requests while fewer than maxInFlight are on their way.
+     */
+    private void dispatch() {
+        List<Request> ready = new ArrayList<>();
+        synchronized (this) {
+            while (inFlight < maxInFlight && !queue.isEmpty()) {
+                inFlight++;
+                ready.add(queue.poll());
+            }
+        }
+        ready.forEach(this::send);
+    }
+
+    private void send(Request request) {
+        request.attempts++;
+        sent.incrementAndGet();
+        CompletableFuture<HttpResponse<String>> httpResponse;
+        try {
+            httpResponse = httpClient.sendAsync(newBuilder(URI.create(request.url))
+                                                   .timeout(REQUEST_TIMEOUT)
+                                                   .GET()
+                                                   .build(),
+                                                BodyHandler.asString());
+        } catch (RuntimeException e) {
+            // such as a malformed URL, another try won't help
+            synchronized (this) {
+                inFlight--;
+            }
+            completeRequest(request, null, e, true);
+            dispatch();
+            return;
+        }
+        httpResponse.whenComplete( (httpResp, throwable) -> {
+            synchronized (this) {
+                inFlight--;
+            }
+            boolean failed = throwable != null || isRetryable(httpResp.statusCode());
+            if (failed && request.attempts < MAX_ATTEMPTS && !timer.isShutdown()) {
+                try {
+                    timer.schedule(() -> enqueue(request),
+                            backoffMillis(request.attempts, httpResp), TimeUnit.MILLISECONDS);
+                    retries.incrementAndGet();
+                } catch (RejectedExecutionException e) {
+                    // shut down in the meantime, no more tries
+                    completeRequest(request, httpResp, throwable, true);
+                }
+            } else {
+                completeRequest(request, httpResp, throwable, failed);
+            }
+            dispatch();
+        });
+    }
+
+    /**
+     * Completes a request after its last try, so the requests sharing
+     * its key are never left waiting. The key is removed first, a
+     * request made by the response's callbacks is sent again.
+     */
+    private void completeRequest(Request request, HttpResponse<String> httpResp,
+                                 Throwable throwable, boolean failed) {
+        pending.remove(request.key, request.response);
+        if (failed) {
+            failures.incrementAndGet();
+        }
+        if (throwable != null) {
+            request.response.completeExceptionally(throwable);
+        } else {
+            request.response.complete(httpResp);
+        }
+    }
+
+    private static boolean isRetryable(int statusCode) {
+        return statusCode == 429 || statusCode >= 500;
+    }
+
+    /**
+     * The exponential backoff after a number of tries with equal jitter
+     * (between half and all of it), at least the Retry-After seconds.
+     */
+    private static long backoffMillis(int attempts, HttpResponse<String> httpResp) {
+        long backoff = Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << (attempts - 1));
+        backoff = backoff / 2 + (long) (ThreadLocalRandom.current().nextDouble() * backoff / 2);
+        if (httpResp != null) {
+            String retryAfter = httpResp.headers().firstValue("Retry-After").orElse("");
+            if (retryAfter.matches("\\d{1,6}")) {
+                backoff = Math.max(backoff, Math.min(MAX_BACKOFF_MILLIS,
+                        Long.parseLong(retryAfter) * 1000));
+            }
+        }
+        return backoff;
+    }
+
+    /**
+     * @return long The requests sent, including retries.
+     */
+    public long getSentCount() {
+        return sent.get();
+    }
+
+    /**
+     * @return long The requests sharing the response of another.
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    /**
+     * @return long The tries repeated after a failure.
+     */
+    public long getRetryCount() {
+        return retries.get();
+    }
+
+    /**
+     * @return long The requests failing after the last try.
+     */
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("Refresh scheduler: %d sent, %d coalesced, %d retries, %d failures, " +
+                             "%d most queued, %d periodic", sent.get(), coalesced.get(),
+                retries.get(), failures.get(), maxQueued, periodic.size());
+    }
+}
@@ -0,0 +1,124 @@
+package com.jfxbe.weatherwidget;
+
+import javafx.scene.web.WebEngine;
+import netscape.javascript.JSObject;
+
+import java.math.BigDecimal;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Sends the weather to the HTML page without evaluating the JSON in
+ * the WebView. The weather (parsed in Java as WeatherData) is turned
+ * into the texts of the page's elements. Only the texts which changed
+ * since the last update are set as members of one JavaScript object
+ * and handed to the page's applyWeatherChanges() function in a single
+ * call, so an unchanged refresh costs no DOM updates and the response
+ * is never run as a script.
+ *
+ * apply() must be called on the JavaFX application thread once the
+ * page is loaded.
+ */
+public class WeatherBridge {
+
+    /** The element showing the error message */
+    public static final String ERROR_ELEMENT = "error-msg";
+
+    /** The image of the weather icon, its field is the icon code */
+    public static final String ICON_ELEMENT = "weather-icon";
+
+    /** The texts the page shows by element id */
+    private final Map<String, String> shown = new HashMap<>();
+
+    private long updates;
+    private long fieldsSent;
+    private long fieldsUnchanged;
+
+    /**
+     * Returns the texts of the page's elements showing the weather.
+     * Can be called on any thread, such as the http client's.
+     *
+     * @param data The weather or an error.
+     * @param unitType The temperature in celsius (c) or fahrenheit (f).
+     * @return Map The texts by element id, the icon's is the icon code.
+     */
+    public static Map<String, String> fieldsOf(WeatherData data, String unitType) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        if (data.isError()) {
+            fields.put(ERROR_ELEMENT, data.getErrorMessage());
+            return fields;
+        }
+        boolean fahrenheit = "f".equalsIgnoreCase(unitType);
+        fields.put(ERROR_ELEMENT, "");
+        fields.put("city", data.getCity());
+        fields.put("country", data.getCountry());
+        fields.put("weather-day-time", new SimpleDateFormat("EEEE h:mm a", Locale.US)
+                .format(new Date(data.getTime() * 1000)));
+        fields.put("weather-current", data.getCondition());
+        fields.put("weather-current-desc", data.getDescription());
+        fields.put(ICON_ELEMENT, data.getIcon());
+        fields.put("weather-temp", number(data.getTemperature()));
+        fields.put("unitType", fahrenheit ? "F" : "C");
+        fields.put("weather-humidity", "Humidity: " + number(data.getHumidity()) + "%");
+        fields.put("weather-wind-speed", "Wind: " + number(data.getWindSpeed()) +
+                (fahrenheit ? " mph" : " km/h"));
+        return fields;
+    }
+
+    /**
+     * Sends the texts which changed to the page.
+     * @param webEngine The engine showing weather_template.html.
+     * @param fields The texts by element id, from fieldsOf().
+     */
+    public void apply(WebEngine webEngine, Map<String, String> fields) {
+        // a new JavaScript object, the texts are set as its members
+        JSObject changes = (JSObject) webEngine.executeScript("new Object()");
+        int changed = 0;
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            // the page clears the error itself on each search, so an
+            // error is sent even if it was the last one
+            boolean error = field.getKey().equals(ERROR_ELEMENT) && !field.getValue().isEmpty();
+            if (!error && Objects.equals(shown.get(field.getKey()), field.getValue())) {
+                fieldsUnchanged++;
+                continue;
+            }
+            changes.setMember(field.getKey(), field.getValue());
+            shown.put(field.getKey(), field.getValue());
+            changed++;
+        }
+        updates++;
+        fieldsSent += changed;
+        if (changed > 0) {
+            JSObject window = (JSObject) webEngine.executeScript("window");
+            window.call("applyWeatherChanges", changes);
+        }
+    }
+
+    /**
+     * Forgets the texts shown, such as after the page is loaded again.
+     */
+    public void reset() {
+        shown.clear();
+    }
+
+    /**
+     * A number as JavaScript shows it: 28 rather than 28.0.
+     */
+    private static String number(double value) {
+        if (Double.isNaN(value)) {
+            return "";
+        }
+        return new BigDecimal(Double.toString(value)).stripTrailingZeros().toPlainString();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Weather bridge: %d updates, %d fields sent, %d unchanged",
+                updates, fieldsSent, fieldsUnchanged);
+    }
+}
@@ -0,0 +1,280 @@
+package com.jfxbe.weatherwidget;
+
+import jdk.incubator.http.HttpResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Caches the weather responses by city and unit type, so asking
+ * again for the same city doesn't make a request.
+ *
+ * <pre>
+ *  Fresh (younger than the TTL): the cached JSON is returned (a hit).
+ *  Stale: the cached JSON is returned right away (a hit) and a request
+ *         refreshes it in the background (stale-while-revalidate),
+ *         the new JSON is returned as well once it arrives, unless
+ *         the refresh failed or answered with an error.
+ *  Not cached: a request is made (a miss).
+ * </pre>
+ *
+ * Requests go through a RefreshScheduler, so requests for the same
+ * city and unit type made while one is on its way share its response
+ * and failed requests are retried. Only successful responses are
+ * cached. The cache is saved to a properties file (by default
+ * ~/.jfxbe/weather-cache.properties) after each response, so after a
+ * restart the last weather is shown while it is refreshed.
+ */
+public class WeatherCache {
+
+    /** Seconds a response is fresh unless told otherwise. */
+    public static final long DEFAULT_TTL_SECONDS = 600;
+
+    /** Makes the requests */
+    private final RefreshScheduler scheduler;
+
+    /** Milliseconds a response is fresh */
+    private final long ttlMillis;
+
+    /** The file the responses are saved to, null to keep them in memory */
+    private final Path cacheFile;
+
+    /** The cached responses by key */
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /** Saves the cache file, one save at a time */
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "weather-cache");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+
+    /**
+     * A cached response.
+     */
+    private static class Entry {
+        final String json;
+        final long fetchedMillis;
+
+        Entry(String json, long fetchedMillis) {
+            this.json = json;
+            this.fetchedMillis = fetchedMillis;
+        }
+    }
+
+    /**
+     * Creates a cache saved in the user's home directory.
+     * @param scheduler Makes the requests.
+     * @param ttlSeconds The seconds a response is fresh.
+     */
+    public WeatherCache(RefreshScheduler scheduler, long ttlSeconds) {
+        this(scheduler, ttlSeconds,
+                Paths.get(System.getProperty("user.home"), ".jfxbe", "weather-cache.properties"));
+    }
+
+    /**
+     * @param scheduler Makes the requests.
+     * @param ttlSeconds The seconds a response is fresh.
+     * @param cacheFile The file the responses are saved to and loaded
+     *                  from, null to keep them in memory only.
+     */
+    public WeatherCache(RefreshScheduler scheduler, long ttlSeconds, Path cacheFile) {
+        this.scheduler = scheduler;
+        this.ttlMillis = ttlSeconds * 1000;
+        this.cacheFile = cacheFile;
+        load();
+    }
+
+    /**
+     * Returns the weather of a city, cached or requested. The consumer
+     * is called once, or twice when stale JSON is returned and then
+     * refreshed, on the calling thread for cached JSON and on the http
+     * client's thread for requested JSON.
+     *
+     * @param cityRegion The city, state and country (URL encoded).
+     * @param unitType The temperature in celsius (c) or fahrenheit (f).
+     * @param queryUrl The URL requesting the weather.
+     * @param onResponse Called with the JSON or the error.
+     */
+    public void get(String cityRegion, String unitType, String queryUrl,
+                    BiConsumer<String, Throwable> onResponse) {
+        String key = keyOf(cityRegion, unitType);
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            hits.incrementAndGet();
+            onResponse.accept(entry.json, null);
+            if (System.currentTimeMillis() - entry.fetchedMillis < ttlMillis) {
+                return;
+            }
+            // stale, refresh in the background
+            refreshes.incrementAndGet();
+            fetch(key, queryUrl).whenComplete( (httpResp, throwable) -> {
+                // keep showing the stale weather when offline or when
+                // the refresh is an error (such as an expired API key)
+                if (throwable == null && httpResp.statusCode() == 200 &&
+                    !httpResp.body().equals(entry.json)) {
+                    onResponse.accept(httpResp.body(), null);
+                }
+            });
+            return;
+        }
+        misses.incrementAndGet();
+        fetch(key, queryUrl).thenApply(HttpResponse::body).whenComplete(onResponse);
+    }
+
+    /**
+     * Requests the weather of a city, even if it is fresh, such as a
+     * periodic refresh. The consumer is called on the http client's
+     * thread with the JSON (an error response too) or the error.
+     *
+     * @param cityRegion The city, state and country (URL encoded).
+     * @param unitType The temperature in celsius (c) or fahrenheit (f).
+     * @param queryUrl The URL requesting the weather.
+     * @param onResponse Called with the JSON or the error.
+     */
+    public void refresh(String cityRegion, String unitType, String queryUrl,
+                        BiConsumer<String, Throwable> onResponse) {
+        refreshes.incrementAndGet();
+        fetch(keyOf(cityRegion, unitType), queryUrl).thenApply(HttpResponse::body)
+                                                    .whenComplete(onResponse);
+    }
+
+    /**
+     * Requests the weather through the scheduler, caching successful
+     * responses.
+     * @return CompletableFuture completed with the response, so callers
+     *         can tell errors (such as an unknown city) from weather.
+     */
+    private CompletableFuture<HttpResponse<String>> fetch(String key, String queryUrl) {
+        return scheduler.request(key, queryUrl).thenApply(httpResp -> {
+            // errors aren't cached
+            if (httpResp.statusCode() == 200) {
+                entries.put(key, new Entry(httpResp.body(), System.currentTimeMillis()));
+                save();
+            }
+            return httpResp;
+        });
+    }
+
+    /**
+     * Drops the cached responses, keeping the counters.
+     */
+    public void clear() {
+        entries.clear();
+        save();
+    }
+
+    private static String keyOf(String cityRegion, String unitType) {
+        return cityRegion.trim().toLowerCase(Locale.ROOT) + "|" +
+               ("f".equalsIgnoreCase(unitType) ? "f" : "c");
+    }
+
+    /**
+     * Loads the responses saved before, each property is a key
+     * holding the time it was fetched and the JSON.
+     */
+    private void load() {
+        if (cacheFile == null || !Files.isRegularFile(cacheFile)) {
+            return;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(cacheFile)) {
+            properties.load(in);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        for (String key : properties.stringPropertyNames()) {
+            String value = properties.getProperty(key);
+            int space = value.indexOf(' ');
+            if (space > 0 && value.substring(0, space).matches("\\d+")) {
+                entries.put(key, new Entry(value.substring(space + 1),
+                        Long.parseLong(value.substring(0, space))));
+            }
+        }
+    }
+
+    /**
+     * Saves the responses on the writer thread, written to a temporary
+     * file first so a crash can't leave half a cache.
+     */
+    private void save() {
+        if (cacheFile == null) {
+            return;
+        }
+        writer.submit(() -> {
+            Properties properties = new Properties();
+            entries.forEach( (key, entry) ->
+                    properties.setProperty(key, entry.fetchedMillis + " " + entry.json));
+            try {
+                Files.createDirectories(cacheFile.getParent());
+                Path tempFile = Files.createTempFile(cacheFile.getParent(), "weather-cache", ".tmp");
+                try (OutputStream out = Files.newOutputStream(tempFile)) {
+                    properties.store(out, "Weather responses by city and unit type");
+                }
+                Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Waits for the saves submitted so far to be written, such as
+     * before reading the cache file again.
+     */
+    void flush() throws InterruptedException {
+        try {
+            writer.submit(() -> { }).get();
+        } catch (ExecutionException e) {
+            // an empty task doesn't fail
+        }
+    }
+
+    /**
+     * @return long The requests answered from the cache.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return long The requests not cached, which waited for a response.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return long The stale responses and periodic refreshes requested.
+     */
+    public long getRefreshCount() {
+        return refreshes.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Weather cache: %d hits, %d misses, %d refreshes, %d cached",
+                hits.get(), misses.get(), refreshes.get(), entries.size());
+    }
+}
@@ -0,0 +1,129 @@
+package com.jfxbe.weatherwidget;
+
+import javafx.geometry.Pos;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.TextField;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * The weather card of weather_template.html built from plain JavaFX
+ * nodes instead of a WebView. A card costs a few labels rather than a
+ * WebKit engine per widget, so it starts faster and uses far less
+ * memory (see WeatherWidgetBenchmark).
+ *
+ * The card shows the same fields as the page, the texts by element id
+ * returned by WeatherBridge.fieldsOf(). Its nodes have the ids of the
+ * page's elements and are styled by weather_card.css to look alike.
+ *
+ * The card must be used on the JavaFX application thread.
+ */
+public class WeatherCard extends VBox {
+
+    /** The card's stylesheet */
+    public static final String STYLESHEET = "weather_card.css";
+
+    /** The URL of a weather icon by icon code */
+    private static final String ICON_URL = "http://openweathermap.org/img/w/%s.png";
+
+    /** The icons loaded before by icon code, shared by the cards */
+    private static final Map<String, Image> ICONS = new HashMap<>();
+
+    private final TextField searchField = new TextField();
+    private final ImageView weatherIcon = new ImageView();
+
+    /** The labels showing the texts by element id */
+    private final Map<String, Label> labels = new HashMap<>();
+
+    private Consumer<String> onSearch;
+
+    public WeatherCard() {
+        getStyleClass().add("weather-card");
+        getStylesheets().add(WeatherCard.class.getResource(STYLESHEET).toExternalForm());
+
+        // -- Step 1 -- The user enters a city state and country
+        searchField.setId("search-field");
+        searchField.setPromptText("City State, Country Code");
+        HBox.setHgrow(searchField, Priority.ALWAYS);
+        Button searchButton = new Button("Search");
+        searchButton.setId("search-button");
+        searchButton.setOnAction(actionEvent -> findWeatherByLocation());
+        searchField.setOnAction(actionEvent -> findWeatherByLocation());
+
+        weatherIcon.setId(WeatherBridge.ICON_ELEMENT);
+        weatherIcon.setFitWidth(64);
+        weatherIcon.setFitHeight(64);
+        Label degree = new Label("\u00b0");
+        degree.getStyleClass().add("degree");
+        HBox unit = new HBox(degree, label("unitType"));
+        unit.setAlignment(Pos.TOP_LEFT);
+        HBox current = new HBox(10, weatherIcon, label("weather-temp"), unit);
+        current.setAlignment(Pos.TOP_LEFT);
+
+        getChildren().addAll(new HBox(5, searchField, searchButton),
+                label(WeatherBridge.ERROR_ELEMENT),
+                label("city", "larger-font"),
+                label("country", "medium-font"),
+                label("weather-day-time", "medium-font"),
+                label("weather-current", "medium-font"),
+                label("weather-current-desc", "medium-font"),
+                current,
+                label("weather-humidity", "medium-font"),
+                label("weather-wind-speed", "medium-font"));
+        labels.get("unitType").setText("C");
+    }
+
+    /**
+     * Creates the label of an element.
+     * @param id The element id.
+     * @param fontClass A style class of the page's tileTextDisplay
+     *                  texts or none.
+     */
+    private Label label(String id, String... fontClass) {
+        Label label = new Label();
+        label.setId(id);
+        if (fontClass.length > 0) {
+            label.getStyleClass().addAll("tile-text", fontClass[0]);
+        }
+        labels.put(id, label);
+        return label;
+    }
+
+    /**
+     * Called with the city searched, as it was entered.
+     * @param onSearch The consumer of the city, state and country.
+     */
+    public void setOnSearch(Consumer<String> onSearch) {
+        this.onSearch = onSearch;
+    }
+
+    private void findWeatherByLocation() {
+        labels.get(WeatherBridge.ERROR_ELEMENT).setText("");
+        if (onSearch != null) {
+            onSearch.accept(searchField.getText());
+        }
+    }
+
+    /**
+     * Shows the weather. Fields not given are left as they are.
+     * @param fields The texts by element id, from WeatherBridge.fieldsOf().
+     */
+    public void show(Map<String, String> fields) {
+        fields.forEach( (id, text) -> {
+            if (id.equals(WeatherBridge.ICON_ELEMENT)) {
+                weatherIcon.setImage(text.isEmpty() ? null : ICONS.computeIfAbsent(text, code ->
+                        new Image(String.format(ICON_URL, code), true)));
+            } else if (labels.containsKey(id)) {
+                labels.get(id).setText(text);
+            }
+        });
+    }
+}
@@ -0,0 +1,246 @@
+package com.jfxbe.weatherwidget;
+
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.beans.binding.Bindings;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
+import javafx.geometry.Insets;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
+import javafx.scene.input.KeyCode;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.stage.Stage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static jdk.incubator.http.HttpClient.newHttpClient;
+
+/**
+ * A dashboard tracking the weather of dozens of cities in a table.
+ *
+ * Each city shows its cached weather at once, then is refreshed about
+ * every cache TTL through a RefreshScheduler: the refreshes of the
+ * cities are spread over the interval, at most
+ * RefreshScheduler.DEFAULT_MAX_IN_FLIGHT requests are on their way and
+ * failed requests are retried with a backoff.
+ *
+ * The cities are given as command line arguments ("Miami FL,US"), or
+ * read from ~/.jfxbe/weather-cities.txt which keeps the cities added
+ * and removed (select a row and press delete).
+ */
+public class WeatherDashboard extends Application {
+
+    /** The cities tracked when none are given */
+    private static final List<String> DEFAULT_CITIES = Arrays.asList(
+            "Miami FL,US", "New York NY,US", "Chicago IL,US", "Denver CO,US",
+            "Seattle WA,US", "San Francisco CA,US", "Los Angeles CA,US", "Phoenix AZ,US",
+            "Dallas TX,US", "Atlanta GA,US", "Boston MA,US", "Toronto,CA",
+            "Vancouver,CA", "Mexico City,MX", "Sao Paulo,BR", "London,GB",
+            "Paris,FR", "Berlin,DE", "Madrid,ES", "Rome,IT",
+            "Stockholm,SE", "Cairo,EG", "Nairobi,KE", "Mumbai,IN",
+            "Singapore,SG", "Tokyo,JP", "Beijing,CN", "Sydney,AU");
+
+    /** The temperature unit of the dashboard */
+    private static final String UNIT_TYPE = "c";
+
+    private static final Path CITIES_FILE =
+            Paths.get(System.getProperty("user.home"), ".jfxbe", "weather-cities.txt");
+
+    private final TableView<CityWeather> table = new TableView<>();
+    private final Label status = new Label();
+    private RefreshScheduler scheduler;
+    private WeatherCache cache;
+    private long refreshMillis;
+
+    /**
+     * A row of the dashboard.
+     */
+    private static class CityWeather {
+        final String city;
+        final ObjectProperty<WeatherData> data = new SimpleObjectProperty<>();
+        final StringProperty status = new SimpleStringProperty("Loading");
+
+        CityWeather(String city) {
+            this.city = city;
+        }
+    }
+
+    @Override
+    public void start(Stage stage) {
+        WeatherWidget.loadAPIKey();
+        long ttlSeconds = Long.getLong(WeatherWidget.CACHE_TTL_PROPERTY,
+                WeatherCache.DEFAULT_TTL_SECONDS);
+        refreshMillis = ttlSeconds * 1000;
+        scheduler = new RefreshScheduler(newHttpClient(), RefreshScheduler.DEFAULT_MAX_IN_FLIGHT);
+        cache = new WeatherCache(scheduler, ttlSeconds);
+
+        TableColumn<CityWeather, String> cityColumn = new TableColumn<>("City");
+        cityColumn.setCellValueFactory(cell -> new ReadOnlyStringWrapper(cell.getValue().city));
+        cityColumn.setPrefWidth(150);
+        TableColumn<CityWeather, String> statusColumn = new TableColumn<>("Status");
+        statusColumn.setCellValueFactory(cell -> cell.getValue().status);
+        statusColumn.setPrefWidth(150);
+        table.getColumns().add(cityColumn);
+        table.getColumns().add(dataColumn("Temp", 60, data ->
+                String.format("%.1f\u00b0", data.getTemperature())));
+        table.getColumns().add(dataColumn("Conditions", 140, WeatherData::getDescription));
+        table.getColumns().add(dataColumn("Humidity", 70, data ->
+                String.format("%.0f%%", data.getHumidity())));
+        table.getColumns().add(dataColumn("Wind", 80, data ->
+                String.format("%.1f km/h", data.getWindSpeed())));
+        table.getColumns().add(dataColumn("Observed", 80, data ->
+                new SimpleDateFormat("h:mm a").format(new Date(data.getTime() * 1000))));
+        table.getColumns().add(statusColumn);
+        table.setOnKeyPressed(keyEvent -> {
+            CityWeather selected = table.getSelectionModel().getSelectedItem();
+            if (selected != null && (keyEvent.getCode() == KeyCode.DELETE ||
+                                     keyEvent.getCode() == KeyCode.BACK_SPACE)) {
+                removeCity(selected);
+            }
+        });
+
+        TextField cityField = new TextField();
+        cityField.setPromptText("City State, Country Code");
+        HBox.setHgrow(cityField, Priority.ALWAYS);
+        Button addButton = new Button("Add");
+        addButton.setOnAction(actionEvent -> {
+            if (!cityField.getText().trim().isEmpty()) {
+                addCity(cityField.getText().trim());
+                cityField.clear();
+                saveCities();
+            }
+        });
+        cityField.setOnAction(addButton.getOnAction());
+        HBox addBar = new HBox(5, cityField, addButton);
+        addBar.setPadding(new Insets(5));
+        status.setPadding(new Insets(3, 5, 3, 5));
+
+        stage.setTitle("Weather Dashboard");
+        stage.setScene(new Scene(new BorderPane(table, addBar, null, status, null), 860, 600));
+        stage.show();
+
+        for (String city : loadCities()) {
+            addCity(city);
+        }
+    }
+
+    @Override
+    public void stop() throws Exception {
+        scheduler.shutdown();
+        System.out.println(cache);
+        System.out.println(scheduler);
+    }
+
+    private static TableColumn<CityWeather, String> dataColumn(String name, double width,
+                                                              Function<WeatherData, String> text) {
+        TableColumn<CityWeather, String> column = new TableColumn<>(name);
+        column.setCellValueFactory(cell -> {
+            ObjectProperty<WeatherData> data = cell.getValue().data;
+            return Bindings.createStringBinding(() ->
+                    data.get() == null || data.get().isError() ? "" : text.apply(data.get()), data);
+        });
+        column.setPrefWidth(width);
+        return column;
+    }
+
+    /**
+     * Shows a city's cached weather and schedules its refreshes.
+     */
+    private void addCity(String city) {
+        if (table.getItems().stream().anyMatch(row -> row.city.equalsIgnoreCase(city))) {
+            return;
+        }
+        CityWeather row = new CityWeather(city);
+        table.getItems().add(row);
+        String cityRegion = WeatherWidget.encodeCityRegion(city);
+        String queryUrl = WeatherWidget.generateQueryString(cityRegion, UNIT_TYPE);
+        cache.get(cityRegion, UNIT_TYPE, queryUrl, (json, throwable) -> update(row, json, throwable));
+        scheduler.schedule(row.city, refreshMillis, () ->
+                cache.refresh(cityRegion, UNIT_TYPE, queryUrl, (json, throwable) ->
+                        update(row, json, throwable)));
+    }
+
+    private void removeCity(CityWeather row) {
+        scheduler.cancel(row.city);
+        table.getItems().remove(row);
+        saveCities();
+    }
+
+    /**
+     * Parses a response off the JavaFX application thread, then shows it.
+     * A failed refresh keeps the weather shown before.
+     */
+    private void update(CityWeather row, String json, Throwable throwable) {
+        WeatherData data;
+        try {
+            data = throwable != null ? WeatherData.error("Failed: " + throwable.getMessage()) :
+                    WeatherData.fromJson(json);
+        } catch (IllegalArgumentException e) {
+            data = WeatherData.error("Bad response: " + e.getMessage());
+        }
+        String rowStatus = data.isError() ? data.getErrorMessage() :
+                "Updated " + new SimpleDateFormat("h:mm:ss a").format(new Date());
+        WeatherData newData = data;
+        Platform.runLater(() -> {
+            if (!newData.isError() || row.data.get() == null) {
+                row.data.set(newData);
+            }
+            row.status.set(rowStatus);
+            status.setText(table.getItems().size() + " cities. " + scheduler);
+        });
+    }
+
+    private List<String> loadCities() {
+        List<String> args = getParameters().getRaw();
+        if (!args.isEmpty()) {
+            return args;
+        }
+        if (Files.isRegularFile(CITIES_FILE)) {
+            try {
+                return Files.readAllLines(CITIES_FILE)
+                            .stream()
+                            .map(String::trim)
+                            .filter(line -> !line.isEmpty())
+                            .collect(Collectors.toList());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return DEFAULT_CITIES;
+    }
+
+    private void saveCities() {
+        try {
+            Files.createDirectories(CITIES_FILE.getParent());
+            Files.write(CITIES_FILE, table.getItems()
+                                          .stream()
+                                          .map(row -> row.city)
+                                          .collect(Collectors.toList()));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static void main(String[] args){
+        Application.launch(args);
+    }
+}
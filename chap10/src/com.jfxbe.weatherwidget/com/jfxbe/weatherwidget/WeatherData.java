@@ -0,0 +1,160 @@
+package com.jfxbe.weatherwidget;
+
+import java.util.Objects;
+
+/**
+ * The current weather of a city: the fields of an Open Weather Map
+ * response the widget shows. An error response (such as an unknown
+ * city) has an error message instead.
+ */
+public class WeatherData {
+
+    private final String city;
+    private final String country;
+    /** The time of the weather data in seconds since the epoch */
+    private final long time;
+    private final String condition;
+    private final String description;
+    private final String icon;
+    private final double temperature;
+    private final double humidity;
+    private final double windSpeed;
+    private final String errorMessage;
+
+    private WeatherData(String city, String country, long time, String condition,
+                        String description, String icon, double temperature,
+                        double humidity, double windSpeed, String errorMessage) {
+        this.city = city;
+        this.country = country;
+        this.time = time;
+        this.condition = condition;
+        this.description = description;
+        this.icon = icon;
+        this.temperature = temperature;
+        this.humidity = humidity;
+        this.windSpeed = windSpeed;
+        this.errorMessage = errorMessage;
+    }
+
+    /**
+     * Reads a weather response.
+     * @param json The JSON of the response.
+     * @return WeatherData The weather or the error of the response.
+     * @throws IllegalArgumentException if the JSON is malformed.
+     */
+    public static WeatherData fromJson(String json) {
+        Object response = Json.parse(json);
+        // cod is a number when successful and a string otherwise
+        Object code = Json.get(response, "cod");
+        if (code != null && !"200".equals(String.valueOf(code)) &&
+            !Double.valueOf(200).equals(code)) {
+            Object message = Json.get(response, "message");
+            return error(message != null ? String.valueOf(message) : "Error " + code);
+        }
+        return new WeatherData(
+                text(Json.get(response, "name")),
+                text(Json.get(response, "sys", "country")),
+                (long) number(Json.get(response, "dt")),
+                text(Json.get(response, "weather", 0, "main")),
+                text(Json.get(response, "weather", 0, "description")),
+                text(Json.get(response, "weather", 0, "icon")),
+                number(Json.get(response, "main", "temp")),
+                number(Json.get(response, "main", "humidity")),
+                number(Json.get(response, "wind", "speed")),
+                null);
+    }
+
+    /**
+     * @param message The error message.
+     * @return WeatherData An error.
+     */
+    public static WeatherData error(String message) {
+        return new WeatherData("", "", 0, "", "", "", Double.NaN, Double.NaN, Double.NaN,
+                message);
+    }
+
+    private static String text(Object value) {
+        return value != null ? String.valueOf(value) : "";
+    }
+
+    private static double number(Object value) {
+        return value instanceof Double ? (Double) value : Double.NaN;
+    }
+
+    public boolean isError() {
+        return errorMessage != null;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public String getCity() {
+        return city;
+    }
+
+    public String getCountry() {
+        return country;
+    }
+
+    /**
+     * @return long The time of the weather data in seconds since the epoch.
+     */
+    public long getTime() {
+        return time;
+    }
+
+    public String getCondition() {
+        return condition;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public String getIcon() {
+        return icon;
+    }
+
+    public double getTemperature() {
+        return temperature;
+    }
+
+    public double getHumidity() {
+        return humidity;
+    }
+
+    public double getWindSpeed() {
+        return windSpeed;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof WeatherData)) {
+            return false;
+        }
+        WeatherData data = (WeatherData) other;
+        return time == data.time &&
+               Double.compare(temperature, data.temperature) == 0 &&
+               Double.compare(humidity, data.humidity) == 0 &&
+               Double.compare(windSpeed, data.windSpeed) == 0 &&
+               city.equals(data.city) && country.equals(data.country) &&
+               condition.equals(data.condition) && description.equals(data.description) &&
+               icon.equals(data.icon) && Objects.equals(errorMessage, data.errorMessage);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(city, country, time, condition, description, icon,
+                temperature, humidity, windSpeed, errorMessage);
+    }
+
+    @Override
+    public String toString() {
+        return isError() ? "WeatherData[error " + errorMessage + "]" :
+                String.format("WeatherData[%s %s %.1f %s]", city, country, temperature, condition);
+    }
+}
@@ -17,13 +17,13 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.InputStream;
-import java.net.URI;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Scanner;
 
 import static jdk.incubator.http.HttpClient.newHttpClient;
-import static jdk.incubator.http.HttpRequest.newBuilder;
-import static jdk.incubator.http.HttpResponse.BodyHandler;
 /**
  * The WeatherWidget application demonstrates the
  * use of the following interactions:
@@ -31,7 +31,7 @@ import static jdk.incubator.http.HttpResponse.BodyHandler;
  *  1) Communications from Java to JavaScript
  *  2) Communications from JavaScript to Java
  *  3) RESTful GET Web service end point
- *  4) Manipulate JSON Objects
+ *  4) Parse JSON into a Java model
  *  5) Handle HTML/JavaScript WebEvents
  *  6) Debugging using Firebug lite
  * </pre>
@@ -47,13 +47,18 @@ import static jdk.incubator.http.HttpResponse.BodyHandler;
  * Step 3: An up call from JavaScript to Java is made to the method
  *         WeatherWidget.queryWeatherByLocationAndUnit(). (See this class)
  * Step 4: After querying the weather data the JSON data is passed to
- *         the Java method populateWeatherData(). This method will call
- *         the JavaScript function populateWeatherData(). (See this class)
+ *         the Java method populateWeatherData(). This method parses it
+ *         into WeatherData and hands the changed fields to the
+ *         JavaScript function applyWeatherChanges(). (See this class)
  * Step 5: Populates the HTML page with the JavaScript function
- *         populateWeatherDate() (See weather_template.html)
+ *         applyWeatherChanges() (See weather_template.html)
  *
  * </pre>
  *
+ * With -Dweatherwidget.renderer=native the weather is shown by a
+ * WeatherCard made of JavaFX nodes instead of the HTML page, the
+ * steps are the same except the search is handled in Java.
+ *
  * It is required to obtain a valid API key to query weather data.
  * To obtain an API key head over to Open Weather Map at
  * http://openweathermap.org
@@ -65,6 +70,15 @@ public class WeatherWidget extends Application {
     /** The main URL of the current weather REST end point. */
     public static final String WEATHER_URL = "http://api.openweathermap.org/data/2.5/weather";
 
+    /** A system property replacing WEATHER_URL, such as a local stub server. */
+    public static final String WEATHER_URL_PROPERTY = "weatherwidget.url";
+
+    /** A system property setting the seconds weather data is cached. */
+    public static final String CACHE_TTL_PROPERTY = "weatherwidget.cacheTtl";
+
+    /** A system property choosing the renderer: web (the default) or native. */
+    public static final String RENDERER_PROPERTY = "weatherwidget.renderer";
+
     /** A local file containing a valid API key. */
     public static final String API_KEY_FILE = ".openweathermap-api-key";
 
@@ -77,13 +91,30 @@ public class WeatherWidget extends Application {
     /** A WebView node to display HTML5 content */
     private WebView webView;
 
+    /** Sends the changed weather fields to the page */
+    private final WeatherBridge weatherBridge = new WeatherBridge();
+
+    /** Shows the weather when rendered natively, otherwise null */
+    private WeatherCard weatherCard;
+
     /** A singleton http client to make http requests */
     private static HttpClient HTTP_CLIENT;
 
+    /** Limits, coalesces and retries the weather requests */
+    private static RefreshScheduler REFRESH_SCHEDULER;
+
+    /** The weather data fetched before by city and unit type */
+    private static WeatherCache WEATHER_CACHE;
+
     @Override
     public void start(Stage stage) {
         stage.setTitle("Weather Widget");
 
+        if ("native".equalsIgnoreCase(System.getProperty(RENDERER_PROPERTY))) {
+            startNative(stage);
+            return;
+        }
+
         webView = new WebView();
 
         Scene scene = new Scene(webView, 300, 300);
@@ -107,6 +138,8 @@ public class WeatherWidget extends Application {
                                 webView.getEngine()
                                         .executeScript("window");
                         jsobj.setMember("WeatherWidget", this);
+                        // a new page shows none of the weather
+                        weatherBridge.reset();
                         // default city's weather (a sunny place)
                         queryWeatherByLocationAndUnit("Miami%20FL,US", "c");
                     }
@@ -126,12 +159,31 @@ public class WeatherWidget extends Application {
         stage.show();
     }
 
+    /**
+     * Shows the weather with a WeatherCard rather than a WebView.
+     * @param stage The widget's window.
+     */
+    private void startNative(Stage stage) {
+        weatherCard = new WeatherCard();
+        stage.setScene(new Scene(weatherCard, 300, 300));
+
+        // obtain API key
+        loadAPIKey();
+
+        weatherCard.setOnSearch(city ->
+                queryWeatherByLocationAndUnit(encodeCityRegion(city), "c"));
+        stage.show();
+
+        // default city's weather (a sunny place)
+        queryWeatherByLocationAndUnit("Miami%20FL,US", "c");
+    }
+
     /**
      * If an API key file doesn't exist prompt the user to enter their key.
      * Once a valid key is saved into a file named .openweathermap-api-key
      * The application will use it to fetch weather data.
      */
-    private void loadAPIKey() {
+    static void loadAPIKey() {
         // Load API key from local file
         File keyFile = new File(System.getProperty("user.home") + "/" + API_KEY_FILE);
 
@@ -182,6 +234,8 @@ public class WeatherWidget extends Application {
     @Override
     public void stop() throws Exception {
         // clean up resources here...
+        System.out.println(WEATHER_CACHE);
+        System.out.println(weatherBridge);
     }
 
     /**
@@ -190,13 +244,26 @@ public class WeatherWidget extends Application {
      * @param inputStream byte input stream.
      * @return String A string from an input stream.
      */
-    public String streamToString(InputStream inputStream) {
+    public static String streamToString(InputStream inputStream) {
         String text = new Scanner(inputStream, "UTF-8")
                 .useDelimiter("\\Z")
                 .next();
         return text;
     }
 
+    /**
+     * URL encodes a city as the page's search does.
+     * @param cityRegion The city, state and country.
+     * @return String The encoded city, state and country.
+     */
+    static String encodeCityRegion(String cityRegion) {
+        try {
+            return URLEncoder.encode(cityRegion, "UTF-8").replace("+", "%20");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     /**
      * Returns a string containing the URL with parameters.
      * @param cityRegion The city state and country. State and
@@ -204,10 +271,10 @@ public class WeatherWidget extends Application {
      * @param unitType Specify c for celsius and f for fahrenheit.
      * @return String A query string representing the web request.
      */
-    private  String generateQueryString(String cityRegion, String unitType) {
+    static String generateQueryString(String cityRegion, String unitType) {
         String units = "f".equalsIgnoreCase(unitType) ? "imperial": "metric";
 
-        String queryString = WEATHER_URL +
+        String queryString = System.getProperty(WEATHER_URL_PROPERTY, WEATHER_URL) +
                 "?q=" + cityRegion +
                 "&" + "units=" + units +
                 "&" + "mode=json" +
@@ -233,39 +300,51 @@ public class WeatherWidget extends Application {
         String queryStr  = generateQueryString(cityRegion, unitType);
         System.out.println("Request  (http2): " + queryStr);
 
-        // Make a GET request to fetch weather data asynchronously
-        // The sendAsync() method returns a CompletableFuture<HttpResponse<String>>
-        HTTP_CLIENT.sendAsync( newBuilder(URI.create(queryStr))
-                                .GET()
-                                .build(),
-                        BodyHandler.asString())
-                   .whenCompleteAsync( (httpResp, throwable) -> {
-                       if (throwable != null){
-                           showErrorDialog(throwable.getMessage());
-                           return;
-                       }
-                       String json  = httpResp.body();
-                       populateWeatherData(json, unitType);
-                       System.out.println("Response (http2): " + json);
-                   });
+        // Returns cached weather data right away, otherwise makes a GET
+        // request to fetch weather data asynchronously. Stale data is
+        // populated then refreshed by a request in the background.
+        WEATHER_CACHE.get(cityRegion, unitType, queryStr, (json, throwable) -> {
+            if (throwable != null){
+                Platform.runLater(() -> showErrorDialog(throwable.getMessage()));
+                return;
+            }
+            System.out.println("Response (http2): " + json);
+            populateWeatherData(json, unitType);
+        });
     }
 
     /**
-     * Invokes to the JavaScript function populateWeatherData() using the web engine.
+     * Parses the weather data and invokes the JavaScript function
+     * applyWeatherChanges() using the web engine.
      * <pre>
      *     -- Step 4 --
-     *     From Java a call to invoke a JavaScript function is made by calling populateWeatherData().
+     *     The JSON is parsed on the calling (http client's) thread, only
+     *     the fields which changed are sent to the page in one call.
+     *     The JSON is never evaluated as JavaScript.
      * </pre>
      *
-     * @param json The JSON string to be evaluated (converted to a real JavaScript object).
+     * @param json The JSON string of the weather response.
      * @param unitType The symbol and unit for the temperature.
      */
     private void populateWeatherData(String json, String unitType) {
+        WeatherData data;
+        try {
+            data = WeatherData.fromJson(json);
+        } catch (IllegalArgumentException e) {
+            data = WeatherData.error("Bad weather response: " + e.getMessage());
+        }
+        Map<String, String> fields = WeatherBridge.fieldsOf(data, unitType);
+        String errorMessage = data.getErrorMessage();
         Platform.runLater(() -> {
             // On the JavaFX Application Thread....
-            webView.getEngine()
-                    .executeScript("populateWeatherData(eval(" + json + "), " +
-                            "'" + unitType + "' );");
+            if (weatherCard != null) {
+                weatherCard.show(fields);
+            } else {
+                weatherBridge.apply(webView.getEngine(), fields);
+            }
+            if (errorMessage != null) {
+                showErrorDialog(errorMessage);
+            }
         });
     }
 
@@ -293,6 +372,10 @@ public class WeatherWidget extends Application {
 
     public static void main(String[] args){
         HTTP_CLIENT = newHttpClient();
+        REFRESH_SCHEDULER = new RefreshScheduler(HTTP_CLIENT,
+                RefreshScheduler.DEFAULT_MAX_IN_FLIGHT);
+        WEATHER_CACHE = new WeatherCache(REFRESH_SCHEDULER,
+                Long.getLong(CACHE_TTL_PROPERTY, WeatherCache.DEFAULT_TTL_SECONDS));
         Application.launch(args);
     }
 }
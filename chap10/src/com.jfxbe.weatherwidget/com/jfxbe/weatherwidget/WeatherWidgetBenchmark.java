@@ -0,0 +1,277 @@
+package com.jfxbe.weatherwidget;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.concurrent.Worker;
+import javafx.scene.Scene;
+import javafx.scene.control.ScrollPane;
+import javafx.scene.layout.TilePane;
+import javafx.scene.web.WebView;
+import javafx.stage.Stage;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the startup time and memory of the two weather renderers,
+ * the WebView showing weather_template.html and the native
+ * WeatherCard, for 1 and 20 widgets shown in a window.
+ *
+ * Each renderer and widget count runs in a new JVM, so the costs of
+ * starting a renderer (such as loading WebKit) are counted every time.
+ * The widgets show a canned weather response, no weather requests are
+ * made (the weather icons are still loaded from Open Weather Map).
+ * For each run it prints:
+ * <pre>
+ *  shown ms       From creating the widgets until they all show the
+ *                 weather and a frame was rendered.
+ *  since start ms From the start of the JVM until then.
+ *  heap MB        The heap used by the widgets (after a GC).
+ *  rss MB         The memory of the process used by the widgets, where
+ *                 /proc/self/status is available (WebKit's memory is
+ *                 mostly outside the heap).
+ * </pre>
+ *
+ * <pre>
+ *    java --module-path mods -m com.jfxbe.weatherwidget/com.jfxbe.weatherwidget.WeatherWidgetBenchmark
+ * </pre>
+ */
+public class WeatherWidgetBenchmark extends Application {
+
+    private static final String[] RENDERERS = {"web", "native"};
+    private static final int[] WIDGET_COUNTS = {1, 20};
+
+    /** Time given to the window (or the widgets) before measuring memory */
+    private static final long SETTLE_MILLIS = 2_000;
+
+    /** Longest to wait for the widgets to show the weather */
+    private static final long SHOWN_TIMEOUT_MILLIS = 60_000;
+
+    /** The prefix of the line a run prints its results on */
+    private static final String RESULT = "RESULT ";
+
+    /** A weather response, so every widget shows the same weather */
+    private static final String SAMPLE_RESPONSE = "{\"coord\":{\"lon\":-80.19,\"lat\":25.77}," +
+            "\"weather\":[{\"id\":800,\"main\":\"Clear\",\"description\":\"clear sky\",\"icon\":\"01d\"}]," +
+            "\"main\":{\"temp\":28.4,\"pressure\":1016,\"humidity\":74},\"wind\":{\"speed\":3.6}," +
+            "\"dt\":1500000000,\"sys\":{\"country\":\"US\"},\"id\":4164138,\"name\":\"Miami\",\"cod\":200}";
+
+    /**
+     * Without arguments runs each renderer and widget count in a new
+     * JVM and prints the results. With a renderer (web or native) and
+     * a widget count makes a single run.
+     *
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2) {
+            Application.launch(args);
+            return;
+        }
+        System.out.println("renderer  widgets  shown ms  since start ms  heap MB  rss MB  rss MB/widget");
+        for (String renderer : RENDERERS) {
+            for (int widgets : WIDGET_COUNTS) {
+                System.out.println(runJvm(renderer, widgets));
+            }
+        }
+    }
+
+    /**
+     * Runs this benchmark for a renderer and widget count in a new JVM.
+     * @return String The row of results or why there are none.
+     */
+    private static String runJvm(String renderer, int widgets) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        String modulePath = System.getProperty("jdk.module.path");
+        if (modulePath != null) {
+            command.add("--module-path");
+            command.add(modulePath);
+            command.add("-m");
+            command.add(WeatherWidgetBenchmark.class.getModule().getName() + "/" +
+                        WeatherWidgetBenchmark.class.getName());
+        } else {
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(WeatherWidgetBenchmark.class.getName());
+        }
+        command.add(renderer);
+        command.add(String.valueOf(widgets));
+
+        Process process = new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        String row = String.format("%-8s  %7d  failed", renderer, widgets);
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(RESULT)) {
+                    row = line.substring(RESULT.length());
+                }
+            }
+        }
+        process.waitFor();
+        return row;
+    }
+
+    @Override
+    public void start(Stage stage) {
+        List<String> args = getParameters().getRaw();
+        String renderer = args.get(0);
+        int widgets = Integer.parseInt(args.get(1));
+        TilePane tiles = new TilePane();
+        ScrollPane scrollPane = new ScrollPane(tiles);
+        scrollPane.setFitToWidth(true);
+        stage.setTitle("WeatherWidgetBenchmark " + renderer + " " + widgets);
+        stage.setScene(new Scene(scrollPane, 1280, 720));
+        stage.show();
+
+        // measuring sleeps between the steps, off the JavaFX application thread
+        Thread thread = new Thread(() -> {
+            try {
+                run(renderer, widgets, tiles);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            Platform.exit();
+        }, "weather-widget-benchmark");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run(String renderer, int widgets, TilePane tiles) throws Exception {
+        // the memory of the empty window
+        Thread.sleep(SETTLE_MILLIS);
+        System.gc();
+        long heapBefore = heapUsed();
+        long rssBefore = residentSetSize();
+
+        Map<String, String> fields = WeatherBridge.fieldsOf(
+                WeatherData.fromJson(SAMPLE_RESPONSE), "c");
+        CountDownLatch shown = new CountDownLatch(widgets);
+        long start = System.nanoTime();
+        onFx(() -> {
+            for (int i = 0; i < widgets; i++) {
+                if (renderer.equals("native")) {
+                    WeatherCard weatherCard = new WeatherCard();
+                    weatherCard.setPrefSize(300, 300);
+                    weatherCard.show(fields);
+                    tiles.getChildren().add(weatherCard);
+                    shown.countDown();
+                } else {
+                    tiles.getChildren().add(webWidget(fields, shown));
+                }
+            }
+            return null;
+        });
+        if (!shown.await(SHOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+            throw new IllegalStateException("The widgets don't show the weather after " +
+                    SHOWN_TIMEOUT_MILLIS + " ms");
+        }
+        waitForPulse();
+        double shownMillis = (System.nanoTime() - start) / 1e6;
+        long sinceStartMillis = ProcessHandle.current().info().startInstant()
+                .map(jvmStart -> Duration.between(jvmStart, Instant.now()).toMillis())
+                .orElse(-1L);
+
+        // the memory once the widgets are done loading
+        Thread.sleep(SETTLE_MILLIS);
+        System.gc();
+        double heapMB = (heapUsed() - heapBefore) / 1e6;
+        long rssAfter = residentSetSize();
+        String rss = rssBefore < 0 || rssAfter < 0 ? String.format("%6s  %13s", "n/a", "n/a") :
+                String.format("%6.1f  %13.1f", (rssAfter - rssBefore) / 1e6,
+                        (rssAfter - rssBefore) / 1e6 / widgets);
+        System.out.printf("%s%-8s  %7d  %8.0f  %14d  %7.1f  %s%n", RESULT, renderer, widgets,
+                shownMillis, sinceStartMillis, heapMB, rss);
+    }
+
+    /**
+     * Creates a WebView showing the weather page, which counts down
+     * once the weather is applied to the loaded page.
+     */
+    private static WebView webWidget(Map<String, String> fields, CountDownLatch shown) {
+        WebView webView = new WebView();
+        webView.setPrefSize(300, 300);
+        WeatherBridge weatherBridge = new WeatherBridge();
+        webView.getEngine()
+               .getLoadWorker()
+               .stateProperty()
+               .addListener( (obs, oldValue, newValue) -> {
+                   if (newValue == Worker.State.SUCCEEDED) {
+                       weatherBridge.apply(webView.getEngine(), fields);
+                       shown.countDown();
+                   }
+               });
+        webView.getEngine()
+               .load(WeatherWidget.class
+                      .getResource(WeatherWidget.WEATHER_DISPLAY_TEMPLATE_FILE)
+                      .toExternalForm());
+        return webView;
+    }
+
+    /**
+     * Waits until the JavaFX application thread has rendered a frame.
+     */
+    private static void waitForPulse() throws InterruptedException {
+        CountDownLatch pulsed = new CountDownLatch(1);
+        Platform.runLater(() -> new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                stop();
+                pulsed.countDown();
+            }
+        }.start());
+        pulsed.await();
+    }
+
+    /**
+     * Runs code on the JavaFX application thread and waits for its result.
+     */
+    private static <T> T onFx(Callable<T> callable) throws Exception {
+        FutureTask<T> task = new FutureTask<>(callable);
+        Platform.runLater(task);
+        return task.get();
+    }
+
+    private static long heapUsed() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * The memory of the process in bytes (VmRSS) or -1 if not known.
+     */
+    private static long residentSetSize() {
+        Path status = Paths.get("/proc/self/status");
+        if (!Files.isReadable(status)) {
+            return -1;
+        }
+        try {
+            for (String line : Files.readAllLines(status)) {
+                if (line.startsWith("VmRSS:")) {
+                    // such as "VmRSS:     123456 kB"
+                    return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            e.printStackTrace();
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,169 @@
+package com.jfxbe.weatherwidget;
+
+import com.sun.net.httpserver.HttpServer;
+import jdk.incubator.http.HttpClient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks the WeatherCache against a stub weather server (no API key
+ * or network needed). The server answers Miami with weather, Nowhere
+ * with a 404 (city not found) and, once told to, every city with a 401
+ * (invalid API key) the way the OpenWeatherMap API does.
+ *
+ * <pre>
+ *  Misses of the same city are coalesced into one request.
+ *  A fresh hit makes no request.
+ *  A stale hit is served right away and refreshed in the background.
+ *  An error refreshing stale weather keeps the cached weather.
+ *  Errors aren't cached.
+ * </pre>
+ *
+ * Not part of the widget's module, weather-cache-test.sh patches it
+ * into the module to run it.
+ */
+public class WeatherCacheTest {
+
+    private static final String WEATHER = "{\"cod\":200,\"name\":\"Miami\",\"n\":%d}";
+    private static final String CITY_NOT_FOUND = "{\"cod\":\"404\",\"message\":\"city not found\"}";
+    private static final String INVALID_KEY = "{\"cod\":401,\"message\":\"Invalid API key.\"}";
+
+    /** A response is expected within this many seconds */
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile boolean invalidKey;
+    private int failures;
+
+    public static void main(String[] args) throws Exception {
+        new WeatherCacheTest().run();
+    }
+
+    private void run() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/weather", exchange -> {
+            int n = requests.incrementAndGet();
+            // slow enough for concurrent misses to overlap
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            String query = exchange.getRequestURI().getQuery();
+            int status = 200;
+            String body = String.format(WEATHER, n);
+            if (invalidKey) {
+                status = 401;
+                body = INVALID_KEY;
+            } else if (query != null && query.contains("Nowhere")) {
+                status = 404;
+                body = CITY_NOT_FOUND;
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/weather?q=";
+
+        Path cacheFile = Files.createTempFile("weather-cache", ".properties");
+        HttpClient client = HttpClient.newHttpClient();
+        RefreshScheduler scheduler = new RefreshScheduler(client, 4);
+        // weather is stale after a second
+        WeatherCache cache = new WeatherCache(scheduler, 1, cacheFile);
+        BlockingQueue<String> responses = new LinkedBlockingQueue<>();
+        try {
+            // concurrent misses
+            for (int i = 0; i < 3; i++) {
+                cache.get("Miami%2C%20FL%2CUS", "c", url + "Miami",
+                        (json, throwable) -> responses.add(String.valueOf(json)));
+            }
+            String weather = null;
+            for (int i = 0; i < 3; i++) {
+                weather = responses.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                check("miss returns the weather", String.format(WEATHER, 1), weather);
+            }
+            check("misses coalesced into one request", 1, requests.get());
+
+            // fresh hit, the same city typed differently
+            cache.get("miami%2C%20fl%2Cus", "C", url + "Miami",
+                    (json, throwable) -> responses.add(json));
+            check("fresh hit returns the cached weather", weather, responses.poll());
+            check("fresh hit makes no request", 1, requests.get());
+
+            // stale hit
+            Thread.sleep(1100);
+            cache.get("Miami%2C%20FL%2CUS", "c", url + "Miami",
+                    (json, throwable) -> responses.add(json));
+            check("stale hit returns the cached weather", weather, responses.poll());
+            weather = responses.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            check("stale hit returns the refreshed weather", String.format(WEATHER, 2), weather);
+
+            // stale hit, the refresh is an error
+            Thread.sleep(1100);
+            invalidKey = true;
+            cache.get("Miami%2C%20FL%2CUS", "c", url + "Miami",
+                    (json, throwable) -> responses.add(json));
+            check("stale hit with an invalid key returns the cached weather", weather, responses.poll());
+            check("failed refresh isn't returned", null, responses.poll(1, TimeUnit.SECONDS));
+            check("failed refresh was requested", 3, requests.get());
+            invalidKey = false;
+
+            // errors are returned on a miss but aren't cached
+            for (int i = 0; i < 2; i++) {
+                cache.get("Nowhere", "c", url + "Nowhere",
+                        (json, throwable) -> responses.add(json));
+                check("unknown city returns the error", CITY_NOT_FOUND,
+                        responses.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            }
+            check("unknown city isn't cached", 5, requests.get());
+
+            // the cached weather survives a restart (a long TTL keeps it fresh)
+            cache.flush();
+            WeatherCache restarted = new WeatherCache(scheduler, 600, cacheFile);
+            restarted.get("Miami%2C%20FL%2CUS", "c", url + "Miami",
+                    (json, throwable) -> responses.add(json));
+            check("restarted cache returns the saved weather", weather, responses.poll());
+            check("restarted cache makes no request", 5, requests.get());
+
+            System.out.println(cache);
+        } finally {
+            scheduler.shutdown();
+            server.stop(0);
+            deleteQuietly(cacheFile);
+        }
+        System.out.println(failures == 0 ? "All checks passed" : failures + " check(s) failed");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private void check(String description, Object expected, Object actual) {
+        boolean passed = expected == null ? actual == null : expected.equals(actual);
+        if (passed) {
+            System.out.println("PASS " + description);
+        } else {
+            failures++;
+            System.out.println("FAIL " + description + ": expected " + expected + " but was " + actual);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // a temporary file
+        }
+    }
+}
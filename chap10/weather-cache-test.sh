@@ -0,0 +1,15 @@
+#!/usr/bin/env bash
+# Compile
+javac -d mods/com.jfxbe.weatherwidget $(find src/com.jfxbe.weatherwidget -name "*.java")
+
+# Compile the check into its own folder, patched into the widget's module
+javac --module-path mods -d test-mods/com.jfxbe.weatherwidget \
+--patch-module com.jfxbe.weatherwidget=test/com.jfxbe.weatherwidget \
+--add-modules jdk.httpserver --add-reads com.jfxbe.weatherwidget=jdk.httpserver \
+$(find test/com.jfxbe.weatherwidget -name "*.java")
+
+# Run the check against a stub weather server
+java --module-path mods \
+--patch-module com.jfxbe.weatherwidget=test-mods/com.jfxbe.weatherwidget \
+--add-modules jdk.httpserver --add-reads com.jfxbe.weatherwidget=jdk.httpserver \
+-m com.jfxbe.weatherwidget/com.jfxbe.weatherwidget.WeatherCacheTest
@@ -5,6 +5,8 @@ javac -d mods/com.jfxbe.weatherwidget $(find src/com.jfxbe.weatherwidget -name "
 # Copy resource
 cp src/com.jfxbe.weatherwidget/com/jfxbe/weatherwidget/weather_template.html \
 mods/com.jfxbe.weatherwidget/com/jfxbe/weatherwidget
+cp src/com.jfxbe.weatherwidget/com/jfxbe/weatherwidget/weather_card.css \
+mods/com.jfxbe.weatherwidget/com/jfxbe/weatherwidget
 
 # Run Application
 java --module-path mods -m com.jfxbe.weatherwidget/com.jfxbe.weatherwidget.WeatherWidget